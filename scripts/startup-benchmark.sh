@@ -0,0 +1,101 @@
+#!/usr/bin/env bash
+#
+# Compares cold start of the regular boot jar against the fast-start (AOT + CDS) layout.
+#
+# Usage:
+#   ./gradlew bootJar
+#   ./gradlew fastStart -PfastStart
+#   scripts/startup-benchmark.sh [runs]
+#
+# For each mode it reports the "Started RagDemoApplication in ..." time logged by Spring Boot,
+# the wall-clock time until the HTTP port answers, and the latency of the first /ai/rag request.
+# PostgreSQL, the embedding server and OPENROUTER_API_KEY must be available as for a normal run.
+# A run that has not answered within READY_TIMEOUT seconds (default 120), or whose process exits
+# first, aborts the benchmark with the tail of its log. After all runs the medians of both modes
+# are printed as a Markdown table.
+
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-8080}
+READY_TIMEOUT=${READY_TIMEOUT:-120}
+BOOT_JAR=$(ls build/libs/rag-demo-*-SNAPSHOT.jar | grep -v plain | head -n 1)
+FAST_DIR=build/fast-start
+
+now_ms() {
+    date +%s%3N
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { if (NR % 2) print v[(NR + 1) / 2]; else print (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+}
+
+RESULTS=$(mktemp)
+trap 'rm -f "$RESULTS"' EXIT
+
+measure() {
+    local label=$1
+    shift
+    local log
+    log=$(mktemp)
+
+    for run in $(seq 1 "$RUNS"); do
+        local start ready first_request
+        start=$(now_ms)
+        "$@" --server.port="$PORT" --rag.seed.enabled=false >"$log" 2>&1 &
+        local pid=$!
+
+        local deadline=$((start + READY_TIMEOUT * 1000))
+        until curl -sf "http://localhost:$PORT/ai/documents/count" >/dev/null; do
+            if ! kill -0 "$pid" 2>/dev/null; then
+                echo "$label run $run: the application exited before it was ready" >&2
+                tail -n 30 "$log" >&2
+                exit 1
+            fi
+            if [ "$(now_ms)" -gt "$deadline" ]; then
+                echo "$label run $run: not ready after ${READY_TIMEOUT}s" >&2
+                tail -n 30 "$log" >&2
+                kill "$pid" 2>/dev/null || true
+                exit 1
+            fi
+            sleep 0.05
+        done
+        ready=$(now_ms)
+
+        first_request=$(curl -s -o /dev/null -w '%{time_total}' -X POST "http://localhost:$PORT/ai/rag" \
+            -H 'Content-Type: application/json' -d '{"message": "What is StarlightDB?"}')
+
+        local started
+        started=$(grep -o 'Started RagDemoApplication in [0-9.]* seconds' "$log" | grep -o '[0-9.]*' | head -n 1)
+        printf '%-10s run %d: started in %ss, ready after %dms, first /ai/rag %ss\n' \
+            "$label" "$run" "$started" "$((ready - start))" "$first_request"
+        echo "$label $started $((ready - start)) $first_request" >>"$RESULTS"
+
+        kill "$pid"
+        wait "$pid" 2>/dev/null || true
+    done
+
+    rm -f "$log"
+}
+
+measure baseline java -jar "$BOOT_JAR"
+(cd "$FAST_DIR" && measure fast-start java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true \
+    -jar rag-demo.jar)
+
+summary() {
+    local label=$1
+    local column
+    printf '| %s' "$label"
+    for column in 2 3 4; do
+        printf ' | %s' "$(awk -v l="$label" -v c="$column" '$1 == l { print $c }' "$RESULTS" | median)"
+    done
+    printf ' |\n'
+}
+
+echo
+echo "Medians of $RUNS runs:"
+echo
+echo '| mode | started (s) | ready (ms) | first /ai/rag (s) |'
+echo '|------|-------------|------------|-------------------|'
+summary baseline
+summary fast-start
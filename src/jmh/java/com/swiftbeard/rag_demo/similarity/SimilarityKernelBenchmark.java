@@ -0,0 +1,125 @@
+package com.swiftbeard.rag_demo.similarity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// ./gradlew jmh -Pjmh.includes=SimilarityKernelBenchmark
+// Compares scalar and SIMD kernels on 768-dim embeddings: one pair at a time, a query against
+// a contiguous block of 10,000 vectors, and grouping a 1,000-question batch into near-duplicates
+// the way /ai/rag/batch does.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class SimilarityKernelBenchmark {
+
+    private static final int BLOCK_SIZE = 10_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    @Param({"768"})
+    private int dimensions;
+
+    @Param({"scalar", "simd"})
+    private String kernels;
+
+    private VectorKernels vectorKernels;
+
+    private float[] a;
+    private float[] b;
+    private long[] codeA;
+    private long[] codeB;
+    private float[] block;
+    private float[] scores;
+    private List<float[]> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vectorKernels = kernels.equals("simd") ? new SimdKernels() : new ScalarKernels();
+
+        Random random = new Random(42);
+        a = randomVector(random);
+        b = randomVector(random);
+        codeA = randomCode(random);
+        codeB = randomCode(random);
+
+        block = new float[BLOCK_SIZE * dimensions];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            System.arraycopy(randomVector(random), 0, block, i * dimensions, dimensions);
+        }
+        scores = new float[BLOCK_SIZE];
+
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(randomVector(random));
+        }
+    }
+
+    @Benchmark
+    public float dot() {
+        return vectorKernels.dot(a, b);
+    }
+
+    @Benchmark
+    public float cosine() {
+        return vectorKernels.cosine(a, b);
+    }
+
+    @Benchmark
+    public float l2() {
+        return vectorKernels.l2Squared(a, b);
+    }
+
+    @Benchmark
+    public int hamming() {
+        return vectorKernels.hamming(codeA, codeB);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_SIZE)
+    public float[] cosineBlock() {
+        vectorKernels.cosineAll(a, block, BLOCK_SIZE, scores);
+        return scores;
+    }
+
+    // Random questions are never near-duplicates, so this is the worst case: every question
+    // becomes a representative and is compared with all earlier ones
+    @Benchmark
+    public int[] batchRepresentatives() {
+        return NearDuplicates.representatives(batch, 0.98f, vectorKernels);
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    // One bit per dimension, as produced by binary quantization
+    private long[] randomCode(Random random) {
+        long[] code = new long[(dimensions + 63) / 64];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = random.nextLong();
+        }
+        return code;
+    }
+}
@@ -0,0 +1,158 @@
+package com.swiftbeard.rag_demo.wire;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// ./gradlew jmh -Pjmh.includes=WireFormatBenchmark
+// Encodes a /ai/rag response with 20 sources (topK=20), or a page of 20 /ai/history entries,
+// as JSON, CBOR and protobuf, and as JSON compressed the way server.compression (gzip, default
+// level) and ZstdCompressionFilter (zstd level 3) would. Payload sizes are printed once per
+// trial; run with -prof gc to compare allocation per response as well.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+
+    @Param({"rag", "history"})
+    private String payload;
+
+    private ObjectMapper json;
+    private ObjectMapper cbor;
+    private JacksonProtobufHttpMessageConverter protobuf;
+    private Object value;
+    private Type type;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        json = mapper().build();
+        cbor = mapper().factory(new CBORFactory()).build();
+        protobuf = new JacksonProtobufHttpMessageConverter(mapper().factory(new ProtobufFactory()).build(),
+                Set.of(RagResponse.class, SourceCitation.class, QueryHistory.class));
+
+        Random random = new Random(42);
+        if (payload.equals("rag")) {
+            // Citations carry the first 200 characters of each chunk
+            List<SourceCitation> sources = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                sources.add(new SourceCitation(Integer.toString(1 + random.nextInt(50)),
+                        "starlightdb-guide-" + random.nextInt(10) + ".pdf", text(random, 200) + "...",
+                        random.nextDouble()));
+            }
+            value = new RagResponse(text(random, 1200), sources);
+            type = RagResponse.class;
+        } else {
+            List<QueryHistory> history = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                QueryHistory entry = new QueryHistory(text(random, 80), text(random, 1200), 4, 4,
+                        (long) random.nextInt(5000));
+                entry.setId((long) i + 1);
+                history.add(entry);
+            }
+            value = history;
+            type = ResolvableType.forClassWithGenerics(List.class, QueryHistory.class).getType();
+        }
+
+        System.out.printf("%n%s payload bytes: json=%d cbor=%d protobuf=%d json+gzip=%d json+zstd=%d%n", payload,
+                json().length, cbor().length, protobuf().length, jsonGzip().length, jsonZstd().length);
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException {
+        return json.writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws IOException {
+        return cbor.writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public byte[] protobuf() throws IOException {
+        BufferedMessage message = new BufferedMessage();
+        protobuf.write(value, type, JacksonProtobufHttpMessageConverter.APPLICATION_PROTOBUF, message);
+        return message.body.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] jsonGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            json.writeValue(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] jsonZstd() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ZstdOutputStream(bytes, 3)) {
+            json.writeValue(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Spring Boot's defaults for the settings that affect these models
+    private static Jackson2ObjectMapperBuilder mapper() {
+        return Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("StarlightDB word ").append(random.nextInt(10_000)).append(' ');
+        }
+        return text.substring(0, length);
+    }
+
+    private static final class BufferedMessage implements HttpOutputMessage {
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final HttpHeaders headers = new HttpHeaders();
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.swiftbeard.rag_demo.benchmark;
+
+import com.swiftbeard.rag_demo.repository.QueryHistoryRepository;
+import com.swiftbeard.rag_demo.vectorstore.EmbeddedIndexMirror;
+import com.swiftbeard.rag_demo.vectorstore.EmbeddedVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.QuantizationMode;
+import com.swiftbeard.rag_demo.vectorstore.QuantizedVectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+// Run with --rag.benchmark.embedded.enabled=true to build a throwaway embedded index from the
+// pgvector table and compare its recall@k and latency with pgvector's HNSW index.
+@Component
+@ConditionalOnProperty(name = "rag.benchmark.embedded.enabled", havingValue = "true")
+public class EmbeddedIndexBenchmark implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedIndexBenchmark.class);
+
+    private final PgVectorStore pgVectorStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final QueryHistoryRepository queryHistoryRepository;
+
+    @Value("${rag.benchmark.embedded.queries:200}")
+    private int queryCount;
+
+    @Value("${rag.benchmark.embedded.top-k:4}")
+    private int topK;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:768}")
+    private int dimensions;
+
+    public EmbeddedIndexBenchmark(PgVectorStore pgVectorStore,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  EmbeddingModel embeddingModel,
+                                  QueryHistoryRepository queryHistoryRepository) {
+        this.pgVectorStore = pgVectorStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.embeddingModel = embeddingModel;
+        this.queryHistoryRepository = queryHistoryRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        List<String> texts = SearchBenchmarks.sampleQueries(queryHistoryRepository, jdbcTemplate, tableName, queryCount);
+        if (texts.isEmpty()) {
+            log.warn("No queries or stored chunks to benchmark with");
+            return;
+        }
+        List<float[]> queries = embeddingModel.embed(texts);
+
+        QuantizedVectorStore pgvector = new QuantizedVectorStore(pgVectorStore, jdbcTemplate, transactionTemplate,
+                embeddingModel, QuantizationMode.NONE, tableName, dimensions, 1);
+        List<Set<String>> groundTruth = queries.stream()
+                .map(query -> SearchBenchmarks.ids(pgvector.searchExact(query, topK)))
+                .toList();
+
+        Path indexPath = Files.createTempDirectory("embedded-index-benchmark");
+        try (EmbeddedVectorStore embedded = new EmbeddedVectorStore(embeddingModel, indexPath)) {
+            long start = System.currentTimeMillis();
+            int chunks = new EmbeddedIndexMirror(embedded, jdbcTemplate, tableName, 1000, 0).resync();
+            log.info("Embedded index benchmark: {} queries, top-{}, {} chunks loaded in {} ms",
+                    queries.size(), topK, chunks, System.currentTimeMillis() - start);
+            log.info(String.format("%-9s %10s %10s %10s", "backend", "recall@" + topK, "p50 ms", "p95 ms"));
+
+            report("pgvector", SearchBenchmarks.measure(queries, groundTruth, query -> pgvector.search(query, topK, null)));
+            report("embedded", SearchBenchmarks.measure(queries, groundTruth, query -> embedded.search(query, topK, null)));
+        } finally {
+            FileSystemUtils.deleteRecursively(indexPath);
+        }
+    }
+
+    private static void report(String label, SearchBenchmarks.Measurement m) {
+        log.info(String.format("%-9s %10.3f %10.2f %10.2f", label, m.recall(), m.p50Ms(), m.p95Ms()));
+    }
+}
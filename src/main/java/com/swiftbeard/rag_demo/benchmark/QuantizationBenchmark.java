@@ -0,0 +1,109 @@
+package com.swiftbeard.rag_demo.benchmark;
+
+import com.swiftbeard.rag_demo.repository.QueryHistoryRepository;
+import com.swiftbeard.rag_demo.vectorstore.QuantizationMode;
+import com.swiftbeard.rag_demo.vectorstore.QuantizedVectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// Run with --rag.benchmark.quantization.enabled=true to compare index size, recall@k and
+// latency of the full-precision, halfvec and binary indexes on the current corpus.
+// Queries are taken from query history, falling back to stored chunk texts.
+@Component
+@ConditionalOnProperty(name = "rag.benchmark.quantization.enabled", havingValue = "true")
+public class QuantizationBenchmark implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(QuantizationBenchmark.class);
+
+    private final PgVectorStore pgVectorStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final QueryHistoryRepository queryHistoryRepository;
+
+    @Value("${rag.benchmark.quantization.queries:200}")
+    private int queryCount;
+
+    @Value("${rag.benchmark.quantization.top-k:4}")
+    private int topK;
+
+    @Value("${rag.vectorstore.quantization.over-fetch:4}")
+    private int overFetch;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:768}")
+    private int dimensions;
+
+    public QuantizationBenchmark(PgVectorStore pgVectorStore,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 EmbeddingModel embeddingModel,
+                                 QueryHistoryRepository queryHistoryRepository) {
+        this.pgVectorStore = pgVectorStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.embeddingModel = embeddingModel;
+        this.queryHistoryRepository = queryHistoryRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> texts = SearchBenchmarks.sampleQueries(queryHistoryRepository, jdbcTemplate, tableName, queryCount);
+        if (texts.isEmpty()) {
+            log.warn("No queries or stored chunks to benchmark with");
+            return;
+        }
+        List<float[]> queries = embeddingModel.embed(texts);
+
+        QuantizedVectorStore exact = store(QuantizationMode.NONE);
+        List<Set<String>> groundTruth = queries.stream()
+                .map(query -> SearchBenchmarks.ids(exact.searchExact(query, topK)))
+                .toList();
+
+        log.info("Quantization benchmark: {} queries, top-{}, over-fetch x{}", queries.size(), topK, overFetch);
+        log.info(String.format("%-8s %12s %10s %10s %10s", "mode", "index size", "recall@" + topK, "p50 ms", "p95 ms"));
+
+        String fullIndexSize = jdbcTemplate.queryForObject("""
+                SELECT COALESCE(pg_size_pretty(SUM(pg_relation_size(c.oid))), 'n/a')
+                FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid JOIN pg_am a ON a.oid = c.relam
+                WHERE i.indrelid = ?::regclass AND a.amname = 'hnsw' AND i.indexprs IS NULL""",
+                String.class, tableName);
+        report("float32", fullIndexSize, queries, groundTruth, query -> exact.search(query, topK, null));
+
+        for (QuantizationMode mode : List.of(QuantizationMode.HALFVEC, QuantizationMode.BINARY)) {
+            QuantizedVectorStore store = store(mode);
+            store.createIndex();
+            String indexSize = jdbcTemplate.queryForObject(
+                    "SELECT pg_size_pretty(pg_relation_size(?::regclass))", String.class, store.indexName());
+            report(mode.name().toLowerCase(), indexSize, queries, groundTruth, query -> store.search(query, topK, null));
+        }
+    }
+
+    private void report(String label, String indexSize, List<float[]> queries, List<Set<String>> groundTruth,
+                        Function<float[], List<Document>> search) {
+        SearchBenchmarks.Measurement m = SearchBenchmarks.measure(queries, groundTruth, search);
+        log.info(String.format("%-8s %12s %10.3f %10.2f %10.2f", label, indexSize, m.recall(), m.p50Ms(), m.p95Ms()));
+    }
+
+    private QuantizedVectorStore store(QuantizationMode mode) {
+        return new QuantizedVectorStore(pgVectorStore, jdbcTemplate, transactionTemplate, embeddingModel,
+                mode, tableName, dimensions, overFetch);
+    }
+}
@@ -0,0 +1,67 @@
+package com.swiftbeard.rag_demo.benchmark;
+
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.repository.QueryHistoryRepository;
+import org.springframework.ai.document.Document;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// Shared pieces of the vector search benchmarks
+final class SearchBenchmarks {
+
+    record Measurement(double recall, double p50Ms, double p95Ms) {
+    }
+
+    private SearchBenchmarks() {
+    }
+
+    // Queries from query history, topped up with random stored chunk texts
+    static List<String> sampleQueries(QueryHistoryRepository queryHistoryRepository, JdbcTemplate jdbcTemplate,
+                                      String tableName, int count) {
+        List<String> queries = new ArrayList<>(queryHistoryRepository
+                .findAllByOrderByTimestampDesc(PageRequest.of(0, count)).getContent().stream()
+                .map(QueryHistory::getQuery)
+                .toList());
+        if (queries.size() < count) {
+            queries.addAll(jdbcTemplate.queryForList(
+                    "SELECT left(content, 500) FROM " + tableName + " ORDER BY random() LIMIT ?",
+                    String.class, count - queries.size()));
+        }
+        return queries;
+    }
+
+    static Measurement measure(List<float[]> queries, List<Set<String>> groundTruth,
+                               Function<float[], List<Document>> search) {
+        // Warm the index pages and connections before timing
+        queries.stream().limit(10).forEach(search::apply);
+
+        long[] latencies = new long[queries.size()];
+        double recall = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            Set<String> found = ids(search.apply(queries.get(i)));
+            latencies[i] = System.nanoTime() - start;
+
+            Set<String> relevant = groundTruth.get(i);
+            found.retainAll(relevant);
+            recall += relevant.isEmpty() ? 1.0 : (double) found.size() / relevant.size();
+        }
+        Arrays.sort(latencies);
+
+        return new Measurement(recall / queries.size(),
+                latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.95)] / 1e6);
+    }
+
+    static Set<String> ids(List<Document> documents) {
+        Set<String> ids = new HashSet<>();
+        documents.forEach(doc -> ids.add(doc.getId()));
+        return ids;
+    }
+}
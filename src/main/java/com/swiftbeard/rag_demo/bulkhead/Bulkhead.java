@@ -0,0 +1,169 @@
+package com.swiftbeard.rag_demo.bulkhead;
+
+import com.swiftbeard.rag_demo.exception.BulkheadFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A fixed pool of threads with a bounded queue for one workload. Work is rejected when the
+// queue is full, and fails if it waited in the queue longer than queueTimeout, so a saturated
+// workload sheds load instead of building an unbounded backlog.
+public class Bulkhead implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(Bulkhead.class);
+
+    public interface Task<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final Workload workload;
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeoutNanos;
+    private final Counter rejected;
+    private final Counter droppedRejected;
+    private final Counter droppedFailed;
+    private final Timer queueWait;
+
+    public Bulkhead(Workload workload, int threads, int queueCapacity, Duration queueTimeout,
+                    MeterRegistry meterRegistry) {
+        this.workload = workload;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(() -> workload.runAs(runnable),
+                            "bulkhead-" + workload.key() + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        Tags tags = Tags.of("workload", workload.key());
+        Gauge.builder("rag.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .tags(tags).register(meterRegistry);
+        Gauge.builder("rag.bulkhead.queued", executor, e -> e.getQueue().size())
+                .tags(tags).register(meterRegistry);
+        Gauge.builder("rag.bulkhead.saturation", executor,
+                        e -> (double) (e.getActiveCount() + e.getQueue().size()) / (threads + queueCapacity))
+                .description("Share of threads and queue slots in use")
+                .tags(tags).register(meterRegistry);
+        this.rejected = Counter.builder("rag.bulkhead.rejected")
+                .description("Tasks rejected because the queue was full or the queue wait timed out")
+                .tags(tags).register(meterRegistry);
+        this.droppedRejected = Counter.builder("rag.bulkhead.dropped")
+                .description("Tasks offered without waiting that were rejected or failed")
+                .tags(tags).tag("reason", "rejected").register(meterRegistry);
+        this.droppedFailed = Counter.builder("rag.bulkhead.dropped")
+                .description("Tasks offered without waiting that were rejected or failed")
+                .tags(tags).tag("reason", "failed").register(meterRegistry);
+        this.queueWait = Timer.builder("rag.bulkhead.queue.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .tags(tags).register(meterRegistry);
+    }
+
+    public Workload workload() {
+        return workload;
+    }
+
+    // Runs the task on this bulkhead and waits for it, rethrowing whatever the task threw
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T call(Task<T, E> task) throws E {
+        long enqueuedAt = System.nanoTime();
+        FutureTask<T> future = new FutureTask<>(() -> {
+            long waited = System.nanoTime() - enqueuedAt;
+            queueWait.record(waited, TimeUnit.NANOSECONDS);
+            if (waited > queueTimeoutNanos) {
+                rejected.increment();
+                throw new BulkheadFullException("Timed out waiting for a " + workload.key() + " worker");
+            }
+            return task.run();
+        });
+
+        submit(future);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (E) cause;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException("Interrupted waiting for a " + workload.key() + " worker");
+        }
+    }
+
+    // Runs the task on this bulkhead without waiting for it, for work the caller's response does
+    // not depend on. Nothing is thrown: when the queue is full, or the task waited longer than
+    // queueTimeout, it is dropped, and if it fails the failure is logged. Returns false if the
+    // task was rejected right away.
+    public boolean offer(String description, Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            long waited = System.nanoTime() - enqueuedAt;
+            queueWait.record(waited, TimeUnit.NANOSECONDS);
+            if (waited > queueTimeoutNanos) {
+                rejected.increment();
+                droppedRejected.increment();
+                log.warn("Dropped {}: waited {} ms for a {} worker", description,
+                        TimeUnit.NANOSECONDS.toMillis(waited), workload.key());
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                droppedFailed.increment();
+                log.warn("{} failed: {}", description, e.getMessage());
+            }
+        }, null);
+
+        try {
+            submit(future);
+            return true;
+        } catch (BulkheadFullException e) {
+            droppedRejected.increment();
+            log.warn("Dropped {}: {}", description, e.getMessage());
+            return false;
+        }
+    }
+
+    public Future<?> execute(Runnable task) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        submit(future);
+        return future;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void submit(FutureTask<?> future) {
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new BulkheadFullException("Too many " + workload.key() + " requests in progress");
+        }
+    }
+}
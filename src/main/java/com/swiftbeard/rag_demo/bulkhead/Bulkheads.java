@@ -0,0 +1,53 @@
+package com.swiftbeard.rag_demo.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+// One Bulkhead per workload, configured under rag.bulkhead.<workload>.threads, .queue-capacity
+// and .queue-timeout
+@Component
+public class Bulkheads implements AutoCloseable {
+
+    private final Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+
+    public Bulkheads(Environment environment, MeterRegistry meterRegistry) {
+        for (Workload workload : Workload.values()) {
+            String prefix = "rag.bulkhead." + workload.key() + ".";
+            bulkheads.put(workload, new Bulkhead(workload,
+                    environment.getProperty(prefix + "threads", Integer.class, 8),
+                    environment.getProperty(prefix + "queue-capacity", Integer.class, 32),
+                    environment.getProperty(prefix + "queue-timeout", Duration.class, Duration.ofSeconds(5)),
+                    meterRegistry));
+        }
+    }
+
+    public Bulkhead get(Workload workload) {
+        return bulkheads.get(workload);
+    }
+
+    public <T, E extends Exception> T call(Workload workload, Bulkhead.Task<T, E> task) throws E {
+        return bulkheads.get(workload).call(task);
+    }
+
+    public void run(Workload workload, Runnable task) {
+        bulkheads.get(workload).call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // Fire and forget, see Bulkhead.offer
+    public boolean offer(Workload workload, String description, Runnable task) {
+        return bulkheads.get(workload).offer(description, task);
+    }
+
+    @Override
+    public void close() {
+        bulkheads.values().forEach(Bulkhead::close);
+    }
+}
@@ -0,0 +1,45 @@
+package com.swiftbeard.rag_demo.bulkhead;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+// Workload classes that get their own threads and primary connections. The current thread's
+// workload decides which connection pool a new connection comes from; threads that never
+// set one, such as servlet threads, count as INTERACTIVE.
+public enum Workload {
+    INTERACTIVE,
+    INGESTION,
+    HISTORY,
+    ADMIN;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Workload current() {
+        Workload workload = CURRENT.get();
+        return workload != null ? workload : INTERACTIVE;
+    }
+
+    public void runAs(Runnable task) {
+        Workload previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            task.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public <T> T callAs(Supplier<T> task) {
+        Workload previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+}
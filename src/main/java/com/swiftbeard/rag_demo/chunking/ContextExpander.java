@@ -0,0 +1,145 @@
+package com.swiftbeard.rag_demo.chunking;
+
+import com.swiftbeard.rag_demo.model.ParentChunk;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Turns the small chunks that matched a question into the context sent to the LLM.
+// rag.retrieval.expansion:
+//   none       the chunks themselves
+//   parent     each chunk's parent section, once per parent
+//   neighbors  each chunk widened by neighbor-chars on both sides, within its parent; windows
+//              that overlap in the same parent are merged
+// Output keeps the rank of each parent's best chunk. Chunks without a stored parent, such as
+// those ingested with the token splitter, are passed through unchanged.
+@Component
+public class ContextExpander {
+
+    public enum Mode {
+        NONE,
+        PARENT,
+        NEIGHBORS
+    }
+
+    private final ParentChunkStore parentChunkStore;
+    private final Mode mode;
+    private final int neighborChars;
+
+    public ContextExpander(ParentChunkStore parentChunkStore,
+                           @Value("${rag.retrieval.expansion:none}") String mode,
+                           @Value("${rag.retrieval.neighbor-chars:600}") int neighborChars) {
+        this.parentChunkStore = parentChunkStore;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.neighborChars = neighborChars;
+    }
+
+    public List<Document> expand(List<Document> chunks) {
+        if (mode == Mode.NONE || chunks.isEmpty()) {
+            return chunks;
+        }
+
+        Map<Long, Set<Integer>> wanted = new HashMap<>();
+        for (Document chunk : chunks) {
+            ParentKey key = parentKey(chunk);
+            if (key != null) {
+                wanted.computeIfAbsent(key.documentId(), id -> new LinkedHashSet<>()).add(key.offset());
+            }
+        }
+        if (wanted.isEmpty()) {
+            return chunks;
+        }
+        Map<ParentKey, ParentChunk> parents = new HashMap<>();
+        for (ParentChunk parent : parentChunkStore.find(wanted)) {
+            parents.put(new ParentKey(parent.getDocumentId(), parent.getStartOffset()), parent);
+        }
+
+        // Group chunks under their parent in rank order; chunks without one stay on their own
+        Map<Object, List<Document>> groups = new LinkedHashMap<>();
+        for (Document chunk : chunks) {
+            ParentKey key = parentKey(chunk);
+            Object group = key != null && parents.containsKey(key) ? key : chunk;
+            groups.computeIfAbsent(group, g -> new ArrayList<>()).add(chunk);
+        }
+
+        List<Document> context = new ArrayList<>(groups.size());
+        groups.forEach((group, members) -> {
+            if (group instanceof ParentKey key) {
+                ParentChunk parent = parents.get(key);
+                if (mode == Mode.PARENT) {
+                    context.add(section(members.get(0), parent, parent.getStartOffset(), parent.getEndOffset()));
+                } else {
+                    context.addAll(neighbors(members, parent));
+                }
+            } else {
+                context.addAll(members);
+            }
+        });
+        return context;
+    }
+
+    private List<Document> neighbors(List<Document> members, ParentChunk parent) {
+        List<int[]> windows = new ArrayList<>(members.size());
+        for (Document chunk : members) {
+            Integer start = SmallToBigSplitter.intValue(chunk.getMetadata().get(SmallToBigSplitter.START_OFFSET));
+            Integer end = SmallToBigSplitter.intValue(chunk.getMetadata().get(SmallToBigSplitter.END_OFFSET));
+            if (start == null || end == null) {
+                start = parent.getStartOffset();
+                end = parent.getEndOffset();
+            }
+            windows.add(new int[]{
+                    Math.max(parent.getStartOffset(), start - neighborChars),
+                    Math.min(parent.getEndOffset(), end + neighborChars)});
+        }
+        windows.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        List<Document> sections = new ArrayList<>();
+        int[] current = windows.get(0);
+        for (int i = 1; i < windows.size(); i++) {
+            int[] next = windows.get(i);
+            if (next[0] <= current[1]) {
+                current[1] = Math.max(current[1], next[1]);
+            } else {
+                sections.add(section(members.get(0), parent, current[0], current[1]));
+                current = next;
+            }
+        }
+        sections.add(section(members.get(0), parent, current[0], current[1]));
+        return sections;
+    }
+
+    // The text of parent between the given document offsets, carrying the best chunk's
+    // metadata so citations and the relevance score still refer to what was matched
+    private static Document section(Document best, ParentChunk parent, int start, int end) {
+        String text = parent.getContent().substring(start - parent.getStartOffset(), end - parent.getStartOffset());
+        Map<String, Object> metadata = new HashMap<>(best.getMetadata());
+        metadata.put(SmallToBigSplitter.START_OFFSET, start);
+        metadata.put(SmallToBigSplitter.END_OFFSET, end);
+        return new Document(text.strip(), metadata);
+    }
+
+    static ParentKey parentKey(Document chunk) {
+        Object documentId = chunk.getMetadata().get("document_id");
+        Integer offset = SmallToBigSplitter.intValue(chunk.getMetadata().get(SmallToBigSplitter.PARENT_OFFSET));
+        if (documentId == null || offset == null) {
+            return null;
+        }
+        try {
+            return new ParentKey(Long.valueOf(documentId.toString()), offset);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    record ParentKey(Long documentId, int offset) {
+    }
+}
@@ -0,0 +1,70 @@
+package com.swiftbeard.rag_demo.chunking;
+
+// Approximate counts of how often keys were seen, in a fixed amount of memory: a count-min
+// sketch of four rows of counters that saturate at 15. Every sampleSize increments all counters
+// are halved, so old popularity fades and the estimate follows what is hot now (TinyLFU's
+// aging). Estimates can be too high when keys collide in every row, never too low, aging aside.
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final byte[] counters;
+    private final int width;
+    private final int sampleSize;
+    private int increments;
+
+    // Sized for tracking the popularity of about expectedEntries keys at a time
+    public FrequencySketch(int expectedEntries) {
+        int target = Math.max(64, expectedEntries * 4);
+        this.width = Integer.highestOneBit(target - 1) << 1;
+        this.counters = new byte[DEPTH * width];
+        this.sampleSize = 10 * Math.max(16, expectedEntries);
+    }
+
+    public synchronized void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (counters[index] < MAX_COUNT) {
+                counters[index]++;
+                added = true;
+            }
+        }
+        if (added && ++increments >= sampleSize) {
+            age();
+        }
+    }
+
+    public synchronized int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters[index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void age() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (byte) (counters[i] >>> 1);
+        }
+        increments /= 2;
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return row * width + ((int) h & (width - 1));
+    }
+
+    // String hash codes of similar ids differ only in their low bits; mix them over the word
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
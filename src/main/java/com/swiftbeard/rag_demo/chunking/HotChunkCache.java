@@ -0,0 +1,178 @@
+package com.swiftbeard.rag_demo.chunking;
+
+import com.swiftbeard.rag_demo.model.ParentChunk;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// The most frequently retrieved chunks and their parent sections, kept on the heap so that
+// expanding a hot chunk into its parent skips the parent_chunk lookup. Every search result is
+// counted in a FrequencySketch. A chunk that is not cached yet only replaces the coldest of a
+// few sampled entries if it has been retrieved more often (TinyLFU admission), so a burst of
+// one-off questions cannot push out the chunks asked about all day. Of a chunk only its id and
+// the keys needed for eviction are kept; a parent is held only while a cached chunk refers to it.
+// rag.hot-chunks.capacity is the number of chunks; 0 disables it.
+@Component
+public class HotChunkCache {
+
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final int capacity;
+    private final FrequencySketch sketch;
+    private final Counter parentHits;
+    private final Counter parentMisses;
+
+    // Guarded by this; ids holds the keys of chunks in any order, for sampling eviction victims
+    private final Map<String, Entry> chunks = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private final Map<ContextExpander.ParentKey, Integer> parentReferences = new HashMap<>();
+
+    // Written under the lock, read without it
+    private final Map<ContextExpander.ParentKey, ParentChunk> parents = new ConcurrentHashMap<>();
+
+    public HotChunkCache(@Value("${rag.hot-chunks.capacity:1000}") int capacity, MeterRegistry meterRegistry) {
+        this.capacity = Math.max(0, capacity);
+        this.sketch = new FrequencySketch(Math.max(1, capacity));
+        this.parentHits = Counter.builder("rag.hot-chunks.parents").tag("result", "hit").register(meterRegistry);
+        this.parentMisses = Counter.builder("rag.hot-chunks.parents").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("rag.hot-chunks.size", this, HotChunkCache::size).register(meterRegistry);
+    }
+
+    // Counts the chunks a search returned and caches those that are now among the hottest
+    public void record(List<Document> retrieved) {
+        if (capacity == 0) {
+            return;
+        }
+        for (Document chunk : retrieved) {
+            sketch.increment(chunk.getId());
+            admit(chunk);
+        }
+    }
+
+    public synchronized boolean contains(String id) {
+        return chunks.containsKey(id);
+    }
+
+    // How many times the chunk was retrieved recently, as estimated by the sketch
+    public int frequency(String id) {
+        return sketch.frequency(id);
+    }
+
+    public synchronized int size() {
+        return chunks.size();
+    }
+
+    // For chunks that were changed or deleted in the vector store
+    public synchronized void evict(Collection<String> chunkIds) {
+        chunkIds.forEach(this::remove);
+    }
+
+    public synchronized void clear() {
+        chunks.clear();
+        ids.clear();
+        parentReferences.clear();
+        parents.clear();
+    }
+
+    ParentChunk parent(Long documentId, int offset) {
+        if (capacity == 0) {
+            return null;
+        }
+        ParentChunk parent = parents.get(new ContextExpander.ParentKey(documentId, offset));
+        (parent != null ? parentHits : parentMisses).increment();
+        return parent;
+    }
+
+    // Keeps a parent loaded from parent_chunk if a cached chunk refers to it
+    synchronized void offerParent(ParentChunk parent) {
+        ContextExpander.ParentKey key = new ContextExpander.ParentKey(parent.getDocumentId(), parent.getStartOffset());
+        if (parentReferences.containsKey(key)) {
+            parents.put(key, parent);
+        }
+    }
+
+    // For documents whose chunks were deleted or replaced
+    public synchronized void evictDocuments(Collection<Long> documentIds) {
+        Set<String> deleted = new HashSet<>();
+        documentIds.forEach(documentId -> deleted.add(documentId.toString()));
+        List<String> stale = chunks.entrySet().stream()
+                .filter(entry -> deleted.contains(entry.getValue().documentId()))
+                .map(Map.Entry::getKey)
+                .toList();
+        stale.forEach(this::remove);
+    }
+
+    private synchronized void admit(Document chunk) {
+        String id = chunk.getId();
+        if (chunks.containsKey(id)) {
+            return;
+        }
+        if (chunks.size() >= capacity) {
+            String victim = coldest();
+            if (sketch.frequency(id) <= sketch.frequency(victim)) {
+                return;
+            }
+            remove(victim);
+        }
+
+        Object documentId = chunk.getMetadata().get("document_id");
+        ContextExpander.ParentKey parent = ContextExpander.parentKey(chunk);
+        chunks.put(id, new Entry(documentId != null ? documentId.toString() : null, parent, ids.size()));
+        ids.add(id);
+        if (parent != null) {
+            parentReferences.merge(parent, 1, Integer::sum);
+        }
+    }
+
+    // The least frequent of a few cached chunks picked at random; close enough to the least
+    // frequent overall without scanning the whole cache on every admission
+    private String coldest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String coldest = null;
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 0; i < EVICTION_SAMPLE; i++) {
+            String candidate = ids.get(random.nextInt(ids.size()));
+            int frequency = sketch.frequency(candidate);
+            if (frequency < lowest) {
+                coldest = candidate;
+                lowest = frequency;
+            }
+        }
+        return coldest;
+    }
+
+    private void remove(String id) {
+        Entry entry = chunks.remove(id);
+        if (entry == null) {
+            return;
+        }
+        // Move the last id into the freed slot
+        String last = ids.remove(ids.size() - 1);
+        if (!last.equals(id)) {
+            ids.set(entry.slot(), last);
+            Entry moved = chunks.get(last);
+            chunks.put(last, new Entry(moved.documentId(), moved.parent(), entry.slot()));
+        }
+        if (entry.parent() != null && parentReferences.merge(entry.parent(), -1, Integer::sum) == 0) {
+            parentReferences.remove(entry.parent());
+            parents.remove(entry.parent());
+        }
+    }
+
+    // Only what eviction needs; the chunk itself is not served from here
+    private record Entry(String documentId, ContextExpander.ParentKey parent, int slot) {
+    }
+}
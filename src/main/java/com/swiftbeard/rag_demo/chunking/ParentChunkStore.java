@@ -0,0 +1,69 @@
+package com.swiftbeard.rag_demo.chunking;
+
+import com.swiftbeard.rag_demo.model.ParentChunk;
+import com.swiftbeard.rag_demo.repository.ParentChunkRepository;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The parent sections of small-to-big chunks, in the parent_chunk table next to the document
+// metadata rather than in the vector store: they are only ever looked up by document id and
+// offset, never searched. Parents of hot chunks are served from the HotChunkCache.
+@Component
+public class ParentChunkStore {
+
+    private final ParentChunkRepository repository;
+    private final HotChunkCache hotChunks;
+
+    public ParentChunkStore(ParentChunkRepository repository, HotChunkCache hotChunks) {
+        this.repository = repository;
+        this.hotChunks = hotChunks;
+    }
+
+    // Saves the parents of children tagged with documentId; chunks from the token splitter
+    // have no parents and are skipped
+    public void store(Long documentId, List<Document> children) {
+        List<ParentChunk> parents = SmallToBigSplitter.parents(children).stream()
+                .map(section -> new ParentChunk(documentId, section.start(), section.end(),
+                        section.pageNumber(), section.text()))
+                .toList();
+        if (!parents.isEmpty()) {
+            repository.saveAll(parents);
+        }
+    }
+
+    // Parents by document id, then start offset
+    public List<ParentChunk> find(Map<Long, Set<Integer>> offsetsByDocument) {
+        List<ParentChunk> found = new ArrayList<>();
+        offsetsByDocument.forEach((documentId, offsets) -> {
+            Set<Integer> missing = new HashSet<>();
+            for (Integer offset : offsets) {
+                ParentChunk cached = hotChunks.parent(documentId, offset);
+                if (cached != null) {
+                    found.add(cached);
+                } else {
+                    missing.add(offset);
+                }
+            }
+            if (!missing.isEmpty()) {
+                List<ParentChunk> loaded = repository.findByDocumentIdAndStartOffsetIn(documentId, missing);
+                loaded.forEach(hotChunks::offerParent);
+                found.addAll(loaded);
+            }
+        });
+        return found;
+    }
+
+    public void delete(Collection<Long> documentIds) {
+        if (!documentIds.isEmpty()) {
+            repository.deleteByDocumentIdIn(documentIds);
+            hotChunks.evictDocuments(documentIds);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.swiftbeard.rag_demo.chunking;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Splits parsed documents into parent sections of up to parentChars characters, and each
+// parent into child chunks of up to childChars. Only the children are embedded. Children are
+// exact, non-overlapping slices of their parent, so the parents can be rebuilt from the
+// children alone once the document has an id. Cuts prefer paragraph breaks, then sentence
+// ends, then whitespace.
+public class SmallToBigSplitter {
+
+    public static final String START_OFFSET = "start_offset";
+    public static final String END_OFFSET = "end_offset";
+    public static final String PARENT_OFFSET = "parent_offset";
+    public static final String PARENT_END_OFFSET = "parent_end_offset";
+    public static final String PAGE_NUMBER = "page_number";
+
+    private final int parentChars;
+    private final int childChars;
+
+    public SmallToBigSplitter(int parentChars, int childChars) {
+        if (childChars <= 0 || parentChars < childChars) {
+            throw new IllegalArgumentException("Need 0 < child size <= parent size, got " + childChars
+                    + " and " + parentChars);
+        }
+        this.parentChars = parentChars;
+        this.childChars = childChars;
+    }
+
+    // Documents are the pages (PDF) or the whole text (other formats) of one file, in order
+    public List<Document> split(List<Document> documents) {
+        List<Document> children = new ArrayList<>();
+        int base = 0;
+        for (Document document : documents) {
+            String text = document.getText();
+            if (text == null) {
+                continue;
+            }
+            for (int[] parent : cut(text, 0, text.length(), parentChars)) {
+                for (int[] child : cut(text, parent[0], parent[1], childChars)) {
+                    String childText = text.substring(child[0], child[1]);
+                    if (childText.isBlank()) {
+                        continue;
+                    }
+                    Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                    metadata.put(START_OFFSET, base + child[0]);
+                    metadata.put(END_OFFSET, base + child[1]);
+                    metadata.put(PARENT_OFFSET, base + parent[0]);
+                    metadata.put(PARENT_END_OFFSET, base + parent[1]);
+                    children.add(new Document(childText, metadata));
+                }
+            }
+            base += text.length() + 1;
+        }
+        return children;
+    }
+
+    // The parent sections of split children, keyed by start offset. Blank stretches that were
+    // not kept as children come back as spaces, so offsets within a parent stay exact.
+    public static List<Section> parents(List<Document> children) {
+        Map<Integer, StringBuilder> texts = new LinkedHashMap<>();
+        Map<Integer, Section> sections = new LinkedHashMap<>();
+        for (Document child : children) {
+            Integer parentStart = intValue(child.getMetadata().get(PARENT_OFFSET));
+            Integer parentEnd = intValue(child.getMetadata().get(PARENT_END_OFFSET));
+            Integer start = intValue(child.getMetadata().get(START_OFFSET));
+            if (parentStart == null || parentEnd == null || start == null) {
+                continue;
+            }
+            StringBuilder text = texts.computeIfAbsent(parentStart,
+                    offset -> new StringBuilder(" ".repeat(parentEnd - parentStart)));
+            String childText = child.getText();
+            text.replace(start - parentStart, start - parentStart + childText.length(), childText);
+            sections.putIfAbsent(parentStart, new Section(parentStart, parentEnd,
+                    intValue(child.getMetadata().get(PAGE_NUMBER)), null));
+        }
+        List<Section> parents = new ArrayList<>(sections.size());
+        sections.forEach((offset, section) -> parents.add(
+                new Section(section.start(), section.end(), section.pageNumber(), texts.get(offset).toString())));
+        return parents;
+    }
+
+    public static Integer intValue(Object value) {
+        return value instanceof Number number ? number.intValue() : null;
+    }
+
+    // Consecutive [start, end) ranges covering text[from, to), each at most max long
+    static List<int[]> cut(String text, int from, int to, int max) {
+        List<int[]> ranges = new ArrayList<>();
+        int start = from;
+        while (start < to) {
+            int end = to - start <= max ? to : boundary(text, start, start + max);
+            ranges.add(new int[]{start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    // The best place to cut text[start, limit): after the last paragraph break, sentence end or
+    // whitespace in its second half, or at limit if there is none
+    private static int boundary(String text, int start, int limit) {
+        int earliest = start + (limit - start) / 2;
+        int paragraph = text.lastIndexOf("\n\n", limit - 2);
+        if (paragraph >= earliest) {
+            return paragraph + 2;
+        }
+        for (int i = limit - 1; i > earliest; i--) {
+            char c = text.charAt(i - 1);
+            if ((c == '.' || c == '?' || c == '!') && Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        for (int i = limit - 1; i > earliest; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    public record Section(int start, int end, Integer pageNumber, String text) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.swiftbeard.rag_demo.cofig;
+
+import com.swiftbeard.rag_demo.hedging.HedgePolicy;
+import com.swiftbeard.rag_demo.hedging.Hedger;
+import com.swiftbeard.rag_demo.hedging.HedgingChatModel;
+import com.swiftbeard.rag_demo.quota.UsageRecordingChatModel;
+import com.swiftbeard.rag_demo.routing.ChatEndpoint;
+import com.swiftbeard.rag_demo.routing.RoutingChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class ChatConfig {
+
+    // One entry of rag.chat.endpoints; apiKey and model default to spring.ai.openai.chat.*
+    public record EndpointProperties(String name, String baseUrl, String apiKey, String model) {
+    }
+
+    @Bean
+    public Hedger chatHedger(Environment environment, MeterRegistry meterRegistry) {
+        return new Hedger("chat", HedgePolicy.from(environment, "rag.calls.chat",
+                Duration.ofSeconds(60), Duration.ofMillis(500), Duration.ofSeconds(10)), meterRegistry);
+    }
+
+    // The ChatModel RagService generates answers with. Without rag.chat.endpoints it wraps the
+    // auto-configured OpenRouter model; with them, calls are routed across those endpoints.
+    // The outermost layer reports token usage for client quotas.
+    @Bean
+    @Primary
+    public ChatModel ragChatModel(OpenAiChatModel openAiChatModel,
+                                  @Qualifier("chatHedger") Hedger chatHedger,
+                                  Environment environment,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${spring.ai.openai.chat.api-key:${spring.ai.openai.api-key:}}") String defaultApiKey,
+                                  @Value("${spring.ai.openai.chat.options.model:}") String defaultModel,
+                                  @Value("${rag.chat.routing.failure-threshold:5}") int failureThreshold,
+                                  @Value("${rag.chat.routing.open-duration:30s}") Duration openDuration,
+                                  @Value("${rag.calls.chat.hedge.alternate-model:}") String alternateModel) {
+        List<EndpointProperties> configured = Binder.get(environment)
+                .bind("rag.chat.endpoints", Bindable.listOf(EndpointProperties.class))
+                .orElse(List.of());
+        if (configured.isEmpty()) {
+            return new UsageRecordingChatModel(new HedgingChatModel(openAiChatModel, chatHedger, alternateModel));
+        }
+
+        List<ChatEndpoint> endpoints = configured.stream()
+                .map(endpoint -> {
+                    String apiKey = endpoint.apiKey() != null ? endpoint.apiKey() : defaultApiKey;
+                    String model = endpoint.model() != null ? endpoint.model() : defaultModel;
+                    ChatModel chatModel = openAiChatModel.mutate()
+                            .openAiApi(OpenAiApi.builder().baseUrl(endpoint.baseUrl()).apiKey(apiKey).build())
+                            .defaultOptions(OpenAiChatOptions.builder().model(model).build())
+                            .build();
+                    return new ChatEndpoint(endpoint.name(), chatModel, failureThreshold, openDuration, meterRegistry);
+                })
+                .toList();
+        return new UsageRecordingChatModel(
+                new HedgingChatModel(new RoutingChatModel(endpoints), chatHedger, alternateModel));
+    }
+
+    @Bean
+    public ChatClient chatClient(ChatModel chatModel) {
+        return ChatClient.create(chatModel);
+    }
+}
@@ -0,0 +1,106 @@
+package com.swiftbeard.rag_demo.cofig;
+
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.datasource.ReplicaRoutingDataSource;
+import com.swiftbeard.rag_demo.datasource.WorkloadRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Active only when a replica or per-workload pools are configured; otherwise Spring Boot's
+// single auto-configured pool is used. Each route gets its own Hikari pool, so hikaricp.*
+// metrics are reported per pool: primary, primary-<workload> and replica.
+@Configuration
+@ConditionalOnExpression("'${rag.datasource.replica.url:}' != '' or ${rag.bulkhead.connection-pools.enabled:false}")
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    // Interactive work keeps the primary pool; every other workload gets a small pool of its own
+    @Bean
+    @ConditionalOnProperty(name = "rag.bulkhead.connection-pools.enabled", havingValue = "true")
+    public WorkloadRoutingDataSource workloadRoutingDataSource(@Qualifier("primaryDataSource") HikariDataSource primary,
+                                                               DataSourceProperties properties,
+                                                               Environment environment,
+                                                               MeterRegistry meterRegistry) {
+        Map<Workload, DataSource> pools = new EnumMap<>(Workload.class);
+        pools.put(Workload.INTERACTIVE, primary);
+        for (Workload workload : Workload.values()) {
+            if (workload == Workload.INTERACTIVE) {
+                continue;
+            }
+            String prefix = "rag.bulkhead." + workload.key() + ".";
+            HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            pool.setPoolName("primary-" + workload.key());
+            pool.setMaximumPoolSize(environment.getProperty(prefix + "connections", Integer.class, 4));
+            pool.setConnectionTimeout(environment.getProperty(prefix + "connection-timeout", Duration.class,
+                    Duration.ofSeconds(10)).toMillis());
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            pools.put(workload, pool);
+        }
+        return new WorkloadRoutingDataSource(pools, primary);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.datasource.replica.url")
+    @ConfigurationProperties("rag.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(@Value("${rag.datasource.replica.url}") String url,
+                                              @Value("${rag.datasource.replica.username:${spring.datasource.username:}}") String username,
+                                              @Value("${rag.datasource.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.datasource.replica.url")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                                             ObjectProvider<WorkloadRoutingDataSource> workloadRouting,
+                                                             @Qualifier("replicaDataSource") DataSource replica,
+                                                             MeterRegistry meterRegistry,
+                                                             @Value("${rag.datasource.replica.max-lag:2s}") Duration maxLag,
+                                                             @Value("${rag.datasource.replica.health-check-interval:5s}") Duration interval) {
+        DataSource writes = workloadRouting.getIfAvailable(() -> primary);
+        return new ReplicaRoutingDataSource(writes, replica, maxLag, interval, meterRegistry);
+    }
+
+    // The DataSource JPA, JdbcTemplate and the vector store use
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 ObjectProvider<WorkloadRoutingDataSource> workloadRouting,
+                                 ObjectProvider<ReplicaRoutingDataSource> replicaRouting) {
+        DataSource target = replicaRouting.getIfAvailable(() -> workloadRouting.getIfAvailable(() -> primary));
+        return new LazyConnectionDataSourceProxy(target);
+    }
+}
@@ -1,31 +1,200 @@
 package com.swiftbeard.rag_demo.cofig;
 
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.model.SeedDocument;
+import com.swiftbeard.rag_demo.repository.SeedDocumentRepository;
+import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.boot.CommandLineRunner;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
-public class DocumentLoader implements CommandLineRunner {
+public class DocumentLoader implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentLoader.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private final VectorStore vectorStore;
+    private final SeedDocumentRepository seedDocumentRepository;
+    private final DocumentUploadService documentUploadService;
+
+    @Value("${rag.seed.enabled:true}")
+    private boolean enabled;
+
+    // Either a JSONL file ({"id": ..., "text": ..., "metadata": {...}} per line) or a directory of documents
+    @Value("${rag.seed.location:classpath:seed/starlightdb.jsonl}")
+    private Resource location;
 
-    public DocumentLoader(final VectorStore vectorStore) {
+    @Value("${rag.seed.batch-size:50}")
+    private int batchSize;
+
+    public DocumentLoader(final VectorStore vectorStore,
+                          final SeedDocumentRepository seedDocumentRepository,
+                          final DocumentUploadService documentUploadService) {
         this.vectorStore = vectorStore;
+        this.seedDocumentRepository = seedDocumentRepository;
+        this.documentUploadService = documentUploadService;
     }
+
     @Override
-    public void run(String... args) throws Exception {
-        List<Document> documents = List.of(
-                new Document("StarlightDB is a serverless graph database designed for real-time analytics on complex, interconnected data."),
-                new Document("The core of StarlightDB is its 'Quantum-Leap' query engine, which uses speculative execution to deliver query results up to 100x faster than traditional graph databases."),
-                new Document("StarlightDB features 'Chrono-Sync' for effortless time-travel queries, allowing developers to query the state of their graph at any point in the past."),
-                new Document("StarlightDB includes a built-in visualization tool called 'Nebula' that renders interactive 3D graphs directly within the development environment for easier analysis."),
-                new Document("Security in StarlightDB is handled by 'Cosmic Shield', which provides end-to-end encryption and fine-grained access control at the node and edge level.")
-        );
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // Embedding the corpus can take a while, so never hold up startup waiting for it
+        Thread.ofVirtual().name("corpus-loader").start(() -> Workload.INGESTION.runAs(() -> {
+            try {
+                int loaded = run();
+                log.info("Corpus bootstrap finished, {} new or changed seed documents loaded", loaded);
+            } catch (Exception e) {
+                log.warn("Corpus bootstrap stopped, it will resume from its checkpoint next start: {}", e.getMessage());
+            }
+        }));
+    }
+
+    public int run() throws IOException {
+        int loaded = 0;
+        try (Stream<SeedEntry> entries = readSeedEntries()) {
+            List<SeedEntry> batch = new ArrayList<>(batchSize);
+            for (SeedEntry entry : (Iterable<SeedEntry>) entries::iterator) {
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    loaded += loadBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                loaded += loadBatch(batch);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return loaded;
+    }
+
+    private int loadBatch(List<SeedEntry> batch) {
+        Map<String, SeedDocument> checkpoints = seedDocumentRepository
+                .findAllById(batch.stream().map(SeedEntry::key).toList()).stream()
+                .collect(Collectors.toMap(SeedDocument::getId, Function.identity()));
+
+        List<Document> documents = new ArrayList<>();
+        List<SeedDocument> loaded = new ArrayList<>();
+        for (SeedEntry entry : batch) {
+            SeedDocument checkpoint = checkpoints.get(entry.key());
+            if (checkpoint != null && checkpoint.getContentHash().equals(entry.contentHash())) {
+                continue;
+            }
+            if (checkpoint != null) {
+                // Content changed since it was loaded, so replace the old chunks
+                vectorStore.delete(new FilterExpressionBuilder().eq("seed_id", entry.key()).build());
+            }
+
+            List<Document> chunks = entry.chunks().get();
+            for (int i = 0; i < chunks.size(); i++) {
+                Map<String, Object> metadata = new HashMap<>(chunks.get(i).getMetadata());
+                metadata.put("seed_id", entry.key());
+                documents.add(new Document(stableId(entry.key(), i), chunks.get(i).getText(), metadata));
+            }
+            loaded.add(new SeedDocument(entry.key(), entry.contentHash(), chunks.size()));
+        }
+
+        if (loaded.isEmpty()) {
+            return 0;
+        }
+
         vectorStore.add(documents);
-        System.out.println("Documents loaded into VectorStore.");
+        // Checkpoint only once the batch is stored; stable ids make a replay after a crash an upsert, not a duplicate
+        seedDocumentRepository.saveAll(loaded);
+        return loaded.size();
+    }
+
+    private Stream<SeedEntry> readSeedEntries() throws IOException {
+        if (location.isFile() && location.getFile().isDirectory()) {
+            Path root = location.getFile().toPath();
+            return Files.walk(root)
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .map(file -> fileEntry(root, file));
+        }
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(location.getInputStream(), StandardCharsets.UTF_8));
+        return reader.lines()
+                .filter(line -> !line.isBlank())
+                .map(DocumentLoader::jsonlEntry)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private SeedEntry fileEntry(Path root, Path file) {
+        try {
+            byte[] content = Files.readAllBytes(file);
+            String filename = file.getFileName().toString();
+            return new SeedEntry(
+                    root.relativize(file).toString(),
+                    DocumentUploadService.contentHash(content),
+                    () -> documentUploadService.parseAndSplit(
+                            content, filename, DocumentUploadService.guessContentType(filename)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SeedEntry jsonlEntry(String line) {
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            String text = node.path("text").asText();
+            String contentHash = DocumentUploadService.contentHash(line.getBytes(StandardCharsets.UTF_8));
+            String key = node.hasNonNull("id") ? node.get("id").asText() : contentHash;
+
+            Map<String, Object> metadata = node.has("metadata")
+                    ? objectMapper.convertValue(node.get("metadata"), new TypeReference<Map<String, Object>>() { })
+                    : new HashMap<>();
+            return new SeedEntry(key, contentHash, () -> List.of(new Document(text, metadata)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // PgVectorStore keys rows by UUID, so derive one deterministically from the seed key
+    private static String stableId(String key, int chunkIndex) {
+        return UUID.nameUUIDFromBytes((key + "#" + chunkIndex).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private record SeedEntry(String key, String contentHash, Supplier<List<Document>> chunks) {
     }
 }
@@ -0,0 +1,65 @@
+package com.swiftbeard.rag_demo.cofig;
+
+import com.swiftbeard.rag_demo.embedding.BatchingEmbeddingModel;
+import com.swiftbeard.rag_demo.embedding.PrimedEmbeddingModel;
+import com.swiftbeard.rag_demo.embedding.QueryEmbeddingCache;
+import com.swiftbeard.rag_demo.hedging.HedgePolicy;
+import com.swiftbeard.rag_demo.hedging.Hedger;
+import com.swiftbeard.rag_demo.hedging.HedgingEmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+@Configuration
+public class EmbeddingConfig {
+
+    @Bean
+    public Hedger embeddingHedger(Environment environment, MeterRegistry meterRegistry) {
+        return new Hedger("embedding", HedgePolicy.from(environment, "rag.calls.embedding",
+                Duration.ofSeconds(10), Duration.ofMillis(20), Duration.ofSeconds(1)), meterRegistry);
+    }
+
+    // The EmbeddingModel the vector stores use; wraps the auto-configured OpenAI-compatible
+    // model that talks to the local embedding server
+    @Bean
+    @Primary
+    public EmbeddingModel ragEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                            @Qualifier("embeddingHedger") Hedger embeddingHedger,
+                                            QueryEmbeddingCache queryEmbeddingCache,
+                                            MeterRegistry meterRegistry,
+                                            @Value("${rag.calls.embedding.max-inputs:32}") int maxHedgedInputs,
+                                            @Value("${rag.calls.embedding.hedge.alternate-base-url:}") String alternateBaseUrl,
+                                            @Value("${spring.ai.openai.api-key:not-needed}") String apiKey,
+                                            @Value("${spring.ai.openai.embedding.options.model:}") String model,
+                                            @Value("${spring.ai.openai.embedding.options.dimensions:768}") int dimensions,
+                                            @Value("${rag.embedding.batching.enabled:true}") boolean batching,
+                                            @Value("${rag.embedding.batching.max-batch-size:32}") int maxBatchSize,
+                                            @Value("${rag.embedding.batching.max-wait:5ms}") Duration maxWait) {
+        // Hedges go to a second embedding server when one is configured
+        EmbeddingModel alternate = openAiEmbeddingModel;
+        if (!alternateBaseUrl.isBlank()) {
+            alternate = new OpenAiEmbeddingModel(
+                    OpenAiApi.builder().baseUrl(alternateBaseUrl).apiKey(apiKey).build(),
+                    MetadataMode.EMBED,
+                    OpenAiEmbeddingOptions.builder().model(model).dimensions(dimensions).build());
+        }
+        EmbeddingModel hedged = new HedgingEmbeddingModel(openAiEmbeddingModel, alternate, embeddingHedger,
+                maxHedgedInputs);
+
+        EmbeddingModel queryModel = batching
+                ? new BatchingEmbeddingModel(hedged, maxBatchSize, maxWait, meterRegistry)
+                : hedged;
+        return new PrimedEmbeddingModel(queryModel, queryEmbeddingCache);
+    }
+}
@@ -0,0 +1,163 @@
+package com.swiftbeard.rag_demo.cofig;
+
+import com.swiftbeard.rag_demo.chunking.HotChunkCache;
+import com.swiftbeard.rag_demo.datasource.ReplicaRoutingDataSource;
+import com.swiftbeard.rag_demo.repository.ReembeddingCheckpointRepository;
+import com.swiftbeard.rag_demo.vectorstore.BlueGreenVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.EmbeddedIndexMirror;
+import com.swiftbeard.rag_demo.vectorstore.EmbeddedVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.HotChunkRecordingVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.MirroredVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.QuantizationMode;
+import com.swiftbeard.rag_demo.vectorstore.QuantizedVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.ReembeddingJob;
+import com.swiftbeard.rag_demo.vectorstore.ReplicaReadVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Configuration
+public class VectorStoreConfig {
+
+    // The VectorStore the rest of the application uses; the auto-configured PgVectorStore
+    // stays the storage backend underneath it
+    @Bean
+    @Primary
+    public VectorStore ragVectorStore(PgVectorStore pgVectorStore,
+                                      JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager,
+                                      EmbeddingModel embeddingModel,
+                                      ObjectProvider<EmbeddedVectorStore> embeddedVectorStore,
+                                      ObjectProvider<EmbeddedIndexMirror> embeddedIndexMirror,
+                                      ObjectProvider<ReplicaRoutingDataSource> replicaRouting,
+                                      ObjectProvider<ReembeddingJob> reembeddingJob,
+                                      HotChunkCache hotChunkCache,
+                                      @Value("${rag.vectorstore.quantization.mode:none}") QuantizationMode mode,
+                                      @Value("${rag.vectorstore.quantization.over-fetch:4}") int overFetch,
+                                      @Value("${rag.vectorstore.quantization.create-index:true}") boolean createIndex,
+                                      @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                      @Value("${spring.ai.vectorstore.pgvector.dimensions:768}") int dimensions) {
+        VectorStore store = pgVectorStore;
+        if (mode != QuantizationMode.NONE) {
+            QuantizedVectorStore quantized = new QuantizedVectorStore(pgVectorStore, jdbcTemplate,
+                    new TransactionTemplate(transactionManager), embeddingModel, mode, tableName, dimensions, overFetch);
+            if (createIndex) {
+                quantized.createIndex();
+            }
+            store = quantized;
+        }
+
+        if (replicaRouting.getIfAvailable() != null) {
+            store = new ReplicaReadVectorStore(store, transactionManager);
+        }
+
+        EmbeddedVectorStore embedded = embeddedVectorStore.getIfAvailable();
+        if (embedded != null) {
+            store = new MirroredVectorStore(store, embedded, embeddedIndexMirror.getObject());
+        }
+
+        ReembeddingJob reembedding = reembeddingJob.getIfAvailable();
+        if (reembedding != null) {
+            store = new BlueGreenVectorStore(store, reembedding);
+        }
+        return new HotChunkRecordingVectorStore(store, hotChunkCache);
+    }
+
+    // Re-embeds the live table into rag.reembedding.target.table-name with the target model.
+    // The shadow store is built here rather than as a bean so the auto-configured PgVectorStore
+    // stays the only one. It gets the same quantized search and replica reads as the live table,
+    // so switching retrieval over does not silently drop them. The embedded index cannot follow:
+    // it holds vectors of the live model, so the two cannot be combined.
+    @Bean
+    @ConditionalOnProperty(name = "rag.reembedding.target.table-name")
+    public ReembeddingJob reembeddingJob(JdbcTemplate jdbcTemplate,
+                                         PlatformTransactionManager transactionManager,
+                                         ObjectProvider<ReplicaRoutingDataSource> replicaRouting,
+                                         ReembeddingCheckpointRepository checkpointRepository,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${rag.vectorstore.quantization.mode:none}") QuantizationMode mode,
+                                         @Value("${rag.vectorstore.quantization.over-fetch:4}") int overFetch,
+                                         @Value("${rag.vectorstore.quantization.create-index:true}") boolean createIndex,
+                                         @Value("${rag.vectorstore.embedded.enabled:false}") boolean embeddedEnabled,
+                                         @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String sourceTable,
+                                         @Value("${rag.reembedding.target.table-name}") String targetTable,
+                                         @Value("${rag.reembedding.target.model}") String model,
+                                         @Value("${rag.reembedding.target.dimensions:768}") int dimensions,
+                                         @Value("${rag.reembedding.target.base-url:${spring.ai.openai.embedding.base-url:${spring.ai.openai.base-url}}}") String baseUrl,
+                                         @Value("${rag.reembedding.target.api-key:${spring.ai.openai.api-key:not-needed}}") String apiKey,
+                                         @Value("${rag.reembedding.page-size:200}") int pageSize,
+                                         @Value("${rag.reembedding.max-chunks-per-second:50}") double maxChunksPerSecond,
+                                         @Value("${rag.reembedding.resume-on-startup:true}") boolean resumeOnStartup) {
+        if (targetTable.equals(sourceTable)) {
+            throw new IllegalStateException("rag.reembedding.target.table-name must differ from " + sourceTable);
+        }
+        if (embeddedEnabled) {
+            throw new IllegalStateException("rag.reembedding cannot be combined with rag.vectorstore.embedded.enabled;"
+                    + " turn the embedded index off while re-embedding");
+        }
+        EmbeddingModel targetModel = new OpenAiEmbeddingModel(
+                OpenAiApi.builder().baseUrl(baseUrl).apiKey(apiKey).build(),
+                MetadataMode.EMBED,
+                OpenAiEmbeddingOptions.builder().model(model).dimensions(dimensions).build());
+        PgVectorStore target = PgVectorStore.builder(jdbcTemplate, targetModel)
+                .vectorTableName(targetTable)
+                .dimensions(dimensions)
+                .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
+                .indexType(PgVectorStore.PgIndexType.HNSW)
+                .initializeSchema(true)
+                .build();
+        target.afterPropertiesSet();
+
+        VectorStore served = target;
+        if (mode != QuantizationMode.NONE) {
+            QuantizedVectorStore quantized = new QuantizedVectorStore(target, jdbcTemplate,
+                    new TransactionTemplate(transactionManager), targetModel, mode, targetTable, dimensions, overFetch);
+            if (createIndex) {
+                quantized.createIndex();
+            }
+            served = quantized;
+        }
+        if (replicaRouting.getIfAvailable() != null) {
+            served = new ReplicaReadVectorStore(served, transactionManager);
+        }
+        return new ReembeddingJob(served, jdbcTemplate, checkpointRepository, sourceTable, targetTable, model,
+                pageSize, maxChunksPerSecond, resumeOnStartup, meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "rag.vectorstore.embedded.enabled", havingValue = "true")
+    public EmbeddedVectorStore embeddedVectorStore(EmbeddingModel embeddingModel,
+                                                   @Value("${rag.vectorstore.embedded.path:data/embedded-index}") Path path)
+            throws IOException {
+        Files.createDirectories(path);
+        return new EmbeddedVectorStore(embeddingModel, path);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.vectorstore.embedded.enabled", havingValue = "true")
+    public EmbeddedIndexMirror embeddedIndexMirror(EmbeddedVectorStore embeddedVectorStore,
+                                                   JdbcTemplate jdbcTemplate,
+                                                   @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                                   @Value("${rag.vectorstore.embedded.page-size:1000}") int pageSize,
+                                                   @Value("${rag.vectorstore.embedded.resync-interval-seconds:600}") long resyncIntervalSeconds) {
+        return new EmbeddedIndexMirror(embeddedVectorStore, jdbcTemplate, tableName, pageSize, resyncIntervalSeconds);
+    }
+}
@@ -0,0 +1,44 @@
+package com.swiftbeard.rag_demo.cofig;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.wire.JacksonProtobufHttpMessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+import java.util.Set;
+
+// Binary representations of the API models for internal high-volume clients, chosen with the
+// Accept header: application/cbor for any response, application/x-protobuf for the RAG answer
+// and query history. Both are added after the JSON converter, so requests without an Accept
+// header, or with */*, still get JSON. The mappers come from Spring Boot's builder, so they
+// share the spring.jackson.* settings and modules of the JSON one.
+@Configuration
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    static final Set<Class<?>> PROTOBUF_MESSAGE_TYPES = Set.of(RagResponse.class, SourceCitation.class, QueryHistory.class);
+
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> mapperBuilders;
+
+    public WireFormatConfig(ObjectProvider<Jackson2ObjectMapperBuilder> mapperBuilders) {
+        this.mapperBuilders = mapperBuilders;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Replaces the default CBOR converter, which does not use Boot's Jackson settings
+        converters.removeIf(MappingJackson2CborHttpMessageConverter.class::isInstance);
+        converters.add(new MappingJackson2CborHttpMessageConverter(
+                mapperBuilders.getObject().factory(new CBORFactory()).build()));
+        converters.add(new JacksonProtobufHttpMessageConverter(
+                mapperBuilders.getObject().factory(new ProtobufFactory()).build(), PROTOBUF_MESSAGE_TYPES));
+    }
+}
@@ -1,21 +1,50 @@
 package com.swiftbeard.rag_demo.controller;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.exception.BulkheadFullException;
+import com.swiftbeard.rag_demo.exception.ConcurrencyLimitExceededException;
 import com.swiftbeard.rag_demo.exception.DocumentNotFoundException;
+import com.swiftbeard.rag_demo.exception.InvalidGenerationOptionsException;
+import com.swiftbeard.rag_demo.exception.PromptTemplateNotFoundException;
+import com.swiftbeard.rag_demo.exception.QuotaExceededException;
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
+import com.swiftbeard.rag_demo.model.BatchAnswer;
+import com.swiftbeard.rag_demo.model.BulkUploadResponse;
+import com.swiftbeard.rag_demo.model.ClientUsage;
 import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.model.HotChunk;
+import com.swiftbeard.rag_demo.model.HotDocument;
 import com.swiftbeard.rag_demo.model.MessageRequest;
 import com.swiftbeard.rag_demo.model.QueryHistory;
 import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.service.BatchRagService;
+import com.swiftbeard.rag_demo.service.BulkUploadService;
+import com.swiftbeard.rag_demo.service.ConversationService;
 import com.swiftbeard.rag_demo.service.DocumentService;
 import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import com.swiftbeard.rag_demo.service.HotChunkService;
 import com.swiftbeard.rag_demo.service.QueryHistoryService;
 import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -25,28 +54,108 @@ public class RagController {
     private final DocumentUploadService documentUploadService;
     private final DocumentService documentService;
     private final QueryHistoryService queryHistoryService;
+    private final BulkUploadService bulkUploadService;
+    private final Bulkheads bulkheads;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final QuotaService quotaService;
+    private final BatchRagService batchRagService;
+    private final ObjectMapper objectMapper;
+    private final LatencyTiers latencyTiers;
+    private final ConversationService conversationService;
+    private final HotChunkService hotChunkService;
 
     public RagController(RagService ragService,
                         DocumentUploadService documentUploadService,
                         DocumentService documentService,
-                        QueryHistoryService queryHistoryService) {
+                        QueryHistoryService queryHistoryService,
+                        BulkUploadService bulkUploadService,
+                        Bulkheads bulkheads,
+                        AdaptiveConcurrencyLimiter concurrencyLimiter,
+                        QuotaService quotaService,
+                        BatchRagService batchRagService,
+                        ObjectMapper objectMapper,
+                        LatencyTiers latencyTiers,
+                        ConversationService conversationService,
+                        HotChunkService hotChunkService) {
         this.ragService = ragService;
         this.documentUploadService = documentUploadService;
         this.documentService = documentService;
         this.queryHistoryService = queryHistoryService;
+        this.bulkUploadService = bulkUploadService;
+        this.bulkheads = bulkheads;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.quotaService = quotaService;
+        this.batchRagService = batchRagService;
+        this.objectMapper = objectMapper;
+        this.latencyTiers = latencyTiers;
+        this.conversationService = conversationService;
+        this.hotChunkService = hotChunkService;
     }
 
     @PostMapping("/ai/rag")
-    public ResponseEntity<RagResponse> generate(@RequestBody MessageRequest request) {
-        int topK = request.getValidatedTopK();
-        RagResponse response = ragService.retrieveAndGenerate(request.message(), topK);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<RagResponse> generate(@RequestBody MessageRequest request,
+                                                @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+        GenerationOptions options = latencyTiers.resolve(request);
+        quotaService.admit(apiKey);
+        TokenUsage usage = new TokenUsage();
+        try {
+            RagResponse response = concurrencyLimiter.call(request.getValidatedPriority(),
+                    () -> bulkheads.call(Workload.INTERACTIVE,
+                            () -> usage.track(() -> answer(request, options, apiKey))));
+            return ResponseEntity.ok(response);
+        } catch (ConcurrencyLimitExceededException | BulkheadFullException e) {
+            // Turned away with 503 and nothing served; the client should not pay for it
+            quotaService.refund(apiKey);
+            throw e;
+        } finally {
+            quotaService.record(apiKey, usage);
+        }
+    }
+
+    @DeleteMapping("/ai/sessions/{sessionId}")
+    public ResponseEntity<String> endSession(@PathVariable String sessionId,
+                                             @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+        if (!conversationService.endSession(apiKey, sessionId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Session not found with id: " + sessionId);
+        }
+        return ResponseEntity.ok("Session ended successfully");
+    }
+
+    // Streams one JSON line per question as soon as its answer is ready; lines carry the
+    // question's index, so clients restore the order themselves. Each question counts as one
+    // request for quotas. The questions are embedded before the response is committed, so a
+    // failed embedding call gets a proper error status instead of an empty 200.
+    @PostMapping(value = "/ai/rag/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<?> generateBatch(@RequestBody List<MessageRequest> requests,
+                                           @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+        try {
+            batchRagService.validate(requests);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        quotaService.admit(apiKey, requests.size());
+        BatchRagService.Batch batch = batchRagService.prepare(requests);
+        StreamingResponseBody body = out -> {
+            TokenUsage usage = new TokenUsage();
+            try {
+                batchRagService.retrieveAndGenerateBatch(batch, usage, answer -> writeLine(out, answer));
+            } finally {
+                quotaService.record(apiKey, usage);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/ai/usage")
+    public ResponseEntity<ClientUsage> getUsage(@RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+        return ResponseEntity.ok(quotaService.usage(apiKey));
     }
 
     @PostMapping("/ai/upload")
     public ResponseEntity<String> uploadDocument(@RequestParam("file") MultipartFile file) {
         try {
-            String result = documentUploadService.uploadDocument(file);
+            String result = bulkheads.call(Workload.INGESTION, () -> documentUploadService.uploadDocument(file));
             return ResponseEntity.ok(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -56,6 +165,17 @@ public class RagController {
         }
     }
 
+    @PostMapping("/ai/upload/bulk")
+    public ResponseEntity<?> uploadDocuments(@RequestParam("files") List<MultipartFile> files) {
+        try {
+            // Not wrapped in the ingestion bulkhead: the service runs its files there itself
+            BulkUploadResponse result = bulkUploadService.uploadDocuments(files);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/ai/documents")
     public ResponseEntity<List<DocumentMetadata>> listDocuments() {
         List<DocumentMetadata> documents = documentService.listAllDocuments();
@@ -75,7 +195,7 @@ public class RagController {
     @DeleteMapping("/ai/documents/{id}")
     public ResponseEntity<String> deleteDocument(@PathVariable Long id) {
         try {
-            documentService.deleteDocument(id);
+            bulkheads.run(Workload.ADMIN, () -> documentService.deleteDocument(id));
             return ResponseEntity.ok("Document deleted successfully");
         } catch (DocumentNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -121,8 +241,10 @@ public class RagController {
     @DeleteMapping("/ai/history/{id}")
     public ResponseEntity<String> deleteQueryHistory(@PathVariable Long id) {
         try {
-            queryHistoryService.deleteQuery(id);
+            bulkheads.run(Workload.ADMIN, () -> queryHistoryService.deleteQuery(id));
             return ResponseEntity.ok("Query history deleted successfully");
+        } catch (BulkheadFullException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Query history not found with id: " + id);
@@ -131,7 +253,69 @@ public class RagController {
 
     @DeleteMapping("/ai/history")
     public ResponseEntity<String> deleteAllQueryHistory() {
-        queryHistoryService.deleteAllQueries();
+        bulkheads.run(Workload.ADMIN, queryHistoryService::deleteAllQueries);
         return ResponseEntity.ok("All query history deleted successfully");
     }
+
+    // The chunks most cited by answers in the last `hours`, across all instances
+    @GetMapping("/ai/hot/chunks")
+    public ResponseEntity<List<HotChunk>> getHotChunks(
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "24") int hours) {
+        List<HotChunk> chunks = hotChunkService.topChunks(LocalDateTime.now().minusHours(hours), limit);
+        return ResponseEntity.ok(chunks);
+    }
+
+    @GetMapping("/ai/hot/documents")
+    public ResponseEntity<List<HotDocument>> getHotDocuments(
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "24") int hours) {
+        List<HotDocument> documents = hotChunkService.topDocuments(LocalDateTime.now().minusHours(hours), limit);
+        return ResponseEntity.ok(documents);
+    }
+
+    // Requests with a sessionId are answered in the client's conversation, the rest stand alone
+    private RagResponse answer(MessageRequest request, GenerationOptions options, String apiKey) {
+        if (request.sessionId() == null || request.sessionId().isBlank()) {
+            return ragService.retrieveAndGenerate(request.message(), options.topK(), options);
+        }
+        return conversationService.retrieveAndGenerate(apiKey, request.sessionId(), request.message(), options);
+    }
+
+    private void writeLine(OutputStream out, BatchAnswer answer) {
+        try {
+            byte[] line = objectMapper.writeValueAsBytes(answer);
+            synchronized (out) {
+                out.write(line);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @ExceptionHandler({BulkheadFullException.class, ConcurrencyLimitExceededException.class})
+    public ResponseEntity<String> handleOverload(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler({PromptTemplateNotFoundException.class, InvalidGenerationOptionsException.class})
+    public ResponseEntity<String> handleInvalidOptions(RuntimeException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(StageTimeoutException.class)
+    public ResponseEntity<String> handleStageTimeout(StageTimeoutException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<String> handleQuotaExceeded(QuotaExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                .body(e.getMessage());
+    }
 }
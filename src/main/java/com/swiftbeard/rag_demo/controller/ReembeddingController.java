@@ -0,0 +1,50 @@
+package com.swiftbeard.rag_demo.controller;
+
+import com.swiftbeard.rag_demo.model.ReembeddingProgress;
+import com.swiftbeard.rag_demo.vectorstore.ReembeddingJob;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.function.Function;
+
+// Admin endpoints for the re-embedding job; they answer 404 unless rag.reembedding.target is configured
+@RestController
+public class ReembeddingController {
+
+    private final ObjectProvider<ReembeddingJob> reembeddingJob;
+
+    public ReembeddingController(ObjectProvider<ReembeddingJob> reembeddingJob) {
+        this.reembeddingJob = reembeddingJob;
+    }
+
+    @GetMapping("/ai/admin/reembedding")
+    public ResponseEntity<ReembeddingProgress> getProgress() {
+        return withJob(ReembeddingJob::progress);
+    }
+
+    @PostMapping("/ai/admin/reembedding")
+    public ResponseEntity<ReembeddingProgress> resume() {
+        try {
+            return withJob(ReembeddingJob::resume);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PostMapping("/ai/admin/reembedding/pause")
+    public ResponseEntity<ReembeddingProgress> pause() {
+        return withJob(ReembeddingJob::pause);
+    }
+
+    private ResponseEntity<ReembeddingProgress> withJob(Function<ReembeddingJob, ReembeddingProgress> action) {
+        ReembeddingJob job = reembeddingJob.getIfAvailable();
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(action.apply(job));
+    }
+}
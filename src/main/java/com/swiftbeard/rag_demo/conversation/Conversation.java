@@ -0,0 +1,109 @@
+package com.swiftbeard.rag_demo.conversation;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// The memory of one session: the most recent turns verbatim, and a summary that older turns
+// are folded into by ConversationStore once they leave the window
+public final class Conversation {
+
+    private final String apiKey;
+    private final String id;
+    private final Deque<ConversationTurn> turns = new ArrayDeque<>();
+    private String summary = "";
+    private boolean compacting;
+    private volatile long lastAccessNanos = System.nanoTime();
+
+    Conversation(String apiKey, String id) {
+        this.apiKey = apiKey;
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    // The client that owns the session, or null for requests without a key
+    String apiKey() {
+        return apiKey;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(summary, List.copyOf(turns));
+    }
+
+    // Drops the oldest turns beyond maxTurns, which only happens when compaction falls behind
+    synchronized int append(ConversationTurn turn, int maxTurns) {
+        turns.addLast(turn);
+        while (turns.size() > maxTurns) {
+            turns.removeFirst();
+        }
+        return turns.size();
+    }
+
+    // The turns outside the window, oldest first, or an empty list if there are none or a
+    // compaction is already running
+    synchronized List<ConversationTurn> startCompaction(int window) {
+        if (compacting || turns.size() <= window) {
+            return List.of();
+        }
+        List<ConversationTurn> overflow = new ArrayList<>(turns).subList(0, turns.size() - window);
+        compacting = true;
+        return List.copyOf(overflow);
+    }
+
+    // Replaces the summary and removes the compacted turns that are still the oldest ones
+    synchronized void finishCompaction(String newSummary, List<ConversationTurn> compacted) {
+        summary = newSummary;
+        for (ConversationTurn turn : compacted) {
+            if (turns.peekFirst() == turn) {
+                turns.removeFirst();
+            }
+        }
+        compacting = false;
+    }
+
+    synchronized void abortCompaction() {
+        compacting = false;
+    }
+
+    synchronized String summary() {
+        return summary;
+    }
+
+    void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    long lastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    public record Snapshot(String summary, List<ConversationTurn> turns) {
+
+        public boolean isEmpty() {
+            return summary.isEmpty() && turns.isEmpty();
+        }
+
+        // The summary followed by the recent turns, to place between the system prompt and
+        // the new question
+        public List<Message> messages() {
+            List<Message> messages = new ArrayList<>(turns.size() * 2 + 1);
+            if (!summary.isEmpty()) {
+                messages.add(new SystemMessage("Summary of the earlier conversation:\n" + summary));
+            }
+            for (ConversationTurn turn : turns) {
+                messages.add(new UserMessage(turn.question()));
+                messages.add(new AssistantMessage(turn.answer()));
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.swiftbeard.rag_demo.conversation;
+
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory conversation sessions. Each keeps its last rag.conversation.window turns verbatim;
+// older turns are folded into a running summary by an LLM call in the background, so the
+// memory sent with each question stays about the same size however long the conversation
+// runs. Sessions belong to the API key that started them, so a client cannot read another
+// client's conversation by guessing its session id. Sessions idle for longer than idle-timeout
+// are dropped, and at most max-sessions are kept, evicting the least recently used. The map is
+// kept in access order, so both evictions start from its head instead of scanning it. The
+// tokens spent on compaction are charged to the owning client's quota.
+@Component
+public class ConversationStore implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationStore.class);
+
+    private static final String SUMMARIZE_INSTRUCTIONS = """
+            You maintain the running summary of a conversation between a user and an assistant that \
+            answers questions from a document collection. Merge the existing summary and the new \
+            exchanges into one updated summary. Keep the topics, names, numbers and conclusions the \
+            user may refer back to; leave out greetings and wording. Reply with the summary only, \
+            as plain text of at most 150 words.""";
+
+    private final ChatClient chatClient;
+    private final QuotaService quotaService;
+    private final int window;
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final int summaryMaxTokens;
+    private final int maxAnswerChars;
+    private final int compactionParallelism;
+    // Guarded by itself
+    private final LinkedHashMap<SessionKey, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SessionKey, Conversation> eldest) {
+            return size() > maxSessions;
+        }
+    };
+    private final Counter compactions;
+    private final Counter compactionFailures;
+
+    private volatile ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    public ConversationStore(ChatClient chatClient,
+                             QuotaService quotaService,
+                             MeterRegistry meterRegistry,
+                             @Value("${rag.conversation.window:4}") int window,
+                             @Value("${rag.conversation.max-sessions:10000}") int maxSessions,
+                             @Value("${rag.conversation.idle-timeout:30m}") Duration idleTimeout,
+                             @Value("${rag.conversation.summary-max-tokens:300}") int summaryMaxTokens,
+                             @Value("${rag.conversation.max-answer-chars:2000}") int maxAnswerChars,
+                             @Value("${rag.conversation.compaction-parallelism:2}") int compactionParallelism) {
+        this.chatClient = chatClient;
+        this.quotaService = quotaService;
+        this.window = window;
+        this.maxSessions = maxSessions;
+        this.idleTimeout = idleTimeout;
+        this.summaryMaxTokens = summaryMaxTokens;
+        this.maxAnswerChars = maxAnswerChars;
+        this.compactionParallelism = compactionParallelism;
+
+        Gauge.builder("rag.conversation.sessions", this, ConversationStore::size)
+                .description("Conversation sessions held in memory")
+                .register(meterRegistry);
+        this.compactions = Counter.builder("rag.conversation.compactions")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.compactionFailures = Counter.builder("rag.conversation.compactions")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+    }
+
+    // The client's session, started empty if it is new or has expired; apiKey may be null
+    public Conversation get(String apiKey, String sessionId) {
+        SessionKey key = new SessionKey(apiKey, sessionId);
+        synchronized (conversations) {
+            Conversation conversation = conversations.get(key);
+            if (conversation == null) {
+                conversation = new Conversation(apiKey, sessionId);
+                conversations.put(key, conversation);
+            }
+            conversation.touch();
+            return conversation;
+        }
+    }
+
+    // Adds a finished turn and, once the window overflows, compacts the older turns
+    public void remember(Conversation conversation, String question, String answer) {
+        answer = answer != null ? answer : "";
+        String kept = answer.length() > maxAnswerChars ? answer.substring(0, maxAnswerChars) + "..." : answer;
+        // Twice the window bounds the memory even if compaction cannot keep up
+        int size = conversation.append(new ConversationTurn(question, kept), window * 2);
+        if (size > window) {
+            ScheduledExecutorService current = executor;
+            if (current != null) {
+                current.execute(() -> compact(conversation));
+            } else {
+                // Not started, as in tests: compact on the caller's thread
+                compact(conversation);
+            }
+        }
+    }
+
+    public boolean end(String apiKey, String sessionId) {
+        synchronized (conversations) {
+            return conversations.remove(new SessionKey(apiKey, sessionId)) != null;
+        }
+    }
+
+    public int size() {
+        synchronized (conversations) {
+            return conversations.size();
+        }
+    }
+
+    void compact(Conversation conversation) {
+        List<ConversationTurn> overflow = conversation.startCompaction(window);
+        if (overflow.isEmpty()) {
+            return;
+        }
+        TokenUsage usage = new TokenUsage();
+        try {
+            String summary = usage.track(() -> summarize(conversation.summary(), overflow));
+            conversation.finishCompaction(summary == null ? conversation.summary() : summary.strip(), overflow);
+            compactions.increment();
+        } catch (RuntimeException e) {
+            conversation.abortCompaction();
+            compactionFailures.increment();
+            log.warn("Could not compact conversation {}: {}", conversation.id(), e.getMessage());
+        } finally {
+            quotaService.record(conversation.apiKey(), usage);
+        }
+    }
+
+    private String summarize(String summary, List<ConversationTurn> turns) {
+        StringBuilder exchanges = new StringBuilder();
+        exchanges.append("Existing summary:\n").append(summary.isEmpty() ? "(none)" : summary).append("\n\nNew exchanges:\n");
+        for (ConversationTurn turn : turns) {
+            exchanges.append("User: ").append(turn.question()).append('\n')
+                    .append("Assistant: ").append(turn.answer()).append('\n');
+        }
+        Prompt prompt = new Prompt(
+                List.of(new SystemMessage(SUMMARIZE_INSTRUCTIONS), new UserMessage(exchanges.toString())),
+                ChatOptions.builder().maxTokens(summaryMaxTokens).temperature(0.0).build());
+        return chatClient.prompt(prompt).call().content();
+    }
+
+    // The least recently used sessions come first, so this stops at the first one still in use
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeout.toNanos();
+        synchronized (conversations) {
+            Iterator<Conversation> iterator = conversations.values().iterator();
+            while (iterator.hasNext() && iterator.next().lastAccessNanos() - cutoff < 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(compactionParallelism, runnable -> {
+            Thread thread = new Thread(() -> Workload.HISTORY.runAs(runnable),
+                    "conversation-compaction-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        ScheduledExecutorService current = executor;
+        executor = null;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private record SessionKey(String apiKey, String sessionId) {
+
+        SessionKey {
+            apiKey = apiKey == null || apiKey.isBlank() ? "" : apiKey;
+        }
+    }
+}
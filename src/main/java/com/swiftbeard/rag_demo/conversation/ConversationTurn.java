@@ -0,0 +1,4 @@
+package com.swiftbeard.rag_demo.conversation;
+
+public record ConversationTurn(String question, String answer) {
+}
@@ -0,0 +1,129 @@
+package com.swiftbeard.rag_demo.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Hands out replica connections for read-only transactions and primary connections for
+// everything else. Must sit behind a LazyConnectionDataSourceProxy so the read-only flag is
+// known by the time the physical connection is fetched. Reads fall back to the primary while the
+// replica is unreachable or lagging more than maxLag behind it.
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // Zero when the replica has replayed everything it received, otherwise the age of the last replayed commit
+    private static final String LAG_QUERY = """
+            SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END""";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final Duration maxLag;
+    private final ScheduledExecutorService healthChecker;
+    private final Counter replicaReads;
+    private final Counter primaryFallbacks;
+
+    private volatile boolean replicaAvailable = true;
+    private volatile double replicaLagSeconds;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration maxLag,
+                                    Duration healthCheckInterval, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLag = maxLag;
+
+        this.replicaReads = Counter.builder("rag.datasource.reads")
+                .description("Read-only connections by the route they were served from")
+                .tag("route", "replica")
+                .register(meterRegistry);
+        this.primaryFallbacks = Counter.builder("rag.datasource.reads")
+                .tag("route", "primary-fallback")
+                .register(meterRegistry);
+        Gauge.builder("rag.datasource.replica.lag", () -> replicaLagSeconds)
+                .description("Replication lag of the read replica in seconds")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("rag.datasource.replica.available", () -> replicaAvailable ? 1 : 0)
+                .register(meterRegistry);
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplica, healthCheckInterval.toMillis(),
+                healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary.getConnection();
+        }
+        if (replicaAvailable) {
+            try {
+                Connection connection = replica.getConnection();
+                replicaReads.increment();
+                return connection;
+            } catch (SQLException e) {
+                markReplicaDown(e);
+            }
+        }
+        primaryFallbacks.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+    }
+
+    public void checkReplica() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+            rs.next();
+            replicaLagSeconds = rs.getDouble(1);
+            boolean healthy = replicaLagSeconds * 1000 <= maxLag.toMillis();
+            if (healthy != replicaAvailable) {
+                log.info("Read replica {} (lag {}s)", healthy ? "back in rotation" : "lagging, reading from primary",
+                        replicaLagSeconds);
+            }
+            replicaAvailable = healthy;
+        } catch (SQLException e) {
+            markReplicaDown(e);
+        }
+    }
+
+    private void markReplicaDown(SQLException e) {
+        if (replicaAvailable) {
+            log.warn("Read replica unavailable, reading from primary until it recovers", e);
+        }
+        replicaAvailable = false;
+    }
+}
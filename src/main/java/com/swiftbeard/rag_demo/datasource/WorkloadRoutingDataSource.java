@@ -0,0 +1,44 @@
+package com.swiftbeard.rag_demo.datasource;
+
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+// Picks the primary connection pool reserved for the current thread's workload, so ingestion
+// or admin work holding every connection in its pool never blocks interactive queries
+public class WorkloadRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private final Map<Workload, DataSource> pools;
+    private final DataSource defaultPool;
+
+    public WorkloadRoutingDataSource(Map<Workload, DataSource> pools, DataSource defaultPool) {
+        this.pools = pools;
+        this.defaultPool = defaultPool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return pools.getOrDefault(Workload.current(), defaultPool).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    // Closes the per-workload pools; the default pool is a bean of its own
+    @Override
+    public void close() throws IOException {
+        for (DataSource pool : pools.values()) {
+            if (pool != defaultPool && pool instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.swiftbeard.rag_demo.embedding;
+
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.hedging.RequestDeadline;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Coalesces concurrent single-text embed(String) calls - the query embeddings made by vector
+// store searches - into one batched request to the embedding server. A batch is sent when it
+// reaches maxBatchSize or when its oldest request has waited maxWait. All other calls, such as
+// document embedding during ingestion, go straight to the delegate. A caller with a
+// RequestDeadline stops waiting when it passes, and a batch whose callers all have deadlines
+// is sent under the latest of them, so the delegate's own timeouts respect it too. close()
+// still answers every caller: the batch being gathered is sent before the dispatcher exits.
+public class BatchingEmbeddingModel implements EmbeddingModel, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingEmbeddingModel.class);
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private final DistributionSummary batchSizes;
+    private final Timer queueDelay;
+
+    private volatile boolean running = true;
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize, Duration maxWait,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.batchSizes = DistributionSummary.builder("rag.embedding.batch.size")
+                .description("Query embeddings sent per call to the embedding server")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.queueDelay = Timer.builder("rag.embedding.queue.delay")
+                .description("Time a query embedding waited for its batch to be sent")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.dispatcher = Thread.ofPlatform().name("embedding-batcher").daemon().start(this::dispatchLoop);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (!running) {
+            return delegate.embed(text);
+        }
+        RequestDeadline.check("embedding");
+        long remaining = RequestDeadline.remainingNanos();
+        long now = System.nanoTime();
+        Long deadline = remaining == Long.MAX_VALUE ? null : now + remaining;
+        PendingEmbedding pending = new PendingEmbedding(text, new CompletableFuture<>(), now, deadline);
+        queue.add(pending);
+        if (!running && queue.remove(pending)) {
+            // Closed while enqueuing, so nothing will dispatch it
+            return delegate.embed(text);
+        }
+        try {
+            return deadline == null
+                    ? pending.result().get()
+                    : pending.result().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandon(pending);
+            throw new StageTimeoutException("The request deadline passed while its query embedding was batched");
+        } catch (InterruptedException e) {
+            abandon(pending);
+            Thread.currentThread().interrupt();
+            throw new StageTimeoutException("Interrupted waiting for the query embedding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        // The dispatcher sends the batch it was gathering before it exits, so wait for it before
+        // closing the senders it hands batches to
+        boolean interrupted = false;
+        while (dispatcher.isAlive()) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        senders.close();
+        // Anything still queued is embedded one by one rather than left waiting forever
+        PendingEmbedding pending;
+        while ((pending = queue.poll()) != null) {
+            send(List.of(pending));
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+            try {
+                PendingEmbedding first = queue.take();
+                batch.add(first);
+
+                long deadline = first.enqueuedAt() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingEmbedding next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                // Send on another thread so the next batch can gather while this one is in flight
+                senders.execute(() -> send(batch));
+            } catch (RejectedExecutionException e) {
+                send(batch);
+            } catch (InterruptedException e) {
+                // Closing: callers already taken off the queue would otherwise wait forever
+                send(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Not sent if it is still queued; left out of its batch if that is already being gathered
+    private void abandon(PendingEmbedding pending) {
+        queue.remove(pending);
+        pending.result().cancel(false);
+    }
+
+    private void send(List<PendingEmbedding> gathered) {
+        List<PendingEmbedding> batch = gathered.stream().filter(pending -> !pending.result().isDone()).toList();
+        if (batch.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        batch.forEach(pending -> queueDelay.record(now - pending.enqueuedAt(), TimeUnit.NANOSECONDS));
+        batchSizes.record(batch.size());
+
+        // Identical queries arriving together are embedded once
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        batch.forEach(pending -> positions.putIfAbsent(pending.text(), positions.size()));
+
+        try {
+            List<String> texts = new ArrayList<>(positions.keySet());
+            Long latest = latestDeadline(batch);
+            List<float[]> embeddings = latest != null
+                    ? RequestDeadline.run(latest, () -> delegate.embed(texts))
+                    : delegate.embed(texts);
+            batch.forEach(pending -> pending.result().complete(embeddings.get(positions.get(pending.text()))));
+        } catch (RuntimeException e) {
+            log.warn("Batched embedding of {} queries failed", batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    // Null if any caller in the batch has no deadline, since it would wait for the answer forever
+    private static Long latestDeadline(List<PendingEmbedding> batch) {
+        Long latest = null;
+        for (PendingEmbedding pending : batch) {
+            if (pending.deadline() == null) {
+                return null;
+            }
+            if (latest == null || pending.deadline() - latest > 0) {
+                latest = pending.deadline();
+            }
+        }
+        return latest;
+    }
+
+    // deadline is a System.nanoTime() value, or null without one
+    private record PendingEmbedding(String text, CompletableFuture<float[]> result, long enqueuedAt, Long deadline) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.swiftbeard.rag_demo.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Answers single-text embeds from the QueryEmbeddingCache when the text has been primed
+public class PrimedEmbeddingModel implements EmbeddingModel, Closeable {
+
+    private final EmbeddingModel delegate;
+    private final QueryEmbeddingCache cache;
+
+    public PrimedEmbeddingModel(EmbeddingModel delegate, QueryEmbeddingCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] primed = cache.get(text);
+        return primed != null ? primed.clone() : delegate.embed(text);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
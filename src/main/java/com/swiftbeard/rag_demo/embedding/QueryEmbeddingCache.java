@@ -0,0 +1,39 @@
+package com.swiftbeard.rag_demo.embedding;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Query embeddings computed ahead of time, such as a whole batch of questions embedded in one
+// call. While a lease is open, vector store searches for those texts reuse the embeddings
+// instead of asking the embedding server again.
+@Component
+public class QueryEmbeddingCache {
+
+    public interface Lease extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public Lease prime(List<String> texts, List<float[]> embeddings) {
+        for (int i = 0; i < texts.size(); i++) {
+            float[] embedding = embeddings.get(i);
+            entries.compute(texts.get(i), (text, entry) ->
+                    entry == null ? new Entry(embedding, 1) : new Entry(entry.embedding(), entry.leases() + 1));
+        }
+        return () -> texts.forEach(text -> entries.computeIfPresent(text, (key, entry) ->
+                entry.leases() == 1 ? null : new Entry(entry.embedding(), entry.leases() - 1)));
+    }
+
+    float[] get(String text) {
+        Entry entry = entries.get(text);
+        return entry != null ? entry.embedding() : null;
+    }
+
+    private record Entry(float[] embedding, int leases) {
+    }
+}
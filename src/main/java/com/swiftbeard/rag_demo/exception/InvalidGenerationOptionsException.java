@@ -0,0 +1,8 @@
+package com.swiftbeard.rag_demo.exception;
+
+public class InvalidGenerationOptionsException extends RuntimeException {
+
+    public InvalidGenerationOptionsException(String message) {
+        super(message);
+    }
+}
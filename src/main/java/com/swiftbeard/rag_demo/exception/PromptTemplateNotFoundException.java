@@ -0,0 +1,8 @@
+package com.swiftbeard.rag_demo.exception;
+
+public class PromptTemplateNotFoundException extends RuntimeException {
+
+    public PromptTemplateNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.swiftbeard.rag_demo.exception;
+
+public class QuotaExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public QuotaExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,8 @@
+package com.swiftbeard.rag_demo.exception;
+
+public class StageTimeoutException extends RuntimeException {
+
+    public StageTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,23 @@
+package com.swiftbeard.rag_demo.grpc;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+// Makes the x-api-key metadata of a call available as API_KEY, the gRPC counterpart of the
+// X-API-Key header that client quotas are kept under
+public class ApiKeyInterceptor implements ServerInterceptor {
+
+    static final Context.Key<String> API_KEY = Context.key("api-key");
+
+    private static final Metadata.Key<String> HEADER = Metadata.Key.of("x-api-key", Metadata.ASCII_STRING_MARSHALLER);
+
+    @Override
+    public <Q, R> ServerCall.Listener<Q> interceptCall(ServerCall<Q, R> call, Metadata headers,
+                                                      ServerCallHandler<Q, R> next) {
+        return Contexts.interceptCall(Context.current().withValue(API_KEY, headers.get(HEADER)), call, headers, next);
+    }
+}
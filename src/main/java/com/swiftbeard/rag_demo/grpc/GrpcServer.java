@@ -0,0 +1,90 @@
+package com.swiftbeard.rag_demo.grpc;
+
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Serves RagGrpcService over HTTP/2 on its own port, next to the servlet container. Calls are
+// handled on virtual threads: Ask and Upload block while their work runs on the bulkheads,
+// which bound the real concurrency. Off unless rag.grpc.enabled is set: the port has no
+// authentication of its own, so it should only be opened behind something that provides it.
+@Component
+@ConditionalOnProperty(name = "rag.grpc.enabled", havingValue = "true")
+public class GrpcServer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(GrpcServer.class);
+
+    private final RagGrpcService service;
+    private final int port;
+    private final DataSize maxInboundMessageSize;
+    private final Duration shutdownGracePeriod;
+
+    private ExecutorService executor;
+    private Server server;
+
+    public GrpcServer(RagGrpcService service,
+                      @Value("${rag.grpc.port:9090}") int port,
+                      @Value("${rag.grpc.max-inbound-message-size:4MB}") DataSize maxInboundMessageSize,
+                      @Value("${rag.grpc.shutdown-grace-period:10s}") Duration shutdownGracePeriod) {
+        this.service = service;
+        this.port = port;
+        this.maxInboundMessageSize = maxInboundMessageSize;
+        this.shutdownGracePeriod = shutdownGracePeriod;
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            server = NettyServerBuilder.forPort(port)
+                    .executor(executor)
+                    .maxInboundMessageSize((int) maxInboundMessageSize.toBytes())
+                    .addService(ServerInterceptors.intercept(service, new ApiKeyInterceptor()))
+                    .build()
+                    .start();
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw new UncheckedIOException("Could not start the gRPC server on port " + port, e);
+        }
+        log.info("gRPC server listening on port {}", server.getPort());
+    }
+
+    // Lets calls in progress finish for up to the grace period, then cancels the rest
+    @Override
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(shutdownGracePeriod.toMillis(), TimeUnit.MILLISECONDS)) {
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            server.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+}
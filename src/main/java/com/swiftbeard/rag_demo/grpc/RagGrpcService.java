@@ -0,0 +1,408 @@
+package com.swiftbeard.rag_demo.grpc;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.exception.BulkheadFullException;
+import com.swiftbeard.rag_demo.exception.ConcurrencyLimitExceededException;
+import com.swiftbeard.rag_demo.exception.DocumentNotFoundException;
+import com.swiftbeard.rag_demo.exception.InvalidGenerationOptionsException;
+import com.swiftbeard.rag_demo.exception.PromptTemplateNotFoundException;
+import com.swiftbeard.rag_demo.exception.QuotaExceededException;
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.grpc.v1.AskRequest;
+import com.swiftbeard.rag_demo.grpc.v1.AskResponse;
+import com.swiftbeard.rag_demo.grpc.v1.DocumentInfo;
+import com.swiftbeard.rag_demo.grpc.v1.GetDocumentRequest;
+import com.swiftbeard.rag_demo.grpc.v1.ListDocumentsRequest;
+import com.swiftbeard.rag_demo.grpc.v1.ListDocumentsResponse;
+import com.swiftbeard.rag_demo.grpc.v1.ListHistoryRequest;
+import com.swiftbeard.rag_demo.grpc.v1.ListHistoryResponse;
+import com.swiftbeard.rag_demo.grpc.v1.QueryHistoryEntry;
+import com.swiftbeard.rag_demo.grpc.v1.RagGrpc;
+import com.swiftbeard.rag_demo.grpc.v1.Sources;
+import com.swiftbeard.rag_demo.grpc.v1.UploadHeader;
+import com.swiftbeard.rag_demo.grpc.v1.UploadRequest;
+import com.swiftbeard.rag_demo.grpc.v1.UploadResponse;
+import com.swiftbeard.rag_demo.hedging.RequestDeadline;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
+import com.swiftbeard.rag_demo.limiter.Priority;
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.model.MessageRequest;
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.service.DocumentService;
+import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import com.swiftbeard.rag_demo.service.QueryHistoryService;
+import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// The gRPC face of the same pipeline RagController serves: Ask goes through the client's quota,
+// the concurrency limiter and the interactive bulkhead, Upload through the ingestion bulkhead.
+// The client's deadline is carried onto the bulkhead thread as a RequestDeadline, so it bounds
+// the embedding, search and chat stages too.
+@Component
+public class RagGrpcService extends RagGrpc.RagImplBase {
+
+    private static final Logger log = LoggerFactory.getLogger(RagGrpcService.class);
+
+    private static final Metadata.Key<String> RETRY_AFTER = Metadata.Key.of("retry-after", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final RagService ragService;
+    private final DocumentUploadService documentUploadService;
+    private final DocumentService documentService;
+    private final QueryHistoryService queryHistoryService;
+    private final Bulkheads bulkheads;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final QuotaService quotaService;
+    private final LatencyTiers latencyTiers;
+    private final long maxUploadBytes;
+
+    public RagGrpcService(RagService ragService,
+                          DocumentUploadService documentUploadService,
+                          DocumentService documentService,
+                          QueryHistoryService queryHistoryService,
+                          Bulkheads bulkheads,
+                          AdaptiveConcurrencyLimiter concurrencyLimiter,
+                          QuotaService quotaService,
+                          LatencyTiers latencyTiers,
+                          @Value("${rag.grpc.max-upload-size:64MB}") DataSize maxUploadSize) {
+        this.ragService = ragService;
+        this.documentUploadService = documentUploadService;
+        this.documentService = documentService;
+        this.queryHistoryService = queryHistoryService;
+        this.bulkheads = bulkheads;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.quotaService = quotaService;
+        this.latencyTiers = latencyTiers;
+        this.maxUploadBytes = Math.min(maxUploadSize.toBytes(), Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public void ask(AskRequest request, StreamObserver<AskResponse> responseObserver) {
+        ServerCallStreamObserver<AskResponse> observer = (ServerCallStreamObserver<AskResponse>) responseObserver;
+        String apiKey = ApiKeyInterceptor.API_KEY.get();
+        try {
+            MessageRequest message = messageRequest(request);
+            GenerationOptions options = latencyTiers.resolve(message);
+            quotaService.admit(apiKey);
+            TokenUsage usage = new TokenUsage();
+            Supplier<RagResponse> answer = withDeadline(() -> usage.track(() -> ragService.retrieveAndStream(
+                    message.message(), options,
+                    sources -> send(observer, AskResponse.newBuilder().setSources(sources(sources)).build()),
+                    token -> send(observer, AskResponse.newBuilder().setToken(token).build()))));
+            try {
+                concurrencyLimiter.call(message.getValidatedPriority(),
+                        () -> bulkheads.call(Workload.INTERACTIVE, answer::get));
+            } catch (ConcurrencyLimitExceededException | BulkheadFullException e) {
+                quotaService.refund(apiKey);
+                throw e;
+            } finally {
+                quotaService.record(apiKey, usage);
+            }
+            observer.onCompleted();
+        } catch (RuntimeException e) {
+            observer.onError(status(e));
+        }
+    }
+
+    // Chunks are spooled to a temporary file as they arrive, so the heap holds the file once,
+    // while it is ingested, rather than as every received chunk plus the joined copy
+    @Override
+    public StreamObserver<UploadRequest> upload(StreamObserver<UploadResponse> responseObserver) {
+        return new StreamObserver<>() {
+
+            private UploadHeader header;
+            private Path spool;
+            private OutputStream content;
+            private long size;
+            private boolean failed;
+
+            @Override
+            public void onNext(UploadRequest part) {
+                if (failed) {
+                    return;
+                }
+                switch (part.getPartCase()) {
+                    case HEADER -> {
+                        if (header != null) {
+                            fail(Status.INVALID_ARGUMENT.withDescription("Upload header sent twice"));
+                        } else {
+                            header = part.getHeader();
+                        }
+                    }
+                    case CHUNK -> {
+                        if (header == null) {
+                            fail(Status.INVALID_ARGUMENT.withDescription("The first upload message must be the header"));
+                        } else if (size + part.getChunk().size() > maxUploadBytes) {
+                            fail(Status.RESOURCE_EXHAUSTED.withDescription("File is larger than "
+                                    + DataSize.ofBytes(maxUploadBytes).toMegabytes() + "MB"));
+                        } else {
+                            append(part);
+                        }
+                    }
+                    default -> fail(Status.INVALID_ARGUMENT.withDescription("Empty upload message"));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The client went away; nothing has been stored yet
+                failed = true;
+                discard();
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+                if (header == null) {
+                    fail(Status.INVALID_ARGUMENT.withDescription("Upload header missing"));
+                    return;
+                }
+                String filename = header.getFilename();
+                String contentType = header.getContentType().isBlank()
+                        ? DocumentUploadService.guessContentType(filename)
+                        : header.getContentType();
+                byte[] bytes;
+                try {
+                    bytes = read();
+                } catch (IOException e) {
+                    fail(Status.INTERNAL.withDescription("Could not read the upload: " + e.getMessage()));
+                    return;
+                } finally {
+                    discard();
+                }
+                try {
+                    Supplier<String> upload = withDeadline(
+                            () -> documentUploadService.uploadDocument(bytes, filename, contentType));
+                    String result = bulkheads.call(Workload.INGESTION, upload::get);
+                    responseObserver.onNext(UploadResponse.newBuilder().setMessage(result).build());
+                    responseObserver.onCompleted();
+                } catch (RuntimeException e) {
+                    responseObserver.onError(status(e));
+                }
+            }
+
+            private void append(UploadRequest part) {
+                try {
+                    if (content == null) {
+                        spool = Files.createTempFile("rag-grpc-upload-", ".part");
+                        content = Files.newOutputStream(spool);
+                    }
+                    part.getChunk().writeTo(content);
+                    size += part.getChunk().size();
+                } catch (IOException e) {
+                    fail(Status.INTERNAL.withDescription("Could not buffer the upload: " + e.getMessage()));
+                }
+            }
+
+            private byte[] read() throws IOException {
+                if (content == null) {
+                    return new byte[0];
+                }
+                content.close();
+                return Files.readAllBytes(spool);
+            }
+
+            private void discard() {
+                try {
+                    if (content != null) {
+                        content.close();
+                    }
+                    if (spool != null) {
+                        Files.deleteIfExists(spool);
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not delete upload spool file {}: {}", spool, e.getMessage());
+                } finally {
+                    content = null;
+                    spool = null;
+                }
+            }
+
+            private void fail(Status status) {
+                failed = true;
+                discard();
+                responseObserver.onError(status.asRuntimeException());
+            }
+        };
+    }
+
+    @Override
+    public void listDocuments(ListDocumentsRequest request, StreamObserver<ListDocumentsResponse> responseObserver) {
+        try {
+            ListDocumentsResponse.Builder response = ListDocumentsResponse.newBuilder();
+            documentService.listAllDocuments().forEach(document -> response.addDocuments(documentInfo(document)));
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(status(e));
+        }
+    }
+
+    @Override
+    public void getDocument(GetDocumentRequest request, StreamObserver<DocumentInfo> responseObserver) {
+        try {
+            responseObserver.onNext(documentInfo(documentService.getDocumentById(request.getId())));
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(status(e));
+        }
+    }
+
+    @Override
+    public void listHistory(ListHistoryRequest request, StreamObserver<ListHistoryResponse> responseObserver) {
+        try {
+            List<QueryHistory> history = request.getLimit() > 0
+                    ? queryHistoryService.getRecentQueries(request.getLimit())
+                    : queryHistoryService.getAllQueries();
+            ListHistoryResponse.Builder response = ListHistoryResponse.newBuilder();
+            history.forEach(entry -> response.addEntries(historyEntry(entry)));
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(status(e));
+        }
+    }
+
+    // The status for an exception from the pipeline, matching what RagController answers with
+    static StatusRuntimeException status(RuntimeException e) {
+        if (e instanceof StatusRuntimeException status) {
+            return status;
+        }
+        Metadata trailers = new Metadata();
+        Status status;
+        if (e instanceof QuotaExceededException quota) {
+            status = Status.RESOURCE_EXHAUSTED;
+            trailers.put(RETRY_AFTER, String.valueOf(Math.max(1, quota.getRetryAfterSeconds())));
+        } else if (e instanceof BulkheadFullException || e instanceof ConcurrencyLimitExceededException) {
+            status = Status.UNAVAILABLE;
+            trailers.put(RETRY_AFTER, "1");
+        } else if (e instanceof StageTimeoutException) {
+            status = Status.DEADLINE_EXCEEDED;
+        } else if (e instanceof PromptTemplateNotFoundException || e instanceof InvalidGenerationOptionsException
+                || e instanceof IllegalArgumentException) {
+            status = Status.INVALID_ARGUMENT;
+        } else if (e instanceof DocumentNotFoundException) {
+            status = Status.NOT_FOUND;
+        } else {
+            log.error("gRPC call failed", e);
+            return Status.INTERNAL.withDescription("Internal error").withCause(e).asRuntimeException();
+        }
+        return status.withDescription(e.getMessage()).withCause(e).asRuntimeException(trailers);
+    }
+
+    // Captured on the gRPC thread: the work itself runs on bulkhead threads, which do not see
+    // the call's context
+    private static <T> Supplier<T> withDeadline(Supplier<T> task) {
+        Deadline deadline = Context.current().getDeadline();
+        if (deadline == null) {
+            return task;
+        }
+        long deadlineNanos = System.nanoTime() + deadline.timeRemaining(TimeUnit.NANOSECONDS);
+        return () -> RequestDeadline.run(deadlineNanos, task);
+    }
+
+    // Throwing stops the answer stream, and with it the chat call, once the client has gone away
+    private static void send(ServerCallStreamObserver<AskResponse> observer, AskResponse response) {
+        if (observer.isCancelled()) {
+            throw Status.CANCELLED.withDescription("The client cancelled the call").asRuntimeException();
+        }
+        observer.onNext(response);
+    }
+
+    private static MessageRequest messageRequest(AskRequest request) {
+        if (request.getMessage().isBlank()) {
+            throw new IllegalArgumentException("message is required");
+        }
+        return new MessageRequest(request.getMessage(),
+                request.hasTopK() ? request.getTopK() : null,
+                request.getPriority().isBlank() ? null : Priority.from(request.getPriority()),
+                blankToNull(request.getTemplate()),
+                blankToNull(request.getTier()),
+                blankToNull(request.getModel()),
+                request.hasMaxTokens() ? request.getMaxTokens() : null,
+                request.hasTemperature() ? request.getTemperature() : null,
+                null);
+    }
+
+    private static Sources sources(List<SourceCitation> citations) {
+        Sources.Builder sources = Sources.newBuilder();
+        for (SourceCitation citation : citations) {
+            com.swiftbeard.rag_demo.grpc.v1.SourceCitation.Builder message =
+                    com.swiftbeard.rag_demo.grpc.v1.SourceCitation.newBuilder()
+                    .setDocumentId(citation.getDocumentId())
+                    .setFilename(citation.getFilename())
+                    .setContent(citation.getContent());
+            if (citation.getSimilarityScore() != null) {
+                message.setSimilarityScore(citation.getSimilarityScore());
+            }
+            sources.addCitations(message);
+        }
+        return sources.build();
+    }
+
+    private static DocumentInfo documentInfo(DocumentMetadata document) {
+        DocumentInfo.Builder info = DocumentInfo.newBuilder()
+                .setId(document.getId())
+                .setFilename(nullToEmpty(document.getFilename()))
+                .setContentType(nullToEmpty(document.getContentType()));
+        if (document.getFileSize() != null) {
+            info.setFileSize(document.getFileSize());
+        }
+        if (document.getChunkCount() != null) {
+            info.setChunkCount(document.getChunkCount());
+        }
+        if (document.getUploadedAt() != null) {
+            info.setUploadedAt(document.getUploadedAt().toString());
+        }
+        return info.build();
+    }
+
+    private static QueryHistoryEntry historyEntry(QueryHistory history) {
+        QueryHistoryEntry.Builder entry = QueryHistoryEntry.newBuilder()
+                .setId(history.getId())
+                .setQuery(history.getQuery())
+                .setAnswer(history.getAnswer())
+                .setTopK(history.getTopK())
+                .setSourceCount(history.getSourceCount())
+                .setTimestamp(history.getTimestamp().toString());
+        if (history.getExecutionTimeMs() != null) {
+            entry.setExecutionTimeMs(history.getExecutionTimeMs());
+        }
+        return entry.build();
+    }
+
+    private static String blankToNull(String value) {
+        return value.isBlank() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
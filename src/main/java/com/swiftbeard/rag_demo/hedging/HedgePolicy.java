@@ -0,0 +1,28 @@
+package com.swiftbeard.rag_demo.hedging;
+
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+// Deadline and hedging settings for one call stage. A hedge is sent once the first request has
+// been outstanding for the given percentile of recent latencies, clamped to [minDelay, maxDelay];
+// maxDelay is also used until enough latencies have been seen.
+public record HedgePolicy(Duration timeout,
+                          boolean hedgeEnabled,
+                          double percentile,
+                          Duration minDelay,
+                          Duration maxDelay,
+                          boolean cancelLoser) {
+
+    // Reads <prefix>.timeout and <prefix>.hedge.*, e.g. rag.calls.chat.timeout
+    public static HedgePolicy from(Environment environment, String prefix, Duration defaultTimeout,
+                                   Duration defaultMinDelay, Duration defaultMaxDelay) {
+        return new HedgePolicy(
+                environment.getProperty(prefix + ".timeout", Duration.class, defaultTimeout),
+                environment.getProperty(prefix + ".hedge.enabled", Boolean.class, true),
+                environment.getProperty(prefix + ".hedge.percentile", Double.class, 0.95),
+                environment.getProperty(prefix + ".hedge.min-delay", Duration.class, defaultMinDelay),
+                environment.getProperty(prefix + ".hedge.max-delay", Duration.class, defaultMaxDelay),
+                environment.getProperty(prefix + ".hedge.cancel-loser", Boolean.class, true));
+    }
+}
@@ -0,0 +1,188 @@
+package com.swiftbeard.rag_demo.hedging;
+
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Runs the calls of one stage (chat, embedding) under a deadline. If the first request has not
+// answered within the hedge delay, a second one is sent and whichever answers first wins; the
+// other is cancelled. Each attempt runs on its own virtual thread so the caller can stop
+// waiting at the deadline. The deadline is the stage's timeout, or the request's RequestDeadline
+// if that comes first.
+public class Hedger implements Closeable {
+
+    private static final int WINDOW_SIZE = 1000;
+    private static final int MIN_SAMPLES = 20;
+
+    private final String stage;
+    private final HedgePolicy policy;
+    private final LatencyWindow latencies;
+    private final ExecutorService attempts = Executors.newVirtualThreadPerTaskExecutor();
+    private final Counter calls;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+    private final Timer saved;
+    private final Map<String, Timer> latencyByOutcome = new HashMap<>();
+
+    public Hedger(String stage, HedgePolicy policy, MeterRegistry meterRegistry) {
+        this.stage = stage;
+        this.policy = policy;
+        this.latencies = new LatencyWindow(WINDOW_SIZE, MIN_SAMPLES, policy.percentile());
+        this.calls = Counter.builder("rag.hedge.calls").tag("stage", stage).register(meterRegistry);
+        this.hedges = Counter.builder("rag.hedge.sent")
+                .description("Duplicate requests sent because the first one was slow")
+                .tag("stage", stage).register(meterRegistry);
+        this.hedgeWins = Counter.builder("rag.hedge.wins")
+                .description("Calls answered by the hedge rather than the first request")
+                .tag("stage", stage).register(meterRegistry);
+        this.saved = Timer.builder("rag.hedge.saved")
+                .description("How much later the first request answered than the hedge that beat it; "
+                        + "a lower bound when the first request was cancelled")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .tag("stage", stage).register(meterRegistry);
+        Gauge.builder("rag.hedge.delay", this, hedger -> hedger.hedgeDelayNanos() / 1e6)
+                .description("Current hedge delay in milliseconds")
+                .tag("stage", stage).register(meterRegistry);
+        for (String outcome : List.of("success", "timeout", "error")) {
+            latencyByOutcome.put(outcome, Timer.builder("rag.call.latency")
+                    .tag("stage", stage)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+        }
+    }
+
+    public <T> T call(Supplier<T> primary) {
+        return call(primary, primary);
+    }
+
+    public <T> T call(Supplier<T> primary, Supplier<T> hedge) {
+        RequestDeadline.check(stage);
+        calls.increment();
+        long start = System.nanoTime();
+        long deadline = start + Math.min(policy.timeout().toNanos(), RequestDeadline.remainingNanos());
+        CompletableFuture<Answer<T>> first = new CompletableFuture<>();
+        AtomicInteger launched = new AtomicInteger(1);
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>(2);
+        running.add(attempts.submit(() -> attempt(primary, false, start, first, launched, failed)));
+
+        String outcome = "error";
+        Answer<T> winner = null;
+        try {
+            long hedgeAt = start + hedgeDelayNanos();
+            if (policy.hedgeEnabled() && hedgeAt < deadline) {
+                try {
+                    winner = first.get(hedgeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    outcome = "success";
+                    return winner.value();
+                } catch (TimeoutException e) {
+                    hedges.increment();
+                    launched.incrementAndGet();
+                    long hedgeStart = System.nanoTime();
+                    running.add(attempts.submit(() -> attempt(hedge, true, hedgeStart, first, launched, failed)));
+                }
+            }
+
+            winner = first.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (winner.hedge()) {
+                hedgeWins.increment();
+            }
+            outcome = "success";
+            return winner.value();
+        } catch (TimeoutException e) {
+            outcome = "timeout";
+            throw new StageTimeoutException("The " + stage + " call did not answer within "
+                    + Duration.ofNanos(deadline - start));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StageTimeoutException("Interrupted waiting for the " + stage + " call");
+        } finally {
+            long now = System.nanoTime();
+            // The loser may be left to finish so rag.hedge.saved can measure it
+            if (policy.cancelLoser() || !"success".equals(outcome)) {
+                // A first request cancelled while still running took at least this long. Without
+                // it the window would only see the fast calls and the hedge delay would drift low.
+                boolean primaryLost = winner != null ? winner.hedge() : "timeout".equals(outcome);
+                // Settles first so a cancelled attempt that still returns does not record itself again
+                first.cancel(false);
+                if (primaryLost && policy.cancelLoser() && running.get(0).cancel(true)) {
+                    latencies.record(now - start);
+                    if (winner != null) {
+                        saved.record(now - winner.finishedAt(), TimeUnit.NANOSECONDS);
+                    }
+                }
+                running.forEach(future -> future.cancel(true));
+            }
+            latencyByOutcome.get(outcome).record(now - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        attempts.shutdownNow();
+    }
+
+    long hedgeDelayNanos() {
+        long observed = latencies.percentile();
+        long min = policy.minDelay().toNanos();
+        long max = policy.maxDelay().toNanos();
+        return observed < 0 ? max : Math.max(min, Math.min(observed, max));
+    }
+
+    private <T> void attempt(Supplier<T> call, boolean hedge, long startedAt, CompletableFuture<Answer<T>> first,
+                             AtomicInteger launched, AtomicInteger failed) {
+        T value;
+        try {
+            value = call.get();
+        } catch (Throwable e) {
+            // Only fail the call once every request that was sent has failed
+            if (failed.incrementAndGet() >= launched.get()) {
+                first.completeExceptionally(e);
+            }
+            return;
+        }
+
+        long finishedAt = System.nanoTime();
+        if (policy.cancelLoser() && first.isDone()) {
+            // Lost and was cancelled; call() recorded how long it had run
+            return;
+        }
+        latencies.record(finishedAt - startedAt);
+        if (!first.complete(new Answer<>(value, hedge, finishedAt)) && !hedge && !first.isCompletedExceptionally()) {
+            Answer<T> winner = first.join();
+            if (winner.hedge()) {
+                saved.record(finishedAt - winner.finishedAt(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private record Answer<T>(T value, boolean hedge, long finishedAt) {
+    }
+}
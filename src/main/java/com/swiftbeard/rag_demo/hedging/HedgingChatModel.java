@@ -0,0 +1,56 @@
+package com.swiftbeard.rag_demo.hedging;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+// Puts chat calls under the chat stage's deadline and hedging. The hedge can go to an alternate
+// model on the same endpoint; otherwise it repeats the same request. Streaming is passed through.
+public class HedgingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final Hedger hedger;
+    private final String alternateModel;
+
+    public HedgingChatModel(ChatModel delegate, Hedger hedger, String alternateModel) {
+        this.delegate = delegate;
+        this.hedger = hedger;
+        this.alternateModel = alternateModel;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        if (alternateModel == null || alternateModel.isBlank()) {
+            return hedger.call(() -> delegate.call(prompt));
+        }
+        Prompt alternate = withModel(prompt, alternateModel);
+        return hedger.call(() -> delegate.call(prompt), () -> delegate.call(alternate));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return delegate.stream(prompt);
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private Prompt withModel(Prompt prompt, String model) {
+        ChatOptions options = prompt.getOptions() != null ? prompt.getOptions() : delegate.getDefaultOptions();
+        ChatOptions alternate = ChatOptions.builder()
+                .model(model)
+                .temperature(options.getTemperature())
+                .topP(options.getTopP())
+                .topK(options.getTopK())
+                .maxTokens(options.getMaxTokens())
+                .frequencyPenalty(options.getFrequencyPenalty())
+                .presencePenalty(options.getPresencePenalty())
+                .stopSequences(options.getStopSequences())
+                .build();
+        return new Prompt(prompt.getInstructions(), alternate);
+    }
+}
@@ -0,0 +1,42 @@
+package com.swiftbeard.rag_demo.hedging;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+// Puts query embedding calls under the embedding stage's deadline and hedging. Requests with
+// more than maxInputs texts are ingestion batches, which are expected to be slow and go
+// straight to the delegate.
+public class HedgingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingModel alternate;
+    private final Hedger hedger;
+    private final int maxInputs;
+
+    public HedgingEmbeddingModel(EmbeddingModel delegate, EmbeddingModel alternate, Hedger hedger, int maxInputs) {
+        this.delegate = delegate;
+        this.alternate = alternate;
+        this.hedger = hedger;
+        this.maxInputs = maxInputs;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (request.getInstructions().size() > maxInputs) {
+            return delegate.call(request);
+        }
+        return hedger.call(() -> delegate.call(request), () -> alternate.call(request));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,50 @@
+package com.swiftbeard.rag_demo.hedging;
+
+import java.util.Arrays;
+
+// The most recent latencies of one call stage, used to pick the hedge delay. The percentile is
+// recomputed once enough samples have been recorded and then every refreshEvery samples, on the
+// recording thread and outside the lock, so reading it is a volatile read rather than a sort.
+class LatencyWindow {
+
+    private final long[] samples;
+    private final int minSamples;
+    private final double percentile;
+    private final int refreshEvery;
+    private int next;
+    private int size;
+    private int sinceRefresh;
+
+    private volatile long current = -1;
+
+    LatencyWindow(int capacity, int minSamples, double percentile) {
+        this.samples = new long[capacity];
+        this.minSamples = minSamples;
+        this.percentile = percentile;
+        this.refreshEvery = Math.max(1, capacity / 20);
+    }
+
+    void record(long nanos) {
+        long[] snapshot = null;
+        synchronized (this) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+            sinceRefresh++;
+            if (size >= minSamples && (current < 0 || sinceRefresh >= refreshEvery)) {
+                snapshot = Arrays.copyOf(samples, size);
+                sinceRefresh = 0;
+            }
+        }
+        if (snapshot != null) {
+            Arrays.sort(snapshot);
+            int index = (int) Math.ceil(percentile * snapshot.length) - 1;
+            current = snapshot[Math.max(0, Math.min(index, snapshot.length - 1))];
+        }
+    }
+
+    // Returns -1 until there are enough samples for the percentile to mean something
+    long percentile() {
+        return current;
+    }
+}
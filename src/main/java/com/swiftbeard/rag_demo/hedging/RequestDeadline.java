@@ -0,0 +1,44 @@
+package com.swiftbeard.rag_demo.hedging;
+
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+
+import java.util.function.Supplier;
+
+// The deadline of the request being served on the calling thread, for callers that have one,
+// such as gRPC clients. Hedger caps each stage's timeout at the time left, and the RAG pipeline
+// checks it before each stage, so a request whose caller has given up stops at the next stage
+// instead of running to completion. Deadlines nest; the earliest one applies.
+public final class RequestDeadline {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    // deadlineNanos is a System.nanoTime() value
+    public static <T> T run(long deadlineNanos, Supplier<T> task) {
+        Long previous = CURRENT.get();
+        CURRENT.set(previous != null && previous - deadlineNanos < 0 ? previous : deadlineNanos);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    // Long.MAX_VALUE without a deadline; zero or less once it has passed
+    public static long remainingNanos() {
+        Long deadline = CURRENT.get();
+        return deadline != null ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    public static void check(String stage) {
+        if (remainingNanos() <= 0) {
+            throw new StageTimeoutException("The request deadline passed before the " + stage + " stage");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.swiftbeard.rag_demo.limiter;
+
+import com.swiftbeard.rag_demo.exception.BulkheadFullException;
+import com.swiftbeard.rag_demo.exception.ConcurrencyLimitExceededException;
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Caps concurrent /ai/rag requests at a limit that follows observed latency, using a gradient
+// algorithm: while recent latency stays near the long-term baseline the limit grows by about
+// sqrt(limit) per sample; as latency rises above baseline x tolerance the limit shrinks in
+// proportion. Timeouts and saturated bulkheads cut the limit by 10%. Requests over their
+// priority's share of the limit are rejected immediately instead of queueing.
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double SHORT_ALPHA = 0.2;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double longAlpha;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Priority, Counter> rejected = new EnumMap<>(Priority.class);
+    private final Timer latency;
+
+    private volatile double limit;
+    private double longRttNanos;
+    private double shortRttNanos;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${rag.limiter.initial-limit:20}") int initialLimit,
+                                      @Value("${rag.limiter.min-limit:4}") int minLimit,
+                                      @Value("${rag.limiter.max-limit:200}") int maxLimit,
+                                      @Value("${rag.limiter.tolerance:1.5}") double tolerance,
+                                      @Value("${rag.limiter.baseline-window:500}") int baselineWindow) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.longAlpha = 2.0 / (baselineWindow + 1);
+
+        Gauge.builder("rag.limiter.limit", this, limiter -> limiter.limit)
+                .description("Current concurrency limit for /ai/rag")
+                .register(meterRegistry);
+        Gauge.builder("rag.limiter.in-flight", inFlight, AtomicInteger::get)
+                .register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            rejected.put(priority, Counter.builder("rag.limiter.rejected")
+                    .tag("priority", priority.key())
+                    .register(meterRegistry));
+        }
+        this.latency = Timer.builder("rag.limiter.latency")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Priority priority, Supplier<T> task) {
+        int admitted = acquire(priority);
+        long start = System.nanoTime();
+        try {
+            T result = task.get();
+            onSample(System.nanoTime() - start, admitted);
+            return result;
+        } catch (StageTimeoutException | BulkheadFullException e) {
+            onDrop();
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    private int acquire(Priority priority) {
+        int allowed = Math.max(1, (int) (limit * priority.share()));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                rejected.get(priority).increment();
+                throw new ConcurrencyLimitExceededException(
+                        "Server is at its concurrency limit for " + priority.key() + " priority requests");
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        latency.record(rttNanos, TimeUnit.NANOSECONDS);
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+            shortRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos = SHORT_ALPHA * rttNanos + (1 - SHORT_ALPHA) * shortRttNanos;
+        longRttNanos = longAlpha * rttNanos + (1 - longAlpha) * longRttNanos;
+
+        // After a sustained drop in latency, let the baseline catch up quickly
+        if (longRttNanos / shortRttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        // Not enough load to tell whether a higher limit would be safe
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = clamp((1 - SMOOTHING) * limit + SMOOTHING * newLimit);
+    }
+
+    private synchronized void onDrop() {
+        limit = clamp(limit * BACKOFF);
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
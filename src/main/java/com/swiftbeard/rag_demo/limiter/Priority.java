@@ -0,0 +1,32 @@
+package com.swiftbeard.rag_demo.limiter;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.Locale;
+
+// Priority classes for /ai/rag. Each class may only use its share of the concurrency limit,
+// so as the limit shrinks low-priority requests are shed first and high-priority ones last.
+public enum Priority {
+    HIGH(1.0),
+    NORMAL(0.9),
+    LOW(0.5);
+
+    private final double share;
+
+    Priority(double share) {
+        this.share = share;
+    }
+
+    public double share() {
+        return share;
+    }
+
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    @JsonCreator
+    public static Priority from(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,15 @@
+package com.swiftbeard.rag_demo.model;
+
+import java.util.List;
+
+// One result line of /ai/rag/batch; index is the position of the question in the request
+public record BatchAnswer(int index, String answer, List<SourceCitation> sources, String error) {
+
+    public static BatchAnswer success(int index, RagResponse response) {
+        return new BatchAnswer(index, response.getAnswer(), response.getSources(), null);
+    }
+
+    public static BatchAnswer failure(int index, String error) {
+        return new BatchAnswer(index, null, List.of(), error);
+    }
+}
@@ -0,0 +1,29 @@
+package com.swiftbeard.rag_demo.model;
+
+import java.util.List;
+
+public record BulkUploadResponse(
+        List<FileUploadResult> results,
+        int fileCount,
+        int succeeded,
+        int failed,
+        int totalChunks,
+        long elapsedMs,
+        double filesPerSecond,
+        double chunksPerSecond) {
+
+    public static BulkUploadResponse of(List<FileUploadResult> results, long elapsedMs) {
+        int succeeded = (int) results.stream().filter(FileUploadResult::success).count();
+        int totalChunks = results.stream().mapToInt(FileUploadResult::chunkCount).sum();
+        double seconds = Math.max(elapsedMs, 1) / 1000.0;
+        return new BulkUploadResponse(
+                results,
+                results.size(),
+                succeeded,
+                results.size() - succeeded,
+                totalChunks,
+                elapsedMs,
+                results.size() / seconds,
+                totalChunks / seconds);
+    }
+}
@@ -0,0 +1,72 @@
+package com.swiftbeard.rag_demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// One retrieved chunk a query cited, a row of the query_citation link table. Only ids are kept:
+// the chunk's text stays in the vector store and its document's details in document_metadata.
+@Embeddable
+public class CitedChunk {
+
+    @Column(nullable = false)
+    private UUID chunkId;
+
+    // Null for chunks of the seed corpus, which are not uploaded documents
+    @Column
+    private Long documentId;
+
+    // Default constructor required by JPA
+    public CitedChunk() {
+    }
+
+    public CitedChunk(UUID chunkId, Long documentId) {
+        this.chunkId = chunkId;
+        this.documentId = documentId;
+    }
+
+    // The chunks in rank order; PgVectorStore ids are UUIDs, chunks with other ids are left out
+    public static List<CitedChunk> of(List<Document> chunks) {
+        List<CitedChunk> cited = new ArrayList<>(chunks.size());
+        for (Document chunk : chunks) {
+            try {
+                cited.add(new CitedChunk(UUID.fromString(chunk.getId()), documentId(chunk)));
+            } catch (IllegalArgumentException e) {
+                // Not a vector store row
+            }
+        }
+        return cited;
+    }
+
+    private static Long documentId(Document chunk) {
+        Object documentId = chunk.getMetadata().get("document_id");
+        if (documentId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(documentId.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public UUID getChunkId() {
+        return chunkId;
+    }
+
+    public void setChunkId(UUID chunkId) {
+        this.chunkId = chunkId;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+}
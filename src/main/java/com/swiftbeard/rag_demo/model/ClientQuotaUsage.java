@@ -0,0 +1,103 @@
+package com.swiftbeard.rag_demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "client_quota_usage")
+public class ClientQuotaUsage {
+
+    // SHA-256 of the API key, so keys are never stored
+    @Id
+    @Column(length = 64)
+    private String clientId;
+
+    @Column(nullable = false)
+    private Double requestBalance;
+
+    @Column(nullable = false)
+    private Double tokenBalance;
+
+    @Column(nullable = false)
+    private Long totalRequests;
+
+    @Column(nullable = false)
+    private Long totalPromptTokens;
+
+    @Column(nullable = false)
+    private Long totalCompletionTokens;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Default constructor required by JPA
+    public ClientQuotaUsage() {
+    }
+
+    public ClientQuotaUsage(String clientId, Double requestBalance, Double tokenBalance, Long totalRequests,
+                            Long totalPromptTokens, Long totalCompletionTokens) {
+        this.clientId = clientId;
+        this.requestBalance = requestBalance;
+        this.tokenBalance = tokenBalance;
+        this.totalRequests = totalRequests;
+        this.totalPromptTokens = totalPromptTokens;
+        this.totalCompletionTokens = totalCompletionTokens;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public Double getRequestBalance() {
+        return requestBalance;
+    }
+
+    public void setRequestBalance(Double requestBalance) {
+        this.requestBalance = requestBalance;
+    }
+
+    public Double getTokenBalance() {
+        return tokenBalance;
+    }
+
+    public void setTokenBalance(Double tokenBalance) {
+        this.tokenBalance = tokenBalance;
+    }
+
+    public Long getTotalRequests() {
+        return totalRequests;
+    }
+
+    public void setTotalRequests(Long totalRequests) {
+        this.totalRequests = totalRequests;
+    }
+
+    public Long getTotalPromptTokens() {
+        return totalPromptTokens;
+    }
+
+    public void setTotalPromptTokens(Long totalPromptTokens) {
+        this.totalPromptTokens = totalPromptTokens;
+    }
+
+    public Long getTotalCompletionTokens() {
+        return totalCompletionTokens;
+    }
+
+    public void setTotalCompletionTokens(Long totalCompletionTokens) {
+        this.totalCompletionTokens = totalCompletionTokens;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,13 @@
+package com.swiftbeard.rag_demo.model;
+
+public record ClientUsage(String client,
+                          long requestsAvailable,
+                          int requestsPerMinute,
+                          int requestBurst,
+                          long tokensAvailable,
+                          long tokensPerHour,
+                          long tokenBurst,
+                          long totalRequests,
+                          long totalPromptTokens,
+                          long totalCompletionTokens) {
+}
@@ -26,6 +26,16 @@ public class DocumentMetadata {
     @Column(nullable = false)
     private LocalDateTime uploadedAt;
 
+    // Set only for documents ingested from a watched directory
+    @Column(length = 1024)
+    private String sourcePath;
+
+    @Column
+    private Long lastModified;
+
+    @Column(length = 64)
+    private String contentHash;
+
     // Default constructor required by JPA
     public DocumentMetadata() {
     }
@@ -85,4 +95,28 @@ public class DocumentMetadata {
     public void setUploadedAt(LocalDateTime uploadedAt) {
         this.uploadedAt = uploadedAt;
     }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public void setSourcePath(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
 }
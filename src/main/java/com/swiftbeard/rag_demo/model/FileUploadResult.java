@@ -0,0 +1,12 @@
+package com.swiftbeard.rag_demo.model;
+
+public record FileUploadResult(String filename, boolean success, Long documentId, int chunkCount, String error) {
+
+    public static FileUploadResult succeeded(String filename, Long documentId, int chunkCount) {
+        return new FileUploadResult(filename, true, documentId, chunkCount, null);
+    }
+
+    public static FileUploadResult failed(String filename, String error) {
+        return new FileUploadResult(filename, false, null, 0, error);
+    }
+}
@@ -0,0 +1,12 @@
+package com.swiftbeard.rag_demo.model;
+
+// A chunk of /ai/hot/chunks: how many answers cited it in the window, and whether this instance
+// currently holds it in its hot-chunk cache. documentId is null for seed corpus chunks;
+// filename and preview are null once the chunk has been deleted.
+public record HotChunk(String chunkId,
+                       Long documentId,
+                       String filename,
+                       String preview,
+                       long citations,
+                       boolean cached) {
+}
@@ -0,0 +1,9 @@
+package com.swiftbeard.rag_demo.model;
+
+// A document of /ai/hot/documents: how many times its chunks were cited in the window, and how
+// many different chunks that was
+public record HotDocument(Long documentId,
+                          String filename,
+                          long citations,
+                          long chunks) {
+}
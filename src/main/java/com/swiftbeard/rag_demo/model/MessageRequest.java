@@ -1,10 +1,30 @@
 package com.swiftbeard.rag_demo.model;
 
-public record MessageRequest(String message, Integer topK) {
+import com.swiftbeard.rag_demo.limiter.Priority;
+
+// tier picks one of rag.tiers.definitions; model, maxTokens and temperature override single
+// settings of that tier. Requests sharing a sessionId form a conversation.
+public record MessageRequest(String message,
+                             Integer topK,
+                             Priority priority,
+                             String template,
+                             String tier,
+                             String model,
+                             Integer maxTokens,
+                             Double temperature,
+                             String sessionId) {
 
     // Constructor with default topK value
     public MessageRequest(String message) {
-        this(message, null);
+        this(message, null, null, null, null, null, null, null, null);
+    }
+
+    public MessageRequest(String message, Integer topK) {
+        this(message, topK, null, null, null, null, null, null, null);
+    }
+
+    public MessageRequest(String message, Integer topK, Priority priority) {
+        this(message, topK, priority, null, null, null, null, null, null);
     }
 
     // Validation method
@@ -20,4 +40,8 @@ public record MessageRequest(String message, Integer topK) {
         }
         return topK;
     }
+
+    public Priority getValidatedPriority() {
+        return priority != null ? priority : Priority.NORMAL;
+    }
 }
@@ -0,0 +1,91 @@
+package com.swiftbeard.rag_demo.model;
+
+import jakarta.persistence.*;
+
+// A large section of a document that small-to-big retrieval sends to the LLM in place of the
+// small child chunks that were embedded and matched. Offsets are character positions in the
+// document's extracted text, with pages joined by a newline.
+@Entity
+@Table(name = "parent_chunk",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"documentId", "startOffset"}))
+public class ParentChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long documentId;
+
+    @Column(nullable = false)
+    private Integer startOffset;
+
+    @Column(nullable = false)
+    private Integer endOffset;
+
+    @Column
+    private Integer pageNumber;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String content;
+
+    // Default constructor required by JPA
+    public ParentChunk() {
+    }
+
+    public ParentChunk(Long documentId, Integer startOffset, Integer endOffset, Integer pageNumber, String content) {
+        this.documentId = documentId;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.pageNumber = pageNumber;
+        this.content = content;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public Integer getStartOffset() {
+        return startOffset;
+    }
+
+    public void setStartOffset(Integer startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public Integer getEndOffset() {
+        return endOffset;
+    }
+
+    public void setEndOffset(Integer endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    public Integer getPageNumber() {
+        return pageNumber;
+    }
+
+    public void setPageNumber(Integer pageNumber) {
+        this.pageNumber = pageNumber;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
@@ -1,8 +1,14 @@
 package com.swiftbeard.rag_demo.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
+// Property order fixes the protobuf field numbers (1, 2, ...); only append new properties
+@JsonPropertyOrder({"id", "query", "answer", "topK", "sourceCount", "timestamp", "executionTimeMs"})
 @Entity
 @Table(name = "query_history")
 public class QueryHistory {
@@ -29,6 +35,14 @@ public class QueryHistory {
     @Column
     private Long executionTimeMs;
 
+    // The retrieved chunks behind the answer, in rank order, kept in the query_citation link
+    // table. Not part of the API responses; /ai/hot/* aggregates them instead.
+    @JsonIgnore
+    @ElementCollection
+    @CollectionTable(name = "query_citation", joinColumns = @JoinColumn(name = "query_id"))
+    @OrderColumn(name = "citation_rank")
+    private List<CitedChunk> citations = new ArrayList<>();
+
     // Default constructor required by JPA
     public QueryHistory() {
     }
@@ -97,4 +111,12 @@ public class QueryHistory {
     public void setExecutionTimeMs(Long executionTimeMs) {
         this.executionTimeMs = executionTimeMs;
     }
+
+    public List<CitedChunk> getCitations() {
+        return citations;
+    }
+
+    public void setCitations(List<CitedChunk> citations) {
+        this.citations = citations;
+    }
 }
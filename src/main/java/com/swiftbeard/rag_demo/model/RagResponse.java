@@ -1,7 +1,11 @@
 package com.swiftbeard.rag_demo.model;
 
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
 import java.util.List;
 
+// Property order fixes the protobuf field numbers (1, 2, ...); only append new properties
+@JsonPropertyOrder({"answer", "sources", "sourceCount"})
 public class RagResponse {
 
     private String answer;
@@ -0,0 +1,152 @@
+package com.swiftbeard.rag_demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Progress of a re-embedding run into one shadow table, so a run can resume where it stopped
+@Entity
+@Table(name = "reembedding_checkpoint")
+public class ReembeddingCheckpoint {
+
+    public enum Status {
+        RUNNING,
+        PAUSED,
+        FAILED,
+        SWITCHED
+    }
+
+    @Id
+    private String targetTable;
+
+    @Column(nullable = false)
+    private String sourceTable;
+
+    @Column(nullable = false)
+    private String model;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    // Highest chunk id copied so far; chunks are copied in id order
+    private String lastId;
+
+    @Column(nullable = false)
+    private Long copied;
+
+    @Column(nullable = false)
+    private Long total;
+
+    private String error;
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime switchedAt;
+
+    // Default constructor required by JPA
+    public ReembeddingCheckpoint() {
+    }
+
+    public ReembeddingCheckpoint(String targetTable, String sourceTable, String model) {
+        this.targetTable = targetTable;
+        this.sourceTable = sourceTable;
+        this.model = model;
+        this.status = Status.RUNNING;
+        this.copied = 0L;
+        this.total = 0L;
+        this.startedAt = LocalDateTime.now();
+        this.updatedAt = this.startedAt;
+    }
+
+    public String getTargetTable() {
+        return targetTable;
+    }
+
+    public void setTargetTable(String targetTable) {
+        this.targetTable = targetTable;
+    }
+
+    public String getSourceTable() {
+        return sourceTable;
+    }
+
+    public void setSourceTable(String sourceTable) {
+        this.sourceTable = sourceTable;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(String lastId) {
+        this.lastId = lastId;
+    }
+
+    public Long getCopied() {
+        return copied;
+    }
+
+    public void setCopied(Long copied) {
+        this.copied = copied;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getSwitchedAt() {
+        return switchedAt;
+    }
+
+    public void setSwitchedAt(LocalDateTime switchedAt) {
+        this.switchedAt = switchedAt;
+    }
+}
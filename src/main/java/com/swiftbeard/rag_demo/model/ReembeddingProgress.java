@@ -0,0 +1,17 @@
+package com.swiftbeard.rag_demo.model;
+
+import java.time.LocalDateTime;
+
+public record ReembeddingProgress(String status,
+                                  String sourceTable,
+                                  String targetTable,
+                                  String model,
+                                  long copied,
+                                  long total,
+                                  double percentComplete,
+                                  double chunksPerSecond,
+                                  boolean serving,
+                                  String error,
+                                  LocalDateTime startedAt,
+                                  LocalDateTime updatedAt) {
+}
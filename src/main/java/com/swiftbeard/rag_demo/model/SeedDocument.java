@@ -0,0 +1,66 @@
+package com.swiftbeard.rag_demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "seed_document")
+public class SeedDocument {
+
+    // Stable key of the seed entry: the JSONL id or the file path relative to the seed directory
+    @Id
+    @Column(length = 1024)
+    private String id;
+
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private Integer chunkCount;
+
+    @Column(nullable = false)
+    private LocalDateTime loadedAt;
+
+    // Default constructor required by JPA
+    public SeedDocument() {
+    }
+
+    public SeedDocument(String id, String contentHash, Integer chunkCount) {
+        this.id = id;
+        this.contentHash = contentHash;
+        this.chunkCount = chunkCount;
+        this.loadedAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Integer getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(Integer chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    public void setLoadedAt(LocalDateTime loadedAt) {
+        this.loadedAt = loadedAt;
+    }
+}
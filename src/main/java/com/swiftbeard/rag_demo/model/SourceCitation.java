@@ -1,5 +1,9 @@
 package com.swiftbeard.rag_demo.model;
 
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// Property order fixes the protobuf field numbers (1, 2, ...); only append new properties
+@JsonPropertyOrder({"documentId", "filename", "content", "similarityScore"})
 public class SourceCitation {
 
     private String documentId;
@@ -0,0 +1,114 @@
+package com.swiftbeard.rag_demo.prompt;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A system prompt template split once into its literal text around each {information}
+// placeholder, so rendering is only appends. Platform threads render into a reused buffer and
+// allocate nothing but the returned string; virtual threads, which do not live long enough to
+// reuse one, get a buffer sized exactly for the result.
+public final class CompiledTemplate {
+
+    public static final String INFORMATION = "information";
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+    private final String name;
+    private final String[] literals;
+    private final int literalLength;
+
+    private CompiledTemplate(String name, String[] literals) {
+        this.name = name;
+        this.literals = literals;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    // Accepts StringTemplate-style {information} placeholders; \{ and \} stand for literal braces
+    public static CompiledTemplate compile(String name, String source) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\\' && i + 1 < source.length() && (source.charAt(i + 1) == '{' || source.charAt(i + 1) == '}')) {
+                literal.append(source.charAt(i + 1));
+                i += 2;
+            } else if (c == '{') {
+                int end = source.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Template " + name + " has an unclosed { at offset " + i);
+                }
+                String variable = source.substring(i + 1, end).trim();
+                if (!variable.equals(INFORMATION)) {
+                    throw new IllegalArgumentException("Template " + name + " uses unknown variable {" + variable
+                            + "}; only {" + INFORMATION + "} is available");
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+        return new CompiledTemplate(name, literals.toArray(String[]::new));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // Fills each {information} with the texts of the documents, one per line
+    public String render(List<Document> documents) {
+        if (Thread.currentThread().isVirtual()) {
+            return renderInto(new StringBuilder(length(documents)), documents).toString();
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        String rendered = renderInto(buffer, documents).toString();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return rendered;
+    }
+
+    private StringBuilder renderInto(StringBuilder out, List<Document> documents) {
+        out.append(literals[0]);
+        for (int i = 1; i < literals.length; i++) {
+            appendInformation(out, documents);
+            out.append(literals[i]);
+        }
+        return out;
+    }
+
+    private static void appendInformation(StringBuilder out, List<Document> documents) {
+        for (int i = 0; i < documents.size(); i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            String text = documents.get(i).getText();
+            if (text != null) {
+                out.append(text);
+            }
+        }
+    }
+
+    private int length(List<Document> documents) {
+        int information = Math.max(0, documents.size() - 1);
+        for (int i = 0; i < documents.size(); i++) {
+            String text = documents.get(i).getText();
+            information += text != null ? text.length() : 0;
+        }
+        return literalLength + information * (literals.length - 1);
+    }
+}
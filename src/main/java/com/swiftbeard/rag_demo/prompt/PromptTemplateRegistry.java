@@ -0,0 +1,163 @@
+package com.swiftbeard.rag_demo.prompt;
+
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.exception.PromptTemplateNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The system prompt templates, one per *.st file under rag.prompts.location and named after
+// the file. Each is compiled once when loaded. Files are checked every reload-interval and
+// changed ones recompiled; a template that no longer compiles keeps its previous version.
+@Component
+public class PromptTemplateRegistry implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptTemplateRegistry.class);
+
+    private final ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+    private final String location;
+    private final String defaultTemplate;
+    private final Duration reloadInterval;
+
+    private volatile Map<String, Loaded> templates = Map.of();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public PromptTemplateRegistry(@Value("${rag.prompts.location:classpath:/prompts/}") String location,
+                                  @Value("${rag.prompts.default-template:detailed}") String defaultTemplate,
+                                  @Value("${rag.prompts.reload-interval:5s}") Duration reloadInterval) {
+        this.location = location.endsWith("/") ? location : location + "/";
+        this.defaultTemplate = defaultTemplate;
+        this.reloadInterval = reloadInterval;
+        reload();
+        if (!templates.containsKey(defaultTemplate)) {
+            throw new IllegalStateException("Default prompt template " + defaultTemplate + " not found in "
+                    + this.location);
+        }
+    }
+
+    // The named template, or the default one when name is null or blank
+    public CompiledTemplate get(String name) {
+        String key = name == null || name.isBlank() ? defaultTemplate : name;
+        Loaded loaded = templates.get(key);
+        if (loaded == null) {
+            throw new PromptTemplateNotFoundException("Unknown prompt template: " + key
+                    + "; available: " + String.join(", ", names()));
+        }
+        return loaded.template();
+    }
+
+    public Set<String> names() {
+        return new TreeSet<>(templates.keySet());
+    }
+
+    public String defaultTemplate() {
+        return defaultTemplate;
+    }
+
+    // Recompiles templates whose files changed and picks up added and removed files
+    public synchronized void reload() {
+        Resource[] resources;
+        try {
+            resources = resolver.getResources(location + "*.st");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list prompt templates in " + location, e);
+        }
+
+        Map<String, Loaded> current = templates;
+        Map<String, Loaded> next = new HashMap<>();
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            if (filename == null) {
+                continue;
+            }
+            String name = filename.substring(0, filename.length() - ".st".length());
+            Loaded previous = current.get(name);
+            long lastModified = lastModified(resource);
+            if (previous != null && previous.lastModified() == lastModified) {
+                next.put(name, previous);
+                continue;
+            }
+            try {
+                String source = resource.getContentAsString(StandardCharsets.UTF_8);
+                next.put(name, new Loaded(CompiledTemplate.compile(name, source), lastModified));
+                if (previous != null) {
+                    log.info("Reloaded prompt template {}", name);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not load prompt template {}: {}", name, e.getMessage());
+                if (previous != null) {
+                    // Remember the broken file's timestamp so it is not retried until it changes again
+                    next.put(name, new Loaded(previous.template(), lastModified));
+                }
+            }
+        }
+        // The default template stays available even if its file disappears
+        if (!next.containsKey(defaultTemplate) && current.containsKey(defaultTemplate)) {
+            next.put(defaultTemplate, current.get(defaultTemplate));
+        }
+        templates = Map.copyOf(next);
+    }
+
+    @Override
+    public void start() {
+        if (reloadInterval.isZero() || reloadInterval.isNegative()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> Workload.ADMIN.runAs(runnable), "prompt-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = reloadInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                log.warn("Could not reload prompt templates: {}", e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private record Loaded(CompiledTemplate template, long lastModified) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.swiftbeard.rag_demo.quota;
+
+// Request-rate and LLM-token limits for one client. Null fields in a per-client override fall
+// back to rag.quota.defaults.
+public record QuotaLimits(Integer requestsPerMinute,
+                          Integer requestBurst,
+                          Long tokensPerHour,
+                          Long tokenBurst) {
+
+    static final QuotaLimits FALLBACK = new QuotaLimits(60, 20, 200_000L, 50_000L);
+
+    QuotaLimits orElse(QuotaLimits defaults) {
+        return new QuotaLimits(
+                requestsPerMinute != null ? requestsPerMinute : defaults.requestsPerMinute(),
+                requestBurst != null ? requestBurst : defaults.requestBurst(),
+                tokensPerHour != null ? tokensPerHour : defaults.tokensPerHour(),
+                tokenBurst != null ? tokenBurst : defaults.tokenBurst());
+    }
+}
@@ -0,0 +1,289 @@
+package com.swiftbeard.rag_demo.quota;
+
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.exception.QuotaExceededException;
+import com.swiftbeard.rag_demo.model.ClientQuotaUsage;
+import com.swiftbeard.rag_demo.model.ClientUsage;
+import com.swiftbeard.rag_demo.repository.ClientQuotaUsageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Per-API-key quotas on request rate and LLM tokens, each a token bucket held in memory.
+// Requests are admitted only while both buckets have balance, so a client over quota is
+// turned away before any retrieval or generation happens. Every key gets buckets of its own,
+// with the limits listed for it under rag.quota.clients or the defaults; requests without a key
+// share the anonymous quota. Balances and usage totals are written to client_quota_usage
+// periodically and on shutdown, and read back the first time a key is seen after a restart.
+// Clients idle for idle-timeout are dropped from memory, which bounds the map. Off unless
+// rag.quota.enabled is set.
+@Service
+public class QuotaService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(QuotaService.class);
+
+    public static final String ANONYMOUS = "anonymous";
+
+    private final ClientQuotaUsageRepository repository;
+    private final boolean enabled;
+    private final QuotaLimits defaults;
+    private final Map<String, QuotaLimits> overrides;
+    private final Duration persistInterval;
+    private final long idleTimeoutNanos;
+    private final Map<String, ClientQuota> clients = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public QuotaService(ClientQuotaUsageRepository repository, Environment environment) {
+        this.repository = repository;
+        Binder binder = Binder.get(environment);
+        this.enabled = environment.getProperty("rag.quota.enabled", Boolean.class, false);
+        this.defaults = binder.bind("rag.quota.defaults", QuotaLimits.class)
+                .map(limits -> limits.orElse(QuotaLimits.FALLBACK))
+                .orElse(QuotaLimits.FALLBACK);
+        this.overrides = binder.bind("rag.quota.clients", Bindable.mapOf(String.class, QuotaLimits.class))
+                .orElse(Map.of());
+        this.persistInterval = environment.getProperty("rag.quota.persist-interval", Duration.class,
+                Duration.ofSeconds(30));
+        this.idleTimeoutNanos = environment.getProperty("rag.quota.idle-timeout", Duration.class,
+                Duration.ofHours(1)).toNanos();
+    }
+
+    // Throws QuotaExceededException if the client has used up its request rate or token budget
+    public void admit(String apiKey) {
+        admit(apiKey, 1);
+    }
+
+    // Charges count requests at once, as for a batch. Only one request token has to be left;
+    // the rest may drive the balance negative like LLM tokens do, so a batch larger than the
+    // burst is still possible and the client waits for the debt to refill afterwards.
+    public void admit(String apiKey, int count) {
+        if (!enabled) {
+            return;
+        }
+        ClientQuota quota = quota(apiKey);
+        if (quota.tokens.available() <= 0) {
+            throw new QuotaExceededException("LLM token quota exceeded", quota.tokens.secondsUntil(1));
+        }
+        if (!quota.requests.tryTake(1)) {
+            throw new QuotaExceededException("Request rate quota exceeded", quota.requests.secondsUntil(1));
+        }
+        quota.requests.take(count - 1);
+        quota.addRequest(count);
+    }
+
+    // Gives back the request token of a call that was admitted here but then turned away
+    // unserved, for example by the concurrency limiter
+    public void refund(String apiKey) {
+        if (!enabled) {
+            return;
+        }
+        ClientQuota quota = quota(apiKey);
+        quota.requests.give(1);
+        quota.addRequest(-1);
+    }
+
+    // Charges the tokens a request used; the balance may go negative
+    public void record(String apiKey, TokenUsage usage) {
+        if (!enabled || usage.totalTokens() == 0) {
+            return;
+        }
+        ClientQuota quota = quota(apiKey);
+        quota.tokens.take(usage.totalTokens());
+        quota.addTokens(usage.promptTokens(), usage.completionTokens());
+    }
+
+    public ClientUsage usage(String apiKey) {
+        ClientQuota quota = quota(apiKey);
+        return new ClientUsage(describe(key(apiKey)),
+                (long) Math.floor(quota.requests.available()),
+                quota.limits.requestsPerMinute(),
+                quota.limits.requestBurst(),
+                (long) Math.floor(quota.tokens.available()),
+                quota.limits.tokensPerHour(),
+                quota.limits.tokenBurst(),
+                quota.totalRequests,
+                quota.totalPromptTokens,
+                quota.totalCompletionTokens);
+    }
+
+    // Writes the clients whose usage changed since the last write
+    public void persist() {
+        List<ClientQuotaUsage> changed = new ArrayList<>();
+        clients.values().forEach(quota -> {
+            if (quota.clearDirty()) {
+                changed.add(quota.snapshot());
+            }
+        });
+        if (!changed.isEmpty()) {
+            repository.saveAll(changed);
+        }
+    }
+
+    // Drops clients not seen for idle-timeout; their balances were written by persist()
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeoutNanos;
+        clients.entrySet().removeIf(entry -> entry.getValue().isIdleSince(cutoff));
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+                new Thread(() -> Workload.ADMIN.runAs(runnable), "quota-persist"));
+        long intervalMs = persistInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                persist();
+                evictIdle();
+            } catch (RuntimeException e) {
+                log.warn("Could not persist client quotas: {}", e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        try {
+            persist();
+        } catch (RuntimeException e) {
+            log.warn("Could not persist client quotas on shutdown: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private ClientQuota quota(String apiKey) {
+        String key = key(apiKey);
+        ClientQuota quota = clients.get(key);
+        if (quota == null) {
+            // Loaded outside the map so the database read does not block other keys' updates;
+            // if two requests race, the first one stored wins
+            ClientQuota loaded = load(key);
+            quota = clients.putIfAbsent(key, loaded);
+            if (quota == null) {
+                quota = loaded;
+            }
+        }
+        quota.touch();
+        return quota;
+    }
+
+    private String key(String apiKey) {
+        return apiKey != null && !apiKey.isBlank() ? apiKey : ANONYMOUS;
+    }
+
+    private ClientQuota load(String apiKey) {
+        QuotaLimits limits = overrides.getOrDefault(apiKey, defaults).orElse(defaults);
+        String clientId = hash(apiKey);
+        return repository.findById(clientId)
+                .map(saved -> new ClientQuota(clientId, limits, saved))
+                .orElseGet(() -> new ClientQuota(clientId, limits, null));
+    }
+
+    private static String describe(String apiKey) {
+        if (ANONYMOUS.equals(apiKey)) {
+            return ANONYMOUS;
+        }
+        return apiKey.length() <= 4 ? "****" : apiKey.substring(0, 4) + "****";
+    }
+
+    private static String hash(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class ClientQuota {
+
+        private final String clientId;
+        private final QuotaLimits limits;
+        private final TokenBucket requests;
+        private final TokenBucket tokens;
+        private long totalRequests;
+        private long totalPromptTokens;
+        private long totalCompletionTokens;
+        private boolean dirty;
+        private volatile long lastUsed = System.nanoTime();
+
+        ClientQuota(String clientId, QuotaLimits limits, ClientQuotaUsage saved) {
+            this.clientId = clientId;
+            this.limits = limits;
+            double requestRate = limits.requestsPerMinute() / 60.0;
+            double tokenRate = limits.tokensPerHour() / 3600.0;
+            if (saved == null) {
+                this.requests = new TokenBucket(limits.requestBurst(), requestRate, limits.requestBurst());
+                this.tokens = new TokenBucket(limits.tokenBurst(), tokenRate, limits.tokenBurst());
+                return;
+            }
+            // Refill for the time the application was down
+            double downSeconds = Math.max(0, Duration.between(saved.getUpdatedAt(), LocalDateTime.now()).toSeconds());
+            this.requests = new TokenBucket(limits.requestBurst(), requestRate,
+                    saved.getRequestBalance() + downSeconds * requestRate);
+            this.tokens = new TokenBucket(limits.tokenBurst(), tokenRate,
+                    saved.getTokenBalance() + downSeconds * tokenRate);
+            this.totalRequests = saved.getTotalRequests();
+            this.totalPromptTokens = saved.getTotalPromptTokens();
+            this.totalCompletionTokens = saved.getTotalCompletionTokens();
+        }
+
+        synchronized void addRequest(int count) {
+            totalRequests += count;
+            dirty = true;
+        }
+
+        void touch() {
+            lastUsed = System.nanoTime();
+        }
+
+        synchronized boolean isIdleSince(long cutoff) {
+            return !dirty && lastUsed - cutoff < 0;
+        }
+
+        synchronized void addTokens(long prompt, long completion) {
+            totalPromptTokens += prompt;
+            totalCompletionTokens += completion;
+            dirty = true;
+        }
+
+        synchronized boolean clearDirty() {
+            boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        synchronized ClientQuotaUsage snapshot() {
+            return new ClientQuotaUsage(clientId, requests.available(), tokens.available(),
+                    totalRequests, totalPromptTokens, totalCompletionTokens);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.swiftbeard.rag_demo.quota;
+
+// A token bucket refilled continuously at ratePerSecond up to capacity. take() may drive the
+// balance below zero, which is how LLM tokens are charged after the fact: the call already
+// happened, so the client pays the debt back before its next request is admitted.
+class TokenBucket {
+
+    private final double capacity;
+    private final double ratePerSecond;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    TokenBucket(double capacity, double ratePerSecond, double tokens) {
+        this.capacity = capacity;
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = Math.min(capacity, tokens);
+    }
+
+    synchronized boolean tryTake(double amount) {
+        refill();
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    synchronized void take(double amount) {
+        refill();
+        tokens -= amount;
+    }
+
+    // Returns amount to the bucket, never beyond capacity
+    synchronized void give(double amount) {
+        refill();
+        tokens = Math.min(capacity, tokens + amount);
+    }
+
+    synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    double capacity() {
+        return capacity;
+    }
+
+    // Seconds until the balance reaches amount again
+    synchronized long secondsUntil(double amount) {
+        refill();
+        if (tokens >= amount) {
+            return 0;
+        }
+        return ratePerSecond > 0 ? (long) Math.ceil((amount - tokens) / ratePerSecond) : Long.MAX_VALUE;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) / 1e9 * ratePerSecond);
+        refilledAt = now;
+    }
+}
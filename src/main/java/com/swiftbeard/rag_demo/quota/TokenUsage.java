@@ -0,0 +1,69 @@
+package com.swiftbeard.rag_demo.quota;
+
+import org.springframework.ai.chat.metadata.Usage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Collects the LLM token usage of one request. track() makes it current on the calling thread,
+// where UsageRecordingChatModel adds the usage reported by each chat response to it. Tracking
+// nests: usage is added to every TokenUsage whose track() is active on the thread, so a stage
+// can measure its own tokens without hiding them from the request's total.
+public final class TokenUsage {
+
+    private static final ThreadLocal<Frame> CURRENT = new ThreadLocal<>();
+
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+
+    public <T> T track(Supplier<T> task) {
+        Frame previous = CURRENT.get();
+        CURRENT.set(new Frame(this, previous));
+        try {
+            return task.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public long promptTokens() {
+        return promptTokens.get();
+    }
+
+    public long completionTokens() {
+        return completionTokens.get();
+    }
+
+    public long totalTokens() {
+        return promptTokens() + completionTokens();
+    }
+
+    static void record(Usage usage) {
+        record(CURRENT.get(), usage);
+    }
+
+    // For usage reported later on another thread, such as by a streamed response: records into
+    // the TokenUsages active on the calling thread now
+    static Consumer<Usage> recorder() {
+        Frame current = CURRENT.get();
+        return usage -> record(current, usage);
+    }
+
+    private static void record(Frame current, Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        for (Frame frame = current; frame != null; frame = frame.parent()) {
+            if (usage.getPromptTokens() != null) {
+                frame.usage().promptTokens.addAndGet(usage.getPromptTokens());
+            }
+            if (usage.getCompletionTokens() != null) {
+                frame.usage().completionTokens.addAndGet(usage.getCompletionTokens());
+            }
+        }
+    }
+
+    private record Frame(TokenUsage usage, Frame parent) {
+    }
+}
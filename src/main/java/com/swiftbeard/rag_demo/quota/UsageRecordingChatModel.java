@@ -0,0 +1,46 @@
+package com.swiftbeard.rag_demo.quota;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.function.Consumer;
+
+// Adds the token usage reported in each chat response to the current request's TokenUsage
+public class UsageRecordingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    public UsageRecordingChatModel(ChatModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        ChatResponse response = delegate.call(prompt);
+        if (response != null && response.getMetadata() != null) {
+            TokenUsage.record(response.getMetadata().getUsage());
+        }
+        return response;
+    }
+
+    // Streamed chunks arrive on other threads, so their usage goes to the request that started
+    // the stream. Endpoints only report it with spring.ai.openai.chat.options.stream-usage.
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        Consumer<Usage> recorder = TokenUsage.recorder();
+        return delegate.stream(prompt).doOnNext(response -> {
+            if (response != null && response.getMetadata() != null) {
+                recorder.accept(response.getMetadata().getUsage());
+            }
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+}
@@ -0,0 +1,9 @@
+package com.swiftbeard.rag_demo.repository;
+
+import com.swiftbeard.rag_demo.model.ClientQuotaUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ClientQuotaUsageRepository extends JpaRepository<ClientQuotaUsage, String> {
+}
@@ -0,0 +1,12 @@
+package com.swiftbeard.rag_demo.repository;
+
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+
+import java.util.List;
+
+public interface DocumentMetadataBatchRepository {
+
+    // Inserts new rows in one JDBC batch and sets their ids; saveAll would send an INSERT per
+    // row, since the id is generated by the database
+    List<DocumentMetadata> insertAll(List<DocumentMetadata> documents);
+}
@@ -0,0 +1,49 @@
+package com.swiftbeard.rag_demo.repository;
+
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+// Picked up by Spring Data as the implementation of DocumentMetadataBatchRepository
+class DocumentMetadataBatchRepositoryImpl implements DocumentMetadataBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    DocumentMetadataBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<DocumentMetadata> insertAll(List<DocumentMetadata> documents) {
+        if (documents.isEmpty()) {
+            return documents;
+        }
+        // Reserve all ids in one round trip; works for both serial and identity id columns
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('document_metadata', 'id')) FROM generate_series(1, ?)",
+                Long.class, documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            documents.get(i).setId(ids.get(i));
+        }
+
+        jdbcTemplate.batchUpdate("""
+                        INSERT INTO document_metadata (id, filename, content_type, file_size, chunk_count, uploaded_at,
+                                                       source_path, last_modified, content_hash)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                        """,
+                documents, documents.size(), (ps, document) -> {
+                    ps.setLong(1, document.getId());
+                    ps.setString(2, document.getFilename());
+                    ps.setString(3, document.getContentType());
+                    ps.setLong(4, document.getFileSize());
+                    ps.setInt(5, document.getChunkCount());
+                    ps.setTimestamp(6, Timestamp.valueOf(document.getUploadedAt()));
+                    ps.setString(7, document.getSourcePath());
+                    ps.setObject(8, document.getLastModified());
+                    ps.setString(9, document.getContentHash());
+                });
+        return documents;
+    }
+}
@@ -4,12 +4,18 @@ import com.swiftbeard.rag_demo.model.DocumentMetadata;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface DocumentMetadataRepository extends JpaRepository<DocumentMetadata, Long> {
+public interface DocumentMetadataRepository extends JpaRepository<DocumentMetadata, Long>,
+        DocumentMetadataBatchRepository {
 
     Optional<DocumentMetadata> findByFilename(String filename);
 
     boolean existsByFilename(String filename);
+
+    Optional<DocumentMetadata> findBySourcePath(String sourcePath);
+
+    List<DocumentMetadata> findBySourcePathStartingWith(String prefix);
 }
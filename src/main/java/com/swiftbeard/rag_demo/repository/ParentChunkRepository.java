@@ -0,0 +1,23 @@
+package com.swiftbeard.rag_demo.repository;
+
+import com.swiftbeard.rag_demo.model.ParentChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ParentChunkRepository extends JpaRepository<ParentChunk, Long> {
+
+    @Transactional(readOnly = true)
+    List<ParentChunk> findByDocumentIdAndStartOffsetIn(Long documentId, Collection<Integer> startOffsets);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ParentChunk p WHERE p.documentId IN :documentIds")
+    int deleteByDocumentIdIn(Collection<Long> documentIds);
+}
@@ -5,22 +5,28 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
+// Read-only finders are served from the read replica when one is configured
 @Repository
 public interface QueryHistoryRepository extends JpaRepository<QueryHistory, Long> {
 
     // Find queries ordered by timestamp (most recent first)
+    @Transactional(readOnly = true)
     List<QueryHistory> findAllByOrderByTimestampDesc();
 
     // Find queries with pagination
+    @Transactional(readOnly = true)
     Page<QueryHistory> findAllByOrderByTimestampDesc(Pageable pageable);
 
     // Find queries within a date range
+    @Transactional(readOnly = true)
     List<QueryHistory> findByTimestampBetweenOrderByTimestampDesc(LocalDateTime start, LocalDateTime end);
 
     // Count queries in a time period
+    @Transactional(readOnly = true)
     long countByTimestampAfter(LocalDateTime after);
 }
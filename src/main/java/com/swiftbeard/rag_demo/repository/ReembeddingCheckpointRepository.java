@@ -0,0 +1,9 @@
+package com.swiftbeard.rag_demo.repository;
+
+import com.swiftbeard.rag_demo.model.ReembeddingCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReembeddingCheckpointRepository extends JpaRepository<ReembeddingCheckpoint, String> {
+}
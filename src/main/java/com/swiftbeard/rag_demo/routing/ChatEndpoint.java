@@ -0,0 +1,205 @@
+package com.swiftbeard.rag_demo.routing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.web.client.HttpClientErrorException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// One chat backend with its live load and health: in-flight calls, EWMAs of latency and error
+// rate, and a circuit breaker. After failureThreshold consecutive failures the endpoint is
+// ejected for openDuration; then a single request is let through as a probe, and its outcome
+// decides whether the endpoint comes back or stays out for another openDuration.
+public class ChatEndpoint {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final double LATENCY_ALPHA = 0.3;
+    private static final double ERROR_ALPHA = 0.1;
+    private static final long LATENCY_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final ChatModel model;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+
+    private volatile double latencyEwmaNanos;
+    private volatile double errorEwma;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public ChatEndpoint(String name, ChatModel model, int failureThreshold, Duration openDuration,
+                        MeterRegistry meterRegistry) {
+        this.name = name;
+        this.model = model;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("rag.chat.endpoint.in-flight", inFlight, AtomicInteger::get)
+                .tag("endpoint", name).register(meterRegistry);
+        Gauge.builder("rag.chat.endpoint.latency.ewma", this, endpoint -> endpoint.latencyEwmaNanos / 1e6)
+                .description("Smoothed latency in milliseconds")
+                .tag("endpoint", name).register(meterRegistry);
+        Gauge.builder("rag.chat.endpoint.errors.ewma", this, endpoint -> endpoint.errorEwma)
+                .description("Smoothed share of failed calls")
+                .tag("endpoint", name).register(meterRegistry);
+        Gauge.builder("rag.chat.endpoint.available", this, endpoint -> endpoint.state() == State.CLOSED ? 1 : 0)
+                .tag("endpoint", name).register(meterRegistry);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public ChatModel model() {
+        return model;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    // Lower is better: expected latency scaled by queueing behind in-flight calls and by errors
+    double cost() {
+        double latency = Math.max(latencyEwmaNanos, LATENCY_FLOOR_NANOS);
+        return latency * (inFlight.get() + 1) / (1 - Math.min(errorEwma, 0.9));
+    }
+
+    // Whether a request could be sent now: closed, or ejected long enough to be probed
+    synchronized boolean isSelectable(long now) {
+        return state == State.CLOSED || (state == State.OPEN && now - openedAt >= openNanos);
+    }
+
+    // Claims the endpoint for one request; an ejected endpoint admits only its single probe
+    synchronized boolean admit(long now) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && now - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    ChatResponse call(Prompt prompt) {
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            ChatResponse response = model.call(prompt);
+            outcome = "success";
+            onSuccess(System.nanoTime() - start);
+            return response;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Cancelled by the caller, for example a hedge that lost; says nothing about health
+                outcome = "cancelled";
+                onCancel();
+            } else if (isCallerError(e)) {
+                // The request itself was refused; another endpoint would refuse it too
+                outcome = "rejected";
+                onCancel();
+            } else {
+                onFailure(System.nanoTime());
+            }
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            recordLatency(outcome, start);
+        }
+    }
+
+    // Same accounting as call(), settled when the stream completes, fails or is cancelled by its
+    // subscriber; the latency is the time to the last token
+    Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            AtomicReference<String> outcome = new AtomicReference<>("error");
+            Flux<ChatResponse> responses;
+            try {
+                responses = model.stream(prompt);
+            } catch (RuntimeException e) {
+                responses = Flux.error(e);
+            }
+            return responses
+                    .doOnComplete(() -> {
+                        outcome.set("success");
+                        onSuccess(System.nanoTime() - start);
+                    })
+                    .doOnError(e -> {
+                        if (e instanceof RuntimeException runtime && isCallerError(runtime)) {
+                            outcome.set("rejected");
+                            onCancel();
+                        } else {
+                            onFailure(System.nanoTime());
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        outcome.set("cancelled");
+                        onCancel();
+                    })
+                    .doFinally(signal -> {
+                        inFlight.decrementAndGet();
+                        recordLatency(outcome.get(), start);
+                    });
+        });
+    }
+
+    private void recordLatency(String outcome, long start) {
+        Timer.builder("rag.chat.endpoint.latency")
+                .tag("endpoint", name)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    // A 4xx other than 429 or a Spring AI non-transient failure: a bad prompt, options or
+    // credentials rather than a sick endpoint, so it is neither counted nor retried elsewhere
+    static boolean isCallerError(RuntimeException e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            return clientError.getStatusCode().value() != 429;
+        }
+        return e instanceof NonTransientAiException;
+    }
+
+    private synchronized void onSuccess(long latencyNanos) {
+        latencyEwmaNanos = latencyEwmaNanos == 0
+                ? latencyNanos
+                : LATENCY_ALPHA * latencyNanos + (1 - LATENCY_ALPHA) * latencyEwmaNanos;
+        errorEwma = (1 - ERROR_ALPHA) * errorEwma;
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    private synchronized void onFailure(long now) {
+        errorEwma = ERROR_ALPHA + (1 - ERROR_ALPHA) * errorEwma;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+    private synchronized void onCancel() {
+        // Let the next request probe instead
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+}
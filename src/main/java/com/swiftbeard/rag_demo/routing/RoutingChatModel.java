@@ -0,0 +1,100 @@
+package com.swiftbeard.rag_demo.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Spreads chat calls over several endpoints with power-of-two-choices: two healthy endpoints
+// are picked at random and the one with the lower cost (latency EWMA x in-flight calls,
+// penalised by errors) gets the request. A failed call is retried once on another endpoint,
+// unless the request itself was refused.
+public class RoutingChatModel implements ChatModel {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingChatModel.class);
+
+    private final List<ChatEndpoint> endpoints;
+
+    public RoutingChatModel(List<ChatEndpoint> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one chat endpoint is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        ChatEndpoint first = choose(null);
+        try {
+            return first.call(prompt);
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() || ChatEndpoint.isCallerError(e)) {
+                throw e;
+            }
+            ChatEndpoint second = choose(first);
+            if (second == first) {
+                throw e;
+            }
+            log.warn("Chat endpoint {} failed, retrying on {}: {}", first.name(), second.name(), e.getMessage());
+            return second.call(prompt);
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        // Chosen on subscription, so an endpoint admitted as a probe always gets its outcome.
+        // Not retried: tokens may already have reached the client.
+        return Flux.defer(() -> choose(null).stream(prompt));
+    }
+
+    // No model here: each endpoint applies its own configured model
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().build();
+    }
+
+    public List<ChatEndpoint> endpoints() {
+        return endpoints;
+    }
+
+    // Returns exclude itself when there is no other endpoint to use
+    private ChatEndpoint choose(ChatEndpoint exclude) {
+        while (true) {
+            long now = System.nanoTime();
+            List<ChatEndpoint> candidates = endpoints.stream()
+                    .filter(endpoint -> endpoint != exclude && endpoint.isSelectable(now))
+                    .toList();
+            if (candidates.isEmpty()) {
+                if (exclude != null) {
+                    return exclude;
+                }
+                // Every endpoint is ejected; failing every request would be worse than trying one
+                return endpoints.stream().min(Comparator.comparingDouble(ChatEndpoint::cost)).orElseThrow();
+            }
+
+            ChatEndpoint chosen = candidates.get(0);
+            if (candidates.size() > 1) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int a = random.nextInt(candidates.size());
+                int b = random.nextInt(candidates.size() - 1);
+                if (b >= a) {
+                    b++;
+                }
+                ChatEndpoint left = candidates.get(a);
+                ChatEndpoint right = candidates.get(b);
+                chosen = left.cost() <= right.cost() ? left : right;
+            }
+            if (chosen.admit(now)) {
+                return chosen;
+            }
+            // Another request claimed its probe slot in the meantime; pick again
+        }
+    }
+}
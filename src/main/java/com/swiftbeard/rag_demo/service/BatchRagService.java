@@ -0,0 +1,214 @@
+package com.swiftbeard.rag_demo.service;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.embedding.QueryEmbeddingCache;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
+import com.swiftbeard.rag_demo.model.BatchAnswer;
+import com.swiftbeard.rag_demo.model.CitedChunk;
+import com.swiftbeard.rag_demo.model.MessageRequest;
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.similarity.NearDuplicates;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Answers many questions in one request. All questions are embedded in a single call by
+// prepare(), before the caller commits to a response. The similarity searches then run
+// concurrently reusing those embeddings; questions whose embeddings are near-duplicates of an
+// earlier one (cosine similarity of at least rag.batch.shared-search-similarity, 0 disables it)
+// share its search when they ask for the same topK. Generation runs with bounded parallelism through
+// the same concurrency limiter and interactive bulkhead as /ai/rag, so batches cannot take
+// more of the LLM than single questions would. History is written in one transaction at the
+// end. Each answer is handed to the consumer as soon as it is ready, tagged with the index of
+// its question.
+@Service
+public class BatchRagService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchRagService.class);
+
+    private final RagService ragService;
+    private final EmbeddingModel embeddingModel;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final QueryHistoryService queryHistoryService;
+    private final Bulkheads bulkheads;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final LatencyTiers latencyTiers;
+
+    @Value("${rag.batch.max-size:1000}")
+    private int maxSize;
+
+    @Value("${rag.batch.search-parallelism:8}")
+    private int searchParallelism;
+
+    @Value("${rag.batch.generation-parallelism:4}")
+    private int generationParallelism;
+
+    @Value("${rag.batch.shared-search-similarity:0.98}")
+    private float sharedSearchSimilarity;
+
+    public BatchRagService(RagService ragService,
+                           EmbeddingModel embeddingModel,
+                           QueryEmbeddingCache queryEmbeddingCache,
+                           QueryHistoryService queryHistoryService,
+                           Bulkheads bulkheads,
+                           AdaptiveConcurrencyLimiter concurrencyLimiter,
+                           LatencyTiers latencyTiers) {
+        this.ragService = ragService;
+        this.embeddingModel = embeddingModel;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.queryHistoryService = queryHistoryService;
+        this.bulkheads = bulkheads;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.latencyTiers = latencyTiers;
+    }
+
+    public void validate(List<MessageRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("No questions provided");
+        }
+        if (requests.size() > maxSize) {
+            throw new IllegalArgumentException("At most " + maxSize + " questions per batch");
+        }
+    }
+
+    // Validates the batch and embeds its distinct questions; failures surface here, not mid-stream
+    public Batch prepare(List<MessageRequest> requests) {
+        validate(requests);
+        List<String> questions = requests.stream().map(MessageRequest::message).distinct().toList();
+        List<float[]> embeddings = embeddingModel.embed(questions);
+        return new Batch(requests, questions, embeddings, searchQuestions(questions, embeddings));
+    }
+
+    // For each distinct question, the question whose similarity search it reuses
+    private List<String> searchQuestions(List<String> questions, List<float[]> embeddings) {
+        if (sharedSearchSimilarity <= 0) {
+            return questions;
+        }
+        int[] representatives = NearDuplicates.representatives(embeddings, sharedSearchSimilarity);
+        List<String> searchQuestions = new ArrayList<>(questions.size());
+        for (int representative : representatives) {
+            searchQuestions.add(questions.get(representative));
+        }
+        return searchQuestions;
+    }
+
+    // Blocks until every question is answered; onAnswer may be called from several threads at once
+    public void retrieveAndGenerateBatch(Batch batch, TokenUsage usage, Consumer<BatchAnswer> onAnswer) {
+        List<MessageRequest> requests = batch.requests();
+        List<String> questions = batch.questions();
+        List<float[]> embeddings = batch.embeddings();
+        Map<String, String> searchQuestions = new HashMap<>();
+        for (int i = 0; i < questions.size(); i++) {
+            searchQuestions.put(questions.get(i), batch.searchQuestions().get(i));
+        }
+        Map<Search, CompletableFuture<List<Document>>> retrievals = new ConcurrentHashMap<>();
+
+        List<QueryHistory> history = Collections.synchronizedList(new ArrayList<>());
+        Semaphore searches = new Semaphore(searchParallelism);
+        Semaphore generations = new Semaphore(generationParallelism);
+        try (QueryEmbeddingCache.Lease lease = queryEmbeddingCache.prime(questions, embeddings);
+             ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests.size(); i++) {
+                int index = i;
+                MessageRequest request = requests.get(i);
+                String searchQuestion = searchQuestions.get(request.message());
+                workers.execute(() -> onAnswer.accept(
+                        answer(index, request, searchQuestion, retrievals, usage, searches, generations, history)));
+            }
+        }
+
+        if (!history.isEmpty()) {
+            bulkheads.offer(Workload.HISTORY, "batch query history write",
+                    () -> queryHistoryService.saveQueries(history));
+        }
+    }
+
+    private BatchAnswer answer(int index, MessageRequest request, String searchQuestion,
+                               Map<Search, CompletableFuture<List<Document>>> retrievals, TokenUsage usage,
+                               Semaphore searches, Semaphore generations, List<QueryHistory> history) {
+        long startTime = System.currentTimeMillis();
+        String message = request.message();
+        try {
+            GenerationOptions options = latencyTiers.resolve(request);
+            int topK = options.topK();
+            List<Document> documents = retrieve(new Search(searchQuestion, topK), retrievals, searches);
+            String answer = withPermit(generations, () -> concurrencyLimiter.call(request.getValidatedPriority(),
+                    () -> bulkheads.call(Workload.INTERACTIVE,
+                            () -> usage.track(() -> ragService.generate(message, documents, options)))));
+            List<SourceCitation> sources = ragService.citations(documents);
+            QueryHistory entry = new QueryHistory(message, answer, topK, sources.size(),
+                    System.currentTimeMillis() - startTime);
+            entry.setCitations(CitedChunk.of(documents));
+            history.add(entry);
+            return BatchAnswer.success(index, new RagResponse(answer, sources));
+        } catch (RuntimeException e) {
+            log.warn("Batch question {} failed: {}", index, e.getMessage());
+            return BatchAnswer.failure(index, e.getMessage());
+        }
+    }
+
+    // The first question to need a search runs it; the others with the same search wait for it
+    private List<Document> retrieve(Search search, Map<Search, CompletableFuture<List<Document>>> retrievals,
+                                    Semaphore searches) {
+        CompletableFuture<List<Document>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Document>> shared = retrievals.putIfAbsent(search, mine);
+        if (shared == null) {
+            try {
+                mine.complete(withPermit(searches, () -> ragService.retrieve(search.question(), search.topK())));
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+            }
+            shared = mine;
+        }
+        try {
+            return shared.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    // searchQuestions is parallel to questions
+    public record Batch(List<MessageRequest> requests, List<String> questions, List<float[]> embeddings,
+                        List<String> searchQuestions) {
+    }
+
+    private record Search(String question, int topK) {
+    }
+
+    private static <T> T withPermit(Semaphore semaphore, Supplier<T> task) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to run", e);
+        }
+        try {
+            return task.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+}
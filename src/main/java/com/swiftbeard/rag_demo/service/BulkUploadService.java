@@ -0,0 +1,299 @@
+package com.swiftbeard.rag_demo.service;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkhead;
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.exception.BulkheadFullException;
+import com.swiftbeard.rag_demo.model.BulkUploadResponse;
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.model.FileUploadResult;
+import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+@Service
+public class BulkUploadService {
+
+    private final DocumentUploadService documentUploadService;
+    private final VectorStore vectorStore;
+    private final DocumentMetadataRepository documentMetadataRepository;
+    private final Bulkhead ingestion;
+
+    @Value("${rag.ingest.bulk.parallelism:4}")
+    private int parallelism;
+
+    @Value("${rag.ingest.bulk.batch-size:32}")
+    private int batchSize;
+
+    @Value("${rag.ingest.bulk.max-entry-size:64MB}")
+    private DataSize maxEntrySize = DataSize.ofMegabytes(64);
+
+    // Total of the entries read from one archive, against archives that expand far beyond their upload
+    @Value("${rag.ingest.bulk.max-archive-size:1GB}")
+    private DataSize maxArchiveSize = DataSize.ofGigabytes(1);
+
+    public BulkUploadService(DocumentUploadService documentUploadService,
+                             VectorStore vectorStore,
+                             DocumentMetadataRepository documentMetadataRepository,
+                             Bulkheads bulkheads) {
+        this.documentUploadService = documentUploadService;
+        this.vectorStore = vectorStore;
+        this.documentMetadataRepository = documentMetadataRepository;
+        this.ingestion = bulkheads.get(Workload.INGESTION);
+    }
+
+    public BulkUploadResponse uploadDocuments(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("No files provided");
+        }
+
+        // Coordinates on the caller's thread, which only reads the upload and writes metadata, so its
+        // connections come from the ingestion pool; parsing and embedding run on the bulkhead
+        return Workload.INGESTION.callAs(() -> ingest(files));
+    }
+
+    private BulkUploadResponse ingest(List<MultipartFile> files) {
+        long startTime = System.currentTimeMillis();
+        List<FileUploadResult> results = new ArrayList<>();
+
+        // The work runs on the shared ingestion bulkhead; this upload holds at most parallelism of its threads
+        Workers workers = new Workers(ingestion, parallelism);
+        List<PendingFile> window = new ArrayList<>(batchSize);
+
+        for (MultipartFile file : files) {
+            String filename = file.getOriginalFilename();
+            if (isArchive(filename)) {
+                window = readArchive(file, window, results, workers);
+            } else if (file.isEmpty()) {
+                results.add(FileUploadResult.failed(filename, "File is empty"));
+            } else {
+                String contentType = file.getContentType() != null
+                        ? file.getContentType()
+                        : DocumentUploadService.guessContentType(filename);
+                byte[] content;
+                try {
+                    content = file.getBytes();
+                } catch (IOException e) {
+                    results.add(FileUploadResult.failed(filename, "Could not read file: " + e.getMessage()));
+                    continue;
+                }
+                window.add(new PendingFile(filename, contentType, content));
+                if (window.size() >= batchSize) {
+                    results.addAll(ingestWindow(window, workers));
+                    window = new ArrayList<>(batchSize);
+                }
+            }
+        }
+
+        if (!window.isEmpty()) {
+            results.addAll(ingestWindow(window, workers));
+        }
+
+        return BulkUploadResponse.of(results, System.currentTimeMillis() - startTime);
+    }
+
+    // Streams entries straight out of the archive, never extracting to disk. Entries larger than
+    // max-entry-size are reported as failed and skipped; once the entries read add up to
+    // max-archive-size, or the archive turns out to be corrupt, the rest of it is reported as
+    // one failure. Entries read before that are still ingested. Returns the window to continue with.
+    private List<PendingFile> readArchive(MultipartFile file, List<PendingFile> window,
+                                          List<FileUploadResult> results, Workers workers) {
+        String filename = file.getOriginalFilename();
+        long maxEntryBytes = maxEntrySize.toBytes();
+        long remainingBytes = maxArchiveSize.toBytes();
+        try (ArchiveInputStream<?> archive = openArchive(filename, file.getInputStream())) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory() || !archive.canReadEntryData(entry)
+                        || entry.getName().startsWith("__MACOSX/")) {
+                    continue;
+                }
+                String entryName = entry.getName();
+                if (entry.getSize() > maxEntryBytes) {
+                    results.add(FileUploadResult.failed(entryName, "Entry is larger than " + maxEntryBytes + " bytes"));
+                    continue;
+                }
+                // The declared size can't be trusted, so never read more than the limits allow
+                int limit = (int) Math.min(Math.min(maxEntryBytes, remainingBytes), Integer.MAX_VALUE - 9);
+                byte[] content = archive.readNBytes(limit + 1);
+                if (content.length > maxEntryBytes) {
+                    results.add(FileUploadResult.failed(entryName, "Entry is larger than " + maxEntryBytes + " bytes"));
+                    continue;
+                }
+                if (content.length > remainingBytes) {
+                    results.add(FileUploadResult.failed(filename, "Archive expands to more than "
+                            + maxArchiveSize.toBytes() + " bytes; remaining entries skipped"));
+                    return window;
+                }
+                remainingBytes -= content.length;
+                window.add(new PendingFile(entryName, DocumentUploadService.guessContentType(entryName), content));
+                if (window.size() >= batchSize) {
+                    results.addAll(ingestWindow(window, workers));
+                    window = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (IOException e) {
+            results.add(FileUploadResult.failed(filename, "Could not read archive: " + e.getMessage()));
+        }
+        return window;
+    }
+
+    private List<FileUploadResult> ingestWindow(List<PendingFile> window, Workers workers) {
+        FileUploadResult[] results = new FileUploadResult[window.size()];
+
+        // 1. Parse and split every file in the window concurrently
+        List<CompletableFuture<List<Document>>> parsing = window.stream()
+                .map(file -> workers.submit(
+                        () -> documentUploadService.parseAndSplit(file.content(), file.filename(), file.contentType())))
+                .toList();
+
+        List<Integer> accepted = new ArrayList<>();
+        List<List<Document>> chunks = new ArrayList<>();
+        List<DocumentMetadata> metadataBatch = new ArrayList<>();
+        for (int i = 0; i < window.size(); i++) {
+            PendingFile file = window.get(i);
+            try {
+                List<Document> splitDocuments = parsing.get(i).join();
+                if (splitDocuments.isEmpty()) {
+                    results[i] = FileUploadResult.failed(file.filename(), "No text could be extracted");
+                    continue;
+                }
+                accepted.add(i);
+                chunks.add(splitDocuments);
+                metadataBatch.add(new DocumentMetadata(
+                        file.filename(), file.contentType(), (long) file.content().length, splitDocuments.size()));
+            } catch (CompletionException e) {
+                results[i] = FileUploadResult.failed(file.filename(), rootMessage(e));
+            }
+        }
+
+        if (metadataBatch.isEmpty()) {
+            return List.of(results);
+        }
+
+        // 2. Write the metadata rows for the whole window in one JDBC batch
+        List<DocumentMetadata> saved = documentMetadataRepository.insertAll(metadataBatch);
+
+        // 3. Embed and store the chunks concurrently
+        List<CompletableFuture<Object>> storing = new ArrayList<>();
+        for (int j = 0; j < accepted.size(); j++) {
+            DocumentMetadata metadata = saved.get(j);
+            List<Document> splitDocuments = chunks.get(j);
+            storing.add(workers.submit(() -> {
+                documentUploadService.tagChunks(splitDocuments, metadata.getId(), metadata.getFilename());
+                vectorStore.add(splitDocuments);
+                return null;
+            }));
+        }
+
+        List<DocumentMetadata> failedMetadata = new ArrayList<>();
+        for (int j = 0; j < accepted.size(); j++) {
+            int i = accepted.get(j);
+            DocumentMetadata metadata = saved.get(j);
+            try {
+                storing.get(j).join();
+                results[i] = FileUploadResult.succeeded(metadata.getFilename(), metadata.getId(), metadata.getChunkCount());
+            } catch (CompletionException e) {
+                failedMetadata.add(metadata);
+                results[i] = FileUploadResult.failed(metadata.getFilename(), rootMessage(e));
+            }
+        }
+
+        // Don't leave metadata behind for files whose chunks never reached the vector store
+        if (!failedMetadata.isEmpty()) {
+            documentMetadataRepository.deleteAllInBatch(failedMetadata);
+            documentUploadService.deleteParents(failedMetadata.stream().map(DocumentMetadata::getId).toList());
+        }
+
+        return List.of(results);
+    }
+
+    private static boolean isArchive(String filename) {
+        if (filename == null) {
+            return false;
+        }
+        String name = filename.toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    private static ArchiveInputStream<?> openArchive(String filename, InputStream in) throws IOException {
+        String name = filename.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip")) {
+            return new ZipArchiveInputStream(in);
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return new TarArchiveInputStream(new GzipCompressorInputStream(in));
+        }
+        return new TarArchiveInputStream(in);
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    // Runs one upload's tasks on the ingestion bulkhead, at most permits at a time. Submitting
+    // blocks until one of this upload's tasks finishes, so a large upload cannot fill the queue
+    // the other ingestion work shares. A task the bulkhead rejects fails with BulkheadFullException.
+    private static final class Workers {
+
+        private final Bulkhead bulkhead;
+        private final Semaphore permits;
+
+        Workers(Bulkhead bulkhead, int permits) {
+            this.bulkhead = bulkhead;
+            this.permits = new Semaphore(Math.max(1, permits));
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(new BulkheadFullException("Interrupted waiting for an ingestion worker"));
+                return result;
+            }
+            try {
+                bulkhead.execute(() -> {
+                    try {
+                        result.complete(task.get());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (BulkheadFullException e) {
+                permits.release();
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+    }
+
+    private record PendingFile(String filename, String contentType, byte[] content) {
+    }
+}
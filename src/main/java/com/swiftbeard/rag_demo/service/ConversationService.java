@@ -0,0 +1,95 @@
+package com.swiftbeard.rag_demo.service;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.conversation.Conversation;
+import com.swiftbeard.rag_demo.conversation.ConversationStore;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// /ai/rag for requests with a sessionId. A follow-up such as "and how fast is it?" is first
+// rewritten into a standalone question, which is what gets embedded and searched; the answer
+// is then generated with the session's summary and recent turns in the prompt.
+@Service
+public class ConversationService {
+
+    private static final String CONDENSE_INSTRUCTIONS = """
+            The messages below are a conversation so far, followed by a new question from the user. \
+            Rewrite the new question so that it can be understood without the conversation, replacing \
+            pronouns and references with what they refer to. Do not answer it. If it already stands on \
+            its own, repeat it unchanged. Reply with the question only.""";
+
+    private final RagService ragService;
+    private final ChatClient chatClient;
+    private final ConversationStore conversations;
+    private final QueryHistoryService queryHistoryService;
+    private final Bulkheads bulkheads;
+
+    @Value("${rag.conversation.condense-max-tokens:100}")
+    private int condenseMaxTokens;
+
+    public ConversationService(RagService ragService,
+                               ChatClient chatClient,
+                               ConversationStore conversations,
+                               QueryHistoryService queryHistoryService,
+                               Bulkheads bulkheads) {
+        this.ragService = ragService;
+        this.chatClient = chatClient;
+        this.conversations = conversations;
+        this.queryHistoryService = queryHistoryService;
+        this.bulkheads = bulkheads;
+    }
+
+    public RagResponse retrieveAndGenerate(String apiKey, String sessionId, String message, GenerationOptions options) {
+        long startTime = System.currentTimeMillis();
+        Conversation conversation = conversations.get(apiKey, sessionId);
+        Conversation.Snapshot memory = conversation.snapshot();
+        List<Message> history = memory.messages();
+
+        // 1. Retrieve with the follow-up rewritten into a standalone question
+        String standalone = memory.isEmpty() ? message : condense(history, message);
+        List<Document> similarDocuments = ragService.retrieve(standalone, options.topK());
+
+        // 2-3. Generate the answer to the question as asked, with the conversation in the prompt
+        String answer = ragService.generate(message, similarDocuments, options, history);
+        conversations.remember(conversation, message, answer);
+
+        // 4. Build source citations
+        List<SourceCitation> sources = ragService.citations(similarDocuments);
+
+        // 5. Save query to history in the background, using the history workload's threads and connections
+        long executionTime = System.currentTimeMillis() - startTime;
+        bulkheads.offer(Workload.HISTORY, "query history write",
+                () -> queryHistoryService.saveQuery(message, answer, options.topK(), similarDocuments, executionTime));
+
+        return new RagResponse(answer, sources);
+    }
+
+    public boolean endSession(String apiKey, String sessionId) {
+        return conversations.end(apiKey, sessionId);
+    }
+
+    private String condense(List<Message> history, String message) {
+        List<Message> messages = new ArrayList<>(history.size() + 2);
+        messages.add(new SystemMessage(CONDENSE_INSTRUCTIONS));
+        messages.addAll(history);
+        messages.add(new UserMessage("New question: " + message));
+        Prompt prompt = new Prompt(messages,
+                ChatOptions.builder().maxTokens(condenseMaxTokens).temperature(0.0).build());
+        String standalone = chatClient.prompt(prompt).call().content();
+        return standalone == null || standalone.isBlank() ? message : standalone.strip();
+    }
+}
@@ -0,0 +1,163 @@
+package com.swiftbeard.rag_demo.service;
+
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+@Service
+public class DirectoryIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryIngestionService.class);
+
+    public enum FileChange {
+        ADDED, MODIFIED, UNCHANGED, DELETED
+    }
+
+    private final DocumentUploadService documentUploadService;
+    private final DocumentMetadataRepository documentMetadataRepository;
+    private final VectorStore vectorStore;
+
+    public DirectoryIngestionService(DocumentUploadService documentUploadService,
+                                     DocumentMetadataRepository documentMetadataRepository,
+                                     VectorStore vectorStore) {
+        this.documentUploadService = documentUploadService;
+        this.documentMetadataRepository = documentMetadataRepository;
+        this.vectorStore = vectorStore;
+    }
+
+    public Map<FileChange, Integer> reconcile(Path root) throws IOException {
+        Path normalizedRoot = root.toAbsolutePath().normalize();
+        Map<FileChange, Integer> changes = new EnumMap<>(FileChange.class);
+        Set<String> seen = new HashSet<>();
+
+        // 1. Sync every file currently on disk
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(normalizedRoot)) {
+            files = paths.filter(Files::isRegularFile).filter(this::isIngestible).toList();
+        }
+        for (Path file : files) {
+            seen.add(file.toString());
+            try {
+                changes.merge(syncFile(file), 1, Integer::sum);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to ingest {}: {}", file, e.getMessage());
+            }
+        }
+
+        // 2. Drop documents whose files have disappeared
+        for (DocumentMetadata metadata : findUnder(normalizedRoot)) {
+            if (!seen.contains(metadata.getSourcePath())) {
+                deleteDocument(metadata);
+                changes.merge(FileChange.DELETED, 1, Integer::sum);
+            }
+        }
+
+        return changes;
+    }
+
+    public FileChange syncFile(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        String sourcePath = path.toString();
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        long fileSize = Files.size(path);
+
+        Optional<DocumentMetadata> existing = documentMetadataRepository.findBySourcePath(sourcePath);
+
+        // Cheap check first: same mtime and size means nothing changed
+        if (existing.isPresent()
+                && Long.valueOf(lastModified).equals(existing.get().getLastModified())
+                && Long.valueOf(fileSize).equals(existing.get().getFileSize())) {
+            return FileChange.UNCHANGED;
+        }
+
+        byte[] content = Files.readAllBytes(path);
+        String contentHash = DocumentUploadService.contentHash(content);
+
+        // Touched but not edited: remember the new mtime and skip re-embedding
+        if (existing.isPresent() && contentHash.equals(existing.get().getContentHash())) {
+            DocumentMetadata metadata = existing.get();
+            metadata.setLastModified(lastModified);
+            documentMetadataRepository.save(metadata);
+            return FileChange.UNCHANGED;
+        }
+
+        String filename = path.getFileName().toString();
+        String contentType = DocumentUploadService.guessContentType(filename);
+        List<Document> splitDocuments = documentUploadService.parseAndSplit(content, filename, contentType);
+
+        DocumentMetadata metadata = existing.orElseGet(DocumentMetadata::new);
+        if (existing.isPresent()) {
+            deleteVectors(metadata.getId());
+        }
+        metadata.setFilename(filename);
+        metadata.setContentType(contentType);
+        metadata.setFileSize(fileSize);
+        metadata.setChunkCount(splitDocuments.size());
+        metadata.setUploadedAt(LocalDateTime.now());
+        metadata.setSourcePath(sourcePath);
+        // No fingerprint until the vectors are stored: if adding them fails, or the process dies
+        // first, the next reconcile sees the file as changed and ingests it again
+        metadata.setLastModified(null);
+        metadata.setContentHash(null);
+        metadata = documentMetadataRepository.save(metadata);
+
+        documentUploadService.tagChunks(splitDocuments, metadata.getId(), filename);
+        if (!splitDocuments.isEmpty()) {
+            vectorStore.add(splitDocuments);
+        }
+
+        metadata.setLastModified(lastModified);
+        metadata.setContentHash(contentHash);
+        documentMetadataRepository.save(metadata);
+
+        return existing.isPresent() ? FileChange.MODIFIED : FileChange.ADDED;
+    }
+
+    public int removePath(Path path) {
+        List<DocumentMetadata> documents = findUnder(path.toAbsolutePath().normalize());
+        documents.forEach(this::deleteDocument);
+        return documents.size();
+    }
+
+    public boolean isIngestible(Path file) {
+        String name = file.getFileName().toString();
+        return !name.startsWith(".") && !name.endsWith("~") && !name.endsWith(".tmp") && !name.endsWith(".swp");
+    }
+
+    // Matches the path itself or anything below it, but not siblings sharing a name prefix
+    private List<DocumentMetadata> findUnder(Path path) {
+        String prefix = path.toString();
+        return documentMetadataRepository.findBySourcePathStartingWith(prefix).stream()
+                .filter(metadata -> metadata.getSourcePath().equals(prefix)
+                        || metadata.getSourcePath().startsWith(prefix + File.separator))
+                .toList();
+    }
+
+    private void deleteDocument(DocumentMetadata metadata) {
+        deleteVectors(metadata.getId());
+        documentMetadataRepository.delete(metadata);
+    }
+
+    private void deleteVectors(Long documentId) {
+        vectorStore.delete(new FilterExpressionBuilder().eq("document_id", documentId.toString()).build());
+        documentUploadService.deleteParents(List.of(documentId));
+    }
+}
@@ -0,0 +1,194 @@
+package com.swiftbeard.rag_demo.service;
+
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+@Component
+@ConditionalOnProperty(name = "rag.ingest.watch.enabled", havingValue = "true")
+public class DirectoryWatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final DirectoryIngestionService directoryIngestionService;
+    private final Map<Path, Long> pendingChanges = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    @Value("${rag.ingest.watch.directories:}")
+    private String[] directories;
+
+    @Value("${rag.ingest.watch.debounce-ms:2000}")
+    private long debounceMs;
+
+    @Value("${rag.ingest.watch.reconcile-interval-seconds:300}")
+    private long reconcileIntervalSeconds;
+
+    private List<Path> roots;
+    private WatchService watchService;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public DirectoryWatcher(DirectoryIngestionService directoryIngestionService) {
+        this.directoryIngestionService = directoryIngestionService;
+    }
+
+    @Override
+    public void start() {
+        roots = Arrays.stream(directories)
+                .map(String::trim)
+                .filter(dir -> !dir.isEmpty())
+                .map(dir -> Path.of(dir).toAbsolutePath().normalize())
+                .filter(Files::isDirectory)
+                .toList();
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path root : roots) {
+                registerTree(root);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not watch " + roots, e);
+        }
+
+        // A single thread runs both the reconcile scans and the debounced syncs, so they never race
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> Workload.INGESTION.runAs(runnable), "directory-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileAll, 0, reconcileIntervalSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushSettledChanges,
+                debounceMs, Math.max(debounceMs / 2, 100), TimeUnit.MILLISECONDS);
+
+        running = true;
+        Thread.ofPlatform().name("directory-watcher").daemon().start(this::watchLoop);
+        log.info("Watching {} for document changes", roots);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Error closing watch service", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watchLoop() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || directory == null) {
+                    // Events were dropped, so fall back to a full scan
+                    scheduler.execute(this::reconcileAll);
+                    continue;
+                }
+
+                Path changed = directory.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        registerTree(changed);
+                    } catch (IOException e) {
+                        log.warn("Could not watch new directory {}: {}", changed, e.getMessage());
+                    }
+                }
+                pendingChanges.put(changed, System.currentTimeMillis());
+            }
+
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    private void flushSettledChanges() {
+        long settledBefore = System.currentTimeMillis() - debounceMs;
+        pendingChanges.forEach((path, lastEvent) -> {
+            // Only remove the entry if no newer event arrived in the meantime
+            if (lastEvent <= settledBefore && pendingChanges.remove(path, lastEvent)) {
+                apply(path);
+            }
+        });
+    }
+
+    private void apply(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                directoryIngestionService.reconcile(path);
+            } else if (Files.isRegularFile(path)) {
+                if (directoryIngestionService.isIngestible(path)) {
+                    directoryIngestionService.syncFile(path);
+                }
+            } else {
+                directoryIngestionService.removePath(path);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to sync {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void reconcileAll() {
+        for (Path root : roots) {
+            try {
+                Map<DirectoryIngestionService.FileChange, Integer> changes = directoryIngestionService.reconcile(root);
+                log.info("Reconciled {}: {}", root, changes);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Reconciliation of {} failed: {}", root, e.getMessage());
+            }
+        }
+    }
+
+    private void registerTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path directory : paths.filter(Files::isDirectory).toList()) {
+                WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                watchedDirectories.put(key, directory);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.swiftbeard.rag_demo.service;
 
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
 import com.swiftbeard.rag_demo.model.DocumentMetadata;
 import com.swiftbeard.rag_demo.exception.DocumentNotFoundException;
 import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
@@ -14,17 +15,23 @@ public class DocumentService {
 
     private final DocumentMetadataRepository documentMetadataRepository;
     private final VectorStore vectorStore;
+    private final ParentChunkStore parentChunkStore;
 
     public DocumentService(DocumentMetadataRepository documentMetadataRepository,
-                          VectorStore vectorStore) {
+                          VectorStore vectorStore,
+                          ParentChunkStore parentChunkStore) {
         this.documentMetadataRepository = documentMetadataRepository;
         this.vectorStore = vectorStore;
+        this.parentChunkStore = parentChunkStore;
     }
 
+    @Transactional(readOnly = true)
     public List<DocumentMetadata> listAllDocuments() {
         return documentMetadataRepository.findAll();
     }
 
+    // Read from the primary: clients look up a document right after uploading it
+    @Transactional
     public DocumentMetadata getDocumentById(Long id) {
         return documentMetadataRepository.findById(id)
                 .orElseThrow(() -> new DocumentNotFoundException("Document not found with id: " + id));
@@ -42,10 +49,12 @@ public class DocumentService {
         // For now, we only delete the metadata entry
         // The vector embeddings will remain but won't be returned in document list
 
-        // Delete metadata from database
+        // Delete metadata and small-to-big parent sections from database
         documentMetadataRepository.delete(document);
+        parentChunkStore.delete(List.of(id));
     }
 
+    @Transactional(readOnly = true)
     public long getDocumentCount() {
         return documentMetadataRepository.count();
     }
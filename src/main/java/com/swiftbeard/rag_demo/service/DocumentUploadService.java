@@ -1,5 +1,7 @@
 package com.swiftbeard.rag_demo.service;
 
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.chunking.SmallToBigSplitter;
 import com.swiftbeard.rag_demo.model.DocumentMetadata;
 import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
 import org.springframework.ai.document.Document;
@@ -9,13 +11,19 @@ import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 
@@ -23,14 +31,29 @@ import java.util.Map;
 public class DocumentUploadService {
 
     private final VectorStore vectorStore;
-    private final TokenTextSplitter textSplitter;
     private final DocumentMetadataRepository documentMetadataRepository;
+    private final ParentChunkStore parentChunkStore;
+
+    // token: TokenTextSplitter chunks, embedded and sent to the LLM as they are
+    // small-to-big: small child chunks are embedded, their parent sections stored for the prompt
+    @Value("${rag.chunking.mode:token}")
+    private String chunkingMode;
+
+    @Value("${rag.chunking.parent-chars:4000}")
+    private int parentChars;
+
+    @Value("${rag.chunking.child-chars:1000}")
+    private int childChars;
+
+    // Created on first upload: TokenTextSplitter loads its BPE encoding tables in its constructor
+    private volatile TokenTextSplitter textSplitter;
 
     public DocumentUploadService(VectorStore vectorStore,
-                                DocumentMetadataRepository documentMetadataRepository) {
+                                DocumentMetadataRepository documentMetadataRepository,
+                                ParentChunkStore parentChunkStore) {
         this.vectorStore = vectorStore;
         this.documentMetadataRepository = documentMetadataRepository;
-        this.textSplitter = new TokenTextSplitter();
+        this.parentChunkStore = parentChunkStore;
     }
 
     @Transactional
@@ -38,45 +61,94 @@ public class DocumentUploadService {
         if (file.isEmpty()) {
             throw new IllegalArgumentException("File is empty");
         }
+        return uploadDocument(file.getBytes(), file.getOriginalFilename(), file.getContentType());
+    }
 
-        String filename = file.getOriginalFilename();
-        String contentType = file.getContentType();
-        long fileSize = file.getSize();
-
-        List<Document> documents = parseDocument(file, filename, contentType);
+    // For uploads that do not arrive as multipart requests, such as the gRPC Upload call
+    @Transactional
+    public String uploadDocument(byte[] content, String filename, String contentType) {
+        if (content.length == 0) {
+            throw new IllegalArgumentException("File is empty");
+        }
 
-        // Split documents into smaller chunks for better retrieval
-        List<Document> splitDocuments = textSplitter.apply(documents);
+        List<Document> splitDocuments = parseAndSplit(content, filename, contentType);
 
         // Save metadata to database first to get an ID
         DocumentMetadata metadata = new DocumentMetadata(
                 filename,
                 contentType,
-                fileSize,
+                (long) content.length,
                 splitDocuments.size()
         );
         metadata = documentMetadataRepository.save(metadata);
 
         // Tag each chunk with the document ID for later deletion
-        final Long documentId = metadata.getId();
-        splitDocuments.forEach(doc -> {
+        tagChunks(splitDocuments, metadata.getId(), filename);
+
+        // Add to vector store
+        vectorStore.add(splitDocuments);
+
+        return String.format("Successfully uploaded and processed %d document chunks from %s",
+                           splitDocuments.size(), filename);
+    }
+
+    public List<Document> parseAndSplit(byte[] content, String filename, String contentType) {
+        List<Document> documents = parseDocument(content, filename, contentType);
+
+        // Split documents into smaller chunks for better retrieval
+        if ("small-to-big".equalsIgnoreCase(chunkingMode)) {
+            return new SmallToBigSplitter(parentChars, childChars).split(documents);
+        }
+        return textSplitter().apply(documents);
+    }
+
+    // Also stores the parent sections of small-to-big chunks, now that the document has an id
+    public void tagChunks(List<Document> chunks, Long documentId, String filename) {
+        chunks.forEach(doc -> {
             Map<String, Object> docMetadata = new HashMap<>(doc.getMetadata());
             docMetadata.put("document_id", documentId.toString());
             docMetadata.put("filename", filename);
             doc.getMetadata().putAll(docMetadata);
         });
+        parentChunkStore.store(documentId, chunks);
+    }
 
-        // Add to vector store
-        vectorStore.add(splitDocuments);
+    public void deleteParents(List<Long> documentIds) {
+        parentChunkStore.delete(documentIds);
+    }
 
-        return String.format("Successfully uploaded and processed %d document chunks from %s",
-                           splitDocuments.size(), filename);
+    public static String guessContentType(String filename) {
+        return MediaTypeFactory.getMediaType(filename)
+                .map(MediaType::toString)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    public static String contentHash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private TokenTextSplitter textSplitter() {
+        TokenTextSplitter splitter = textSplitter;
+        if (splitter == null) {
+            synchronized (this) {
+                splitter = textSplitter;
+                if (splitter == null) {
+                    splitter = new TokenTextSplitter();
+                    textSplitter = splitter;
+                }
+            }
+        }
+        return splitter;
     }
 
-    private List<Document> parseDocument(MultipartFile file, String filename, String contentType)
-            throws IOException {
+    // Tika and PDFBox are only touched from here, so their parsers and font tables load on first use
+    private List<Document> parseDocument(byte[] content, String filename, String contentType) {
 
-        ByteArrayResource resource = new ByteArrayResource(file.getBytes()) {
+        ByteArrayResource resource = new ByteArrayResource(content) {
             @Override
             public String getFilename() {
                 return filename;
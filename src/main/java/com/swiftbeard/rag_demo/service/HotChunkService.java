@@ -0,0 +1,79 @@
+package com.swiftbeard.rag_demo.service;
+
+import com.swiftbeard.rag_demo.chunking.HotChunkCache;
+import com.swiftbeard.rag_demo.model.HotChunk;
+import com.swiftbeard.rag_demo.model.HotDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// The most cited chunks and documents, counted from the query_citation link table rather than the
+// in-memory frequency sketch, so the lists cover every instance and survive restarts. Read-only,
+// so they are served by the replica when one is configured.
+@Service
+public class HotChunkService {
+
+    private static final int PREVIEW_LENGTH = 200;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HotChunkCache hotChunkCache;
+    private final String vectorTable;
+
+    public HotChunkService(JdbcTemplate jdbcTemplate, HotChunkCache hotChunkCache,
+                           @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                           @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hotChunkCache = hotChunkCache;
+        this.vectorTable = schemaName + "." + tableName;
+    }
+
+    // Chunks cited since the given time, most cited first. Chunks deleted since keep their
+    // counts but lose their filename and preview.
+    @Transactional(readOnly = true)
+    public List<HotChunk> topChunks(LocalDateTime since, int limit) {
+        String sql = "SELECT c.chunk_id, max(c.document_id) AS document_id, count(*) AS citations, "
+                + "max(v.metadata->>'filename') AS filename, max(left(v.content, " + PREVIEW_LENGTH + ")) AS preview "
+                + "FROM query_citation c "
+                + "JOIN query_history h ON h.id = c.query_id "
+                + "LEFT JOIN " + vectorTable + " v ON v.id = c.chunk_id "
+                + "WHERE h.timestamp >= ? "
+                + "GROUP BY c.chunk_id "
+                + "ORDER BY citations DESC, c.chunk_id "
+                + "LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            String chunkId = rs.getString("chunk_id");
+            return new HotChunk(
+                    chunkId,
+                    rs.getObject("document_id", Long.class),
+                    rs.getString("filename"),
+                    rs.getString("preview"),
+                    rs.getLong("citations"),
+                    hotChunkCache.contains(chunkId));
+        }, Timestamp.valueOf(since), limit);
+    }
+
+    // Uploaded documents whose chunks were cited since the given time, most cited first. Seed
+    // corpus chunks belong to no document and only appear in topChunks.
+    @Transactional(readOnly = true)
+    public List<HotDocument> topDocuments(LocalDateTime since, int limit) {
+        String sql = "SELECT c.document_id, max(d.filename) AS filename, count(*) AS citations, "
+                + "count(DISTINCT c.chunk_id) AS chunks "
+                + "FROM query_citation c "
+                + "JOIN query_history h ON h.id = c.query_id "
+                + "LEFT JOIN document_metadata d ON d.id = c.document_id "
+                + "WHERE h.timestamp >= ? AND c.document_id IS NOT NULL "
+                + "GROUP BY c.document_id "
+                + "ORDER BY citations DESC, c.document_id "
+                + "LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new HotDocument(
+                rs.getLong("document_id"),
+                rs.getString("filename"),
+                rs.getLong("citations"),
+                rs.getLong("chunks")), Timestamp.valueOf(since), limit);
+    }
+}
@@ -1,7 +1,9 @@
 package com.swiftbeard.rag_demo.service;
 
+import com.swiftbeard.rag_demo.model.CitedChunk;
 import com.swiftbeard.rag_demo.model.QueryHistory;
 import com.swiftbeard.rag_demo.repository.QueryHistoryRepository;
+import org.springframework.ai.document.Document;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -25,6 +27,19 @@ public class QueryHistoryService {
         return queryHistoryRepository.save(history);
     }
 
+    // Also records which chunks the answer was built from, in rank order
+    @Transactional
+    public QueryHistory saveQuery(String query, String answer, int topK, List<Document> sources, Long executionTimeMs) {
+        QueryHistory history = new QueryHistory(query, answer, topK, sources.size(), executionTimeMs);
+        history.setCitations(CitedChunk.of(sources));
+        return queryHistoryRepository.save(history);
+    }
+
+    @Transactional
+    public List<QueryHistory> saveQueries(List<QueryHistory> entries) {
+        return queryHistoryRepository.saveAll(entries);
+    }
+
     public List<QueryHistory> getAllQueries() {
         return queryHistoryRepository.findAllByOrderByTimestampDesc();
     }
@@ -34,6 +49,8 @@ public class QueryHistoryService {
         return queryHistoryRepository.findAllByOrderByTimestampDesc(pageable).getContent();
     }
 
+    // Read from the primary: clients look up a query right after it was recorded
+    @Transactional
     public QueryHistory getQueryById(Long id) {
         return queryHistoryRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Query not found with id: " + id));
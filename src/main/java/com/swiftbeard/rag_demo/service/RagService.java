@@ -1,21 +1,34 @@
 package com.swiftbeard.rag_demo.service;
 
 
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.chunking.ContextExpander;
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.hedging.RequestDeadline;
 import com.swiftbeard.rag_demo.model.RagResponse;
 import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.prompt.PromptTemplateRegistry;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.similarity.RelevanceThreshold;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import com.swiftbeard.rag_demo.vectorstore.HotChunkRecordingVectorStore;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,42 +37,163 @@ public class RagService {
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
     private final QueryHistoryService queryHistoryService;
-
-    @Value("classpath:/prompts/rag-prompt.st")
-    private Resource ragPromptTemplate;
-
-    public RagService(ChatClient chatClient, VectorStore vectorStore, QueryHistoryService queryHistoryService) {
+    private final Bulkheads bulkheads;
+    private final PromptTemplateRegistry promptTemplates;
+    private final LatencyTiers latencyTiers;
+    private final RelevanceThreshold relevanceThreshold;
+    private final ContextExpander contextExpander;
+
+    public RagService(ChatClient chatClient, VectorStore vectorStore, QueryHistoryService queryHistoryService,
+                      Bulkheads bulkheads, PromptTemplateRegistry promptTemplates, LatencyTiers latencyTiers,
+                      RelevanceThreshold relevanceThreshold, ContextExpander contextExpander) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
         this.queryHistoryService = queryHistoryService;
+        this.bulkheads = bulkheads;
+        this.promptTemplates = promptTemplates;
+        this.latencyTiers = latencyTiers;
+        this.relevanceThreshold = relevanceThreshold;
+        this.contextExpander = contextExpander;
     }
 
     public RagResponse retrieveAndGenerate(final String message, final int topK) {
+        return retrieveAndGenerate(message, topK, latencyTiers.defaults());
+    }
+
+    // options carry the request's latency tier: prompt template, chat model and output limits
+    public RagResponse retrieveAndGenerate(final String message, final int topK, final GenerationOptions options) {
+        long startTime = System.currentTimeMillis();
+
+        // 1. Retrieve similar documents, dropping those below the relevance threshold
+        List<Document> similarDocuments = retrieve(message, topK);
+
+        // 2-3. Augment the prompt and generate the response
+        String answer = generate(message, similarDocuments, options);
+
+        // 4. Build source citations
+        List<SourceCitation> sources = citations(similarDocuments);
+
+        // 5. Save query to history in the background, using the history workload's threads and
+        // connections; the answer is returned even if history can't keep up
+        long executionTime = System.currentTimeMillis() - startTime;
+        bulkheads.offer(Workload.HISTORY, "query history write",
+                () -> queryHistoryService.saveQuery(message, answer, topK, similarDocuments, executionTime));
+
+        return new RagResponse(answer, sources);
+    }
+
+    // Like retrieveAndGenerate, but hands the citations to onSources as soon as retrieval is done
+    // and the answer to onToken piece by piece as the model streams it. Returns when the answer
+    // is complete; it is saved to history in the background. An exception thrown by a callback
+    // stops the stream.
+    public RagResponse retrieveAndStream(final String message, final GenerationOptions options,
+                                         Consumer<List<SourceCitation>> onSources, Consumer<String> onToken) {
         long startTime = System.currentTimeMillis();
 
-        // 1. Retrieve similar documents
-        List<Document> similarDocuments = vectorStore.similaritySearch(
+        List<Document> similarDocuments = retrieve(message, options.topK());
+        List<SourceCitation> sources = citations(similarDocuments);
+        onSources.accept(sources);
+
+        String answer = stream(message, similarDocuments, options, onToken);
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        bulkheads.offer(Workload.HISTORY, "query history write",
+                () -> queryHistoryService.saveQuery(message, answer, options.topK(), similarDocuments, executionTime));
+
+        return new RagResponse(answer, sources);
+    }
+
+    // Retrieval and prompt assembly as retrieveAndGenerate runs them, but without calling the
+    // model or saving history; the answer is left empty. Warm-up runs it to compile the query path.
+    // Its searches are not counted as hot chunks and its skips not as skipped generations.
+    public RagResponse rehearse(final String message, final GenerationOptions options) {
+        List<Document> similarDocuments = HotChunkRecordingVectorStore.unrecorded(
+                () -> retrieve(message, options.topK()));
+        if (!relevanceThreshold.wouldShortCircuit(similarDocuments)) {
+            prompt(message, similarDocuments, options, List.of());
+        }
+        return new RagResponse("", citations(similarDocuments));
+    }
+
+    List<Document> retrieve(String message, int topK) {
+        RequestDeadline.check("retrieval");
+        return relevanceThreshold.filter(vectorStore.similaritySearch(
                 SearchRequest.builder()
                         .query(message)
                         .topK(topK)
                         .build()
-        );
+        ));
+    }
 
-        String information = similarDocuments.stream()
-                .map(Document::getText)
-                .collect(Collectors.joining("\n"));
+    String generate(String message, List<Document> similarDocuments, GenerationOptions options) {
+        return generate(message, similarDocuments, options, List.of());
+    }
 
-        // 2. Augment the prompt
-        SystemPromptTemplate systemPromptTemplate = new SystemPromptTemplate(ragPromptTemplate);
-        Prompt prompt = new Prompt(List.of(
-                systemPromptTemplate.createMessage(Map.of("information", information)),
-                new UserMessage(message)));
+    // conversation holds earlier turns of the session, placed between the system prompt and the question
+    String generate(String message, List<Document> similarDocuments, GenerationOptions options,
+                    List<Message> conversation) {
+        // Nothing relevant was found: the model could only say it doesn't know, so skip the call
+        if (relevanceThreshold.shortCircuit(similarDocuments)) {
+            return relevanceThreshold.noAnswer();
+        }
+        RequestDeadline.check("generation");
+
+        // 2. Augment the prompt with the matched chunks, or the larger sections around them
+        Prompt prompt = prompt(message, similarDocuments, options, conversation);
+
+        // 3. Generate the response, recording its latency and tokens under the request's tier
+        TokenUsage usage = new TokenUsage();
+        long start = System.nanoTime();
+        String answer = usage.track(() -> chatClient.prompt(prompt).call().content());
+        latencyTiers.record(options, System.nanoTime() - start, usage);
+        return answer;
+    }
 
-        // 3. Generate the response
-        String answer = chatClient.prompt(prompt).call().content();
+    // Streamed responses are not hedged, so the request deadline is enforced here; it covers the
+    // whole answer, not the wait for each piece
+    String stream(String message, List<Document> similarDocuments, GenerationOptions options,
+                  Consumer<String> onToken) {
+        if (relevanceThreshold.shortCircuit(similarDocuments)) {
+            onToken.accept(relevanceThreshold.noAnswer());
+            return relevanceThreshold.noAnswer();
+        }
+        RequestDeadline.check("generation");
+
+        Prompt prompt = prompt(message, similarDocuments, options, List.of());
+        StringBuilder answer = new StringBuilder();
+        TokenUsage usage = new TokenUsage();
+        long start = System.nanoTime();
+        usage.track(() -> {
+            Mono<Void> streamed = chatClient.prompt(prompt).stream().content()
+                    .doOnNext(token -> {
+                        answer.append(token);
+                        onToken.accept(token);
+                    })
+                    .then();
+            long remaining = RequestDeadline.remainingNanos();
+            if (remaining != Long.MAX_VALUE) {
+                streamed = streamed.timeout(Duration.ofNanos(Math.max(1, remaining)), Mono.error(() ->
+                        new StageTimeoutException("The answer was not complete at the request deadline")));
+            }
+            return streamed.block();
+        });
+        latencyTiers.record(options, System.nanoTime() - start, usage);
+        return answer.toString();
+    }
 
-        // 4. Build source citations
-        List<SourceCitation> sources = similarDocuments.stream()
+    private Prompt prompt(String message, List<Document> similarDocuments, GenerationOptions options,
+                          List<Message> conversation) {
+        List<Document> context = contextExpander.expand(similarDocuments);
+        String system = promptTemplates.get(options.template()).render(context);
+        List<Message> messages = new ArrayList<>(conversation.size() + 2);
+        messages.add(new SystemMessage(system));
+        messages.addAll(conversation);
+        messages.add(new UserMessage(message));
+        return new Prompt(messages, options.chatOptions());
+    }
+
+    List<SourceCitation> citations(List<Document> similarDocuments) {
+        return similarDocuments.stream()
                 .map(doc -> {
                     String documentId = doc.getMetadata().getOrDefault("document_id", "unknown").toString();
                     String filename = doc.getMetadata().getOrDefault("filename", "unknown").toString();
@@ -70,18 +204,10 @@ public class RagService {
                             : content;
 
                     // Get similarity score if available (may not be in all implementations)
-                    Double score = doc.getMetadata().containsKey("distance")
-                            ? (Double) doc.getMetadata().get("distance")
-                            : null;
+                    Double score = RelevanceThreshold.distance(doc);
 
                     return new SourceCitation(documentId, filename, truncatedContent, score);
                 })
                 .collect(Collectors.toList());
-
-        // 5. Save query to history
-        long executionTime = System.currentTimeMillis() - startTime;
-        queryHistoryService.saveQuery(message, answer, topK, sources.size(), executionTime);
-
-        return new RagResponse(answer, sources);
     }
 }
@@ -0,0 +1,49 @@
+package com.swiftbeard.rag_demo.similarity;
+
+import java.util.List;
+
+// Groups vectors that are near-duplicates of each other. Each vector is compared with the
+// representatives found so far, which are packed into one contiguous block so that a single
+// cosineAll call scores them all; it joins the most similar one at or above minSimilarity, or
+// becomes a representative itself. O(n * representatives) cosines, in the order given.
+public final class NearDuplicates {
+
+    private NearDuplicates() {
+    }
+
+    // For each vector, the index of its group's representative (its own index if it leads one)
+    public static int[] representatives(List<float[]> vectors, float minSimilarity) {
+        return representatives(vectors, minSimilarity, SimilarityKernels.get());
+    }
+
+    static int[] representatives(List<float[]> vectors, float minSimilarity, VectorKernels kernels) {
+        int[] representatives = new int[vectors.size()];
+        if (vectors.isEmpty()) {
+            return representatives;
+        }
+        int dimensions = vectors.get(0).length;
+        float[] block = new float[vectors.size() * dimensions];
+        int[] leaders = new int[vectors.size()];
+        float[] scores = new float[vectors.size()];
+        int count = 0;
+
+        for (int i = 0; i < vectors.size(); i++) {
+            float[] vector = vectors.get(i);
+            kernels.cosineAll(vector, block, count, scores);
+            int best = -1;
+            for (int j = 0; j < count; j++) {
+                if (scores[j] >= minSimilarity && (best < 0 || scores[j] > scores[best])) {
+                    best = j;
+                }
+            }
+            if (best >= 0) {
+                representatives[i] = leaders[best];
+            } else {
+                System.arraycopy(vector, 0, block, count * dimensions, dimensions);
+                leaders[count++] = i;
+                representatives[i] = i;
+            }
+        }
+        return representatives;
+    }
+}
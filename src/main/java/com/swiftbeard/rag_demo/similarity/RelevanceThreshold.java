@@ -0,0 +1,80 @@
+package com.swiftbeard.rag_demo.similarity;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Drops retrieved chunks whose cosine similarity to the question (1 - the "distance" metadata
+// every vector store here reports) is below rag.relevance.min-similarity. When nothing is left
+// the question is off-topic, and RagService answers with no-answer instead of calling the LLM.
+// A min-similarity of 0 turns the threshold off.
+@Component
+public class RelevanceThreshold {
+
+    public static final String DISTANCE = "distance";
+
+    private final double minSimilarity;
+    private final String noAnswer;
+    private final Counter skippedGenerations;
+
+    public RelevanceThreshold(@Value("${rag.relevance.min-similarity:0}") double minSimilarity,
+                              @Value("${rag.relevance.no-answer:I don't know.}") String noAnswer,
+                              MeterRegistry meterRegistry) {
+        this.minSimilarity = minSimilarity;
+        this.noAnswer = noAnswer;
+        this.skippedGenerations = Counter.builder("rag.relevance.skipped-generations")
+                .description("LLM calls avoided because no retrieved chunk passed the relevance threshold")
+                .register(meterRegistry);
+    }
+
+    public boolean enabled() {
+        return minSimilarity > 0;
+    }
+
+    // The documents that pass the threshold, in their original order. Documents without a
+    // distance are kept, since there is nothing to judge them by.
+    public List<Document> filter(List<Document> documents) {
+        if (!enabled()) {
+            return documents;
+        }
+        return documents.stream()
+                .filter(doc -> {
+                    Double similarity = similarity(doc);
+                    return similarity == null || similarity >= minSimilarity;
+                })
+                .toList();
+    }
+
+    // True when the threshold is on and no documents passed it; counts the skipped generation
+    public boolean shortCircuit(List<Document> relevantDocuments) {
+        if (!wouldShortCircuit(relevantDocuments)) {
+            return false;
+        }
+        skippedGenerations.increment();
+        return true;
+    }
+
+    // The same decision without counting it, for requests that would not have generated anyway
+    public boolean wouldShortCircuit(List<Document> relevantDocuments) {
+        return enabled() && relevantDocuments.isEmpty();
+    }
+
+    public String noAnswer() {
+        return noAnswer;
+    }
+
+    // PgVectorStore stores the distance as a Float, the other stores as a Double
+    public static Double distance(Document document) {
+        Object distance = document.getMetadata().get(DISTANCE);
+        return distance instanceof Number number ? number.doubleValue() : null;
+    }
+
+    private static Double similarity(Document document) {
+        Double distance = distance(document);
+        return distance != null ? 1.0 - distance : null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.swiftbeard.rag_demo.similarity;
+
+class ScalarKernels implements VectorKernels {
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        float dot = 0;
+        float normA = 0;
+        float normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return cosine(dot, normA, normB);
+    }
+
+    @Override
+    public float l2Squared(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public int hamming(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance;
+    }
+
+    @Override
+    public void cosineAll(float[] query, float[] block, int count, float[] scores) {
+        int dimensions = query.length;
+        float normQuery = 0;
+        for (float value : query) {
+            normQuery += value * value;
+        }
+        for (int row = 0; row < count; row++) {
+            int offset = row * dimensions;
+            float dot = 0;
+            float normRow = 0;
+            for (int i = 0; i < dimensions; i++) {
+                float value = block[offset + i];
+                dot += query[i] * value;
+                normRow += value * value;
+            }
+            scores[row] = cosine(dot, normQuery, normRow);
+        }
+    }
+
+    static float cosine(float dot, float normA, float normB) {
+        float denominator = (float) Math.sqrt((double) normA * normB);
+        return denominator == 0 ? 0 : dot / denominator;
+    }
+}
@@ -0,0 +1,110 @@
+package com.swiftbeard.rag_demo.similarity;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Only loaded when jdk.incubator.vector is on the module path (--add-modules jdk.incubator.vector)
+class SimdKernels implements VectorKernels {
+
+    static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += FLOATS.length()) {
+            acc = FloatVector.fromArray(FLOATS, a, i).fma(FloatVector.fromArray(FLOATS, b, i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        FloatVector dotAcc = FloatVector.zero(FLOATS);
+        FloatVector normAAcc = FloatVector.zero(FLOATS);
+        FloatVector normBAcc = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, i);
+            dotAcc = va.fma(vb, dotAcc);
+            normAAcc = va.fma(va, normAAcc);
+            normBAcc = vb.fma(vb, normBAcc);
+        }
+        float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+        float normA = normAAcc.reduceLanes(VectorOperators.ADD);
+        float normB = normBAcc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return ScalarKernels.cosine(dot, normA, normB);
+    }
+
+    @Override
+    public float l2Squared(float[] a, float[] b) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += FLOATS.length()) {
+            FloatVector diff = FloatVector.fromArray(FLOATS, a, i).sub(FloatVector.fromArray(FLOATS, b, i));
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public void cosineAll(float[] query, float[] block, int count, float[] scores) {
+        int dimensions = query.length;
+        int bound = FLOATS.loopBound(dimensions);
+        float normQuery = dot(query, query);
+        for (int row = 0; row < count; row++) {
+            int offset = row * dimensions;
+            FloatVector dotAcc = FloatVector.zero(FLOATS);
+            FloatVector normAcc = FloatVector.zero(FLOATS);
+            int i = 0;
+            for (; i < bound; i += FLOATS.length()) {
+                FloatVector vq = FloatVector.fromArray(FLOATS, query, i);
+                FloatVector vr = FloatVector.fromArray(FLOATS, block, offset + i);
+                dotAcc = vq.fma(vr, dotAcc);
+                normAcc = vr.fma(vr, normAcc);
+            }
+            float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+            float normRow = normAcc.reduceLanes(VectorOperators.ADD);
+            for (; i < dimensions; i++) {
+                float value = block[offset + i];
+                dot += query[i] * value;
+                normRow += value * value;
+            }
+            scores[row] = ScalarKernels.cosine(dot, normQuery, normRow);
+        }
+    }
+
+    @Override
+    public int hamming(long[] a, long[] b) {
+        long distance = 0;
+        int i = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            distance += LongVector.fromArray(LONGS, a, i)
+                    .lanewise(VectorOperators.XOR, LongVector.fromArray(LONGS, b, i))
+                    .lanewise(VectorOperators.BIT_COUNT)
+                    .reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < a.length; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return (int) distance;
+    }
+}
@@ -0,0 +1,23 @@
+package com.swiftbeard.rag_demo.similarity;
+
+// Entry point for the similarity kernels. SIMD implementations are used when the JVM runs with
+// --add-modules jdk.incubator.vector; otherwise, or with -Drag.similarity.simd=false, the scalar
+// ones are.
+public final class SimilarityKernels {
+
+    private static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && Boolean.parseBoolean(System.getProperty("rag.similarity.simd", "true"));
+
+    private static final VectorKernels KERNELS = SIMD ? new SimdKernels() : new ScalarKernels();
+
+    private SimilarityKernels() {
+    }
+
+    public static VectorKernels get() {
+        return KERNELS;
+    }
+
+    public static boolean simdAvailable() {
+        return SIMD;
+    }
+}
@@ -0,0 +1,18 @@
+package com.swiftbeard.rag_demo.similarity;
+
+// Similarity primitives for scoring embeddings inside the JVM. Float metrics expect both
+// arrays to have the same length; binary codes are packed 64 dimensions per long.
+public interface VectorKernels {
+
+    float dot(float[] a, float[] b);
+
+    float cosine(float[] a, float[] b);
+
+    float l2Squared(float[] a, float[] b);
+
+    int hamming(long[] a, long[] b);
+
+    // Cosine similarity of query with the first count rows of block, a row-major array of
+    // vectors as long as query, written to scores[0..count). Allocates nothing per row.
+    void cosineAll(float[] query, float[] block, int count, float[] scores);
+}
@@ -0,0 +1,25 @@
+package com.swiftbeard.rag_demo.tier;
+
+import org.springframework.ai.chat.prompt.ChatOptions;
+
+// The resolved settings for one request: its tier's settings with any explicit overrides from
+// the request applied and clamped to the server limits
+public record GenerationOptions(String tier,
+                                String model,
+                                Integer maxTokens,
+                                Double temperature,
+                                String template,
+                                int topK) {
+
+    // Null when nothing is set, so the chat model's defaults apply unchanged
+    public ChatOptions chatOptions() {
+        if (model == null && maxTokens == null && temperature == null) {
+            return null;
+        }
+        return ChatOptions.builder()
+                .model(model)
+                .maxTokens(maxTokens)
+                .temperature(temperature)
+                .build();
+    }
+}
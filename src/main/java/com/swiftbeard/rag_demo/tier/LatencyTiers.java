@@ -0,0 +1,135 @@
+package com.swiftbeard.rag_demo.tier;
+
+import com.swiftbeard.rag_demo.exception.InvalidGenerationOptionsException;
+import com.swiftbeard.rag_demo.model.MessageRequest;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Named latency tiers (rag.tiers.definitions), each mapping to a chat model, an output cap, a
+// temperature, a prompt template and a retrieval depth. A request picks a tier and may override
+// single settings; overrides are checked against rag.tiers.limits here, on the server, before
+// any work is done. Generation latency and token counts are recorded per tier.
+@Component
+public class LatencyTiers {
+
+    private static final int MAX_TOP_K = 20;
+    private static final int DEFAULT_TOP_K = 4;
+
+    // Used when rag.tiers.definitions is not configured
+    private static final Map<String, TierSettings> BUILT_IN = Map.of(
+            "fast", new TierSettings(null, 150, 0.2, "concise", 2),
+            "standard", new TierSettings(null, null, null, null, null),
+            "thorough", new TierSettings(null, 4096, null, "detailed", 10));
+
+    private final Map<String, TierSettings> tiers;
+    private final String defaultTier;
+    private final int maxTokensLimit;
+    private final double maxTemperature;
+    private final Set<String> allowedModels;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public LatencyTiers(Environment environment, MeterRegistry meterRegistry) {
+        Binder binder = Binder.get(environment);
+        Map<String, TierSettings> configured = binder
+                .bind("rag.tiers.definitions", Bindable.mapOf(String.class, TierSettings.class))
+                .orElse(Map.of());
+        this.tiers = configured.isEmpty() ? BUILT_IN : Map.copyOf(configured);
+        this.defaultTier = environment.getProperty("rag.tiers.default", "standard");
+        this.maxTokensLimit = environment.getProperty("rag.tiers.limits.max-tokens", Integer.class, 4096);
+        this.maxTemperature = environment.getProperty("rag.tiers.limits.max-temperature", Double.class, 1.5);
+        this.allowedModels = Set.copyOf(binder.bind("rag.tiers.allowed-models", Bindable.listOf(String.class))
+                .orElse(List.of()));
+        this.meterRegistry = meterRegistry;
+        if (!tiers.containsKey(defaultTier)) {
+            throw new IllegalStateException("Default tier " + defaultTier + " is not defined in rag.tiers.definitions");
+        }
+    }
+
+    public Set<String> names() {
+        return new TreeSet<>(tiers.keySet());
+    }
+
+    // Throws InvalidGenerationOptionsException for an unknown tier or a model that is not allowed
+    public GenerationOptions resolve(MessageRequest request) {
+        String tierName = request.tier() == null || request.tier().isBlank()
+                ? defaultTier
+                : request.tier().toLowerCase(Locale.ROOT);
+        TierSettings tier = tiers.get(tierName);
+        if (tier == null) {
+            throw new InvalidGenerationOptionsException("Unknown tier: " + request.tier()
+                    + "; available: " + String.join(", ", names()));
+        }
+
+        String model = tier.model();
+        if (request.model() != null && !request.model().isBlank()) {
+            if (!allowedModels.contains(request.model())) {
+                throw new InvalidGenerationOptionsException("Model not allowed: " + request.model());
+            }
+            model = request.model();
+        }
+
+        Integer maxTokens = request.maxTokens() != null ? request.maxTokens() : tier.maxTokens();
+        if (maxTokens != null) {
+            maxTokens = Math.max(1, Math.min(maxTokens, maxTokensLimit));
+        }
+
+        Double temperature = request.temperature() != null ? request.temperature() : tier.temperature();
+        if (temperature != null) {
+            temperature = Math.max(0.0, Math.min(temperature, maxTemperature));
+        }
+
+        String template = request.template() != null ? request.template() : tier.template();
+
+        int topK = request.topK() != null
+                ? request.getValidatedTopK()
+                : tier.topK() != null ? Math.max(1, Math.min(tier.topK(), MAX_TOP_K)) : DEFAULT_TOP_K;
+
+        return new GenerationOptions(tierName, model, maxTokens, temperature, template, topK);
+    }
+
+    public GenerationOptions defaults() {
+        return resolve(new MessageRequest(null));
+    }
+
+    public void record(GenerationOptions options, long durationNanos, TokenUsage usage) {
+        Meters tierMeters = meters.computeIfAbsent(options.tier(), this::meters);
+        tierMeters.latency().record(durationNanos, TimeUnit.NANOSECONDS);
+        tierMeters.promptTokens().record(usage.promptTokens());
+        tierMeters.completionTokens().record(usage.completionTokens());
+    }
+
+    private Meters meters(String tier) {
+        return new Meters(
+                Timer.builder("rag.tier.latency")
+                        .description("Answer generation time per latency tier")
+                        .tag("tier", tier)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry),
+                DistributionSummary.builder("rag.tier.tokens")
+                        .tag("tier", tier)
+                        .tag("type", "prompt")
+                        .register(meterRegistry),
+                DistributionSummary.builder("rag.tier.tokens")
+                        .tag("tier", tier)
+                        .tag("type", "completion")
+                        .register(meterRegistry));
+    }
+
+    private record Meters(Timer latency, DistributionSummary promptTokens, DistributionSummary completionTokens) {
+    }
+}
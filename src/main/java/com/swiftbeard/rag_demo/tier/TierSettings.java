@@ -0,0 +1,10 @@
+package com.swiftbeard.rag_demo.tier;
+
+// One entry of rag.tiers.definitions. A null model leaves the chat endpoint's own model in
+// place; a null template, topK, maxTokens or temperature falls back to the server default.
+public record TierSettings(String model,
+                           Integer maxTokens,
+                           Double temperature,
+                           String template,
+                           Integer topK) {
+}
@@ -0,0 +1,68 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+// Serves from the live store until the ReembeddingJob switches retrieval to its shadow table.
+// While the job copies, writes go to both; they hold the job's read lock so that the switch,
+// which takes the write lock, never happens halfway through one.
+public class BlueGreenVectorStore implements VectorStore {
+
+    private final VectorStore live;
+    private final ReembeddingJob job;
+
+    public BlueGreenVectorStore(VectorStore live, ReembeddingJob job) {
+        this.live = live;
+        this.job = job;
+    }
+
+    @Override
+    public String getName() {
+        return "BlueGreenVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        write(store -> store.add(documents));
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        write(store -> store.delete(idList));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        write(store -> store.delete(filterExpression));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return job.phase() == ReembeddingJob.Phase.SWITCHED
+                ? job.target().similaritySearch(request)
+                : live.similaritySearch(request);
+    }
+
+    private void write(Consumer<VectorStore> operation) {
+        Lock lock = job.switchLock().readLock();
+        lock.lock();
+        try {
+            switch (job.phase()) {
+                case SWITCHED -> operation.accept(job.target());
+                case DUAL_WRITE -> {
+                    operation.accept(live);
+                    operation.accept(job.target());
+                }
+                case IDLE -> operation.accept(live);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Copies chunks from the pgvector table into the embedded index. Embeddings are read back from
+// Postgres rather than recomputed, so mirroring never calls the embedding model. A full resync
+// runs at startup and periodically, which also picks up writes made by other nodes and repairs
+// anything lost if the process died between the Postgres write and the local commit.
+public class EmbeddedIndexMirror implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedIndexMirror.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final EmbeddedVectorStore embedded;
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+    private final int pageSize;
+    private final long resyncIntervalSeconds;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean synced;
+
+    public EmbeddedIndexMirror(EmbeddedVectorStore embedded,
+                               JdbcTemplate jdbcTemplate,
+                               String tableName,
+                               int pageSize,
+                               long resyncIntervalSeconds) {
+        this.embedded = embedded;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+        this.pageSize = pageSize;
+        this.resyncIntervalSeconds = resyncIntervalSeconds;
+    }
+
+    // False until the first full resync completes; searches fall back to Postgres until then
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public void mirror(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String sql = "SELECT id::text, content, metadata::text, embedding::text FROM " + tableName
+                + " WHERE id = ANY(?::uuid[])";
+        List<Row> rows = jdbcTemplate.query(sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids.toArray())),
+                (rs, rowNum) -> toRow(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+        upsert(rows);
+    }
+
+    public synchronized int resync() {
+        long start = System.currentTimeMillis();
+        String generation = embedded.beginResync();
+        String sql = "SELECT id::text, content, metadata::text, embedding::text FROM " + tableName
+                + " WHERE id > ?::uuid ORDER BY id LIMIT ?";
+
+        // Keyset pagination over the primary key keeps each page an index range scan
+        String lastId = "00000000-0000-0000-0000-000000000000";
+        int total = 0;
+        List<Row> page;
+        try {
+            do {
+                page = jdbcTemplate.query(sql,
+                        (rs, rowNum) -> toRow(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)),
+                        lastId, pageSize);
+                // Chunks deleted after the page was read are tombstoned and skipped
+                if (!page.isEmpty()) {
+                    embedded.resyncUpsert(page.stream().map(Row::document).toList(),
+                            page.stream().map(Row::embedding).toList());
+                }
+                total += page.size();
+                if (!page.isEmpty()) {
+                    lastId = page.get(page.size() - 1).document().getId();
+                }
+            } while (page.size() == pageSize);
+        } catch (RuntimeException e) {
+            embedded.abortResync();
+            throw e;
+        }
+
+        embedded.finishResync(generation);
+        synced = true;
+        log.info("Embedded index resynced: {} chunks in {} ms", total, System.currentTimeMillis() - start);
+        return total;
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(() -> Workload.ADMIN.runAs(r), "embedded-index-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::resyncQuietly, 0, resyncIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private void resyncQuietly() {
+        try {
+            resync();
+        } catch (RuntimeException e) {
+            log.error("Embedded index resync failed", e);
+        }
+    }
+
+    private void upsert(List<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        embedded.upsert(rows.stream().map(Row::document).toList(), rows.stream().map(Row::embedding).toList());
+    }
+
+    private static Row toRow(String id, String content, String metadata, String embedding) throws SQLException {
+        try {
+            Map<String, Object> parsed = metadata != null
+                    ? objectMapper.readValue(metadata, new TypeReference<HashMap<String, Object>>() { })
+                    : new HashMap<>();
+            return new Row(new Document(id, content, parsed), parseVector(embedding));
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata JSON for chunk " + id, e);
+        }
+    }
+
+    // Parses pgvector's text form, e.g. [0.1,0.2,0.3]
+    static float[] parseVector(String literal) {
+        String[] parts = literal.substring(1, literal.length() - 1).split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+
+    private record Row(Document document, float[] embedding) {
+    }
+}
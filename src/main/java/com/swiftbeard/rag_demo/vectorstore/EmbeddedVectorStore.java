@@ -0,0 +1,361 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.MMapDirectory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-process HNSW index backed by Lucene. Vectors and graph live in memory-mapped segment files,
+// so they sit in the OS page cache rather than on the heap, and every write is committed before
+// returning, so a crash never leaves a half-applied update behind.
+public class EmbeddedVectorStore implements VectorStore, Closeable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String ID = "id";
+    private static final String CONTENT = "content";
+    private static final String METADATA = "metadata";
+    private static final String EMBEDDING = "embedding";
+    private static final String GENERATION = "generation";
+    private static final String FILTER_PREFIX = "meta.";
+    private static final String RANGE_PREFIX = "range.";
+
+    private final EmbeddingModel embeddingModel;
+    private final MMapDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    // Stamped on every write so a full resync can drop whatever it did not see
+    private volatile String generation = UUID.randomUUID().toString();
+
+    // Ids deleted while a resync is running, null otherwise. The resync may have read them from
+    // Postgres before they were deleted there; they must not come back when its pages are written.
+    private volatile Set<String> tombstones;
+
+    public EmbeddedVectorStore(EmbeddingModel embeddingModel, Path path) throws IOException {
+        this.embeddingModel = embeddingModel;
+        this.directory = new MMapDirectory(path);
+        this.writer = new IndexWriter(directory, new IndexWriterConfig()
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    @Override
+    public String getName() {
+        return "EmbeddedVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        upsert(documents, embeddings);
+    }
+
+    // A fresh write: it wins over a delete of the same id made earlier in a running resync
+    public void upsert(List<Document> documents, List<float[]> embeddings) {
+        Set<String> deleted = tombstones;
+        if (deleted != null) {
+            documents.forEach(document -> deleted.remove(document.getId()));
+        }
+        write(documents, embeddings);
+    }
+
+    // A page read by the resync begun with beginResync; chunks deleted since it began are skipped
+    public void resyncUpsert(List<Document> documents, List<float[]> embeddings) {
+        Set<String> deleted = tombstones;
+        if (deleted == null || deleted.isEmpty()) {
+            write(documents, embeddings);
+            return;
+        }
+        List<Document> kept = new ArrayList<>(documents.size());
+        List<float[]> keptEmbeddings = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            if (!deleted.contains(documents.get(i).getId())) {
+                kept.add(documents.get(i));
+                keptEmbeddings.add(embeddings.get(i));
+            }
+        }
+        write(kept, keptEmbeddings);
+    }
+
+    private void write(List<Document> documents, List<float[]> embeddings) {
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                writer.updateDocument(new Term(ID, document.getId()), toLucene(document, embeddings.get(i)));
+            }
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        Set<String> deleted = tombstones;
+        if (deleted != null) {
+            deleted.addAll(idList);
+        }
+        try {
+            writer.deleteDocuments(idList.stream().map(id -> new Term(ID, id)).toArray(Term[]::new));
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Query query = toQuery(filterExpression);
+        try {
+            Set<String> deleted = tombstones;
+            if (deleted != null) {
+                deleted.addAll(matchingIds(query));
+            }
+            writer.deleteDocuments(query);
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return search(embeddingModel.embed(request.getQuery()), request.getTopK(), request.getFilterExpression())
+                .stream()
+                .filter(doc -> doc.getScore() >= request.getSimilarityThreshold())
+                .toList();
+    }
+
+    public List<Document> search(float[] embedding, int topK, Filter.Expression filterExpression) {
+        Query filter = filterExpression != null ? toQuery(filterExpression) : null;
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(new KnnFloatVectorQuery(EMBEDDING, embedding, topK, filter), topK);
+                StoredFields storedFields = searcher.storedFields();
+                List<Document> results = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    results.add(fromLucene(storedFields.document(scoreDoc.doc), scoreDoc.score));
+                }
+                return results;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int count() {
+        return writer.getDocStats().numDocs;
+    }
+
+    public String beginResync() {
+        tombstones = ConcurrentHashMap.newKeySet();
+        generation = UUID.randomUUID().toString();
+        return generation;
+    }
+
+    // Removes every document not rewritten since beginResync returned this generation, and every
+    // document deleted since then, in case a page written by the resync brought it back
+    public void finishResync(String resyncGeneration) {
+        Set<String> deleted = tombstones;
+        tombstones = null;
+        try {
+            writer.deleteDocuments(new BooleanQuery.Builder()
+                    .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+                    .add(new TermQuery(new Term(GENERATION, resyncGeneration)), BooleanClause.Occur.MUST_NOT)
+                    .build());
+            if (deleted != null && !deleted.isEmpty()) {
+                writer.deleteDocuments(deleted.stream().map(id -> new Term(ID, id)).toArray(Term[]::new));
+            }
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Forgets the tombstones of a resync that failed before finishResync
+    public void abortResync() {
+        tombstones = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private List<String> matchingIds(Query query) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(query, Math.max(1, searcher.getIndexReader().maxDoc()));
+            StoredFields storedFields = searcher.storedFields();
+            List<String> ids = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                ids.add(storedFields.document(scoreDoc.doc, Set.of(ID)).get(ID));
+            }
+            return ids;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void commit() throws IOException {
+        writer.commit();
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    private List<Field> toLucene(Document document, float[] embedding) throws JsonProcessingException {
+        List<Field> fields = new ArrayList<>();
+        fields.add(new StringField(ID, document.getId(), Field.Store.YES));
+        fields.add(new StringField(GENERATION, generation, Field.Store.NO));
+        fields.add(new StoredField(CONTENT, document.getText() != null ? document.getText() : ""));
+        fields.add(new StoredField(METADATA, objectMapper.writeValueAsString(document.getMetadata())));
+        fields.add(new KnnFloatVectorField(EMBEDDING, embedding, VectorSimilarityFunction.COSINE));
+
+        // Index metadata values as exact-match terms for filtering, and numbers as points for ranges
+        document.getMetadata().forEach((key, value) -> {
+            for (Object v : value instanceof Collection<?> values ? values : Collections.singletonList(value)) {
+                if (v != null) {
+                    fields.add(new StringField(FILTER_PREFIX + key, String.valueOf(v), Field.Store.NO));
+                }
+                if (v instanceof Number number) {
+                    fields.add(new DoublePoint(RANGE_PREFIX + key, number.doubleValue()));
+                }
+            }
+        });
+        return fields;
+    }
+
+    private static Document fromLucene(org.apache.lucene.document.Document stored, float score) throws IOException {
+        Map<String, Object> metadata = objectMapper.readValue(stored.get(METADATA),
+                new TypeReference<HashMap<String, Object>>() { });
+        // Lucene scores cosine similarity as (1 + cos) / 2; report it the way PgVectorStore does
+        double similarity = 2.0 * score - 1.0;
+        metadata.put("distance", 1.0 - similarity);
+        return Document.builder()
+                .id(stored.get(ID))
+                .text(stored.get(CONTENT))
+                .metadata(metadata)
+                .score(similarity)
+                .build();
+    }
+
+    static Query toQuery(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return toQuery(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("Unexpected filter operand: " + operand);
+        }
+
+        return switch (expression.type()) {
+            case AND -> new BooleanQuery.Builder()
+                    .add(toQuery(expression.left()), BooleanClause.Occur.MUST)
+                    .add(toQuery(expression.right()), BooleanClause.Occur.MUST)
+                    .build();
+            case OR -> new BooleanQuery.Builder()
+                    .add(toQuery(expression.left()), BooleanClause.Occur.SHOULD)
+                    .add(toQuery(expression.right()), BooleanClause.Occur.SHOULD)
+                    .build();
+            case NOT -> exclude(toQuery(expression.left()));
+            case EQ -> termQuery(expression);
+            case NE -> exclude(termQuery(expression));
+            case IN -> anyOf(expression);
+            case NIN -> exclude(anyOf(expression));
+            case GT, GTE, LT, LTE -> range(expression);
+            default -> throw new UnsupportedOperationException(
+                    "Filter operator not supported by the embedded index: " + expression.type());
+        };
+    }
+
+    // Numbers compare as numbers and anything else as strings, as they do in PgVectorStore's
+    // JSON path filters
+    private static Query range(Filter.Expression expression) {
+        String key = ((Filter.Key) expression.left()).key();
+        Object value = ((Filter.Value) expression.right()).value();
+        Filter.ExpressionType type = expression.type();
+        boolean lower = type == Filter.ExpressionType.GT || type == Filter.ExpressionType.GTE;
+        boolean inclusive = type == Filter.ExpressionType.GTE || type == Filter.ExpressionType.LTE;
+
+        if (value instanceof Number number) {
+            double bound = number.doubleValue();
+            if (!inclusive) {
+                bound = lower ? Math.nextUp(bound) : Math.nextDown(bound);
+            }
+            return lower
+                    ? DoublePoint.newRangeQuery(RANGE_PREFIX + key, bound, Double.POSITIVE_INFINITY)
+                    : DoublePoint.newRangeQuery(RANGE_PREFIX + key, Double.NEGATIVE_INFINITY, bound);
+        }
+        String bound = String.valueOf(value);
+        return lower
+                ? TermRangeQuery.newStringRange(FILTER_PREFIX + key, bound, null, inclusive, false)
+                : TermRangeQuery.newStringRange(FILTER_PREFIX + key, null, bound, false, inclusive);
+    }
+
+    private static Query termQuery(Filter.Expression expression) {
+        String key = ((Filter.Key) expression.left()).key();
+        Object value = ((Filter.Value) expression.right()).value();
+        return new TermQuery(new Term(FILTER_PREFIX + key, String.valueOf(value)));
+    }
+
+    private static Query anyOf(Filter.Expression expression) {
+        String key = ((Filter.Key) expression.left()).key();
+        Object value = ((Filter.Value) expression.right()).value();
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (Object v : value instanceof Collection<?> values ? values : List.of(value)) {
+            builder.add(new TermQuery(new Term(FILTER_PREFIX + key, String.valueOf(v))), BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    private static Query exclude(Query query) {
+        return new BooleanQuery.Builder()
+                .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+                .add(query, BooleanClause.Occur.MUST_NOT)
+                .build();
+    }
+}
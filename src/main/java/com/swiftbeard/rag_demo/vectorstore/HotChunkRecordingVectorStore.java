@@ -0,0 +1,92 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import com.swiftbeard.rag_demo.chunking.HotChunkCache;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+// Counts every search result in the HotChunkCache, whichever store below answered it. Writes
+// evict the chunks they replace. A delete by document_id, as re-ingesting a file does, evicts
+// that document's chunks; any other filter cannot tell which chunks it removed, so it empties
+// the cache. Searches run inside unrecorded(), such as warm-up's synthetic queries, are
+// not counted, so they cannot make their chunks look hot.
+public class HotChunkRecordingVectorStore implements VectorStore {
+
+    private static final ThreadLocal<Boolean> UNRECORDED = new ThreadLocal<>();
+
+    private final VectorStore delegate;
+    private final HotChunkCache hotChunks;
+
+    public HotChunkRecordingVectorStore(VectorStore delegate, HotChunkCache hotChunks) {
+        this.delegate = delegate;
+        this.hotChunks = hotChunks;
+    }
+
+    @Override
+    public String getName() {
+        return "HotChunkRecordingVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        hotChunks.evict(documents.stream().map(Document::getId).toList());
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        hotChunks.evict(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        Long documentId = documentId(filterExpression);
+        if (documentId != null) {
+            hotChunks.evictDocuments(List.of(documentId));
+        } else {
+            hotChunks.clear();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        List<Document> results = delegate.similaritySearch(request);
+        if (UNRECORDED.get() == null) {
+            hotChunks.record(results);
+        }
+        return results;
+    }
+
+    // The document of a document_id == value filter, or null for any other filter
+    private static Long documentId(Filter.Expression expression) {
+        if (expression.type() == Filter.ExpressionType.EQ
+                && expression.left() instanceof Filter.Key key && "document_id".equals(key.key())
+                && expression.right() instanceof Filter.Value value && value.value() != null) {
+            try {
+                return Long.valueOf(value.value().toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // Runs task with searches on this thread left out of the hot chunk counts
+    public static <T> T unrecorded(Supplier<T> task) {
+        Boolean previous = UNRECORDED.get();
+        UNRECORDED.set(Boolean.TRUE);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                UNRECORDED.remove();
+            }
+        }
+    }
+}
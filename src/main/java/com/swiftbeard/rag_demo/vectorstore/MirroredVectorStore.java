@@ -0,0 +1,54 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+// Postgres stays the source of truth: every write lands there first and is then mirrored into
+// the local embedded index, which serves searches once it has completed its first resync.
+public class MirroredVectorStore implements VectorStore {
+
+    private final VectorStore primary;
+    private final EmbeddedVectorStore embedded;
+    private final EmbeddedIndexMirror mirror;
+
+    public MirroredVectorStore(VectorStore primary, EmbeddedVectorStore embedded, EmbeddedIndexMirror mirror) {
+        this.primary = primary;
+        this.embedded = embedded;
+        this.mirror = mirror;
+    }
+
+    @Override
+    public String getName() {
+        return "MirroredVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        primary.add(documents);
+        mirror.mirror(documents.stream().map(Document::getId).toList());
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        primary.delete(idList);
+        embedded.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        primary.delete(filterExpression);
+        embedded.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (!mirror.isSynced()) {
+            return primary.similaritySearch(request);
+        }
+        return embedded.similaritySearch(request);
+    }
+}
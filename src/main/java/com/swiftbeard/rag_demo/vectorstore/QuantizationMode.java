@@ -0,0 +1,42 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+// SQL fragments for searching a compact expression index over the full-precision embedding column.
+// %1$d is replaced with the embedding dimensions.
+public enum QuantizationMode {
+
+    NONE(null, null, null, null),
+
+    // 16-bit floats: half the index size, recall close to full precision
+    HALFVEC("embedding::halfvec(%1$d)", "?::halfvec(%1$d)", "<=>", "halfvec_cosine_ops"),
+
+    // One bit per dimension: 1/32 of the index size, needs a larger over-fetch to keep recall
+    BINARY("binary_quantize(embedding)::bit(%1$d)", "binary_quantize(?::vector)::bit(%1$d)", "<~>", "bit_hamming_ops");
+
+    private final String indexExpression;
+    private final String queryExpression;
+    private final String distanceOperator;
+    private final String operatorClass;
+
+    QuantizationMode(String indexExpression, String queryExpression, String distanceOperator, String operatorClass) {
+        this.indexExpression = indexExpression;
+        this.queryExpression = queryExpression;
+        this.distanceOperator = distanceOperator;
+        this.operatorClass = operatorClass;
+    }
+
+    public String indexExpression(int dimensions) {
+        return String.format(indexExpression, dimensions);
+    }
+
+    public String queryExpression(int dimensions) {
+        return String.format(queryExpression, dimensions);
+    }
+
+    public String distanceOperator() {
+        return distanceOperator;
+    }
+
+    public String operatorClass() {
+        return operatorClass;
+    }
+}
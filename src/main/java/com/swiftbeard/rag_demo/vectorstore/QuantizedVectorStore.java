@@ -0,0 +1,199 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes go straight to the wrapped PgVectorStore, which keeps storing float32 vectors;
+// only the search path uses the quantized index.
+public class QuantizedVectorStore implements VectorStore {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final VectorStore delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final QuantizationMode mode;
+    private final String tableName;
+    private final int dimensions;
+    private final int overFetchFactor;
+
+    public QuantizedVectorStore(VectorStore delegate,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                EmbeddingModel embeddingModel,
+                                QuantizationMode mode,
+                                String tableName,
+                                int dimensions,
+                                int overFetchFactor) {
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.embeddingModel = embeddingModel;
+        this.mode = mode;
+        this.tableName = tableName;
+        this.dimensions = dimensions;
+        this.overFetchFactor = overFetchFactor;
+    }
+
+    public void createIndex() {
+        if (mode == QuantizationMode.NONE) {
+            return;
+        }
+        jdbcTemplate.execute(String.format("CREATE INDEX IF NOT EXISTS %s ON %s USING hnsw ((%s) %s)",
+                indexName(), tableName, mode.indexExpression(dimensions), mode.operatorClass()));
+    }
+
+    public String indexName() {
+        return tableName + "_" + mode.name().toLowerCase() + "_idx";
+    }
+
+    @Override
+    public String getName() {
+        return "QuantizedVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (mode == QuantizationMode.NONE) {
+            return delegate.similaritySearch(request);
+        }
+
+        float[] embedding = embeddingModel.embed(request.getQuery());
+        return search(embedding, request.getTopK(), request.getFilterExpression()).stream()
+                .filter(doc -> doc.getScore() >= request.getSimilarityThreshold())
+                .toList();
+    }
+
+    public List<Document> search(float[] embedding, int topK, Filter.Expression filterExpression) {
+        int candidates = mode == QuantizationMode.NONE ? topK : topK * overFetchFactor;
+        String vector = toVectorLiteral(embedding);
+        String jsonPath = filterExpression != null
+                ? new PgVectorFilterExpressionConverter().convertExpression(filterExpression)
+                : null;
+
+        String filter = jsonPath != null ? "WHERE metadata::jsonb @@ ?::jsonpath" : "";
+        String sql;
+        if (mode == QuantizationMode.NONE) {
+            sql = String.format("""
+                    SELECT id, content, metadata, embedding <=> ?::vector AS distance
+                    FROM %s
+                    %s
+                    ORDER BY distance
+                    LIMIT ?""", tableName, filter);
+        } else {
+            // Inner query walks the compact index; outer query rescores with the float32 column
+            sql = String.format("""
+                    SELECT id, content, metadata, embedding <=> ?::vector AS distance
+                    FROM (
+                        SELECT id, content, metadata, embedding FROM %s
+                        %s
+                        ORDER BY %s %s %s
+                        LIMIT ?
+                    ) candidates
+                    ORDER BY distance
+                    LIMIT ?""",
+                    tableName, filter,
+                    mode.indexExpression(dimensions), mode.distanceOperator(), mode.queryExpression(dimensions));
+        }
+
+        return transactionTemplate.execute(status -> {
+            // HNSW never returns more than ef_search rows, so it must cover the over-fetch
+            jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + Math.max(candidates, 40));
+            return jdbcTemplate.query(sql, ps -> {
+                int i = 1;
+                ps.setString(i++, vector);
+                if (jsonPath != null) {
+                    ps.setString(i++, jsonPath);
+                }
+                if (mode != QuantizationMode.NONE) {
+                    ps.setString(i++, vector);
+                    ps.setInt(i++, candidates);
+                }
+                ps.setInt(i, topK);
+            }, documentRowMapper());
+        });
+    }
+
+    // Exact nearest neighbours by sequential scan, used as ground truth when measuring recall
+    public List<Document> searchExact(float[] embedding, int topK) {
+        String sql = String.format(
+                "SELECT id, content, metadata, embedding <=> ?::vector AS distance FROM %s ORDER BY distance LIMIT ?",
+                tableName);
+        String vector = toVectorLiteral(embedding);
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+            return jdbcTemplate.query(sql, ps -> {
+                ps.setString(1, vector);
+                ps.setInt(2, topK);
+            }, documentRowMapper());
+        });
+    }
+
+    static String toVectorLiteral(float[] embedding) {
+        StringBuilder literal = new StringBuilder(embedding.length * 10).append('[');
+        for (int i = 0; i < embedding.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(embedding[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    private static RowMapper<Document> documentRowMapper() {
+        return (ResultSet rs, int rowNum) -> {
+            double distance = rs.getDouble("distance");
+            Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+            metadata.put("distance", distance);
+            return Document.builder()
+                    .id(rs.getString("id"))
+                    .text(rs.getString("content"))
+                    .metadata(metadata)
+                    .score(1.0 - distance)
+                    .build();
+        };
+    }
+
+    private static Map<String, Object> parseMetadata(String json) throws SQLException {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<HashMap<String, Object>>() { });
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata JSON", e);
+        }
+    }
+}
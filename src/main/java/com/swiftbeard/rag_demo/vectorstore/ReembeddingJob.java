@@ -0,0 +1,342 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.model.ReembeddingCheckpoint;
+import com.swiftbeard.rag_demo.model.ReembeddingCheckpoint.Status;
+import com.swiftbeard.rag_demo.model.ReembeddingProgress;
+import com.swiftbeard.rag_demo.repository.ReembeddingCheckpointRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Re-embeds every chunk of the live pgvector table into a shadow table with a new embedding
+// model, reading the stored chunk text so no document has to be uploaded again. Chunks are
+// copied in id order at a bounded rate and the last copied id is checkpointed after every page,
+// so a paused, failed or interrupted run picks up where it stopped. While the copy runs,
+// BlueGreenVectorStore writes new chunks to both tables; once it is done, retrieval switches to
+// the shadow table under a write lock, so no write lands on only one side.
+public class ReembeddingJob implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReembeddingJob.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String FIRST_ID = "00000000-0000-0000-0000-000000000000";
+
+    enum Phase {
+        // Searches and writes use the live table only
+        IDLE,
+        // Searches use the live table; writes go to both tables
+        DUAL_WRITE,
+        // Searches and writes use the shadow table only
+        SWITCHED
+    }
+
+    private final VectorStore target;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReembeddingCheckpointRepository repository;
+    private final String sourceTable;
+    private final String targetTable;
+    private final String model;
+    private final int pageSize;
+    private final double maxChunksPerSecond;
+    private final boolean resumeOnStartup;
+
+    private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private volatile double chunksPerSecond;
+    private volatile Phase phase = Phase.IDLE;
+    private volatile boolean pauseRequested;
+    private volatile boolean shuttingDown;
+    private volatile boolean running;
+    private Thread worker;
+
+    public ReembeddingJob(VectorStore target,
+                          JdbcTemplate jdbcTemplate,
+                          ReembeddingCheckpointRepository repository,
+                          String sourceTable,
+                          String targetTable,
+                          String model,
+                          int pageSize,
+                          double maxChunksPerSecond,
+                          boolean resumeOnStartup,
+                          MeterRegistry meterRegistry) {
+        this.target = target;
+        this.jdbcTemplate = jdbcTemplate;
+        this.repository = repository;
+        this.sourceTable = sourceTable;
+        this.targetTable = targetTable;
+        this.model = model;
+        this.pageSize = pageSize;
+        this.maxChunksPerSecond = maxChunksPerSecond;
+        this.resumeOnStartup = resumeOnStartup;
+
+        Gauge.builder("rag.reembedding.copied", copied, AtomicLong::get)
+                .tag("table", targetTable)
+                .register(meterRegistry);
+        Gauge.builder("rag.reembedding.total", total, AtomicLong::get)
+                .tag("table", targetTable)
+                .register(meterRegistry);
+        Gauge.builder("rag.reembedding.rate", this, job -> job.chunksPerSecond)
+                .tag("table", targetTable)
+                .register(meterRegistry);
+        Gauge.builder("rag.reembedding.switched", this, job -> job.phase == Phase.SWITCHED ? 1 : 0)
+                .tag("table", targetTable)
+                .register(meterRegistry);
+    }
+
+    // Starts the copy, or resumes it from the last checkpoint
+    public synchronized ReembeddingProgress resume() {
+        if (phase == Phase.SWITCHED) {
+            throw new IllegalStateException("Retrieval already uses " + targetTable);
+        }
+        if (worker != null && worker.isAlive()) {
+            return progress();
+        }
+        ReembeddingCheckpoint checkpoint = repository.findById(targetTable)
+                .orElseGet(() -> new ReembeddingCheckpoint(targetTable, sourceTable, model));
+        checkpoint.setStatus(Status.RUNNING);
+        checkpoint.setError(null);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        repository.save(checkpoint);
+        copied.set(checkpoint.getCopied());
+
+        pauseRequested = false;
+        phase = Phase.DUAL_WRITE;
+        worker = new Thread(() -> Workload.INGESTION.runAs(() -> copy(checkpoint)), "reembedding");
+        worker.setDaemon(true);
+        worker.start();
+        return progress();
+    }
+
+    // Stops after the current page; resume() continues from there
+    public synchronized ReembeddingProgress pause() {
+        pauseRequested = true;
+        return progress();
+    }
+
+    // Waits for a running copy to stop; true if none is running any more
+    public boolean await(Duration timeout) throws InterruptedException {
+        Thread current;
+        synchronized (this) {
+            current = worker;
+        }
+        if (current == null) {
+            return true;
+        }
+        return current.join(timeout);
+    }
+
+    public ReembeddingProgress progress() {
+        ReembeddingCheckpoint checkpoint = repository.findById(targetTable).orElse(null);
+        if (checkpoint == null) {
+            return new ReembeddingProgress("NOT_STARTED", sourceTable, targetTable, model, 0, total.get(),
+                    0.0, 0.0, false, null, null, null);
+        }
+        long totalChunks = total.get();
+        boolean switched = phase == Phase.SWITCHED;
+        double percent = switched ? 100.0
+                : totalChunks > 0 ? Math.min(100.0, 100.0 * copied.get() / totalChunks) : 0.0;
+        return new ReembeddingProgress(checkpoint.getStatus().name(), sourceTable, targetTable, model,
+                copied.get(), totalChunks, percent, chunksPerSecond, switched, checkpoint.getError(),
+                checkpoint.getStartedAt(), checkpoint.getUpdatedAt());
+    }
+
+    Phase phase() {
+        return phase;
+    }
+
+    // The table retrieval reads from right now
+    public String activeTable() {
+        return phase == Phase.SWITCHED ? targetTable : sourceTable;
+    }
+
+    VectorStore target() {
+        return target;
+    }
+
+    ReadWriteLock switchLock() {
+        return switchLock;
+    }
+
+    // Restores the state of an earlier run: a finished run keeps serving from the shadow table,
+    // and a run that was copying when the application stopped carries on
+    @Override
+    public void start() {
+        running = true;
+        shuttingDown = false;
+        repository.findById(targetTable).ifPresent(checkpoint -> {
+            copied.set(checkpoint.getCopied());
+            total.set(checkpoint.getTotal());
+            if (checkpoint.getStatus() == Status.SWITCHED) {
+                phase = Phase.SWITCHED;
+                log.info("Retrieval uses re-embedded table {} ({})", targetTable, model);
+            } else if (checkpoint.getStatus() == Status.RUNNING && resumeOnStartup) {
+                resume();
+            }
+        });
+    }
+
+    // Leaves the checkpoint RUNNING so the copy resumes on the next startup
+    @Override
+    public void stop() {
+        shuttingDown = true;
+        pauseRequested = true;
+        try {
+            await(Duration.ofSeconds(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void copy(ReembeddingCheckpoint checkpoint) {
+        long runStart = System.nanoTime();
+        long runCopied = 0;
+        try {
+            total.set(jdbcTemplate.queryForObject("SELECT count(*) FROM " + sourceTable, Long.class));
+            checkpoint.setTotal(total.get());
+
+            // Keyset pagination over the primary key keeps each page an index range scan
+            String sql = "SELECT id::text, content, metadata::text FROM " + sourceTable
+                    + " WHERE id > ?::uuid ORDER BY id LIMIT ?";
+            String lastId = checkpoint.getLastId() != null ? checkpoint.getLastId() : FIRST_ID;
+            List<Document> page;
+            do {
+                if (pauseRequested) {
+                    stopCopying(checkpoint);
+                    return;
+                }
+                page = jdbcTemplate.query(sql, rowMapper(), lastId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                target.add(page);
+                lastId = page.get(page.size() - 1).getId();
+                runCopied += page.size();
+                checkpoint.setLastId(lastId);
+                save(checkpoint, page.size(), runStart, runCopied);
+                throttle(runStart, runCopied);
+            } while (page.size() == pageSize);
+
+            // Chunks below the checkpoint that were written while no copy was running are still
+            // missing; most are caught up here so the final pass under the lock stays short
+            runCopied += copyMissing(checkpoint, runStart, runCopied);
+            Lock lock = switchLock.writeLock();
+            lock.lock();
+            try {
+                copyMissing(checkpoint, runStart, runCopied);
+                jdbcTemplate.update("DELETE FROM " + targetTable + " t WHERE NOT EXISTS (SELECT 1 FROM "
+                        + sourceTable + " s WHERE s.id = t.id)");
+                phase = Phase.SWITCHED;
+            } finally {
+                lock.unlock();
+            }
+
+            checkpoint.setStatus(Status.SWITCHED);
+            checkpoint.setSwitchedAt(LocalDateTime.now());
+            checkpoint.setUpdatedAt(LocalDateTime.now());
+            repository.save(checkpoint);
+            log.info("Re-embedded {} chunks into {} at {} chunks/s; retrieval now uses it",
+                    copied.get(), targetTable, String.format("%.1f", chunksPerSecond));
+        } catch (RuntimeException e) {
+            phase = Phase.IDLE;
+            checkpoint.setStatus(Status.FAILED);
+            checkpoint.setError(e.getMessage());
+            checkpoint.setUpdatedAt(LocalDateTime.now());
+            repository.save(checkpoint);
+            log.error("Re-embedding into {} failed after chunk {}", targetTable, checkpoint.getLastId(), e);
+        }
+    }
+
+    private long copyMissing(ReembeddingCheckpoint checkpoint, long runStart, long runCopied) {
+        String sql = "SELECT s.id::text, s.content, s.metadata::text FROM " + sourceTable + " s"
+                + " WHERE NOT EXISTS (SELECT 1 FROM " + targetTable + " t WHERE t.id = s.id) LIMIT ?";
+        long caughtUp = 0;
+        List<Document> page;
+        do {
+            page = jdbcTemplate.query(sql, rowMapper(), pageSize);
+            if (!page.isEmpty()) {
+                target.add(page);
+                caughtUp += page.size();
+                save(checkpoint, page.size(), runStart, runCopied + caughtUp);
+            }
+        } while (page.size() == pageSize);
+        return caughtUp;
+    }
+
+    private void stopCopying(ReembeddingCheckpoint checkpoint) {
+        phase = Phase.IDLE;
+        if (!shuttingDown) {
+            checkpoint.setStatus(Status.PAUSED);
+        }
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        repository.save(checkpoint);
+        log.info("Re-embedding into {} paused after {} chunks", targetTable, copied.get());
+    }
+
+    private void save(ReembeddingCheckpoint checkpoint, int pageCopied, long runStart, long runCopied) {
+        checkpoint.setCopied(copied.addAndGet(pageCopied));
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        repository.save(checkpoint);
+        double elapsedSeconds = (System.nanoTime() - runStart) / 1e9;
+        chunksPerSecond = elapsedSeconds > 0 ? runCopied / elapsedSeconds : 0.0;
+    }
+
+    // Sleeps until this run is back under max-chunks-per-second
+    private void throttle(long runStart, long runCopied) {
+        if (maxChunksPerSecond <= 0) {
+            return;
+        }
+        long dueNanos = (long) (runCopied / maxChunksPerSecond * 1e9);
+        long aheadMillis = (dueNanos - (System.nanoTime() - runStart)) / 1_000_000;
+        if (aheadMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(aheadMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pauseRequested = true;
+        }
+    }
+
+    private static RowMapper<Document> rowMapper() {
+        return (rs, rowNum) -> toDocument(rs.getString(1), rs.getString(2), rs.getString(3));
+    }
+
+    private static Document toDocument(String id, String content, String metadata) throws SQLException {
+        try {
+            Map<String, Object> parsed = metadata != null
+                    ? objectMapper.readValue(metadata, new TypeReference<HashMap<String, Object>>() { })
+                    : new HashMap<>();
+            return new Document(id, content, parsed);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata JSON for chunk " + id, e);
+        }
+    }
+}
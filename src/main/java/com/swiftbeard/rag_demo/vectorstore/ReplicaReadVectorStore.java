@@ -0,0 +1,49 @@
+package com.swiftbeard.rag_demo.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+// Runs searches in a read-only transaction so the routing data source serves them from the
+// read replica; writes are passed through unchanged and go to the primary.
+public class ReplicaReadVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ReplicaReadVectorStore(VectorStore delegate, PlatformTransactionManager transactionManager) {
+        this.delegate = delegate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Override
+    public String getName() {
+        return "ReplicaReadVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return readOnlyTransaction.execute(status -> delegate.similaritySearch(request));
+    }
+}
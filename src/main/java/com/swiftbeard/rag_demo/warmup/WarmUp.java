@@ -0,0 +1,237 @@
+package com.swiftbeard.rag_demo.warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import com.swiftbeard.rag_demo.vectorstore.ReembeddingJob;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Gets a freshly started instance up to speed before it takes traffic. Spring Boot only marks
+// the readiness probe ACCEPTING_TRAFFIC once every ApplicationRunner has returned, so until this
+// finishes the instance reports REFUSING_TRAFFIC. In order it opens the connection pools, loads
+// the vector table's indexes into Postgres's buffer cache with pg_prewarm, opens a connection to
+// the chat endpoint, and sends synthetic queries through retrieval and prompt assembly (never
+// the model) so the query path is compiled. Every step is best effort: a failure is logged and
+// the instance still becomes ready. Configured under rag.warmup.
+@Component
+@ConditionalOnProperty(name = "rag.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class WarmUp implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+    private static final List<String> DEFAULT_QUERIES = List.of(
+            "What is StarlightDB?",
+            "How does StarlightDB replicate data?",
+            "How do I back up and restore a StarlightDB cluster?");
+
+    // Needs the pg_prewarm extension; sums the blocks read over every index on the table
+    private static final String PREWARM_INDEXES = """
+            SELECT coalesce(sum(pg_prewarm(i.indexrelid::regclass)), 0)
+            FROM pg_index i
+            WHERE i.indrelid = to_regclass(?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectProvider<HikariDataSource> pools;
+    private final ObjectProvider<ReembeddingJob> reembeddingJob;
+    private final RagService ragService;
+    private final LatencyTiers latencyTiers;
+    private final Bulkheads bulkheads;
+    private final ChatModel chatModel;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean replicaConfigured;
+    private final String vectorSchema;
+    private final String vectorTable;
+    private final List<String> queries;
+    private final int iterations;
+    private final int parallelism;
+    private final boolean chatPing;
+    private final Duration maxDuration;
+
+    public WarmUp(JdbcTemplate jdbcTemplate,
+                  PlatformTransactionManager transactionManager,
+                  ObjectProvider<HikariDataSource> pools,
+                  ObjectProvider<ReembeddingJob> reembeddingJob,
+                  RagService ragService,
+                  LatencyTiers latencyTiers,
+                  Bulkheads bulkheads,
+                  ChatModel chatModel,
+                  ObjectMapper objectMapper,
+                  MeterRegistry meterRegistry,
+                  Environment environment) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.pools = pools;
+        this.reembeddingJob = reembeddingJob;
+        this.ragService = ragService;
+        this.latencyTiers = latencyTiers;
+        this.bulkheads = bulkheads;
+        this.chatModel = chatModel;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        this.replicaConfigured = !environment.getProperty("rag.datasource.replica.url", "").isBlank();
+        this.vectorSchema = environment.getProperty("spring.ai.vectorstore.pgvector.schema-name", "public");
+        this.vectorTable = environment.getProperty("spring.ai.vectorstore.pgvector.table-name", "vector_store");
+        this.queries = Binder.get(environment)
+                .bind("rag.warmup.queries", Bindable.listOf(String.class))
+                .orElse(DEFAULT_QUERIES);
+        this.iterations = environment.getProperty("rag.warmup.iterations", Integer.class, 200);
+        this.parallelism = Math.max(1, environment.getProperty("rag.warmup.parallelism", Integer.class, 4));
+        this.chatPing = environment.getProperty("rag.warmup.chat-ping", Boolean.class, true);
+        this.maxDuration = environment.getProperty("rag.warmup.max-duration", Duration.class, Duration.ofMinutes(2));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        long deadline = start + maxDuration.toNanos();
+        Map<String, Long> took = new LinkedHashMap<>();
+
+        phase("pools", took, () -> openPools(deadline));
+        phase("prewarm", took, this::prewarmIndexes);
+        if (chatPing) {
+            phase("chat", took, this::openChatConnection);
+        }
+        if (!queries.isEmpty()) {
+            phase("queries", took, () -> rehearse(deadline));
+        }
+
+        long elapsed = System.nanoTime() - start;
+        meterRegistry.timer("rag.warmup", "phase", "total").record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Warm-up finished in {} ms ({})", TimeUnit.NANOSECONDS.toMillis(elapsed),
+                took.entrySet().stream()
+                        .map(phase -> phase.getKey() + " " + TimeUnit.NANOSECONDS.toMillis(phase.getValue()) + " ms")
+                        .collect(Collectors.joining(", ")));
+    }
+
+    // Hikari starts a pool on its first connection and opens the rest up to minimumIdle in the
+    // background; wait for that so the first requests don't pay for the connection handshakes
+    private void openPools(long deadline) {
+        for (Workload workload : Workload.values()) {
+            workload.runAs(() -> jdbcTemplate.execute("SELECT 1"));
+        }
+        if (replicaConfigured) {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.execute("SELECT 1"));
+        }
+        for (HikariDataSource pool : pools.orderedStream().toList()) {
+            while (!filled(pool) && System.nanoTime() - deadline < 0) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // A pool nothing has connected through yet, such as an unavailable replica, has no MXBean
+    private static boolean filled(HikariDataSource pool) {
+        HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+        return mxBean == null
+                || mxBean.getTotalConnections() >= Math.min(pool.getMinimumIdle(), pool.getMaximumPoolSize());
+    }
+
+    // Searches read from the replica when there is one, so its buffer cache is warmed as well.
+    // Once re-embedding has switched retrieval, its table is the one searches hit.
+    private void prewarmIndexes() {
+        ReembeddingJob job = reembeddingJob.getIfAvailable();
+        String vectorTable = vectorSchema + "." + (job != null ? job.activeTable() : this.vectorTable);
+        Long blocks = jdbcTemplate.queryForObject(PREWARM_INDEXES, Long.class, vectorTable);
+        log.info("Prewarmed {} blocks of the {} indexes", blocks, vectorTable);
+        if (replicaConfigured) {
+            Long replicaBlocks = readOnlyTransaction.execute(status ->
+                    jdbcTemplate.queryForObject(PREWARM_INDEXES, Long.class, vectorTable));
+            log.info("Prewarmed {} blocks of the {} indexes on the replica", replicaBlocks, vectorTable);
+        }
+    }
+
+    // The one model call warm-up makes: a single output token, enough to open and keep alive the
+    // HTTP connection to the chat endpoint and load the client code
+    private void openChatConnection() {
+        chatModel.call(new Prompt("Reply with OK.", ChatOptions.builder().maxTokens(1).build()));
+    }
+
+    // Also serializes each response, as the controller would. Stops at the first failure: the
+    // embedding server or database is not answering, and retrying only delays readiness.
+    private void rehearse(long deadline) {
+        GenerationOptions options = latencyTiers.defaults();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < parallelism; i++) {
+                executor.execute(() -> {
+                    while (!failed.get() && System.nanoTime() - deadline < 0) {
+                        int iteration = next.getAndIncrement();
+                        if (iteration >= iterations) {
+                            return;
+                        }
+                        String query = queries.get(iteration % queries.size());
+                        try {
+                            RagResponse response = bulkheads.call(Workload.INTERACTIVE,
+                                    () -> ragService.rehearse(query, options));
+                            objectMapper.writeValueAsBytes(response);
+                            completed.incrementAndGet();
+                        } catch (Exception e) {
+                            if (failed.compareAndSet(false, true)) {
+                                log.warn("Warm-up queries stopped: {}", e.getMessage());
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        log.info("Ran {} of {} warm-up queries", completed.get(), iterations);
+    }
+
+    private void phase(String name, Map<String, Long> took, Runnable step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            log.warn("Warm-up step {} failed, continuing: {}", name, e.getMessage());
+        }
+        long elapsed = System.nanoTime() - start;
+        took.put(name, elapsed);
+        meterRegistry.timer("rag.warmup", "phase", name).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,145 @@
+package com.swiftbeard.rag_demo.wire;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schemagen.ProtobufSchemaGenerator;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Writes and reads the API models as Protocol Buffers (application/x-protobuf) without generated
+// classes: the message schema is derived from each model's Jackson properties, numbered from 1
+// in @JsonPropertyOrder order, and cached per type. A protobuf message cannot be a bare list,
+// so lists such as the /ai/history response are sent as a message whose only field is
+// `repeated <Model> items = 1`. Types other than messageTypes, and lists of them, are left to
+// the other converters.
+public class JacksonProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    private final ObjectMapper mapper;
+    private final Set<Class<?>> messageTypes;
+    private final Map<JavaType, ProtobufSchema> schemas = new ConcurrentHashMap<>();
+
+    public JacksonProtobufHttpMessageConverter(ObjectMapper mapper, Set<Class<?>> messageTypes) {
+        super(APPLICATION_PROTOBUF);
+        if (!(mapper.getFactory() instanceof ProtobufFactory)) {
+            throw new IllegalArgumentException("Protobuf converter needs an ObjectMapper over a ProtobufFactory");
+        }
+        this.mapper = mapper;
+        this.messageTypes = Set.copyOf(messageTypes);
+    }
+
+    // The schema a value of type is written with, e.g. for publishing the .proto to clients
+    public ProtobufSchema schema(Type type) {
+        JavaType javaType = messageType(type);
+        if (javaType == null) {
+            throw new IllegalArgumentException("Not a protobuf message type: " + type);
+        }
+        return schema(javaType);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return messageTypes.contains(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return messageType(GenericTypeResolver.resolveType(type, contextClass)) != null && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return (messageType(type) != null || messageType(clazz) != null) && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        JavaType javaType = messageType(GenericTypeResolver.resolveType(type, contextClass));
+        if (javaType == null) {
+            throw new HttpMessageNotReadableException("Not a protobuf message type: " + type, inputMessage);
+        }
+        try {
+            Object message = mapper.readerFor(javaType).with(schema(javaType)).readValue(inputMessage.getBody());
+            return message instanceof Repeated<?> repeated ? repeated.items() : message;
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("Invalid protobuf message: " + e.getOriginalMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        JavaType javaType = type != null ? messageType(type) : null;
+        if (javaType == null) {
+            javaType = messageType(object.getClass());
+        }
+        if (javaType == null) {
+            throw new HttpMessageNotWritableException("Not a protobuf message type: " + object.getClass().getName());
+        }
+        Object message = javaType.getRawClass() == Repeated.class
+                ? new Repeated<>(object instanceof List<?> list ? list : new ArrayList<>((Collection<?>) object))
+                : object;
+        try {
+            mapper.writerFor(javaType).with(schema(javaType))
+                    .writeValue(StreamUtils.nonClosing(outputMessage.getBody()), message);
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotWritableException("Could not write protobuf message: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    // The type actually encoded for type: the model itself, Repeated<Model> for a collection of
+    // models, or null if neither
+    private JavaType messageType(Type type) {
+        if (type == null) {
+            return null;
+        }
+        JavaType javaType = mapper.constructType(type);
+        if (messageTypes.contains(javaType.getRawClass())) {
+            return javaType;
+        }
+        if (javaType.isCollectionLikeType() && messageTypes.contains(javaType.getContentType().getRawClass())) {
+            return mapper.getTypeFactory().constructParametricType(Repeated.class, javaType.getContentType());
+        }
+        return null;
+    }
+
+    private ProtobufSchema schema(JavaType javaType) {
+        return schemas.computeIfAbsent(javaType, type -> {
+            ProtobufSchemaGenerator generator = new ProtobufSchemaGenerator();
+            try {
+                mapper.acceptJsonFormatVisitor(type, generator);
+                return generator.getGeneratedSchema();
+            } catch (JsonMappingException e) {
+                throw new IllegalStateException("Cannot derive a protobuf schema for " + type, e);
+            }
+        });
+    }
+
+    // Wrapper message for lists
+    public record Repeated<T>(List<T> items) {
+    }
+}
@@ -17,3 +17,37 @@ CREATE INDEX IF NOT EXISTS idx_document_metadata_filename ON document_metadata(f
 
 -- Create index on uploaded_at for sorting
 CREATE INDEX IF NOT EXISTS idx_document_metadata_uploaded_at ON document_metadata(uploaded_at DESC);
+
+-- Columns used by watched-directory ingestion to detect changed files
+ALTER TABLE document_metadata ADD COLUMN IF NOT EXISTS source_path VARCHAR(1024);
+ALTER TABLE document_metadata ADD COLUMN IF NOT EXISTS last_modified BIGINT;
+ALTER TABLE document_metadata ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS idx_document_metadata_source_path ON document_metadata(source_path);
+
+-- Checkpoints for the startup corpus loader, one row per seed entry already embedded
+CREATE TABLE IF NOT EXISTS seed_document (
+    id VARCHAR(1024) PRIMARY KEY,
+    content_hash VARCHAR(64) NOT NULL,
+    chunk_count INTEGER NOT NULL,
+    loaded_at TIMESTAMP NOT NULL
+);
+
+-- Quantized vector indexes (rag.vectorstore.quantization.mode), created automatically on startup.
+-- The float32 embedding column is kept for rescoring; only the index is compact.
+-- CREATE INDEX IF NOT EXISTS vector_store_halfvec_idx ON vector_store USING hnsw ((embedding::halfvec(768)) halfvec_cosine_ops);
+-- CREATE INDEX IF NOT EXISTS vector_store_binary_idx ON vector_store USING hnsw ((binary_quantize(embedding)::bit(768)) bit_hamming_ops);
+-- Once a quantized index is in use, the full-precision HNSW index can be dropped to free shared_buffers:
+-- DROP INDEX IF EXISTS spring_ai_vector_index;
+
+-- The chunks each answer cited, in rank order; the top of /ai/hot/chunks and /ai/hot/documents
+CREATE TABLE IF NOT EXISTS query_citation (
+    query_id BIGINT NOT NULL REFERENCES query_history(id) ON DELETE CASCADE,
+    citation_rank INTEGER NOT NULL,
+    chunk_id UUID NOT NULL,
+    document_id BIGINT,
+    PRIMARY KEY (query_id, citation_rank)
+);
+
+CREATE INDEX IF NOT EXISTS idx_query_citation_chunk_id ON query_citation(chunk_id);
+CREATE INDEX IF NOT EXISTS idx_query_history_timestamp ON query_history(timestamp);
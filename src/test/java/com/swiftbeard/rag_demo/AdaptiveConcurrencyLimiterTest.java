@@ -0,0 +1,117 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.exception.ConcurrencyLimitExceededException;
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
+import com.swiftbeard.rag_demo.limiter.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void call_overPriorityShare_shouldRejectLowPriorityFirst() throws Exception {
+        // Given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(meterRegistry, 10, 4, 100, 1.5, 500);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(5);
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 5; i++) {
+                callers.submit(() -> limiter.call(Priority.HIGH, () -> {
+                    started.countDown();
+                    return await(release);
+                }));
+            }
+            started.await(5, TimeUnit.SECONDS);
+
+            // When / Then
+            assertThatThrownBy(() -> limiter.call(Priority.LOW, () -> "shed"))
+                    .isInstanceOf(ConcurrencyLimitExceededException.class);
+            assertThat(limiter.call(Priority.NORMAL, () -> "admitted")).isEqualTo("admitted");
+            assertThat(meterRegistry.get("rag.limiter.rejected").tag("priority", "low").counter().count())
+                    .isEqualTo(1);
+            release.countDown();
+        }
+    }
+
+    @Test
+    void call_whenStageTimesOut_shouldLowerLimit() {
+        // Given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(meterRegistry, 20, 4, 100, 1.5, 500);
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> limiter.call(Priority.NORMAL, () -> {
+                throw new StageTimeoutException("The chat call did not answer within PT60S");
+            })).isInstanceOf(StageTimeoutException.class);
+        }
+
+        // Then
+        assertThat(limiter.limit()).isEqualTo(14);
+        assertThat(meterRegistry.get("rag.limiter.limit").gauge().value()).isLessThan(20);
+    }
+
+    @Test
+    void call_whenLatencyRisesUnderLoad_shouldShrinkLimit() throws Exception {
+        // Given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(meterRegistry, 8, 2, 100, 1.5, 500);
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            runConcurrently(callers, limiter, 8, 40, 2);
+            int limitAtBaseline = limiter.limit();
+
+            // When
+            runConcurrently(callers, limiter, limitAtBaseline, 40, 20);
+
+            // Then
+            assertThat(limiter.limit()).isLessThan(limitAtBaseline);
+        }
+    }
+
+    private static void runConcurrently(ExecutorService callers, AdaptiveConcurrencyLimiter limiter,
+                                        int concurrency, int calls, long latencyMillis) throws Exception {
+        for (int round = 0; round < calls / concurrency + 1; round++) {
+            Future<?>[] futures = new Future<?>[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                futures[i] = callers.submit(() -> {
+                    try {
+                        limiter.call(Priority.HIGH, () -> sleep(latencyMillis));
+                    } catch (ConcurrencyLimitExceededException e) {
+                        // Shed while the limit adapts
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+}
@@ -0,0 +1,232 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.chunking.ContextExpander;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.embedding.PrimedEmbeddingModel;
+import com.swiftbeard.rag_demo.embedding.QueryEmbeddingCache;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
+import com.swiftbeard.rag_demo.model.BatchAnswer;
+import com.swiftbeard.rag_demo.model.CitedChunk;
+import com.swiftbeard.rag_demo.model.MessageRequest;
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.prompt.PromptTemplateRegistry;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.service.BatchRagService;
+import com.swiftbeard.rag_demo.service.QueryHistoryService;
+import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.similarity.RelevanceThreshold;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchRagServiceTest {
+
+    @Mock
+    private ChatClient chatClient;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private ChatClient.ChatClientRequestSpec requestSpec;
+
+    @Mock
+    private ChatClient.CallResponseSpec responseSpec;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private QueryHistoryService queryHistoryService;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    private final QueryEmbeddingCache queryEmbeddingCache = new QueryEmbeddingCache();
+
+    private BatchRagService batchRagService;
+
+    @BeforeEach
+    void setUp() {
+        Bulkheads bulkheads = new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry());
+        LatencyTiers latencyTiers = new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry());
+        RagService ragService = new RagService(chatClient, vectorStore, queryHistoryService, bulkheads,
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO), latencyTiers,
+                new RelevanceThreshold(0, "I don't know.", new SimpleMeterRegistry()),
+                new ContextExpander(parentChunkStore, "none", 600));
+
+        batchRagService = new BatchRagService(ragService, embeddingModel, queryEmbeddingCache,
+                queryHistoryService, bulkheads,
+                new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), 20, 4, 200, 1.5, 500), latencyTiers);
+        ReflectionTestUtils.setField(batchRagService, "maxSize", 3);
+        ReflectionTestUtils.setField(batchRagService, "searchParallelism", 2);
+        ReflectionTestUtils.setField(batchRagService, "generationParallelism", 2);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void retrieveAndGenerateBatch_shouldEmbedOnceAndSaveHistoryInOneBatch() {
+        // Given
+        List<MessageRequest> requests = List.of(
+                new MessageRequest("What is StarlightDB?"),
+                new MessageRequest("What is Chrono-Sync?", 2),
+                new MessageRequest("What is StarlightDB?"));
+        when(embeddingModel.embed(anyList())).thenReturn(List.of(new float[]{1f}, new float[]{2f}));
+        when(vectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(new Document("StarlightDB is a graph database.",
+                        Map.of("document_id", "1", "filename", "doc1.pdf"))));
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenReturn("An answer");
+        List<BatchAnswer> answers = new CopyOnWriteArrayList<>();
+
+        // When
+        batchRagService.retrieveAndGenerateBatch(batchRagService.prepare(requests), new TokenUsage(), answers::add);
+
+        // Then
+        assertThat(answers).extracting(BatchAnswer::index).containsExactlyInAnyOrder(0, 1, 2);
+        assertThat(answers).allSatisfy(answer -> {
+            assertThat(answer.answer()).isEqualTo("An answer");
+            assertThat(answer.sources()).hasSize(1);
+            assertThat(answer.error()).isNull();
+        });
+        verify(embeddingModel, times(1)).embed(List.of("What is StarlightDB?", "What is Chrono-Sync?"));
+        // The repeated question with the same topK reuses the first one's search
+        verify(vectorStore, times(2)).similaritySearch(any(SearchRequest.class));
+        ArgumentCaptor<List<QueryHistory>> saved = ArgumentCaptor.forClass(List.class);
+        verify(queryHistoryService, timeout(1000).times(1)).saveQueries(saved.capture());
+        assertThat(saved.getValue()).hasSize(3).allSatisfy(entry ->
+                assertThat(entry.getCitations()).singleElement().extracting(CitedChunk::getDocumentId).isEqualTo(1L));
+        verify(queryHistoryService, never()).saveQuery(any(), any(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void retrieveAndGenerateBatch_whenOneQuestionFails_shouldReportItAndAnswerTheRest() {
+        // Given
+        List<MessageRequest> requests = List.of(
+                new MessageRequest("What is StarlightDB?"),
+                new MessageRequest("What is Chrono-Sync?"));
+        when(embeddingModel.embed(anyList())).thenReturn(List.of(new float[]{1f}, new float[]{2f}));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenAnswer(invocation -> {
+            SearchRequest request = invocation.getArgument(0);
+            if (request.getQuery().contains("Chrono")) {
+                throw new IllegalStateException("search failed");
+            }
+            return List.of();
+        });
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenReturn("An answer");
+        List<BatchAnswer> answers = new CopyOnWriteArrayList<>();
+
+        // When
+        batchRagService.retrieveAndGenerateBatch(batchRagService.prepare(requests), new TokenUsage(), answers::add);
+
+        // Then
+        assertThat(answers).hasSize(2);
+        assertThat(answers).filteredOn(answer -> answer.index() == 1).singleElement()
+                .satisfies(answer -> assertThat(answer.error()).isEqualTo("search failed"));
+        assertThat(answers).filteredOn(answer -> answer.index() == 0).singleElement()
+                .satisfies(answer -> assertThat(answer.answer()).isEqualTo("An answer"));
+    }
+
+    @Test
+    void retrieveAndGenerateBatch_withNearDuplicateQuestions_shouldSearchOnce() {
+        // Given
+        ReflectionTestUtils.setField(batchRagService, "sharedSearchSimilarity", 0.98f);
+        List<MessageRequest> requests = List.of(
+                new MessageRequest("What is StarlightDB?"),
+                new MessageRequest("what is StarlightDB"),
+                new MessageRequest("What is Chrono-Sync?"));
+        when(embeddingModel.embed(anyList())).thenReturn(List.of(
+                new float[]{1f, 0f}, new float[]{0.99f, 0.01f}, new float[]{0f, 1f}));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of());
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenReturn("An answer");
+        List<BatchAnswer> answers = new CopyOnWriteArrayList<>();
+
+        // When
+        batchRagService.retrieveAndGenerateBatch(batchRagService.prepare(requests), new TokenUsage(), answers::add);
+
+        // Then
+        assertThat(answers).hasSize(3).allSatisfy(answer -> assertThat(answer.error()).isNull());
+        ArgumentCaptor<SearchRequest> searched = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(vectorStore, times(2)).similaritySearch(searched.capture());
+        assertThat(searched.getAllValues()).extracting(SearchRequest::getQuery)
+                .containsExactlyInAnyOrder("What is StarlightDB?", "What is Chrono-Sync?");
+    }
+
+    @Test
+    void prepare_whenEmbeddingFails_shouldThrowBeforeAnyAnswer() {
+        // Given
+        List<MessageRequest> requests = List.of(new MessageRequest("What is StarlightDB?"));
+        when(embeddingModel.embed(anyList())).thenThrow(new IllegalStateException("embedding endpoint down"));
+
+        // When / Then
+        assertThatThrownBy(() -> batchRagService.prepare(requests))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("embedding endpoint down");
+        verifyNoInteractions(vectorStore, chatClient);
+    }
+
+    @Test
+    void validate_overMaxSize_shouldReject() {
+        // Given
+        List<MessageRequest> requests = List.of(new MessageRequest("a"), new MessageRequest("b"),
+                new MessageRequest("c"), new MessageRequest("d"));
+
+        // When / Then
+        assertThatThrownBy(() -> batchRagService.validate(requests))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> batchRagService.validate(List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void primedEmbeddingModel_shouldReuseLeasedEmbeddingUntilReleased() {
+        // Given
+        PrimedEmbeddingModel primed = new PrimedEmbeddingModel(embeddingModel, queryEmbeddingCache);
+        when(embeddingModel.embed("What is StarlightDB?")).thenReturn(new float[]{9f});
+
+        // When
+        float[] whileLeased;
+        try (QueryEmbeddingCache.Lease lease = queryEmbeddingCache.prime(
+                List.of("What is StarlightDB?"), List.of(new float[]{1f}))) {
+            whileLeased = primed.embed("What is StarlightDB?");
+        }
+        float[] afterRelease = primed.embed("What is StarlightDB?");
+
+        // Then
+        assertThat(whileLeased).containsExactly(1f);
+        assertThat(afterRelease).containsExactly(9f);
+        verify(embeddingModel, times(1)).embed("What is StarlightDB?");
+    }
+}
@@ -0,0 +1,157 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.embedding.BatchingEmbeddingModel;
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.hedging.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchingEmbeddingModelTest {
+
+    @Mock
+    private EmbeddingModel delegate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // One thread per caller, so every caller can be waiting on the same batch
+    private final ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+
+    private BatchingEmbeddingModel model;
+
+    @AfterEach
+    void tearDown() {
+        callers.close();
+        model.close();
+    }
+
+    @Test
+    void embed_withConcurrentCallers_shouldSendOneBatchAndReturnEachCallerItsVector() {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 32, Duration.ofMillis(200), meterRegistry);
+        when(delegate.embed(anyList())).thenAnswer(invocation -> invocation.<List<String>>getArgument(0).stream()
+                .map(text -> new float[]{Float.parseFloat(text)})
+                .toList());
+
+        // When
+        List<CompletableFuture<float[]>> results = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> model.embed(String.valueOf(i)), callers))
+                .toList();
+
+        // Then
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).join()).containsExactly((float) i);
+        }
+        verify(delegate, times(1)).embed(anyList());
+        assertThat(meterRegistry.get("rag.embedding.batch.size").summary().max()).isEqualTo(8);
+        assertThat(meterRegistry.get("rag.embedding.queue.delay").timer().count()).isEqualTo(8);
+    }
+
+    @Test
+    void embed_withFullBatch_shouldNotWaitForWindow() {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 1, Duration.ofSeconds(30), meterRegistry);
+        when(delegate.embed(anyList())).thenReturn(List.of(new float[]{0.5f}));
+
+        // When
+        float[] embedding = model.embed("What is StarlightDB?");
+
+        // Then
+        assertThat(embedding).containsExactly(0.5f);
+        verify(delegate).embed(List.of("What is StarlightDB?"));
+    }
+
+    @Test
+    void embed_withDuplicateQueries_shouldEmbedTextOnce() {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 32, Duration.ofMillis(200), meterRegistry);
+        when(delegate.embed(anyList())).thenReturn(List.of(new float[]{0.5f}));
+
+        // When
+        List<CompletableFuture<float[]>> results = IntStream.range(0, 3)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> model.embed("What is StarlightDB?"), callers))
+                .toList();
+
+        // Then
+        results.forEach(result -> assertThat(result.join()).containsExactly(0.5f));
+        verify(delegate).embed(List.of("What is StarlightDB?"));
+    }
+
+    @Test
+    void embed_whenServerFails_shouldPropagateErrorToCaller() {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 1, Duration.ofMillis(1), meterRegistry);
+        when(delegate.embed(anyList())).thenThrow(new IllegalStateException("Embedding server unavailable"));
+
+        // When / Then
+        assertThatThrownBy(() -> model.embed("What is StarlightDB?"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Embedding server unavailable");
+    }
+
+    @Test
+    void embed_whenRequestDeadlinePasses_shouldStopWaitingForBatch() {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 1, Duration.ofMillis(1), meterRegistry);
+        when(delegate.embed(anyList())).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return List.of(new float[]{0.5f});
+        });
+        long start = System.nanoTime();
+
+        // When / Then
+        assertThatThrownBy(() -> RequestDeadline.run(System.nanoTime() + 50_000_000L,
+                () -> model.embed("What is StarlightDB?")))
+                .isInstanceOf(StageTimeoutException.class);
+        assertThat(System.nanoTime() - start).isLessThan(400_000_000L);
+    }
+
+    @Test
+    void close_whileBatchIsGathering_shouldStillAnswerItsCallers() throws Exception {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 32, Duration.ofSeconds(30), meterRegistry);
+        when(delegate.embed(anyList())).thenReturn(List.of(new float[]{0.5f}));
+        CompletableFuture<float[]> result = CompletableFuture.supplyAsync(() -> model.embed("What is StarlightDB?"), callers);
+        // Long enough for the dispatcher to take it off the queue into the 30s window
+        Thread.sleep(100);
+
+        // When
+        model.close();
+
+        // Then
+        assertThat(result.get(5, TimeUnit.SECONDS)).containsExactly(0.5f);
+    }
+
+    @Test
+    void embed_afterClose_shouldCallDelegateDirectly() {
+        // Given
+        model = new BatchingEmbeddingModel(delegate, 32, Duration.ofMillis(5), meterRegistry);
+        model.close();
+        when(delegate.embed("What is StarlightDB?")).thenReturn(new float[]{0.5f});
+
+        // When
+        float[] embedding = model.embed("What is StarlightDB?");
+
+        // Then
+        assertThat(embedding).containsExactly(0.5f);
+        verify(delegate, never()).embed(anyList());
+    }
+}
@@ -0,0 +1,215 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.model.BulkUploadResponse;
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.model.FileUploadResult;
+import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
+import com.swiftbeard.rag_demo.service.BulkUploadService;
+import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkUploadServiceTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private DocumentMetadataRepository documentMetadataRepository;
+
+    private BulkUploadService bulkUploadService;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        DocumentUploadService documentUploadService = new DocumentUploadService(vectorStore, documentMetadataRepository, parentChunkStore);
+        bulkUploadService = new BulkUploadService(documentUploadService, vectorStore, documentMetadataRepository,
+                new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(bulkUploadService, "parallelism", 2);
+        ReflectionTestUtils.setField(bulkUploadService, "batchSize", 2);
+
+        // Assign IDs the way the database would
+        lenient().when(documentMetadataRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<DocumentMetadata> batch = invocation.getArgument(0);
+            batch.forEach(metadata -> metadata.setId(ids.incrementAndGet()));
+            return batch;
+        });
+    }
+
+    @Test
+    void uploadDocuments_withMultipleFiles_shouldProcessAllFiles() throws IOException {
+        // Given
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "a.txt", "text/plain", "First document content.".getBytes()),
+                new MockMultipartFile("files", "b.txt", "text/plain", "Second document content.".getBytes()),
+                new MockMultipartFile("files", "c.txt", "text/plain", "Third document content.".getBytes())
+        );
+
+        // When
+        BulkUploadResponse response = bulkUploadService.uploadDocuments(files);
+
+        // Then
+        assertThat(response.fileCount()).isEqualTo(3);
+        assertThat(response.succeeded()).isEqualTo(3);
+        assertThat(response.failed()).isZero();
+        assertThat(response.results()).extracting(FileUploadResult::filename)
+                .containsExactly("a.txt", "b.txt", "c.txt");
+        assertThat(response.totalChunks()).isGreaterThanOrEqualTo(3);
+
+        // Batch size of 2 means two metadata batches for three files
+        verify(documentMetadataRepository, times(2)).insertAll(anyList());
+        verify(vectorStore, times(3)).add(anyList());
+    }
+
+    @Test
+    void uploadDocuments_withZipArchive_shouldStreamEachEntry() throws IOException {
+        // Given
+        byte[] zip = zip(
+                "docs/", null,
+                "docs/one.txt", "StarlightDB is a serverless graph database.",
+                "docs/two.txt", "Chrono-Sync enables time-travel queries."
+        );
+        MockMultipartFile archive = new MockMultipartFile("files", "corpus.zip", "application/zip", zip);
+
+        // When
+        BulkUploadResponse response = bulkUploadService.uploadDocuments(List.of(archive));
+
+        // Then
+        assertThat(response.fileCount()).isEqualTo(2);
+        assertThat(response.succeeded()).isEqualTo(2);
+        assertThat(response.results()).extracting(FileUploadResult::filename)
+                .containsExactly("docs/one.txt", "docs/two.txt");
+        verify(vectorStore, times(2)).add(anyList());
+    }
+
+    @Test
+    void uploadDocuments_whenVectorStoreFails_shouldReportFailureAndRemoveMetadata() throws IOException {
+        // Given
+        doAnswer(invocation -> {
+            List<Document> chunks = invocation.getArgument(0);
+            if ("bad.txt".equals(chunks.get(0).getMetadata().get("filename"))) {
+                throw new IllegalStateException("Embedding server unavailable");
+            }
+            return null;
+        }).when(vectorStore).add(anyList());
+
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "good.txt", "text/plain", "Good content.".getBytes()),
+                new MockMultipartFile("files", "bad.txt", "text/plain", "Bad content.".getBytes())
+        );
+
+        // When
+        BulkUploadResponse response = bulkUploadService.uploadDocuments(files);
+
+        // Then
+        assertThat(response.succeeded()).isEqualTo(1);
+        assertThat(response.failed()).isEqualTo(1);
+        FileUploadResult failed = response.results().get(1);
+        assertThat(failed.success()).isFalse();
+        assertThat(failed.error()).isEqualTo("Embedding server unavailable");
+        verify(documentMetadataRepository).deleteAllInBatch(anyList());
+    }
+
+    @Test
+    void uploadDocuments_withEmptyFile_shouldReportFailureWithoutStoring() throws IOException {
+        // Given
+        MockMultipartFile empty = new MockMultipartFile("files", "empty.txt", "text/plain", new byte[0]);
+
+        // When
+        BulkUploadResponse response = bulkUploadService.uploadDocuments(List.of(empty));
+
+        // Then
+        assertThat(response.failed()).isEqualTo(1);
+        assertThat(response.results().get(0).error()).isEqualTo("File is empty");
+        verify(vectorStore, never()).add(anyList());
+    }
+
+    @Test
+    void uploadDocuments_withOversizedEntry_shouldReportItAndIngestTheRest() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(bulkUploadService, "maxEntrySize", DataSize.ofBytes(20));
+        byte[] zip = zip(
+                "docs/big.txt", "StarlightDB is a serverless graph database.",
+                "docs/small.txt", "Short entry."
+        );
+        MockMultipartFile archive = new MockMultipartFile("files", "corpus.zip", "application/zip", zip);
+
+        // When
+        BulkUploadResponse response = bulkUploadService.uploadDocuments(List.of(archive));
+
+        // Then
+        assertThat(response.succeeded()).isEqualTo(1);
+        assertThat(response.results().get(0).filename()).isEqualTo("docs/big.txt");
+        assertThat(response.results().get(0).error()).isEqualTo("Entry is larger than 20 bytes");
+        verify(vectorStore, times(1)).add(anyList());
+    }
+
+    @Test
+    void uploadDocuments_withCorruptArchive_shouldReportItAsFailedFile() throws IOException {
+        // Given
+        MockMultipartFile broken = new MockMultipartFile("files", "broken.tgz", "application/gzip",
+                "not a gzip stream".getBytes());
+        MockMultipartFile plain = new MockMultipartFile("files", "a.txt", "text/plain", "First document content.".getBytes());
+
+        // When
+        BulkUploadResponse response = bulkUploadService.uploadDocuments(List.of(broken, plain));
+
+        // Then
+        assertThat(response.fileCount()).isEqualTo(2);
+        assertThat(response.succeeded()).isEqualTo(1);
+        assertThat(response.results().get(0).filename()).isEqualTo("broken.tgz");
+        assertThat(response.results().get(0).error()).startsWith("Could not read archive");
+    }
+
+    @Test
+    void uploadDocuments_withNoFiles_shouldThrowException() {
+        assertThatThrownBy(() -> bulkUploadService.uploadDocuments(List.of()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("No files provided");
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                if (namesAndContents[i + 1] != null) {
+                    zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
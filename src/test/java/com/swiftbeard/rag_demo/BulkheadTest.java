@@ -0,0 +1,186 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkhead;
+import com.swiftbeard.rag_demo.bulkhead.Workload;
+import com.swiftbeard.rag_demo.datasource.WorkloadRoutingDataSource;
+import com.swiftbeard.rag_demo.exception.BulkheadFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkheadTest {
+
+    @Mock
+    private DataSource defaultPool;
+
+    @Mock
+    private DataSource ingestionPool;
+
+    @Mock
+    private Connection connection;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Bulkhead bulkhead;
+
+    @AfterEach
+    void tearDown() {
+        if (bulkhead != null) {
+            bulkhead.close();
+        }
+    }
+
+    @Test
+    void call_shouldRunTaskUnderItsWorkload() {
+        // Given
+        bulkhead = new Bulkhead(Workload.INGESTION, 1, 1, Duration.ofSeconds(5), meterRegistry);
+
+        // When
+        Workload workload = bulkhead.call(Workload::current);
+
+        // Then
+        assertThat(workload).isEqualTo(Workload.INGESTION);
+        assertThat(Workload.current()).isEqualTo(Workload.INTERACTIVE);
+    }
+
+    @Test
+    void call_shouldRethrowCheckedExceptionFromTask() {
+        // Given
+        bulkhead = new Bulkhead(Workload.INGESTION, 1, 1, Duration.ofSeconds(5), meterRegistry);
+
+        // When / Then
+        assertThatThrownBy(() -> bulkhead.call(() -> {
+            throw new IOException("Disk full");
+        })).isInstanceOf(IOException.class).hasMessage("Disk full");
+    }
+
+    @Test
+    void call_whenQueueIsFull_shouldRejectAndCount() throws Exception {
+        // Given
+        bulkhead = new Bulkhead(Workload.ADMIN, 1, 1, Duration.ofSeconds(5), meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = bulkhead.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        Future<?> queued = bulkhead.execute(() -> { });
+
+        // When / Then
+        assertThatThrownBy(() -> bulkhead.call(() -> "too many"))
+                .isInstanceOf(BulkheadFullException.class);
+        assertThat(meterRegistry.get("rag.bulkhead.rejected").tag("workload", "admin").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("rag.bulkhead.saturation").tag("workload", "admin").gauge().value())
+                .isEqualTo(1.0);
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void call_whenQueuedLongerThanTimeout_shouldFailWithoutRunning() throws Exception {
+        // Given
+        bulkhead = new Bulkhead(Workload.HISTORY, 1, 1, Duration.ofMillis(20), meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> running = bulkhead.execute(() -> await(release));
+        Thread.ofVirtual().start(() -> {
+            sleep(100);
+            release.countDown();
+        });
+
+        // When / Then
+        assertThatThrownBy(() -> bulkhead.call(() -> "late"))
+                .isInstanceOf(BulkheadFullException.class)
+                .hasMessageContaining("history");
+        running.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void offer_whenQueueIsFullOrTaskFails_shouldDropWithoutThrowing() throws Exception {
+        // Given
+        bulkhead = new Bulkhead(Workload.HISTORY, 1, 1, Duration.ofSeconds(5), meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = bulkhead.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        CountDownLatch failed = new CountDownLatch(1);
+        assertThat(bulkhead.offer("failing write", () -> {
+            failed.countDown();
+            throw new IllegalStateException("Database unavailable");
+        })).isTrue();
+
+        // When
+        boolean accepted = bulkhead.offer("history write", () -> { });
+
+        // Then
+        assertThat(accepted).isFalse();
+        assertThat(meterRegistry.get("rag.bulkhead.dropped").tag("workload", "history").tag("reason", "rejected")
+                .counter().count()).isEqualTo(1);
+
+        // The single worker runs the failing write before this one
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        CountDownLatch after = new CountDownLatch(1);
+        assertThat(bulkhead.offer("next write", after::countDown)).isTrue();
+        assertThat(after.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(failed.getCount()).isZero();
+        assertThat(meterRegistry.get("rag.bulkhead.dropped").tag("workload", "history").tag("reason", "failed")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void workloadRouting_shouldPickPoolForCurrentWorkload() throws SQLException {
+        // Given
+        WorkloadRoutingDataSource routing = new WorkloadRoutingDataSource(
+                Map.of(Workload.INGESTION, ingestionPool), defaultPool);
+        when(ingestionPool.getConnection()).thenReturn(connection);
+        bulkhead = new Bulkhead(Workload.INGESTION, 1, 1, Duration.ofSeconds(5), meterRegistry);
+
+        // When
+        Connection result = bulkhead.call(routing::getConnection);
+
+        // Then
+        assertThat(result).isSameAs(connection);
+        verifyNoInteractions(defaultPool);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.chunking.ContextExpander;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.conversation.Conversation;
+import com.swiftbeard.rag_demo.conversation.ConversationStore;
+import com.swiftbeard.rag_demo.prompt.PromptTemplateRegistry;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.service.ConversationService;
+import com.swiftbeard.rag_demo.service.QueryHistoryService;
+import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.similarity.RelevanceThreshold;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationServiceTest {
+
+    @Mock
+    private ChatClient chatClient;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private QueryHistoryService queryHistoryService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @Captor
+    private ArgumentCaptor<SearchRequest> searchRequestCaptor;
+
+    private final List<Prompt> answerPrompts = new ArrayList<>();
+    private ConversationStore conversationStore;
+    private ConversationService conversationService;
+
+    @BeforeEach
+    void setUp() {
+        Bulkheads bulkheads = new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry());
+        RagService ragService = new RagService(chatClient, vectorStore, queryHistoryService, bulkheads,
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO),
+                new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new RelevanceThreshold(0, "I don't know.", new SimpleMeterRegistry()),
+                new ContextExpander(parentChunkStore, "none", 600));
+        // Window of two turns; not started, so compaction runs inline
+        conversationStore = new ConversationStore(chatClient, quotaService, new SimpleMeterRegistry(), 2, 100,
+                Duration.ofMinutes(30), 300, 2000, 1);
+        conversationService = new ConversationService(ragService, chatClient, conversationStore,
+                queryHistoryService, bulkheads);
+        ReflectionTestUtils.setField(conversationService, "condenseMaxTokens", 100);
+
+        lenient().when(vectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(new Document("StarlightDB is a serverless graph database.")));
+        lenient().when(chatClient.prompt(any(Prompt.class))).thenAnswer(invocation -> {
+            Prompt prompt = invocation.getArgument(0);
+            String instructions = prompt.getInstructions().get(0).getText();
+            String reply;
+            if (instructions.contains("running summary")) {
+                reply = "The user asked about StarlightDB.";
+            } else if (instructions.contains("Rewrite the new question")) {
+                reply = "How fast is StarlightDB?";
+            } else {
+                answerPrompts.add(prompt);
+                reply = "Answer " + answerPrompts.size();
+            }
+            ChatClient.ChatClientRequestSpec requestSpec = mock(ChatClient.ChatClientRequestSpec.class);
+            ChatClient.CallResponseSpec responseSpec = mock(ChatClient.CallResponseSpec.class);
+            when(requestSpec.call()).thenReturn(responseSpec);
+            when(responseSpec.content()).thenReturn(reply);
+            return requestSpec;
+        });
+    }
+
+    @Test
+    void retrieveAndGenerate_followUp_shouldSearchWithStandaloneQuestion() {
+        // When
+        conversationService.retrieveAndGenerate("client-1", "s1", "What is StarlightDB?", options());
+        conversationService.retrieveAndGenerate("client-1", "s1", "How fast is it?", options());
+
+        // Then
+        verify(vectorStore, times(2)).similaritySearch(searchRequestCaptor.capture());
+        assertThat(searchRequestCaptor.getAllValues())
+                .extracting(SearchRequest::getQuery)
+                .containsExactly("What is StarlightDB?", "How fast is StarlightDB?");
+        List<Message> followUp = answerPrompts.get(1).getInstructions();
+        assertThat(followUp).extracting(Message::getText)
+                .containsSubsequence("What is StarlightDB?", "Answer 1", "How fast is it?");
+    }
+
+    @Test
+    void retrieveAndGenerate_longConversation_shouldKeepPromptSizeBounded() {
+        // When
+        for (int i = 0; i < 10; i++) {
+            conversationService.retrieveAndGenerate("client-1", "s1", "Question " + i, options());
+        }
+
+        // Then
+        Conversation.Snapshot memory = conversationStore.get("client-1", "s1").snapshot();
+        assertThat(memory.turns()).hasSize(2);
+        assertThat(memory.summary()).isEqualTo("The user asked about StarlightDB.");
+        verify(quotaService, atLeastOnce()).record(eq("client-1"), any(TokenUsage.class));
+        // System prompt, summary, two turns and the question
+        int lastSize = answerPrompts.get(9).getInstructions().size();
+        assertThat(lastSize).isEqualTo(1 + 1 + 4 + 1);
+        assertThat(answerPrompts.get(5).getInstructions()).hasSize(lastSize);
+    }
+
+    @Test
+    void retrieveAndGenerate_withSameSessionIdFromAnotherClient_shouldNotSeeConversation() {
+        // Given
+        conversationService.retrieveAndGenerate("client-1", "s1", "What is StarlightDB?", options());
+
+        // When
+        Conversation other = conversationStore.get("client-2", "s1");
+
+        // Then
+        assertThat(other.snapshot().isEmpty()).isTrue();
+        assertThat(conversationService.endSession("client-2", "s1")).isTrue();
+        assertThat(conversationStore.get("client-1", "s1").snapshot().turns()).hasSize(1);
+    }
+
+    @Test
+    void get_overMaxSessions_shouldEvictLeastRecentlyUsed() {
+        // Given
+        ConversationStore store = new ConversationStore(chatClient, quotaService, new SimpleMeterRegistry(), 2, 2,
+                Duration.ofMinutes(30), 300, 2000, 1);
+        store.get("client-1", "a");
+        store.get("client-1", "b");
+        store.get("client-1", "a");
+
+        // When
+        store.get("client-1", "c");
+
+        // Then
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.end("client-1", "b")).isFalse();
+        assertThat(store.end("client-1", "a")).isTrue();
+    }
+
+    @Test
+    void endSession_shouldForgetConversation() {
+        // Given
+        conversationService.retrieveAndGenerate("client-1", "s1", "What is StarlightDB?", options());
+
+        // When
+        boolean ended = conversationService.endSession("client-1", "s1");
+
+        // Then
+        assertThat(ended).isTrue();
+        assertThat(conversationStore.get("client-1", "s1").snapshot().isEmpty()).isTrue();
+    }
+
+    private static GenerationOptions options() {
+        return new GenerationOptions("standard", null, null, null, null, 4);
+    }
+}
@@ -0,0 +1,207 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
+import com.swiftbeard.rag_demo.service.DirectoryIngestionService;
+import com.swiftbeard.rag_demo.service.DirectoryIngestionService.FileChange;
+import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DirectoryIngestionServiceTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private DocumentMetadataRepository documentMetadataRepository;
+
+    @Captor
+    private ArgumentCaptor<List<Document>> documentCaptor;
+
+    @TempDir
+    Path tempDir;
+
+    private DirectoryIngestionService directoryIngestionService;
+
+    @BeforeEach
+    void setUp() {
+        DocumentUploadService documentUploadService = new DocumentUploadService(vectorStore, documentMetadataRepository, parentChunkStore);
+        directoryIngestionService = new DirectoryIngestionService(
+                documentUploadService, documentMetadataRepository, vectorStore);
+
+        lenient().when(documentMetadataRepository.save(any(DocumentMetadata.class))).thenAnswer(invocation -> {
+            DocumentMetadata metadata = invocation.getArgument(0);
+            if (metadata.getId() == null) {
+                metadata.setId(1L);
+            }
+            return metadata;
+        });
+    }
+
+    @Test
+    void syncFile_withNewFile_shouldIngestAndRecordFingerprint() throws IOException {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("guide.txt"), "StarlightDB is a serverless graph database.");
+
+        // When
+        FileChange change = directoryIngestionService.syncFile(file);
+
+        // Then
+        assertThat(change).isEqualTo(FileChange.ADDED);
+        verify(vectorStore).add(documentCaptor.capture());
+        assertThat(documentCaptor.getValue().get(0).getMetadata()).containsEntry("document_id", "1");
+
+        ArgumentCaptor<DocumentMetadata> metadataCaptor = ArgumentCaptor.forClass(DocumentMetadata.class);
+        // Once to get an id for the chunks, once to record the fingerprint after they are stored
+        verify(documentMetadataRepository, times(2)).save(metadataCaptor.capture());
+        DocumentMetadata saved = metadataCaptor.getValue();
+        assertThat(saved.getSourcePath()).isEqualTo(file.toAbsolutePath().normalize().toString());
+        assertThat(saved.getContentHash()).hasSize(64);
+        assertThat(saved.getLastModified()).isEqualTo(Files.getLastModifiedTime(file).toMillis());
+    }
+
+    @Test
+    void syncFile_withSameMtimeAndSize_shouldSkipWithoutReading() throws IOException {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("guide.txt"), "Unchanged content.");
+        DocumentMetadata existing = existingMetadata(file, "irrelevant");
+        existing.setLastModified(Files.getLastModifiedTime(file).toMillis());
+        when(documentMetadataRepository.findBySourcePath(existing.getSourcePath())).thenReturn(Optional.of(existing));
+
+        // When
+        FileChange change = directoryIngestionService.syncFile(file);
+
+        // Then
+        assertThat(change).isEqualTo(FileChange.UNCHANGED);
+        verify(vectorStore, never()).add(anyList());
+        verify(documentMetadataRepository, never()).save(any());
+    }
+
+    @Test
+    void syncFile_withTouchedButIdenticalFile_shouldOnlyUpdateMtime() throws Exception {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("guide.txt"), "Same content.");
+        String hash = HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)));
+        DocumentMetadata existing = existingMetadata(file, hash);
+        when(documentMetadataRepository.findBySourcePath(existing.getSourcePath())).thenReturn(Optional.of(existing));
+
+        // When
+        FileChange change = directoryIngestionService.syncFile(file);
+
+        // Then
+        assertThat(change).isEqualTo(FileChange.UNCHANGED);
+        assertThat(existing.getLastModified()).isEqualTo(Files.getLastModifiedTime(file).toMillis());
+        verify(documentMetadataRepository).save(existing);
+        verify(vectorStore, never()).add(anyList());
+        verify(vectorStore, never()).delete(any(Filter.Expression.class));
+    }
+
+    @Test
+    void syncFile_withModifiedFile_shouldReplaceVectors() throws IOException {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("guide.txt"), "New content after an edit.");
+        DocumentMetadata existing = existingMetadata(file, "stale-hash");
+        when(documentMetadataRepository.findBySourcePath(existing.getSourcePath())).thenReturn(Optional.of(existing));
+
+        // When
+        FileChange change = directoryIngestionService.syncFile(file);
+
+        // Then
+        assertThat(change).isEqualTo(FileChange.MODIFIED);
+        verify(vectorStore).delete(any(Filter.Expression.class));
+        verify(vectorStore).add(anyList());
+        assertThat(existing.getContentHash()).isNotEqualTo("stale-hash");
+    }
+
+    @Test
+    void syncFile_whenVectorStoreFails_shouldNotRecordFingerprint() throws IOException {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("guide.txt"), "New content after an edit.");
+        DocumentMetadata existing = existingMetadata(file, "stale-hash");
+        when(documentMetadataRepository.findBySourcePath(existing.getSourcePath())).thenReturn(Optional.of(existing));
+        doThrow(new IllegalStateException("Embedding server unavailable")).when(vectorStore).add(anyList());
+
+        // When
+        assertThatThrownBy(() -> directoryIngestionService.syncFile(file))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then the next reconcile sees the file as changed and retries it
+        assertThat(existing.getContentHash()).isNull();
+        assertThat(existing.getLastModified()).isNull();
+    }
+
+    @Test
+    void reconcile_shouldRemoveDocumentsWhoseFilesWereDeleted() throws IOException {
+        // Given
+        Path kept = Files.writeString(tempDir.resolve("kept.txt"), "Still here.");
+        DocumentMetadata keptMetadata = existingMetadata(kept, "hash");
+        keptMetadata.setLastModified(Files.getLastModifiedTime(kept).toMillis());
+
+        DocumentMetadata goneMetadata = new DocumentMetadata("gone.txt", "text/plain", 10L, 1);
+        goneMetadata.setId(7L);
+        goneMetadata.setSourcePath(tempDir.toAbsolutePath().normalize().resolve("gone.txt").toString());
+
+        when(documentMetadataRepository.findBySourcePath(keptMetadata.getSourcePath()))
+                .thenReturn(Optional.of(keptMetadata));
+        when(documentMetadataRepository.findBySourcePathStartingWith(tempDir.toAbsolutePath().normalize().toString()))
+                .thenReturn(List.of(keptMetadata, goneMetadata));
+
+        // When
+        Map<FileChange, Integer> changes = directoryIngestionService.reconcile(tempDir);
+
+        // Then
+        assertThat(changes).containsEntry(FileChange.UNCHANGED, 1).containsEntry(FileChange.DELETED, 1);
+        verify(vectorStore).delete(any(Filter.Expression.class));
+        verify(documentMetadataRepository).delete(goneMetadata);
+        verify(documentMetadataRepository, never()).delete(keptMetadata);
+    }
+
+    @Test
+    void isIngestible_shouldSkipHiddenAndTemporaryFiles() {
+        assertThat(directoryIngestionService.isIngestible(Path.of("docs/guide.pdf"))).isTrue();
+        assertThat(directoryIngestionService.isIngestible(Path.of("docs/.guide.pdf"))).isFalse();
+        assertThat(directoryIngestionService.isIngestible(Path.of("docs/guide.pdf~"))).isFalse();
+        assertThat(directoryIngestionService.isIngestible(Path.of("docs/guide.swp"))).isFalse();
+    }
+
+    private DocumentMetadata existingMetadata(Path file, String contentHash) throws IOException {
+        DocumentMetadata metadata = new DocumentMetadata(
+                file.getFileName().toString(), "text/plain", Files.size(file), 1);
+        metadata.setId(5L);
+        metadata.setSourcePath(file.toAbsolutePath().normalize().toString());
+        metadata.setLastModified(0L);
+        metadata.setContentHash(contentHash);
+        return metadata;
+    }
+}
@@ -1,21 +1,35 @@
 package com.swiftbeard.rag_demo;
 
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
 import com.swiftbeard.rag_demo.cofig.DocumentLoader;
+import com.swiftbeard.rag_demo.model.SeedDocument;
+import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
+import com.swiftbeard.rag_demo.repository.SeedDocumentRepository;
+import com.swiftbeard.rag_demo.service.DocumentUploadService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyList;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class DocumentLoaderTest {
@@ -23,14 +37,32 @@ class DocumentLoaderTest {
     @Mock
     private VectorStore vectorStore;
 
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private SeedDocumentRepository seedDocumentRepository;
+
+    @Mock
+    private DocumentMetadataRepository documentMetadataRepository;
+
     @Captor
     private ArgumentCaptor<List<Document>> documentCaptor;
 
+    @Captor
+    private ArgumentCaptor<List<SeedDocument>> checkpointCaptor;
+
+    @TempDir
+    Path tempDir;
+
     private DocumentLoader documentLoader;
 
     @BeforeEach
     void setUp() {
-        documentLoader = new DocumentLoader(vectorStore);
+        DocumentUploadService documentUploadService = new DocumentUploadService(vectorStore, documentMetadataRepository, parentChunkStore);
+        documentLoader = new DocumentLoader(vectorStore, seedDocumentRepository, documentUploadService);
+        ReflectionTestUtils.setField(documentLoader, "location", new ClassPathResource("seed/starlightdb.jsonl"));
+        ReflectionTestUtils.setField(documentLoader, "batchSize", 50);
     }
 
     @Test
@@ -67,9 +99,10 @@ class DocumentLoaderTest {
     @Test
     void run_shouldLoadExactlyFiveDocuments() throws Exception {
         // When
-        documentLoader.run();
+        int loaded = documentLoader.run();
 
         // Then
+        assertThat(loaded).isEqualTo(5);
         verify(vectorStore).add(documentCaptor.capture());
         List<Document> documents = documentCaptor.getValue();
         assertThat(documents).hasSize(5);
@@ -102,4 +135,84 @@ class DocumentLoaderTest {
         assertThat(documents.stream().map(Document::getText).distinct().count())
                 .isEqualTo(5);
     }
+
+    @Test
+    void run_shouldUseStableIdsAcrossRestarts() throws Exception {
+        // When
+        documentLoader.run();
+        documentLoader.run();
+
+        // Then
+        verify(vectorStore, times(2)).add(documentCaptor.capture());
+        List<String> firstIds = documentCaptor.getAllValues().get(0).stream().map(Document::getId).toList();
+        List<String> secondIds = documentCaptor.getAllValues().get(1).stream().map(Document::getId).toList();
+        assertThat(firstIds).isEqualTo(secondIds);
+    }
+
+    @Test
+    void run_shouldCheckpointEveryLoadedEntry() throws Exception {
+        // When
+        documentLoader.run();
+
+        // Then
+        verify(seedDocumentRepository).saveAll(checkpointCaptor.capture());
+        assertThat(checkpointCaptor.getValue())
+                .extracting(SeedDocument::getId)
+                .containsExactly("starlightdb-overview", "starlightdb-quantum-leap", "starlightdb-chrono-sync",
+                        "starlightdb-nebula", "starlightdb-cosmic-shield");
+    }
+
+    @Test
+    void run_whenAllEntriesAlreadyCheckpointed_shouldSkipEmbedding() throws Exception {
+        // Given: a first run records the checkpoints
+        documentLoader.run();
+        verify(seedDocumentRepository).saveAll(checkpointCaptor.capture());
+        List<SeedDocument> checkpoints = checkpointCaptor.getValue();
+        clearInvocations(vectorStore, seedDocumentRepository);
+        when(seedDocumentRepository.findAllById(anyIterable())).thenReturn(checkpoints);
+
+        // When
+        int loaded = documentLoader.run();
+
+        // Then
+        assertThat(loaded).isZero();
+        verify(vectorStore, never()).add(anyList());
+        verify(seedDocumentRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void run_whenEntryChanged_shouldReplaceItsChunks() throws Exception {
+        // Given
+        when(seedDocumentRepository.findAllById(anyIterable()))
+                .thenReturn(List.of(new SeedDocument("starlightdb-overview", "outdated-hash", 1)));
+
+        // When
+        int loaded = documentLoader.run();
+
+        // Then: every entry is new except the changed one, which is replaced
+        assertThat(loaded).isEqualTo(5);
+        verify(vectorStore).delete(any(Filter.Expression.class));
+        verify(vectorStore).add(anyList());
+    }
+
+    @Test
+    void run_withDirectoryLocation_shouldCheckpointInBatches() throws Exception {
+        // Given
+        Files.writeString(tempDir.resolve("a.txt"), "StarlightDB stores graphs.");
+        Files.writeString(tempDir.resolve("b.txt"), "Nebula renders 3D graphs.");
+        Files.writeString(tempDir.resolve("c.txt"), "Cosmic Shield encrypts data.");
+        ReflectionTestUtils.setField(documentLoader, "location", new FileSystemResource(tempDir));
+        ReflectionTestUtils.setField(documentLoader, "batchSize", 2);
+
+        // When
+        int loaded = documentLoader.run();
+
+        // Then
+        assertThat(loaded).isEqualTo(3);
+        verify(vectorStore, times(2)).add(anyList());
+        verify(seedDocumentRepository, times(2)).saveAll(checkpointCaptor.capture());
+        assertThat(checkpointCaptor.getAllValues().get(0))
+                .extracting(SeedDocument::getId)
+                .containsExactly("a.txt", "b.txt");
+    }
 }
@@ -1,5 +1,6 @@
 package com.swiftbeard.rag_demo;
 
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
 import com.swiftbeard.rag_demo.exception.DocumentNotFoundException;
 import com.swiftbeard.rag_demo.model.DocumentMetadata;
 import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
@@ -26,6 +27,9 @@ class DocumentServiceTest {
     @Mock
     private DocumentMetadataRepository documentMetadataRepository;
 
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
     @Mock
     private VectorStore vectorStore;
 
@@ -33,7 +37,7 @@ class DocumentServiceTest {
 
     @BeforeEach
     void setUp() {
-        documentService = new DocumentService(documentMetadataRepository, vectorStore);
+        documentService = new DocumentService(documentMetadataRepository, vectorStore, parentChunkStore);
     }
 
     @Test
@@ -1,5 +1,6 @@
 package com.swiftbeard.rag_demo;
 
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
 import com.swiftbeard.rag_demo.model.DocumentMetadata;
 import com.swiftbeard.rag_demo.repository.DocumentMetadataRepository;
 import com.swiftbeard.rag_demo.service.DocumentUploadService;
@@ -29,6 +30,9 @@ class DocumentUploadServiceTest {
     @Mock
     private VectorStore vectorStore;
 
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
     @Mock
     private DocumentMetadataRepository documentMetadataRepository;
 
@@ -39,7 +43,7 @@ class DocumentUploadServiceTest {
 
     @BeforeEach
     void setUp() {
-        documentUploadService = new DocumentUploadService(vectorStore, documentMetadataRepository);
+        documentUploadService = new DocumentUploadService(vectorStore, documentMetadataRepository, parentChunkStore);
 
         // Mock the save operation to return a document with an ID (lenient for tests that throw early)
         lenient().when(documentMetadataRepository.save(any(DocumentMetadata.class))).thenAnswer(invocation -> {
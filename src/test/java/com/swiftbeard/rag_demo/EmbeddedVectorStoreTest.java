@@ -0,0 +1,153 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.vectorstore.EmbeddedVectorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmbeddedVectorStoreTest {
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @TempDir
+    Path indexPath;
+
+    private EmbeddedVectorStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new EmbeddedVectorStore(embeddingModel, indexPath);
+        store.upsert(List.of(
+                new Document("a", "StarlightDB overview", Map.of("document_id", "1")),
+                new Document("b", "Chrono-Sync replication", Map.of("document_id", "1")),
+                new Document("c", "Nebula query engine", Map.of("document_id", "2"))),
+                List.of(new float[]{1, 0, 0}, new float[]{0, 1, 0}, new float[]{0, 0, 1}));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void similaritySearch_shouldReturnNearestChunksWithDistance() {
+        // Given
+        when(embeddingModel.embed("overview")).thenReturn(new float[]{0.9f, 0.1f, 0});
+
+        // When
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("overview").topK(2).build());
+
+        // Then
+        assertThat(results).extracting(Document::getId).containsExactly("a", "b");
+        assertThat(results.get(0).getText()).isEqualTo("StarlightDB overview");
+        assertThat((Double) results.get(0).getMetadata().get("distance"))
+                .isCloseTo(1.0 - results.get(0).getScore(), within(1e-6));
+    }
+
+    @Test
+    void search_withFilter_shouldOnlyReturnMatchingChunks() {
+        // When
+        List<Document> results = store.search(new float[]{1, 0, 0}, 3,
+                new FilterExpressionBuilder().eq("document_id", "2").build());
+
+        // Then
+        assertThat(results).extracting(Document::getId).containsExactly("c");
+    }
+
+    @Test
+    void delete_byFilter_shouldRemoveDocumentChunks() {
+        // When
+        store.delete(new FilterExpressionBuilder().eq("document_id", "1").build());
+
+        // Then
+        assertThat(store.count()).isEqualTo(1);
+    }
+
+    @Test
+    void upsert_withExistingId_shouldReplaceChunk() {
+        // When
+        store.upsert(List.of(new Document("a", "StarlightDB v2", Map.of("document_id", "1"))),
+                List.of(new float[]{1, 0, 0}));
+
+        // Then
+        assertThat(store.count()).isEqualTo(3);
+        assertThat(store.search(new float[]{1, 0, 0}, 1, null).get(0).getText()).isEqualTo("StarlightDB v2");
+    }
+
+    @Test
+    void reopen_shouldKeepCommittedChunks() throws IOException {
+        // When
+        store.close();
+        store = new EmbeddedVectorStore(embeddingModel, indexPath);
+
+        // Then
+        assertThat(store.count()).isEqualTo(3);
+    }
+
+    @Test
+    void finishResync_shouldDropChunksNotSeenDuringResync() {
+        // Given
+        String generation = store.beginResync();
+        store.upsert(List.of(new Document("a", "StarlightDB overview", Map.of("document_id", "1"))),
+                List.of(new float[]{1, 0, 0}));
+
+        // When
+        store.finishResync(generation);
+
+        // Then
+        assertThat(store.count()).isEqualTo(1);
+        assertThat(store.search(new float[]{0, 1, 0}, 3, null)).extracting(Document::getId).containsExactly("a");
+    }
+
+    @Test
+    void resync_shouldNotBringBackChunksDeletedWhileItRuns() {
+        // Given a resync that read "b" from Postgres before it was deleted
+        String generation = store.beginResync();
+        List<Document> page = List.of(
+                new Document("a", "StarlightDB overview", Map.of("document_id", "1")),
+                new Document("b", "Chrono-Sync replication", Map.of("document_id", "1")));
+        store.delete(List.of("b"));
+
+        // When
+        store.resyncUpsert(page, List.of(new float[]{1, 0, 0}, new float[]{0, 1, 0}));
+        store.finishResync(generation);
+
+        // Then
+        assertThat(store.search(new float[]{0, 1, 0}, 3, null)).extracting(Document::getId).containsExactly("a");
+    }
+
+    @Test
+    void search_withRangeFilter_shouldCompareNumbersAsNumbers() {
+        // Given
+        store.upsert(List.of(
+                new Document("p9", "Page nine", Map.of("document_id", "3", "page_number", 9)),
+                new Document("p10", "Page ten", Map.of("document_id", "3", "page_number", 10))),
+                List.of(new float[]{1, 1, 0}, new float[]{1, 0, 1}));
+
+        // When
+        List<Document> results = store.search(new float[]{1, 0, 0}, 5,
+                new FilterExpressionBuilder().gt("page_number", 9).build());
+
+        // Then
+        assertThat(results).extracting(Document::getId).containsExactly("p10");
+    }
+}
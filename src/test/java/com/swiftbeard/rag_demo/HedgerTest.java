@@ -0,0 +1,126 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.exception.StageTimeoutException;
+import com.swiftbeard.rag_demo.hedging.HedgePolicy;
+import com.swiftbeard.rag_demo.hedging.Hedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HedgerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Hedger hedger;
+
+    @AfterEach
+    void tearDown() {
+        hedger.close();
+    }
+
+    @Test
+    void call_whenFirstRequestIsFast_shouldNotHedge() {
+        // Given
+        hedger = new Hedger("chat", policy(Duration.ofSeconds(5), true), meterRegistry);
+        AtomicInteger hedgeCalls = new AtomicInteger();
+
+        // When
+        String result = hedger.call(() -> "primary", () -> "hedge" + hedgeCalls.incrementAndGet());
+
+        // Then
+        assertThat(result).isEqualTo("primary");
+        assertThat(hedgeCalls).hasValue(0);
+        assertThat(meterRegistry.get("rag.hedge.sent").tag("stage", "chat").counter().count()).isZero();
+    }
+
+    @Test
+    void call_whenFirstRequestIsSlow_shouldReturnHedgeAndCancelFirst() {
+        // Given
+        hedger = new Hedger("chat", policy(Duration.ofSeconds(5), true), meterRegistry);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        // When
+        String result = hedger.call(() -> {
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return "primary";
+        }, () -> "hedge");
+
+        // Then
+        assertThat(result).isEqualTo("hedge");
+        assertThat(meterRegistry.get("rag.hedge.sent").tag("stage", "chat").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rag.hedge.wins").tag("stage", "chat").counter().count()).isEqualTo(1);
+        sleep(100);
+        assertThat(interrupted).isTrue();
+        // The cancelled first request is still measured, as a lower bound
+        assertThat(meterRegistry.get("rag.hedge.saved").tag("stage", "chat").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rag.call.latency").tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void call_whenNoAnswerBeforeTimeout_shouldThrowStageTimeout() {
+        // Given
+        hedger = new Hedger("embedding", policy(Duration.ofMillis(100), false), meterRegistry);
+
+        // When / Then
+        assertThatThrownBy(() -> hedger.call(() -> {
+            sleep(5_000);
+            return "late";
+        })).isInstanceOf(StageTimeoutException.class).hasMessageContaining("embedding");
+        assertThat(meterRegistry.get("rag.call.latency").tags("stage", "embedding", "outcome", "timeout")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void call_whenBothRequestsFail_shouldRethrowFailure() {
+        // Given
+        hedger = new Hedger("chat", policy(Duration.ofSeconds(5), true), meterRegistry);
+
+        // When / Then
+        assertThatThrownBy(() -> hedger.call(() -> {
+            sleep(100);
+            throw new IllegalStateException("Primary down");
+        }, () -> {
+            throw new IllegalStateException("Hedge down");
+        })).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void hedgeDelay_shouldFollowRecentLatenciesOnceEnoughCallsAreSeen() {
+        // Given
+        hedger = new Hedger("embedding", new HedgePolicy(Duration.ofSeconds(5), true, 0.95,
+                Duration.ofMillis(1), Duration.ofSeconds(1), true), meterRegistry);
+        double initialDelay = meterRegistry.get("rag.hedge.delay").gauge().value();
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            hedger.call(() -> "fast");
+        }
+
+        // Then
+        assertThat(initialDelay).isEqualTo(1000.0);
+        assertThat(meterRegistry.get("rag.hedge.delay").gauge().value()).isLessThan(1000.0);
+    }
+
+    private static HedgePolicy policy(Duration timeout, boolean hedge) {
+        return new HedgePolicy(timeout, hedge, 0.95, Duration.ofMillis(20), Duration.ofMillis(20), true);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.chunking.HotChunkCache;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.chunking.SmallToBigSplitter;
+import com.swiftbeard.rag_demo.model.ParentChunk;
+import com.swiftbeard.rag_demo.repository.ParentChunkRepository;
+import com.swiftbeard.rag_demo.vectorstore.HotChunkRecordingVectorStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HotChunkCacheTest {
+
+    private static final String HOT_1 = "0b7f6f52-6c1d-4d33-8d0e-5f0b6c4b9a11";
+    private static final String HOT_2 = "5d2c9e1a-3b47-4f8e-a6d1-7c9e0f2b3d22";
+    private static final String ONE_OFF = "9a4e7b3c-1f26-4c5d-b8e9-2d6f1a0c7e33";
+
+    @Mock
+    private ParentChunkRepository parentChunkRepository;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void record_shouldOnlyAdmitChunksRetrievedMoreOftenThanTheCachedOnes() {
+        // Given
+        HotChunkCache cache = new HotChunkCache(2, meterRegistry);
+        for (int i = 0; i < 3; i++) {
+            cache.record(List.of(chunk(HOT_1, 7L, 0), chunk(HOT_2, 7L, 100)));
+        }
+
+        // When
+        cache.record(List.of(chunk(ONE_OFF, 8L, 0)));
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.contains(ONE_OFF)).isFalse();
+        assertThat(cache.contains(HOT_1)).isTrue();
+
+        // When it keeps being asked about
+        for (int i = 0; i < 4; i++) {
+            cache.record(List.of(chunk(ONE_OFF, 8L, 0)));
+        }
+
+        // Then it replaces one of them
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.contains(ONE_OFF)).isTrue();
+        assertThat(cache.frequency(ONE_OFF)).isGreaterThan(cache.frequency(HOT_1));
+    }
+
+    @Test
+    void find_shouldServeParentsOfCachedChunksWithoutTheRepository() {
+        // Given
+        HotChunkCache cache = new HotChunkCache(10, meterRegistry);
+        ParentChunkStore store = new ParentChunkStore(parentChunkRepository, cache);
+        ParentChunk parent = new ParentChunk(7L, 0, 80, 1, "The parent section.");
+        when(parentChunkRepository.findByDocumentIdAndStartOffsetIn(anyLong(), anyCollection()))
+                .thenReturn(List.of(parent));
+        cache.record(List.of(chunk(HOT_1, 7L, 0)));
+
+        // When
+        store.find(Map.of(7L, Set.of(0)));
+        List<ParentChunk> second = store.find(Map.of(7L, Set.of(0)));
+
+        // Then
+        assertThat(second).containsExactly(parent);
+        verify(parentChunkRepository, times(1)).findByDocumentIdAndStartOffsetIn(anyLong(), anyCollection());
+        assertThat(meterRegistry.get("rag.hot-chunks.parents").tag("result", "hit").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void deletes_shouldEvictChunksAndTheirParents() {
+        // Given
+        HotChunkCache cache = new HotChunkCache(10, meterRegistry);
+        ParentChunkStore store = new ParentChunkStore(parentChunkRepository, cache);
+        HotChunkRecordingVectorStore recording = new HotChunkRecordingVectorStore(vectorStore, cache);
+        when(vectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(chunk(HOT_1, 7L, 0), chunk(HOT_2, 8L, 0)));
+        recording.similaritySearch(SearchRequest.builder().query("graph database").build());
+
+        // When
+        recording.delete(List.of(HOT_2));
+        store.delete(List.of(7L));
+
+        // Then
+        assertThat(cache.size()).isZero();
+        verify(vectorStore).delete(List.of(HOT_2));
+        verify(parentChunkRepository).deleteByDocumentIdIn(List.of(7L));
+    }
+
+    @Test
+    void deleteByDocumentId_shouldOnlyEvictThatDocumentsChunks() {
+        // Given
+        HotChunkCache cache = new HotChunkCache(10, meterRegistry);
+        HotChunkRecordingVectorStore recording = new HotChunkRecordingVectorStore(vectorStore, cache);
+        when(vectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(chunk(HOT_1, 7L, 0), chunk(HOT_2, 8L, 0)));
+        recording.similaritySearch(SearchRequest.builder().query("graph database").build());
+        Filter.Expression filter = new FilterExpressionBuilder().eq("document_id", "7").build();
+
+        // When
+        recording.delete(filter);
+
+        // Then
+        assertThat(cache.contains(HOT_1)).isFalse();
+        assertThat(cache.contains(HOT_2)).isTrue();
+        verify(vectorStore).delete(filter);
+    }
+
+    @Test
+    void similaritySearch_unrecorded_shouldNotCountResults() {
+        // Given
+        HotChunkCache cache = new HotChunkCache(10, meterRegistry);
+        HotChunkRecordingVectorStore recording = new HotChunkRecordingVectorStore(vectorStore, cache);
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(chunk(HOT_1, 7L, 0)));
+
+        // When
+        HotChunkRecordingVectorStore.unrecorded(
+                () -> recording.similaritySearch(SearchRequest.builder().query("graph database").build()));
+
+        // Then
+        assertThat(cache.frequency(HOT_1)).isZero();
+        assertThat(cache.contains(HOT_1)).isFalse();
+    }
+
+    private static Document chunk(String id, Long documentId, int parentOffset) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId.toString());
+        metadata.put(SmallToBigSplitter.PARENT_OFFSET, parentOffset);
+        metadata.put("distance", 0.2);
+        return new Document(id, "Chunk " + id, metadata);
+    }
+}
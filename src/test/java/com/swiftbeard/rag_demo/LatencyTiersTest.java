@@ -0,0 +1,131 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.exception.InvalidGenerationOptionsException;
+import com.swiftbeard.rag_demo.model.MessageRequest;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.quota.UsageRecordingChatModel;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LatencyTiersTest {
+
+    @Mock
+    private ChatModel chatModel;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LatencyTiers latencyTiers;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("rag.tiers.limits.max-tokens", "1000")
+                .withProperty("rag.tiers.allowed-models[0]", "openai/gpt-4o-mini");
+        latencyTiers = new LatencyTiers(environment, meterRegistry);
+    }
+
+    @Test
+    void resolve_withoutTier_shouldUseStandardTierAndModelDefaults() {
+        // When
+        GenerationOptions options = latencyTiers.resolve(new MessageRequest("What is StarlightDB?"));
+
+        // Then
+        assertThat(options.tier()).isEqualTo("standard");
+        assertThat(options.topK()).isEqualTo(4);
+        assertThat(options.template()).isNull();
+        assertThat(options.chatOptions()).isNull();
+    }
+
+    @Test
+    void resolve_fastTier_shouldUseConciseTemplateAndShortAnswers() {
+        // Given
+        MessageRequest request = new MessageRequest("What is StarlightDB?", null, null, null, "FAST", null, null, null, null);
+
+        // When
+        GenerationOptions options = latencyTiers.resolve(request);
+
+        // Then
+        assertThat(options.tier()).isEqualTo("fast");
+        assertThat(options.template()).isEqualTo("concise");
+        assertThat(options.topK()).isEqualTo(2);
+        assertThat(options.chatOptions().getMaxTokens()).isEqualTo(150);
+        assertThat(options.chatOptions().getTemperature()).isEqualTo(0.2);
+    }
+
+    @Test
+    void resolve_withOverrides_shouldClampToServerLimits() {
+        // Given
+        MessageRequest request = new MessageRequest("What is StarlightDB?", 50, null, null, "thorough",
+                "openai/gpt-4o-mini", 100_000, 5.0, null);
+
+        // When
+        GenerationOptions options = latencyTiers.resolve(request);
+
+        // Then
+        assertThat(options.model()).isEqualTo("openai/gpt-4o-mini");
+        assertThat(options.maxTokens()).isEqualTo(1000);
+        assertThat(options.temperature()).isEqualTo(1.5);
+        assertThat(options.topK()).isEqualTo(20);
+        assertThat(options.template()).isEqualTo("detailed");
+    }
+
+    @Test
+    void resolve_withUnknownTierOrModel_shouldFail() {
+        assertThatThrownBy(() -> latencyTiers.resolve(
+                new MessageRequest("q", null, null, null, "instant", null, null, null, null)))
+                .isInstanceOf(InvalidGenerationOptionsException.class)
+                .hasMessageContaining("fast, standard, thorough");
+        assertThatThrownBy(() -> latencyTiers.resolve(
+                new MessageRequest("q", null, null, null, null, "openai/gpt-4o", null, null, null)))
+                .isInstanceOf(InvalidGenerationOptionsException.class);
+    }
+
+    @Test
+    void record_shouldCountNestedTokenUsagePerTierAndInRequestTotal() {
+        // Given
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage("Answer"))),
+                ChatResponseMetadata.builder().usage(new DefaultUsage(120, 30)).build());
+        when(chatModel.call(any(Prompt.class))).thenReturn(response);
+        UsageRecordingChatModel recording = new UsageRecordingChatModel(chatModel);
+        GenerationOptions options = latencyTiers.resolve(
+                new MessageRequest("q", null, null, null, "fast", null, null, null, null));
+        TokenUsage request = new TokenUsage();
+        TokenUsage generation = new TokenUsage();
+
+        // When
+        request.track(() -> generation.track(() -> recording.call(new Prompt("What is StarlightDB?"))));
+        latencyTiers.record(options, TimeUnit.MILLISECONDS.toNanos(250), generation);
+
+        // Then
+        assertThat(request.totalTokens()).isEqualTo(150);
+        assertThat(generation.totalTokens()).isEqualTo(150);
+        assertThat(meterRegistry.get("rag.tier.latency").tag("tier", "fast").timer().count()).isEqualTo(1);
+        DistributionSummary completion = meterRegistry.get("rag.tier.tokens")
+                .tag("tier", "fast").tag("type", "completion").summary();
+        assertThat(completion.totalAmount()).isEqualTo(30);
+    }
+}
@@ -0,0 +1,98 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.exception.PromptTemplateNotFoundException;
+import com.swiftbeard.rag_demo.prompt.CompiledTemplate;
+import com.swiftbeard.rag_demo.prompt.PromptTemplateRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PromptTemplateRegistryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void render_shouldJoinDocumentTextsIntoEachPlaceholder() {
+        // Given
+        CompiledTemplate template = CompiledTemplate.compile("test",
+                "Context:\n{information}\n\\{not a variable\\}\nAgain: {information}");
+        List<Document> documents = List.of(new Document("Point A."), new Document("Point B."));
+
+        // When
+        String rendered = template.render(documents);
+
+        // Then
+        assertThat(rendered).isEqualTo("Context:\nPoint A.\nPoint B.\n{not a variable}\nAgain: Point A.\nPoint B.");
+    }
+
+    @Test
+    void render_onVirtualThread_shouldMatchPlatformThread() throws InterruptedException {
+        // Given
+        CompiledTemplate template = CompiledTemplate.compile("test", "Information:\n{information}\n\nAnswer:");
+        List<Document> documents = List.of(new Document("StarlightDB is a graph database."));
+        String[] rendered = new String[1];
+
+        // When
+        Thread.ofVirtual().start(() -> rendered[0] = template.render(documents)).join();
+
+        // Then
+        assertThat(rendered[0]).isEqualTo(template.render(documents));
+    }
+
+    @Test
+    void compile_withUnknownVariable_shouldFail() {
+        assertThatThrownBy(() -> CompiledTemplate.compile("broken", "Hello {name}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("{name}");
+    }
+
+    @Test
+    void get_shouldLoadBundledTemplatesAndFallBackToDefault() {
+        // Given
+        PromptTemplateRegistry registry = new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO);
+
+        // Then
+        assertThat(registry.names()).contains("concise", "detailed", "json");
+        assertThat(registry.get(null).name()).isEqualTo("detailed");
+        assertThat(registry.get("json").render(List.of(new Document("x")))).contains("{\"answer\"");
+        assertThatThrownBy(() -> registry.get("missing"))
+                .isInstanceOf(PromptTemplateNotFoundException.class);
+    }
+
+    @Test
+    void reload_shouldPickUpChangedFilesAndKeepLastGoodVersion() throws IOException {
+        // Given
+        Path file = directory.resolve("concise.st");
+        Files.writeString(file, "Be brief.\n{information}");
+        PromptTemplateRegistry registry = new PromptTemplateRegistry(directory.toUri().toString(), "concise",
+                Duration.ZERO);
+        List<Document> documents = List.of(new Document("Point A."));
+
+        // When
+        Files.writeString(file, "Be very brief.\n{information}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(10)));
+        registry.reload();
+        String changed = registry.get("concise").render(documents);
+
+        Files.writeString(file, "Broken {question}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(20)));
+        registry.reload();
+        String afterBrokenEdit = registry.get("concise").render(documents);
+
+        // Then
+        assertThat(changed).isEqualTo("Be very brief.\nPoint A.");
+        assertThat(afterBrokenEdit).isEqualTo("Be very brief.\nPoint A.");
+    }
+}
@@ -0,0 +1,141 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.vectorstore.QuantizationMode;
+import com.swiftbeard.rag_demo.vectorstore.QuantizedVectorStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuantizedVectorStoreTest {
+
+    @Mock
+    private VectorStore delegate;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Captor
+    private ArgumentCaptor<String> sqlCaptor;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(embeddingModel.embed(anyString())).thenReturn(new float[]{0.1f, 0.2f, 0.3f});
+    }
+
+    @Test
+    void similaritySearch_withNoQuantization_shouldDelegate() {
+        // Given
+        QuantizedVectorStore store = store(QuantizationMode.NONE);
+        SearchRequest request = SearchRequest.builder().query("What is StarlightDB?").topK(4).build();
+        when(delegate.similaritySearch(request)).thenReturn(List.of(new Document("StarlightDB")));
+
+        // When
+        List<Document> results = store.similaritySearch(request);
+
+        // Then
+        assertThat(results).hasSize(1);
+        verifyNoInteractions(jdbcTemplate, embeddingModel);
+    }
+
+    @Test
+    void similaritySearch_withHalfvec_shouldOverFetchFromCompactIndexAndRescore() {
+        // Given
+        QuantizedVectorStore store = store(QuantizationMode.HALFVEC);
+        when(jdbcTemplate.query(sqlCaptor.capture(), any(PreparedStatementSetter.class),
+                ArgumentMatchers.<RowMapper<Document>>any()))
+                .thenReturn(List.of(scored("close", 0.9), scored("far", 0.2)));
+
+        // When
+        List<Document> results = store.similaritySearch(
+                SearchRequest.builder().query("What is StarlightDB?").topK(4).similarityThreshold(0.5).build());
+
+        // Then
+        String sql = sqlCaptor.getValue();
+        assertThat(sql).contains("ORDER BY embedding::halfvec(768) <=> ?::halfvec(768)");
+        assertThat(sql).contains("embedding <=> ?::vector AS distance");
+        verify(jdbcTemplate).execute("SET LOCAL hnsw.ef_search = 40");
+        assertThat(results).extracting(Document::getText).containsExactly("close");
+    }
+
+    @Test
+    void similaritySearch_withBinary_shouldUseHammingDistanceOnBitIndex() {
+        // Given
+        QuantizedVectorStore store = store(QuantizationMode.BINARY);
+        when(jdbcTemplate.query(sqlCaptor.capture(), any(PreparedStatementSetter.class),
+                ArgumentMatchers.<RowMapper<Document>>any()))
+                .thenReturn(List.of());
+
+        // When
+        store.similaritySearch(SearchRequest.builder().query("Chrono-Sync").topK(20).build());
+
+        // Then
+        assertThat(sqlCaptor.getValue())
+                .contains("binary_quantize(embedding)::bit(768) <~> binary_quantize(?::vector)::bit(768)");
+        // ef_search must cover topK * over-fetch candidates
+        verify(jdbcTemplate).execute("SET LOCAL hnsw.ef_search = 80");
+    }
+
+    @Test
+    void createIndex_shouldBuildExpressionIndexForMode() {
+        // When
+        store(QuantizationMode.HALFVEC).createIndex();
+
+        // Then
+        verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS vector_store_halfvec_idx ON vector_store "
+                + "USING hnsw ((embedding::halfvec(768)) halfvec_cosine_ops)");
+    }
+
+    @Test
+    void add_shouldWriteFullPrecisionVectorsThroughDelegate() {
+        // Given
+        QuantizedVectorStore store = store(QuantizationMode.BINARY);
+        List<Document> documents = List.of(new Document("StarlightDB"));
+
+        // When
+        store.add(documents);
+
+        // Then
+        verify(delegate).add(documents);
+        verify(delegate, never()).similaritySearch(any(SearchRequest.class));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private QuantizedVectorStore store(QuantizationMode mode) {
+        return new QuantizedVectorStore(delegate, jdbcTemplate, transactionTemplate, embeddingModel,
+                mode, "vector_store", 768, 4);
+    }
+
+    private static Document scored(String text, double score) {
+        return Document.builder().text(text).score(score).build();
+    }
+}
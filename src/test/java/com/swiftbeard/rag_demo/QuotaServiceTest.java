@@ -0,0 +1,217 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.exception.QuotaExceededException;
+import com.swiftbeard.rag_demo.model.ClientQuotaUsage;
+import com.swiftbeard.rag_demo.model.ClientUsage;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.quota.TokenUsage;
+import com.swiftbeard.rag_demo.quota.UsageRecordingChatModel;
+import com.swiftbeard.rag_demo.repository.ClientQuotaUsageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuotaServiceTest {
+
+    @Mock
+    private ClientQuotaUsageRepository repository;
+
+    @Mock
+    private ChatModel chatModel;
+
+    private QuotaService quotaService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(repository.findById(anyString())).thenReturn(Optional.empty());
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("rag.quota.enabled", "true")
+                .withProperty("rag.quota.defaults.requests-per-minute", "60")
+                .withProperty("rag.quota.defaults.request-burst", "2")
+                .withProperty("rag.quota.defaults.tokens-per-hour", "3600")
+                .withProperty("rag.quota.defaults.token-burst", "1000")
+                .withProperty("rag.quota.clients.[partner-key].request-burst", "5")
+                .withProperty("rag.quota.idle-timeout", "0s");
+        quotaService = new QuotaService(repository, environment);
+    }
+
+    @Test
+    void admit_overRequestBurst_shouldRejectWithRetryAfter() {
+        // Given
+        quotaService.admit("client-key");
+        quotaService.admit("client-key");
+
+        // When / Then
+        assertThatThrownBy(() -> quotaService.admit("client-key"))
+                .isInstanceOf(QuotaExceededException.class)
+                .hasMessageContaining("Request rate")
+                .satisfies(e -> assertThat(((QuotaExceededException) e).getRetryAfterSeconds()).isPositive());
+    }
+
+    @Test
+    void admit_afterTokenBudgetIsSpent_shouldRejectBeforeGenerating() {
+        // Given
+        quotaService.admit("client-key");
+        quotaService.record("client-key", usage(800, 400));
+
+        // When / Then
+        assertThatThrownBy(() -> quotaService.admit("client-key"))
+                .isInstanceOf(QuotaExceededException.class)
+                .hasMessageContaining("token");
+        ClientUsage usage = quotaService.usage("client-key");
+        assertThat(usage.tokensAvailable()).isNegative();
+        assertThat(usage.totalPromptTokens()).isEqualTo(800);
+        assertThat(usage.totalCompletionTokens()).isEqualTo(400);
+        assertThat(usage.client()).isEqualTo("clie****");
+    }
+
+    @Test
+    void admit_shouldKeepSeparateBucketsPerClient() {
+        // Given
+        quotaService.admit("client-key");
+        quotaService.admit("client-key");
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            quotaService.admit("partner-key");
+        }
+
+        // Then
+        assertThat(quotaService.usage("partner-key").requestBurst()).isEqualTo(5);
+        assertThat(quotaService.usage("client-key").totalRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void admit_withUnlistedKeys_shouldGiveEachKeyItsOwnDefaultQuota() {
+        // Given
+        quotaService.admit("heavy-integration");
+        quotaService.admit("heavy-integration");
+
+        // When / Then
+        assertThatThrownBy(() -> quotaService.admit("heavy-integration"))
+                .isInstanceOf(QuotaExceededException.class);
+        quotaService.admit("other-integration");
+        quotaService.admit(null);
+        assertThat(quotaService.usage("other-integration").requestBurst()).isEqualTo(2);
+        assertThat(quotaService.usage(null).client()).isEqualTo("anonymous");
+    }
+
+    @Test
+    void admit_whenDisabled_shouldNotLimit() {
+        // Given
+        QuotaService disabled = new QuotaService(repository, new MockEnvironment()
+                .withProperty("rag.quota.defaults.request-burst", "1"));
+
+        // When / Then
+        for (int i = 0; i < 5; i++) {
+            disabled.admit("client-key");
+        }
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void admit_withBatch_shouldChargeEveryQuestion() {
+        // Given
+        quotaService.admit("partner-key", 8);
+
+        // When / Then
+        assertThat(quotaService.usage("partner-key").totalRequests()).isEqualTo(8);
+        assertThatThrownBy(() -> quotaService.admit("partner-key"))
+                .isInstanceOf(QuotaExceededException.class)
+                .hasMessageContaining("Request rate");
+    }
+
+    @Test
+    void refund_shouldReturnRequestToken() {
+        // Given
+        quotaService.admit("partner-key");
+
+        // When
+        quotaService.refund("partner-key");
+
+        // Then
+        ClientUsage usage = quotaService.usage("partner-key");
+        assertThat(usage.requestsAvailable()).isEqualTo(5);
+        assertThat(usage.totalRequests()).isZero();
+    }
+
+    @Test
+    void evictIdle_shouldReloadPersistedBalancesOnNextUse() throws InterruptedException {
+        // Given
+        quotaService.admit("partner-key");
+        quotaService.persist();
+        Thread.sleep(5);
+
+        // When
+        quotaService.evictIdle();
+        quotaService.usage("partner-key");
+
+        // Then
+        verify(repository, times(2)).findById(anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void persist_shouldSaveChangedClientsUnderHashedKey() {
+        // Given
+        quotaService.admit("client-key");
+
+        // When
+        quotaService.persist();
+        quotaService.persist();
+
+        // Then
+        ArgumentCaptor<List<ClientQuotaUsage>> saved = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(1)).saveAll(saved.capture());
+        ClientQuotaUsage usage = saved.getValue().get(0);
+        assertThat(usage.getClientId()).hasSize(64).isNotEqualTo("client-key");
+        assertThat(usage.getTotalRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void usageRecordingChatModel_shouldAddResponseUsageToCurrentRequest() {
+        // Given
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage("Answer"))),
+                ChatResponseMetadata.builder().usage(new DefaultUsage(120, 30)).build());
+        when(chatModel.call(any(Prompt.class))).thenReturn(response);
+        UsageRecordingChatModel recording = new UsageRecordingChatModel(chatModel);
+        TokenUsage usage = new TokenUsage();
+
+        // When
+        usage.track(() -> recording.call(new Prompt("What is StarlightDB?")));
+
+        // Then
+        assertThat(usage.promptTokens()).isEqualTo(120);
+        assertThat(usage.completionTokens()).isEqualTo(30);
+    }
+
+    private TokenUsage usage(int promptTokens, int completionTokens) {
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage("Answer"))),
+                ChatResponseMetadata.builder().usage(new DefaultUsage(promptTokens, completionTokens)).build());
+        when(chatModel.call(any(Prompt.class))).thenReturn(response);
+        TokenUsage usage = new TokenUsage();
+        usage.track(() -> new UsageRecordingChatModel(chatModel).call(new Prompt("question")));
+        return usage;
+    }
+}
@@ -1,20 +1,34 @@
 package com.swiftbeard.rag_demo;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
 import com.swiftbeard.rag_demo.controller.RagController;
 import com.swiftbeard.rag_demo.exception.DocumentNotFoundException;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
 import com.swiftbeard.rag_demo.model.DocumentMetadata;
+import com.swiftbeard.rag_demo.model.HotChunk;
 import com.swiftbeard.rag_demo.model.MessageRequest;
 import com.swiftbeard.rag_demo.model.RagResponse;
 import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.service.BatchRagService;
+import com.swiftbeard.rag_demo.service.BulkUploadService;
+import com.swiftbeard.rag_demo.service.ConversationService;
 import com.swiftbeard.rag_demo.service.DocumentService;
 import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import com.swiftbeard.rag_demo.service.HotChunkService;
 import com.swiftbeard.rag_demo.service.QueryHistoryService;
 import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.env.StandardEnvironment;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
@@ -26,7 +40,11 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,11 +63,32 @@ class RagControllerTest {
     @Mock
     private QueryHistoryService queryHistoryService;
 
+    @Mock
+    private BulkUploadService bulkUploadService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @Mock
+    private BatchRagService batchRagService;
+
+    @Mock
+    private ConversationService conversationService;
+
+    @Mock
+    private HotChunkService hotChunkService;
+
+    private final LatencyTiers latencyTiers = new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry());
+
     private RagController ragController;
 
     @BeforeEach
     void setUp() {
-        ragController = new RagController(ragService, documentUploadService, documentService, queryHistoryService);
+        ragController = new RagController(ragService, documentUploadService, documentService, queryHistoryService,
+                bulkUploadService, new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), 20, 4, 200, 1.5, 500), quotaService,
+                batchRagService, new ObjectMapper(), latencyTiers, conversationService,
+                hotChunkService);
     }
 
     @Test
@@ -60,17 +99,17 @@ class RagControllerTest {
                 "StarlightDB is a serverless graph database.",
                 List.of(new SourceCitation("1", "doc.pdf", "Content", null))
         );
-        when(ragService.retrieveAndGenerate(request.message(), 4)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate(request.message(), 4, options(4))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getAnswer()).isEqualTo("StarlightDB is a serverless graph database.");
         assertThat(response.getBody().getSources()).hasSize(1);
-        verify(ragService).retrieveAndGenerate(request.message(), 4);
+        verify(ragService).retrieveAndGenerate(request.message(), 4, options(4));
     }
 
     @Test
@@ -81,16 +120,45 @@ class RagControllerTest {
                 "Chrono-Sync allows time-travel queries.",
                 List.of()
         );
-        when(ragService.retrieveAndGenerate(request.message(), 4)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate(request.message(), 4, options(4))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getAnswer()).isEqualTo("Chrono-Sync allows time-travel queries.");
-        verify(ragService).retrieveAndGenerate("How does Chrono-Sync work?", 4);
+        verify(ragService).retrieveAndGenerate("How does Chrono-Sync work?", 4, options(4));
+    }
+
+    @Test
+    void generate_withSessionId_shouldAnswerInConversation() {
+        // Given
+        MessageRequest request = new MessageRequest("And how fast is it?", null, null, null, null, null, null, null,
+                "session-1");
+        RagResponse expectedResponse = new RagResponse("Queries return in milliseconds.", List.of());
+        when(conversationService.retrieveAndGenerate("client-1", "session-1", "And how fast is it?", options(4)))
+                .thenReturn(expectedResponse);
+
+        // When
+        ResponseEntity<RagResponse> response = ragController.generate(request, "client-1");
+
+        // Then
+        assertThat(response.getBody()).isEqualTo(expectedResponse);
+        verify(ragService, never()).retrieveAndGenerate(anyString(), anyInt(), any());
+    }
+
+    @Test
+    void endSession_withUnknownSession_shouldReturnNotFound() {
+        // Given
+        when(conversationService.endSession(null, "missing")).thenReturn(false);
+
+        // When
+        ResponseEntity<String> response = ragController.endSession("missing", null);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
     @Test
@@ -204,16 +272,16 @@ class RagControllerTest {
         // Given
         MessageRequest request = new MessageRequest("");
         RagResponse expectedResponse = new RagResponse("Please provide a question.", List.of());
-        when(ragService.retrieveAndGenerate("", 4)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate("", 4, options(4))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getAnswer()).isEqualTo("Please provide a question.");
-        verify(ragService).retrieveAndGenerate("", 4);
+        verify(ragService).retrieveAndGenerate("", 4, options(4));
     }
 
     @Test
@@ -222,16 +290,16 @@ class RagControllerTest {
         String longMessage = "This is a very long message. ".repeat(100);
         MessageRequest request = new MessageRequest(longMessage);
         RagResponse expectedResponse = new RagResponse("Here is a detailed response.", List.of());
-        when(ragService.retrieveAndGenerate(longMessage, 4)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate(longMessage, 4, options(4))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getAnswer()).isEqualTo("Here is a detailed response.");
-        verify(ragService).retrieveAndGenerate(longMessage, 4);
+        verify(ragService).retrieveAndGenerate(longMessage, 4, options(4));
     }
 
     @Test
@@ -239,14 +307,14 @@ class RagControllerTest {
         // Given
         MessageRequest request = new MessageRequest("Test query", 10);
         RagResponse expectedResponse = new RagResponse("Response with 10 sources", List.of());
-        when(ragService.retrieveAndGenerate("Test query", 10)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate("Test query", 10, options(10))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        verify(ragService).retrieveAndGenerate("Test query", 10);
+        verify(ragService).retrieveAndGenerate("Test query", 10, options(10));
     }
 
     @Test
@@ -254,14 +322,14 @@ class RagControllerTest {
         // Given
         MessageRequest request = new MessageRequest("Test query", 100);
         RagResponse expectedResponse = new RagResponse("Response capped at 20", List.of());
-        when(ragService.retrieveAndGenerate("Test query", 20)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate("Test query", 20, options(20))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        verify(ragService).retrieveAndGenerate("Test query", 20);
+        verify(ragService).retrieveAndGenerate("Test query", 20, options(20));
     }
 
     @Test
@@ -269,14 +337,14 @@ class RagControllerTest {
         // Given
         MessageRequest request = new MessageRequest("Test query", -5);
         RagResponse expectedResponse = new RagResponse("Response with min 1", List.of());
-        when(ragService.retrieveAndGenerate("Test query", 1)).thenReturn(expectedResponse);
+        when(ragService.retrieveAndGenerate("Test query", 1, options(1))).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<RagResponse> response = ragController.generate(request);
+        ResponseEntity<RagResponse> response = ragController.generate(request, null);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        verify(ragService).retrieveAndGenerate("Test query", 1);
+        verify(ragService).retrieveAndGenerate("Test query", 1, options(1));
     }
 
     @Test
@@ -368,6 +436,25 @@ class RagControllerTest {
         verify(documentService).getDocumentCount();
     }
 
+    @Test
+    void getHotChunks_shouldReturnMostCitedChunksOfTheWindow() {
+        // Given
+        HotChunk hot = new HotChunk("7f1c5a9e-0b7d-4a51-9a57-2f2d1c3e4b5a", 1L, "test.pdf",
+                "Spring Boot is...", 12, true);
+        when(hotChunkService.topChunks(any(LocalDateTime.class), anyInt())).thenReturn(List.of(hot));
+        LocalDateTime before = LocalDateTime.now();
+
+        // When
+        ResponseEntity<List<HotChunk>> response = ragController.getHotChunks(5, 6);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsExactly(hot);
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(hotChunkService).topChunks(since.capture(), eq(5));
+        assertThat(since.getValue()).isBetween(before.minusHours(6), LocalDateTime.now().minusHours(6));
+    }
+
     private DocumentMetadata createDocumentMetadata(Long id, String filename) {
         DocumentMetadata metadata = new DocumentMetadata(
                 filename,
@@ -379,4 +466,9 @@ class RagControllerTest {
         metadata.setUploadedAt(LocalDateTime.now());
         return metadata;
     }
+
+    // What the default (standard) tier resolves to for a request asking for topK chunks
+    private static GenerationOptions options(int topK) {
+        return new GenerationOptions("standard", null, null, null, null, topK);
+    }
 }
@@ -0,0 +1,235 @@
+package com.swiftbeard.rag_demo;
+
+import com.google.protobuf.ByteString;
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.chunking.ContextExpander;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.grpc.ApiKeyInterceptor;
+import com.swiftbeard.rag_demo.grpc.RagGrpcService;
+import com.swiftbeard.rag_demo.grpc.v1.AskRequest;
+import com.swiftbeard.rag_demo.grpc.v1.AskResponse;
+import com.swiftbeard.rag_demo.grpc.v1.RagGrpc;
+import com.swiftbeard.rag_demo.grpc.v1.UploadHeader;
+import com.swiftbeard.rag_demo.grpc.v1.UploadRequest;
+import com.swiftbeard.rag_demo.grpc.v1.UploadResponse;
+import com.swiftbeard.rag_demo.limiter.AdaptiveConcurrencyLimiter;
+import com.swiftbeard.rag_demo.prompt.PromptTemplateRegistry;
+import com.swiftbeard.rag_demo.quota.QuotaService;
+import com.swiftbeard.rag_demo.service.DocumentService;
+import com.swiftbeard.rag_demo.service.DocumentUploadService;
+import com.swiftbeard.rag_demo.service.QueryHistoryService;
+import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.similarity.RelevanceThreshold;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RagGrpcServiceTest {
+
+    @Mock
+    private ChatClient chatClient;
+
+    @Mock
+    private ChatClient.ChatClientRequestSpec requestSpec;
+
+    @Mock
+    private ChatClient.StreamResponseSpec streamSpec;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private QueryHistoryService queryHistoryService;
+
+    @Mock
+    private DocumentUploadService documentUploadService;
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Bulkheads bulkheads = new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry());
+        LatencyTiers latencyTiers = new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry());
+        RagService ragService = new RagService(chatClient, vectorStore, queryHistoryService, bulkheads,
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO), latencyTiers,
+                new RelevanceThreshold(0, "I don't know.", new SimpleMeterRegistry()),
+                new ContextExpander(parentChunkStore, "none", 600));
+        RagGrpcService service = new RagGrpcService(ragService, documentUploadService, documentService,
+                queryHistoryService, bulkheads, new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), 20, 4, 200, 1.5, 500),
+                quotaService, latencyTiers, DataSize.ofMegabytes(1));
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(ServerInterceptors.intercept(service, new ApiKeyInterceptor()))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+
+        lenient().when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(
+                new Document("StarlightDB is a serverless graph database.",
+                        Map.of("document_id", "1", "filename", "starlight.pdf", "distance", 0.2))));
+        lenient().when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        lenient().when(requestSpec.stream()).thenReturn(streamSpec);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    void ask_shouldStreamCitationsThenAnswerAndChargeClient() {
+        // Given
+        when(streamSpec.content()).thenReturn(Flux.just("StarlightDB ", "is a graph ", "database."));
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("x-api-key", Metadata.ASCII_STRING_MARSHALLER), "client-1");
+        RagGrpc.RagBlockingStub stub = RagGrpc.newBlockingStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+
+        // When
+        List<AskResponse> responses = new ArrayList<>();
+        stub.ask(AskRequest.newBuilder().setMessage("What is StarlightDB?").build()).forEachRemaining(responses::add);
+
+        // Then
+        assertThat(responses.get(0).getSources().getCitationsList()).singleElement().satisfies(citation -> {
+            assertThat(citation.getFilename()).isEqualTo("starlight.pdf");
+            assertThat(citation.getSimilarityScore()).isEqualTo(0.2);
+        });
+        assertThat(responses.subList(1, responses.size())).extracting(AskResponse::getToken)
+                .containsExactly("StarlightDB ", "is a graph ", "database.");
+        verify(quotaService).admit("client-1");
+        verify(queryHistoryService, timeout(1000)).saveQuery(eq("What is StarlightDB?"),
+                eq("StarlightDB is a graph database."), eq(4), argThat(sources -> sources.size() == 1), anyLong());
+    }
+
+    @Test
+    void ask_withDeadline_shouldStopStreamingAndSkipHistory() throws Exception {
+        // Given: the model never finishes its answer
+        CountDownLatch cancelled = new CountDownLatch(1);
+        when(streamSpec.content()).thenReturn(Flux.<String>never().doOnCancel(cancelled::countDown));
+        RagGrpc.RagBlockingStub stub = RagGrpc.newBlockingStub(channel).withDeadlineAfter(300, TimeUnit.MILLISECONDS);
+
+        // When
+        Iterator<AskResponse> responses = stub.ask(AskRequest.newBuilder().setMessage("What is StarlightDB?").build());
+
+        // Then
+        assertThat(responses.next().hasSources()).isTrue();
+        assertThatThrownBy(responses::hasNext)
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.DEADLINE_EXCEEDED));
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(queryHistoryService, after(200).never()).saveQuery(anyString(), anyString(), anyInt(), anyList(), anyLong());
+    }
+
+    @Test
+    void upload_shouldJoinChunksAndIngest() throws Exception {
+        // Given
+        when(documentUploadService.uploadDocument(any(byte[].class), eq("notes.txt"), eq("text/plain")))
+                .thenReturn("Successfully uploaded and processed 1 document chunks from notes.txt");
+        CompletableFuture<UploadResponse> result = new CompletableFuture<>();
+
+        // When
+        StreamObserver<UploadRequest> upload = RagGrpc.newStub(channel).upload(observer(result));
+        upload.onNext(UploadRequest.newBuilder()
+                .setHeader(UploadHeader.newBuilder().setFilename("notes.txt")).build());
+        upload.onNext(UploadRequest.newBuilder().setChunk(ByteString.copyFromUtf8("StarlightDB is ")).build());
+        upload.onNext(UploadRequest.newBuilder().setChunk(ByteString.copyFromUtf8("a graph database.")).build());
+        upload.onCompleted();
+
+        // Then
+        assertThat(result.get(5, TimeUnit.SECONDS).getMessage()).startsWith("Successfully uploaded");
+        verify(documentUploadService).uploadDocument(
+                eq("StarlightDB is a graph database.".getBytes(StandardCharsets.UTF_8)), eq("notes.txt"), eq("text/plain"));
+    }
+
+    @Test
+    void upload_withoutHeader_shouldBeRejected() {
+        // Given
+        CompletableFuture<UploadResponse> result = new CompletableFuture<>();
+
+        // When
+        StreamObserver<UploadRequest> upload = RagGrpc.newStub(channel).upload(observer(result));
+        upload.onNext(UploadRequest.newBuilder().setChunk(ByteString.copyFromUtf8("StarlightDB")).build());
+        upload.onCompleted();
+
+        // Then
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(StatusRuntimeException.class)
+                .hasMessageContaining("INVALID_ARGUMENT");
+        verifyNoInteractions(documentUploadService);
+    }
+
+    private static <T> StreamObserver<T> observer(CompletableFuture<T> result) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        };
+    }
+}
@@ -1,8 +1,16 @@
 package com.swiftbeard.rag_demo;
 
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.chunking.ContextExpander;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
 import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.prompt.PromptTemplateRegistry;
 import com.swiftbeard.rag_demo.service.QueryHistoryService;
 import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.similarity.RelevanceThreshold;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,14 +25,17 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.core.env.StandardEnvironment;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,6 +45,9 @@ class RagServiceTest {
     @Mock
     private ChatClient chatClient;
 
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
     @Mock
     private ChatClient.ChatClientRequestSpec requestSpec;
 
@@ -62,13 +76,12 @@ class RagServiceTest {
 
     @BeforeEach
     void setUp() {
-        ragService = new RagService(chatClient, vectorStore, queryHistoryService);
-
-        // Set up the prompt template resource
-        String promptTemplate = "You are a helpful assistant. Use the following information to answer the question in detail.\n\n" +
-                "Information:\n{information}\n\nAnswer:";
-        Resource mockResource = new ByteArrayResource(promptTemplate.getBytes());
-        ReflectionTestUtils.setField(ragService, "ragPromptTemplate", mockResource);
+        ragService = new RagService(chatClient, vectorStore, queryHistoryService,
+                new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO),
+                new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new RelevanceThreshold(0, "I don't know.", new SimpleMeterRegistry()),
+                new ContextExpander(parentChunkStore, "none", 600));
     }
 
     @Test
@@ -185,7 +198,9 @@ class RagServiceTest {
         // Then
         assertThat(result.getAnswer()).isNotNull();
         assertThat(result.getSources()).hasSize(3);
-        verify(chatClient).prompt(any(Prompt.class));
+        verify(chatClient).prompt(promptCaptor.capture());
+        assertThat(promptCaptor.getValue().getInstructions().get(0).getText())
+                .contains("Point A is important.\nPoint B is crucial.\nPoint C is essential.");
     }
 
     @Test
@@ -237,4 +252,104 @@ class RagServiceTest {
         assertThat(request.getTopK()).isEqualTo(6);
         assertThat(result.getSources()).hasSize(6);
     }
+
+    @Test
+    void retrieveAndGenerate_withFastTier_shouldSendTierOptionsAndConcisePrompt() {
+        // Given
+        GenerationOptions options = new GenerationOptions("fast", null, 150, 0.2, "concise", 2);
+        when(vectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(createDocumentWithMetadata("StarlightDB is a graph database.", "1", "doc1.pdf")));
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenReturn("A graph database.");
+
+        // When
+        ragService.retrieveAndGenerate("What is StarlightDB?", options.topK(), options);
+
+        // Then
+        verify(chatClient).prompt(promptCaptor.capture());
+        Prompt prompt = promptCaptor.getValue();
+        assertThat(prompt.getOptions().getMaxTokens()).isEqualTo(150);
+        assertThat(prompt.getOptions().getTemperature()).isEqualTo(0.2);
+        assertThat(prompt.getInstructions().get(0).getText()).isEqualTo(
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO).get("concise")
+                        .render(List.of(new Document("StarlightDB is a graph database."))));
+    }
+
+    @Test
+    void rehearse_withNoChunkAboveThreshold_shouldNotCountSkippedGeneration() {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RagService thresholdService = new RagService(chatClient, vectorStore, queryHistoryService,
+                new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO),
+                new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new RelevanceThreshold(0.5, "I don't know.", meterRegistry),
+                new ContextExpander(parentChunkStore, "none", 600));
+        Document unrelated = createDocumentWithMetadata("StarlightDB is a graph database.", "1", "doc1.pdf");
+        unrelated.getMetadata().put("distance", 0.8f);
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(unrelated));
+
+        // When
+        RagResponse result = thresholdService.rehearse("What is the weather today?",
+                new GenerationOptions("standard", null, null, null, null, 4));
+
+        // Then
+        assertThat(result.getSources()).isEmpty();
+        assertThat(meterRegistry.get("rag.relevance.skipped-generations").counter().count()).isZero();
+        verify(chatClient, never()).prompt(any(Prompt.class));
+    }
+
+    @Test
+    void retrieveAndGenerate_withNoChunkAboveThreshold_shouldAnswerWithoutCallingChatModel() {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RagService thresholdService = new RagService(chatClient, vectorStore, queryHistoryService,
+                new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO),
+                new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new RelevanceThreshold(0.5, "I don't know.", meterRegistry),
+                new ContextExpander(parentChunkStore, "none", 600));
+        Document unrelated = createDocumentWithMetadata("StarlightDB is a graph database.", "1", "doc1.pdf");
+        unrelated.getMetadata().put("distance", 0.8f);
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(unrelated));
+
+        // When
+        RagResponse result = thresholdService.retrieveAndGenerate("What is the weather today?", 4);
+
+        // Then
+        assertThat(result.getAnswer()).isEqualTo("I don't know.");
+        assertThat(result.getSources()).isEmpty();
+        assertThat(meterRegistry.get("rag.relevance.skipped-generations").counter().count()).isEqualTo(1);
+        verify(chatClient, never()).prompt(any(Prompt.class));
+        verify(queryHistoryService, timeout(1000))
+                .saveQuery(eq("What is the weather today?"), eq("I don't know."), eq(4), eq(List.of()), anyLong());
+    }
+
+    @Test
+    void retrieveAndGenerate_withThreshold_shouldKeepOnlyRelevantChunks() {
+        // Given
+        RagService thresholdService = new RagService(chatClient, vectorStore, queryHistoryService,
+                new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new PromptTemplateRegistry("classpath:/prompts/", "detailed", Duration.ZERO),
+                new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new RelevanceThreshold(0.5, "I don't know.", new SimpleMeterRegistry()),
+                new ContextExpander(parentChunkStore, "none", 600));
+        Document relevant = createDocumentWithMetadata("StarlightDB is a graph database.", "1", "doc1.pdf");
+        relevant.getMetadata().put("distance", 0.2);
+        Document unrelated = createDocumentWithMetadata("The cafeteria opens at nine.", "2", "doc2.pdf");
+        unrelated.getMetadata().put("distance", 0.7);
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(relevant, unrelated));
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenReturn("A graph database.");
+
+        // When
+        RagResponse result = thresholdService.retrieveAndGenerate("What is StarlightDB?", 4);
+
+        // Then
+        assertThat(result.getSources()).hasSize(1);
+        assertThat(result.getSources().get(0).getFilename()).isEqualTo("doc1.pdf");
+        assertThat(result.getSources().get(0).getSimilarityScore()).isEqualTo(0.2);
+    }
 }
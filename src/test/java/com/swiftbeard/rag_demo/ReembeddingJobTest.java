@@ -0,0 +1,173 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.model.ReembeddingCheckpoint;
+import com.swiftbeard.rag_demo.model.ReembeddingProgress;
+import com.swiftbeard.rag_demo.repository.ReembeddingCheckpointRepository;
+import com.swiftbeard.rag_demo.vectorstore.BlueGreenVectorStore;
+import com.swiftbeard.rag_demo.vectorstore.ReembeddingJob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReembeddingJobTest {
+
+    private static final String FIRST = "00000000-0000-0000-0000-000000000001";
+    private static final String SECOND = "00000000-0000-0000-0000-000000000002";
+    private static final String THIRD = "00000000-0000-0000-0000-000000000003";
+
+    @Mock
+    private VectorStore live;
+
+    @Mock
+    private VectorStore target;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ReembeddingCheckpointRepository repository;
+
+    private final AtomicReference<ReembeddingCheckpoint> saved = new AtomicReference<>();
+
+    private ReembeddingJob job;
+
+    private BlueGreenVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(repository.findById("vector_store_v2")).thenAnswer(invocation -> Optional.ofNullable(saved.get()));
+        lenient().when(repository.save(any(ReembeddingCheckpoint.class))).thenAnswer(invocation -> {
+            saved.set(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        lenient().when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(3L);
+        lenient().when(jdbcTemplate.query(contains("NOT EXISTS"), ArgumentMatchers.<RowMapper<Document>>any(), any()))
+                .thenReturn(List.of());
+        job = new ReembeddingJob(target, jdbcTemplate, repository, "vector_store", "vector_store_v2",
+                "text-embedding-bge-m3", 2, 0, true, new SimpleMeterRegistry());
+        store = new BlueGreenVectorStore(live, job);
+    }
+
+    @Test
+    void resume_shouldCopyAllPagesThenSwitchRetrieval() throws InterruptedException {
+        // Given
+        when(jdbcTemplate.query(startsWith("SELECT id::text"), ArgumentMatchers.<RowMapper<Document>>any(), any(), any()))
+                .thenReturn(List.of(chunk(FIRST), chunk(SECOND)))
+                .thenReturn(List.of(chunk(THIRD)));
+        SearchRequest request = SearchRequest.builder().query("What is StarlightDB?").build();
+
+        // When
+        job.resume();
+        assertThat(job.await(Duration.ofSeconds(5))).isTrue();
+        store.similaritySearch(request);
+        store.add(List.of(chunk(FIRST)));
+
+        // Then
+        ReembeddingProgress progress = job.progress();
+        assertThat(progress.status()).isEqualTo("SWITCHED");
+        assertThat(progress.serving()).isTrue();
+        assertThat(progress.copied()).isEqualTo(3);
+        assertThat(progress.percentComplete()).isEqualTo(100.0);
+        assertThat(saved.get().getLastId()).isEqualTo(THIRD);
+        verify(target, times(3)).add(anyList());
+        verify(jdbcTemplate).update(startsWith("DELETE FROM vector_store_v2"));
+        verify(target).similaritySearch(request);
+        verify(live, never()).similaritySearch(any(SearchRequest.class));
+        verify(live, never()).add(anyList());
+    }
+
+    @Test
+    void add_whileCopying_shouldWriteToBothTables() throws InterruptedException {
+        // Given
+        CountDownLatch copying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(jdbcTemplate.query(startsWith("SELECT id::text"), ArgumentMatchers.<RowMapper<Document>>any(), any(), any()))
+                .thenReturn(List.of(chunk(FIRST)));
+        doAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            if (documents.get(0).getId().equals(FIRST)) {
+                copying.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(target).add(anyList());
+        job.resume();
+        assertThat(copying.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        store.add(List.of(chunk(THIRD)));
+        store.similaritySearch(SearchRequest.builder().query("What is StarlightDB?").build());
+        release.countDown();
+
+        // Then
+        assertThat(job.await(Duration.ofSeconds(5))).isTrue();
+        verify(live).add(List.of(chunk(THIRD)));
+        verify(target).add(List.of(chunk(THIRD)));
+        verify(live).similaritySearch(any(SearchRequest.class));
+    }
+
+    @Test
+    void resume_afterPause_shouldContinueFromCheckpoint() throws InterruptedException {
+        // Given
+        ReembeddingCheckpoint checkpoint = new ReembeddingCheckpoint("vector_store_v2", "vector_store",
+                "text-embedding-bge-m3");
+        checkpoint.setStatus(ReembeddingCheckpoint.Status.PAUSED);
+        checkpoint.setLastId(SECOND);
+        checkpoint.setCopied(2L);
+        saved.set(checkpoint);
+        when(jdbcTemplate.query(startsWith("SELECT id::text"), ArgumentMatchers.<RowMapper<Document>>any(),
+                eq(SECOND), eq(2)))
+                .thenReturn(List.of(chunk(THIRD)));
+
+        // When
+        job.resume();
+        assertThat(job.await(Duration.ofSeconds(5))).isTrue();
+
+        // Then
+        assertThat(job.progress().copied()).isEqualTo(3);
+        verify(target, times(1)).add(List.of(chunk(THIRD)));
+    }
+
+    @Test
+    void writes_beforeAnyRun_shouldOnlyReachLiveTable() {
+        // When
+        store.add(List.of(chunk(FIRST)));
+        store.delete(List.of(FIRST));
+
+        // Then
+        verify(live).add(anyList());
+        verify(live).delete(List.of(FIRST));
+        verifyNoInteractions(target);
+        assertThat(job.progress().status()).isEqualTo("NOT_STARTED");
+    }
+
+    private static Document chunk(String id) {
+        return new Document(id, "StarlightDB chunk " + id, Map.of("document_id", "1"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.datasource.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource replica;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Connection replicaConnection;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        routing = new ReplicaRoutingDataSource(primary, replica, Duration.ofSeconds(2), Duration.ofHours(1),
+                meterRegistry);
+        lenient().when(primary.getConnection()).thenReturn(primaryConnection);
+        lenient().when(replica.getConnection()).thenReturn(replicaConnection);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        routing.close();
+    }
+
+    @Test
+    void getConnection_outsideReadOnlyTransaction_shouldUsePrimary() throws SQLException {
+        // When
+        Connection connection = routing.getConnection();
+
+        // Then
+        assertThat(connection).isSameAs(primaryConnection);
+        verify(replica, never()).getConnection();
+    }
+
+    @Test
+    void getConnection_inReadOnlyTransaction_shouldUseReplica() throws SQLException {
+        // Given
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // When
+        Connection connection = routing.getConnection();
+
+        // Then
+        assertThat(connection).isSameAs(replicaConnection);
+        assertThat(meterRegistry.get("rag.datasource.reads").tag("route", "replica").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void getConnection_whenReplicaUnreachable_shouldFailOverToPrimary() throws SQLException {
+        // Given
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        // When
+        Connection first = routing.getConnection();
+        Connection second = routing.getConnection();
+
+        // Then
+        assertThat(first).isSameAs(primaryConnection);
+        assertThat(second).isSameAs(primaryConnection);
+        assertThat(routing.isReplicaAvailable()).isFalse();
+        // Once marked down the replica is not retried until the next health check
+        verify(replica, times(1)).getConnection();
+    }
+
+    @Test
+    void checkReplica_whenLagExceedsLimit_shouldRouteReadsToPrimary() throws SQLException {
+        // Given
+        replicaReportsLag(5.0);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // When
+        routing.checkReplica();
+
+        // Then
+        assertThat(routing.isReplicaAvailable()).isFalse();
+        assertThat(routing.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void checkReplica_whenCaughtUp_shouldPutReplicaBackInRotation() throws SQLException {
+        // Given
+        replicaReportsLag(5.0);
+        routing.checkReplica();
+        replicaReportsLag(0.0);
+
+        // When
+        routing.checkReplica();
+
+        // Then
+        assertThat(routing.isReplicaAvailable()).isTrue();
+    }
+
+    private void replicaReportsLag(double seconds) throws SQLException {
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(seconds);
+    }
+}
@@ -0,0 +1,157 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.routing.ChatEndpoint;
+import com.swiftbeard.rag_demo.routing.RoutingChatModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoutingChatModelTest {
+
+    @Mock
+    private ChatModel primary;
+
+    @Mock
+    private ChatModel secondary;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Prompt prompt = new Prompt("What is StarlightDB?");
+
+    @Test
+    void call_whenEndpointFails_shouldRetryOnAnotherEndpoint() {
+        // Given
+        lenient().when(primary.call(any(Prompt.class))).thenThrow(new IllegalStateException("502 Bad Gateway"));
+        when(secondary.call(any(Prompt.class))).thenReturn(response("from secondary"));
+        RoutingChatModel router = router(5, Duration.ofMinutes(1));
+
+        // When
+        ChatResponse response = router.call(prompt);
+
+        // Then
+        assertThat(response.getResult().getOutput().getText()).isEqualTo("from secondary");
+    }
+
+    @Test
+    void call_afterRepeatedFailures_shouldEjectEndpoint() {
+        // Given
+        lenient().when(primary.call(any(Prompt.class))).thenThrow(new IllegalStateException("502 Bad Gateway"));
+        when(secondary.call(any(Prompt.class))).thenReturn(response("from secondary"));
+        RoutingChatModel router = router(2, Duration.ofMinutes(1));
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            router.call(prompt);
+        }
+
+        // Then
+        verify(primary, atMost(2)).call(any(Prompt.class));
+        assertThat(router.endpoints().get(0).state()).isEqualTo(ChatEndpoint.State.OPEN);
+    }
+
+    @Test
+    void call_afterOpenDuration_shouldProbeEndpointBackIn() throws InterruptedException {
+        // Given
+        when(primary.call(any(Prompt.class)))
+                .thenThrow(new IllegalStateException("502 Bad Gateway"))
+                .thenReturn(response("from primary"));
+        when(secondary.call(any(Prompt.class))).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return response("from secondary");
+        });
+        RoutingChatModel router = router(1, Duration.ofMillis(50));
+        while (router.endpoints().get(0).state() != ChatEndpoint.State.OPEN) {
+            router.call(prompt);
+        }
+
+        // When
+        Thread.sleep(60);
+        ChatResponse response = router.call(prompt);
+
+        // Then
+        assertThat(response.getResult().getOutput().getText()).isEqualTo("from primary");
+        assertThat(router.endpoints().get(0).state()).isEqualTo(ChatEndpoint.State.CLOSED);
+    }
+
+    @Test
+    void stream_afterOpenDuration_shouldSettleTheProbe() throws InterruptedException {
+        // Given
+        when(primary.call(any(Prompt.class))).thenThrow(new IllegalStateException("502 Bad Gateway"));
+        when(primary.stream(any(Prompt.class))).thenReturn(Flux.just(response("from"), response(" primary")));
+        when(secondary.call(any(Prompt.class))).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return response("from secondary");
+        });
+        RoutingChatModel router = router(1, Duration.ofMillis(50));
+        while (router.endpoints().get(0).state() != ChatEndpoint.State.OPEN) {
+            router.call(prompt);
+        }
+
+        // When
+        Thread.sleep(60);
+        List<ChatResponse> responses = router.stream(prompt).collectList().block();
+
+        // Then
+        assertThat(responses).hasSize(2);
+        assertThat(router.endpoints().get(0).state()).isEqualTo(ChatEndpoint.State.CLOSED);
+        assertThat(meterRegistry.get("rag.chat.endpoint.latency").tags("endpoint", "primary", "outcome", "success")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rag.chat.endpoint.in-flight").tag("endpoint", "primary").gauge().value())
+                .isZero();
+    }
+
+    @Test
+    void call_whenEveryEndpointFails_shouldThrow() {
+        // Given
+        when(primary.call(any(Prompt.class))).thenThrow(new IllegalStateException("primary down"));
+        when(secondary.call(any(Prompt.class))).thenThrow(new IllegalStateException("secondary down"));
+        RoutingChatModel router = router(5, Duration.ofMinutes(1));
+
+        // When / Then
+        assertThatThrownBy(() -> router.call(prompt)).isInstanceOf(IllegalStateException.class);
+        assertThat(meterRegistry.get("rag.chat.endpoint.latency").tag("outcome", "error").timers()).hasSize(2);
+    }
+
+    @Test
+    void call_whenRequestIsRefused_shouldNotRetryOrCountFailure() {
+        // Given
+        lenient().when(primary.call(any(Prompt.class))).thenThrow(new NonTransientAiException("400 - invalid model"));
+        lenient().when(secondary.call(any(Prompt.class))).thenThrow(new NonTransientAiException("400 - invalid model"));
+        RoutingChatModel router = router(1, Duration.ofMinutes(1));
+
+        // When / Then
+        assertThatThrownBy(() -> router.call(prompt)).isInstanceOf(NonTransientAiException.class);
+        assertThat(meterRegistry.get("rag.chat.endpoint.latency").tag("outcome", "rejected").timers()).hasSize(1);
+        assertThat(router.endpoints()).allSatisfy(endpoint ->
+                assertThat(endpoint.state()).isEqualTo(ChatEndpoint.State.CLOSED));
+    }
+
+    private RoutingChatModel router(int failureThreshold, Duration openDuration) {
+        return new RoutingChatModel(List.of(
+                new ChatEndpoint("primary", primary, failureThreshold, openDuration, meterRegistry),
+                new ChatEndpoint("secondary", secondary, failureThreshold, openDuration, meterRegistry)));
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,139 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.similarity.NearDuplicates;
+import com.swiftbeard.rag_demo.similarity.SimilarityKernels;
+import com.swiftbeard.rag_demo.similarity.VectorKernels;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SimilarityKernelsTest {
+
+    // Not a multiple of any SIMD width, so the scalar tail loops are exercised too
+    private static final int DIMENSIONS = 771;
+
+    private final Random random = new Random(7);
+    private final VectorKernels kernels = SimilarityKernels.get();
+
+    @Test
+    void dot_shouldMatchReferenceImplementation() {
+        // Given
+        float[] a = randomVector();
+        float[] b = randomVector();
+
+        // When
+        float dot = kernels.dot(a, b);
+
+        // Then
+        assertThat((double) dot).isCloseTo(referenceDot(a, b), within(1e-2));
+    }
+
+    @Test
+    void cosine_shouldMatchReferenceImplementation() {
+        // Given
+        float[] a = randomVector();
+        float[] b = randomVector();
+
+        // When
+        float cosine = kernels.cosine(a, b);
+
+        // Then
+        double expected = referenceDot(a, b) / Math.sqrt(referenceDot(a, a) * referenceDot(b, b));
+        assertThat((double) cosine).isCloseTo(expected, within(1e-4));
+        assertThat((double) kernels.cosine(a, a)).isCloseTo(1.0, within(1e-4));
+    }
+
+    @Test
+    void cosine_withZeroVector_shouldReturnZero() {
+        // When
+        float cosine = kernels.cosine(new float[DIMENSIONS], randomVector());
+
+        // Then
+        assertThat(cosine).isZero();
+    }
+
+    @Test
+    void l2Squared_shouldMatchReferenceImplementation() {
+        // Given
+        float[] a = randomVector();
+        float[] b = randomVector();
+
+        // When
+        float distance = kernels.l2Squared(a, b);
+
+        // Then
+        double expected = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            expected += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        assertThat((double) distance).isCloseTo(expected, within(1e-1));
+    }
+
+    @Test
+    void hamming_shouldCountDifferingBits() {
+        // Given
+        long[] a = {0b1011L, -1L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 1L};
+        long[] b = {0b0001L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L};
+
+        // When
+        int distance = kernels.hamming(a, b);
+
+        // Then
+        assertThat(distance).isEqualTo(2 + 64 + 1);
+    }
+
+    @Test
+    void cosineAll_shouldMatchPairwiseKernel() {
+        // Given
+        float[] query = randomVector();
+        float[][] vectors = {randomVector(), randomVector(), randomVector()};
+        float[] block = new float[vectors.length * DIMENSIONS];
+        for (int i = 0; i < vectors.length; i++) {
+            System.arraycopy(vectors[i], 0, block, i * DIMENSIONS, DIMENSIONS);
+        }
+        float[] scores = new float[vectors.length];
+
+        // When
+        kernels.cosineAll(query, block, vectors.length, scores);
+
+        // Then
+        for (int i = 0; i < vectors.length; i++) {
+            assertThat(scores[i]).isCloseTo(kernels.cosine(query, vectors[i]), within(1e-4f));
+        }
+    }
+
+    @Test
+    void representatives_shouldGroupNearDuplicatesUnderTheFirstOfThem() {
+        // Given
+        float[] a = randomVector();
+        float[] b = randomVector();
+        float[] nearA = a.clone();
+        nearA[0] += 0.01f;
+
+        // When
+        int[] representatives = NearDuplicates.representatives(List.of(a, b, nearA, b), 0.99f);
+
+        // Then
+        assertThat(representatives).containsExactly(0, 1, 0, 1);
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double referenceDot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (double) a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,107 @@
+package com.swiftbeard.rag_demo;
+
+import com.swiftbeard.rag_demo.chunking.ContextExpander;
+import com.swiftbeard.rag_demo.chunking.ParentChunkStore;
+import com.swiftbeard.rag_demo.chunking.SmallToBigSplitter;
+import com.swiftbeard.rag_demo.model.ParentChunk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SmallToBigRetrievalTest {
+
+    private static final String PAGE_1 = "StarlightDB is a serverless graph database. It scales to zero when idle.\n\n"
+            + "The Quantum-Leap engine plans queries in parallel. Plans are cached per tenant.";
+    private static final String PAGE_2 = "Chrono-Sync keeps a history of every edge. Queries can read any past version.";
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Test
+    void split_shouldRecordExactOffsetsAndRebuildParents() {
+        // Given
+        SmallToBigSplitter splitter = new SmallToBigSplitter(80, 40);
+        List<Document> pages = List.of(
+                new Document(PAGE_1, Map.of("page_number", 1)),
+                new Document(PAGE_2, Map.of("page_number", 2)));
+        String fullText = PAGE_1 + "\n" + PAGE_2;
+
+        // When
+        List<Document> children = splitter.split(pages);
+        List<SmallToBigSplitter.Section> parents = SmallToBigSplitter.parents(children);
+
+        // Then
+        assertThat(children).hasSizeGreaterThan(parents.size());
+        for (Document child : children) {
+            int start = (Integer) child.getMetadata().get(SmallToBigSplitter.START_OFFSET);
+            int end = (Integer) child.getMetadata().get(SmallToBigSplitter.END_OFFSET);
+            assertThat(child.getText()).hasSizeLessThanOrEqualTo(40).isEqualTo(fullText.substring(start, end));
+            assertThat(start).isGreaterThanOrEqualTo((Integer) child.getMetadata().get(SmallToBigSplitter.PARENT_OFFSET));
+            assertThat(end).isLessThanOrEqualTo((Integer) child.getMetadata().get(SmallToBigSplitter.PARENT_END_OFFSET));
+        }
+        for (SmallToBigSplitter.Section parent : parents) {
+            assertThat(parent.text()).isEqualTo(fullText.substring(parent.start(), parent.end()));
+        }
+        assertThat(parents.get(parents.size() - 1).pageNumber()).isEqualTo(2);
+        // Paragraph breaks are preferred cut points
+        assertThat(parents.get(0).text()).endsWith("idle.\n\n");
+    }
+
+    @Test
+    void expand_parentMode_shouldReplaceChunksWithDeduplicatedParentsInRankOrder() {
+        // Given
+        ContextExpander expander = new ContextExpander(parentChunkStore, "parent", 600);
+        ParentChunk parent = new ParentChunk(7L, 0, PAGE_1.length(), 1, PAGE_1);
+        when(parentChunkStore.find(anyMap())).thenReturn(List.of(parent));
+        Document unrelated = new Document("Seeded chunk without a parent.");
+        List<Document> chunks = List.of(child(7L, 0, 74, 78), unrelated, child(7L, 0, 0, 43));
+
+        // When
+        List<Document> context = expander.expand(chunks);
+
+        // Then
+        assertThat(context).extracting(Document::getText).containsExactly(PAGE_1, unrelated.getText());
+        assertThat(context.get(0).getMetadata()).containsEntry("distance", 0.2);
+        verify(parentChunkStore).find(Map.of(7L, Set.of(0)));
+    }
+
+    @Test
+    void expand_neighborsMode_shouldWidenAndMergeWindowsWithinParent() {
+        // Given
+        ContextExpander expander = new ContextExpander(parentChunkStore, "neighbors", 10);
+        ParentChunk parent = new ParentChunk(7L, 0, PAGE_1.length(), 1, PAGE_1);
+        when(parentChunkStore.find(anyMap())).thenReturn(List.of(parent));
+        List<Document> chunks = List.of(child(7L, 0, 44, 74), child(7L, 0, 0, 43));
+
+        // When
+        List<Document> context = expander.expand(chunks);
+
+        // Then: both windows overlap, so they merge into one section
+        assertThat(context).hasSize(1);
+        assertThat(context.get(0).getText()).isEqualTo(PAGE_1.substring(0, 84).strip());
+        assertThat(context.get(0).getMetadata()).containsEntry(SmallToBigSplitter.START_OFFSET, 0);
+    }
+
+    private static Document child(Long documentId, int parentOffset, int start, int end) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId.toString());
+        metadata.put(SmallToBigSplitter.PARENT_OFFSET, parentOffset);
+        metadata.put(SmallToBigSplitter.START_OFFSET, start);
+        metadata.put(SmallToBigSplitter.END_OFFSET, end);
+        metadata.put("distance", 0.2);
+        return new Document(PAGE_1.substring(start, end), metadata);
+    }
+}
@@ -0,0 +1,148 @@
+package com.swiftbeard.rag_demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swiftbeard.rag_demo.bulkhead.Bulkheads;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.service.RagService;
+import com.swiftbeard.rag_demo.tier.GenerationOptions;
+import com.swiftbeard.rag_demo.tier.LatencyTiers;
+import com.swiftbeard.rag_demo.vectorstore.ReembeddingJob;
+import com.swiftbeard.rag_demo.warmup.WarmUp;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WarmUpTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ObjectProvider<HikariDataSource> pools;
+
+    @Mock
+    private ObjectProvider<ReembeddingJob> reembeddingJob;
+
+    @Mock
+    private ReembeddingJob job;
+
+    @Mock
+    private RagService ragService;
+
+    @Mock
+    private ChatModel chatModel;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MockEnvironment environment;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        environment = new MockEnvironment()
+                .withProperty("rag.warmup.iterations", "10")
+                .withProperty("rag.warmup.parallelism", "2")
+                .withProperty("rag.warmup.queries[0]", "What is StarlightDB?")
+                .withProperty("rag.warmup.queries[1]", "How does StarlightDB replicate data?");
+        lenient().when(pools.orderedStream()).thenReturn(Stream.empty());
+    }
+
+    @Test
+    void run_shouldWarmEveryStageWithoutGenerating() {
+        // Given
+        when(jdbcTemplate.queryForObject(contains("pg_prewarm"), eq(Long.class), eq("public.vector_store")))
+                .thenReturn(128L);
+        when(ragService.rehearse(anyString(), any(GenerationOptions.class))).thenReturn(new RagResponse("",
+                List.of(new SourceCitation("1", "starlight.pdf", "StarlightDB is a serverless graph database.", 0.2))));
+
+        // When
+        warmUp().run(new DefaultApplicationArguments());
+
+        // Then
+        verify(jdbcTemplate, atLeastOnce()).execute("SELECT 1");
+        verify(ragService, times(5)).rehearse(eq("What is StarlightDB?"), any(GenerationOptions.class));
+        verify(ragService, times(5)).rehearse(eq("How does StarlightDB replicate data?"), any(GenerationOptions.class));
+
+        ArgumentCaptor<Prompt> ping = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel).call(ping.capture());
+        assertThat(ping.getValue().getOptions().getMaxTokens()).isEqualTo(1);
+
+        assertThat(meterRegistry.get("rag.warmup").tag("phase", "total").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rag.warmup").timers())
+                .extracting(timer -> timer.getId().getTag("phase"))
+                .containsExactlyInAnyOrder("pools", "prewarm", "chat", "queries", "total");
+    }
+
+    @Test
+    void run_afterReembeddingSwitched_shouldPrewarmActiveTable() {
+        // Given
+        environment.setProperty("rag.warmup.chat-ping", "false");
+        when(reembeddingJob.getIfAvailable()).thenReturn(job);
+        when(job.activeTable()).thenReturn("vector_store_v2");
+        when(ragService.rehearse(anyString(), any(GenerationOptions.class))).thenReturn(new RagResponse("", List.of()));
+
+        // When
+        warmUp().run(new DefaultApplicationArguments());
+
+        // Then
+        verify(jdbcTemplate).queryForObject(contains("pg_prewarm"), eq(Long.class), eq("public.vector_store_v2"));
+    }
+
+    @Test
+    void run_whenStepsFail_shouldStillFinishAndStopQueriesEarly() {
+        // Given: no pg_prewarm extension and an embedding server that is down
+        environment.setProperty("rag.warmup.parallelism", "1");
+        environment.setProperty("rag.warmup.chat-ping", "false");
+        doThrow(new DataAccessResourceFailureException("Connection refused")).when(jdbcTemplate).execute("SELECT 1");
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), anyString()))
+                .thenThrow(new BadSqlGrammarException("prewarm", "pg_prewarm",
+                        new SQLException("function pg_prewarm(regclass) does not exist")));
+        when(ragService.rehearse(anyString(), any(GenerationOptions.class)))
+                .thenThrow(new IllegalStateException("Embedding server unavailable"));
+
+        // When
+        warmUp().run(new DefaultApplicationArguments());
+
+        // Then
+        verify(ragService, times(1)).rehearse(anyString(), any(GenerationOptions.class));
+        verifyNoInteractions(chatModel);
+        assertThat(meterRegistry.get("rag.warmup").tag("phase", "total").timer().count()).isEqualTo(1);
+    }
+
+    private WarmUp warmUp() {
+        return new WarmUp(jdbcTemplate, transactionManager, pools, reembeddingJob, ragService,
+                new LatencyTiers(new StandardEnvironment(), new SimpleMeterRegistry()),
+                new Bulkheads(new StandardEnvironment(), new SimpleMeterRegistry()),
+                chatModel, new ObjectMapper(), meterRegistry, environment);
+    }
+}
@@ -0,0 +1,166 @@
+package com.swiftbeard.rag_demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufMessage;
+import com.github.luben.zstd.ZstdInputStream;
+import com.swiftbeard.rag_demo.model.QueryHistory;
+import com.swiftbeard.rag_demo.model.RagResponse;
+import com.swiftbeard.rag_demo.model.SourceCitation;
+import com.swiftbeard.rag_demo.wire.JacksonProtobufHttpMessageConverter;
+import com.swiftbeard.rag_demo.wire.ZstdCompressionFilter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class WireFormatTest {
+
+    private static final MediaType PROTOBUF = JacksonProtobufHttpMessageConverter.APPLICATION_PROTOBUF;
+
+    private final ObjectMapper protobufMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .factory(new ProtobufFactory())
+            .build();
+    private final JacksonProtobufHttpMessageConverter converter = new JacksonProtobufHttpMessageConverter(
+            protobufMapper, Set.of(RagResponse.class, SourceCitation.class, QueryHistory.class));
+
+    @Test
+    void protobuf_shouldRoundTripRagResponseWithStableFieldNumbers() throws Exception {
+        // Given
+        RagResponse response = new RagResponse("StarlightDB is a serverless graph database.", List.of(
+                new SourceCitation("1", "starlightdb-docs.pdf", "StarlightDB is a serverless graph database.", 0.12),
+                new SourceCitation("1", "starlightdb-docs.pdf", "Chrono-Sync keeps a history of every edge.", null)));
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        // When
+        converter.write(response, RagResponse.class, PROTOBUF, output);
+        RagResponse decoded = (RagResponse) converter.read(RagResponse.class, null,
+                new MockHttpInputMessage(output.getBodyAsBytes()));
+
+        // Then
+        assertThat(output.getHeaders().getContentType()).isEqualTo(PROTOBUF);
+        assertThat(decoded.getAnswer()).isEqualTo(response.getAnswer());
+        assertThat(decoded.getSourceCount()).isEqualTo(2);
+        assertThat(decoded.getSources()).extracting(SourceCitation::getContent, SourceCitation::getSimilarityScore)
+                .containsExactly(
+                        tuple("StarlightDB is a serverless graph database.", 0.12),
+                        tuple("Chrono-Sync keeps a history of every edge.", null));
+        ProtobufMessage message = converter.schema(RagResponse.class).getRootType();
+        assertThat(message.field("answer").id).isEqualTo(1);
+        assertThat(message.field("sources").id).isEqualTo(2);
+        assertThat(message.field("sourceCount").id).isEqualTo(3);
+    }
+
+    @Test
+    void protobuf_shouldWrapHistoryListInRepeatedMessage() throws Exception {
+        // Given
+        QueryHistory entry = new QueryHistory("What is StarlightDB?", "A serverless graph database.", 4, 2, 120L);
+        entry.setId(7L);
+        Type historyList = ResolvableType.forClassWithGenerics(List.class, QueryHistory.class).getType();
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        // When
+        converter.write(List.of(entry), historyList, PROTOBUF, output);
+        Object decoded = converter.read(historyList, null, new MockHttpInputMessage(output.getBodyAsBytes()));
+
+        // Then
+        assertThat(converter.schema(historyList).getRootType().field("items").id).isEqualTo(1);
+        assertThat((List<?>) decoded).singleElement().satisfies(item -> {
+            QueryHistory history = (QueryHistory) item;
+            assertThat(history.getId()).isEqualTo(7L);
+            assertThat(history.getQuery()).isEqualTo("What is StarlightDB?");
+            assertThat(history.getTimestamp()).isEqualTo(entry.getTimestamp());
+        });
+    }
+
+    @Test
+    void protobuf_shouldLeaveOtherTypesToOtherConverters() {
+        assertThat(converter.canWrite(String.class, PROTOBUF)).isFalse();
+        assertThat(converter.canWrite(ResolvableType.forClassWithGenerics(List.class, String.class).getType(),
+                List.class, PROTOBUF)).isFalse();
+        assertThat(converter.canWrite(RagResponse.class, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    @Test
+    void zstdFilter_shouldCompressLargeJsonForClientsThatAcceptIt() throws Exception {
+        // Given
+        ZstdCompressionFilter filter = new ZstdCompressionFilter(true, 3, DataSize.ofBytes(1024),
+                List.of(MediaType.APPLICATION_JSON));
+        byte[] body = ("{\"answer\":\"" + "StarlightDB is a serverless graph database. ".repeat(100) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/ai/rag");
+        request.addHeader("Accept-Encoding", "gzip, deflate, zstd");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request, response, writing(MediaType.APPLICATION_JSON_VALUE, body));
+
+        // Then
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("zstd");
+        assertThat(response.getHeader("Content-Length")).isNull();
+        assertThat(response.getContentAsByteArray()).hasSizeLessThan(body.length / 4);
+        try (ZstdInputStream in = new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertThat(in.readAllBytes()).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void zstdFilter_shouldPassThroughSmallOrUnlistedResponses() throws Exception {
+        // Given
+        ZstdCompressionFilter filter = new ZstdCompressionFilter(true, 3, DataSize.ofBytes(1024),
+                List.of(MediaType.APPLICATION_JSON));
+        byte[] small = "{\"answer\":\"I don't know.\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] text = "Successfully uploaded ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        MockHttpServletResponse smallResponse = new MockHttpServletResponse();
+        MockHttpServletResponse textResponse = new MockHttpServletResponse();
+        MockHttpServletResponse refusedResponse = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(zstdRequest("zstd"), smallResponse, writing(MediaType.APPLICATION_JSON_VALUE, small));
+        filter.doFilter(zstdRequest("zstd"), textResponse, writing(MediaType.TEXT_PLAIN_VALUE, text));
+        filter.doFilter(zstdRequest("gzip, zstd;q=0"), refusedResponse, writing(MediaType.APPLICATION_JSON_VALUE, text));
+
+        // Then
+        assertThat(smallResponse.getHeader("Content-Encoding")).isNull();
+        assertThat(smallResponse.getContentAsByteArray()).isEqualTo(small);
+        assertThat(smallResponse.getContentLength()).isEqualTo(small.length);
+        assertThat(textResponse.getHeader("Content-Encoding")).isNull();
+        assertThat(textResponse.getContentAsByteArray()).isEqualTo(text);
+        assertThat(refusedResponse.getHeader("Content-Encoding")).isNull();
+    }
+
+    private static MockHttpServletRequest zstdRequest(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ai/history");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        return request;
+    }
+
+    // Writes the way Spring's message converters do: headers first, then the body in pieces
+    private static FilterChain writing(String contentType, byte[] body) {
+        return (request, response) -> {
+            response.setContentType(contentType);
+            response.setContentLength(body.length);
+            for (int offset = 0; offset < body.length; offset += 512) {
+                response.getOutputStream().write(body, offset, Math.min(512, body.length - offset));
+            }
+            response.getOutputStream().flush();
+        };
+    }
+}